@@ -4,10 +4,40 @@ import org.example.graphics.render.Renderer;
 import org.example.audio.AudioManager;
 import org.example.game.IEngineLogic;
 import org.example.graphics.Camera;
+import org.example.scene.GameObject;
+import org.example.scene.RenderScene;
+import org.example.scene.RenderSnapshot;
+import org.example.scene.RenderSnapshotBuffer;
 import org.joml.Vector3f;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Główna pętla silnika. Symulacja (IEngineLogic.update) działa ze stałym krokiem niezależnym
+ * od częstotliwości klatek: czas klatki trafia do akumulatora, z którego wykonywane są całe ticki,
+ * a reszta (alpha) służy do interpolacji renderowanych obiektów między dwoma ostatnimi tickami.
+ * Liczba ticków na klatkę jest ograniczona - po długiej przerwie (ładowanie, debugger) symulacja
+ * zwalnia zamiast wpadać w spiralę nadrabiania.
+ * <p>
+ * Tryb potokowy (setPipelined / PIPELINED_PROPERTY): ticki liczy osobny wątek symulacji, który po
+ * tickach publikuje RenderSnapshot (potrójny bufor z wymianą atomową), a wątek GL rysuje najnowszy
+ * snapshot przez RenderScene - update() kolejnego ticku nakłada się z renderowaniem poprzedniego.
+ * Wejście i kamera zostają w wątku GL (GLFW wymaga wątku głównego, a kamera reaguje bez opóźnienia
+ * ticku); input() i update() są rozdzielone blokadą, więc logika gry nie widzi współbieżnych zmian.
+ */
 public class Engine {
 
+    /** Właściwość systemowa z częstotliwością ticków symulacji (Hz). */
+    public static final String TICK_RATE_PROPERTY = "engine.tickRate";
+    /** Właściwość systemowa włączająca tryb potokowy (true/false). */
+    public static final String PIPELINED_PROPERTY = "engine.pipelined";
+    public static final int DEFAULT_TICK_RATE = 60;
+    public static final int DEFAULT_MAX_TICKS_PER_FRAME = 5;
+    private static final float MAX_FRAME_TIME = 0.25f; // Dłuższa klatka liczy się jak 250 ms
+
     // Zainicjalizuj pola, których inicjalizacja jest w try-catch, wartością null
     private Window window = null;
     private Input input = null;
@@ -21,6 +51,20 @@ public class Engine {
     private final String windowTitle;
     private boolean initializedSuccessfully = false; // Flaga do śledzenia stanu inicjalizacji
 
+    // Stały krok symulacji
+    private float tickDelta = 1.0f / Integer.getInteger(TICK_RATE_PROPERTY, DEFAULT_TICK_RATE);
+    private int maxTicksPerFrame = DEFAULT_MAX_TICKS_PER_FRAME;
+    private float accumulator = 0.0f;
+    private volatile long tickCount = 0;    // Zapisywane przez wątek symulacji w trybie potokowym
+    private volatile long droppedTicks = 0; // Ticki pominięte przez limit nadrabiania
+
+    // Tryb potokowy
+    private boolean pipelined = Boolean.getBoolean(PIPELINED_PROPERTY);
+    private final ReentrantLock simulationLock = new ReentrantLock(true); // input() vs update(); sprawiedliwa - bez zagłodzenia wątku GL
+    private final AtomicReference<Throwable> simulationFailure = new AtomicReference<>();
+    private volatile boolean simulationRunning = false;
+    private RenderSnapshotBuffer snapshotBuffer;
+
     // Konstruktor pozostaje bez zmian w logice
     public Engine(String windowTitle, int width, int height, IEngineLogic gameLogic) {
         this.windowTitle = windowTitle;
@@ -39,6 +83,7 @@ public class Engine {
             System.out.println("Engine: Audio Manager initialized.");
 
             window.init(input);
+            JobSystem.init(); // Wątek GL jest wątkiem głównym systemu zadań
 
             System.out.println("Engine: Initializing Renderer...");
             renderer = new Renderer(window);
@@ -69,8 +114,13 @@ public class Engine {
 
         System.out.println("Starting " + windowTitle + "...");
         System.out.println("LWJGL " + org.lwjgl.Version.getVersion() + "!");
+        System.out.println("Simulation: " + Math.round(1.0f / tickDelta) + " ticks/s (max " + maxTicksPerFrame + " per frame).");
         try {
-            loop();
+            if (pipelined) {
+                loopPipelined();
+            } else {
+                loop();
+            }
         } catch (Exception e) { // Złap nieoczekiwane błędy w pętli
             System.err.println("Error during game loop:");
             e.printStackTrace();
@@ -80,9 +130,10 @@ public class Engine {
     }
 
     private void loop() {
+        GameObject.beginSimulationTick(); // Stan z init() jest stanem początkowym - bez interpolacji od zera
         while (!window.windowShouldClose()) {
             timer.update();
-            float deltaTime = timer.getDeltaTime();
+            float deltaTime = Math.min(timer.getDeltaTime(), MAX_FRAME_TIME);
 
             // Aktualizuj pozycję i orientację słuchacza OpenAL (jeśli audioManager istnieje)
             if (audioManager != null && audioManager.getListener() != null) {
@@ -90,16 +141,182 @@ public class Engine {
                 audioManager.getListener().setOrientation(camera.getFront(), camera.getUp());
             }
 
-            // Deleguj do logiki gry
+            // Deleguj do logiki gry - wejście raz na klatkę, symulacja stałymi tickami
             gameLogic.input(window, input, camera, deltaTime);
-            gameLogic.update(deltaTime);
-            gameLogic.render(window, camera, renderer); // Zakładamy, że renderer nie jest null, bo sprawdzono w run()
+            accumulator += deltaTime;
+            int ticks = 0;
+            while (accumulator >= tickDelta && ticks < maxTicksPerFrame) {
+                GameObject.beginSimulationTick();
+                gameLogic.update(tickDelta);
+                accumulator -= tickDelta;
+                ticks++;
+            }
+            if (accumulator >= tickDelta) {
+                // Limit nadrabiania - zaległe ticki przepadają (zostaje ułamek do interpolacji)
+                droppedTicks += (long) (accumulator / tickDelta);
+                accumulator %= tickDelta;
+            }
+            tickCount += ticks;
+            float alpha = accumulator / tickDelta;
+            gameLogic.render(window, camera, renderer, alpha); // Zakładamy, że renderer nie jest null, bo sprawdzono w run()
+            JobSystem.endFrame(); // Zadania wątku GL (np. wysłanie tekstur zdekodowanych w tle) i statystyki puli
 
             window.update();
             input.update();
         }
     }
 
+    private void loopPipelined() throws InterruptedException {
+        GameObject.beginSimulationTick();
+        snapshotBuffer = new RenderSnapshotBuffer();
+        // Stan początkowy - zanim wystartuje wątek symulacji
+        RenderSnapshot initial = snapshotBuffer.beginWrite(tickCount, tickDelta);
+        if (!gameLogic.captureRenderSnapshot(initial)) {
+            System.out.println("Engine: Game logic does not support render snapshots, using the serial loop.");
+            pipelined = false;
+            loop();
+            return;
+        }
+        initial.setCamera(camera);
+        snapshotBuffer.publish();
+
+        RenderScene renderScene = new RenderScene();
+        Thread simulationThread = new Thread(this::simulationLoop, "simulation");
+        simulationThread.setDaemon(true); // Nie blokuje zamknięcia JVM, gdyby join() przekroczył czas
+        simulationRunning = true;
+        simulationThread.start();
+        System.out.println("Engine: Pipelined mode - simulation runs on its own thread.");
+        try {
+            while (!window.windowShouldClose()) {
+                Throwable failure = simulationFailure.get();
+                if (failure != null) {
+                    throw new IllegalStateException("Simulation thread failed", failure);
+                }
+                timer.update();
+                float deltaTime = Math.min(timer.getDeltaTime(), MAX_FRAME_TIME);
+
+                if (audioManager != null && audioManager.getListener() != null) {
+                    audioManager.getListener().setPosition(camera.getPosition());
+                    audioManager.getListener().setOrientation(camera.getFront(), camera.getUp());
+                }
+
+                // Wejście w wątku GL, ale nigdy równolegle z tickiem
+                simulationLock.lock();
+                try {
+                    gameLogic.input(window, input, camera, deltaTime);
+                } finally {
+                    simulationLock.unlock();
+                }
+
+                // Najnowszy stan symulacji - kolejny tick liczy się w tym czasie w wątku symulacji
+                RenderSnapshot snapshot = snapshotBuffer.acquireLatest();
+                renderScene.apply(snapshot);
+                if (renderer.isReady()) {
+                    renderer.render(renderScene.getCamera(), renderScene.getObjects(), renderScene.getDirectionalLight(),
+                            renderScene.getPointLights(), renderScene.getSpotLights(),
+                            snapshot.getInterpolationAlpha(System.nanoTime()));
+                }
+                JobSystem.endFrame();
+
+                window.update();
+                input.update();
+            }
+        } finally {
+            simulationRunning = false;
+            LockSupport.unpark(simulationThread);
+            simulationThread.join(TimeUnit.SECONDS.toMillis(2));
+            if (simulationThread.isAlive()) {
+                System.err.println("Engine: Simulation thread did not stop in time.");
+            }
+        }
+    }
+
+    // Wątek symulacji: własny akumulator, ticki pod blokadą, po tickach publikacja snapshotu
+    private void simulationLoop() {
+        try {
+            long lastTime = System.nanoTime();
+            float simulationAccumulator = 0.0f;
+            while (simulationRunning) {
+                long now = System.nanoTime();
+                simulationAccumulator += Math.min((now - lastTime) / 1.0e9f, MAX_FRAME_TIME);
+                lastTime = now;
+
+                int ticks = 0;
+                while (simulationAccumulator >= tickDelta && ticks < maxTicksPerFrame && simulationRunning) {
+                    simulationLock.lock();
+                    try {
+                        GameObject.beginSimulationTick();
+                        gameLogic.update(tickDelta);
+                    } finally {
+                        simulationLock.unlock();
+                    }
+                    simulationAccumulator -= tickDelta;
+                    ticks++;
+                    tickCount++;
+                }
+                if (simulationAccumulator >= tickDelta) {
+                    droppedTicks += (long) (simulationAccumulator / tickDelta);
+                    simulationAccumulator %= tickDelta;
+                }
+
+                if (ticks > 0) {
+                    simulationLock.lock(); // Spójny stan z ewentualnymi zmianami z input()
+                    try {
+                        RenderSnapshot snapshot = snapshotBuffer.beginWrite(tickCount, tickDelta);
+                        gameLogic.captureRenderSnapshot(snapshot);
+                        snapshot.setCamera(camera); // Z tej samej chwili co światła zależne od kamery (input())
+                    } finally {
+                        simulationLock.unlock();
+                    }
+                    snapshotBuffer.publish();
+                } else {
+                    // Do następnego ticku
+                    LockSupport.parkNanos((long) ((tickDelta - simulationAccumulator) * 1.0e9f));
+                }
+            }
+        } catch (Throwable t) {
+            simulationFailure.set(t); // Wątek GL przerwie pętlę i posprząta
+        }
+    }
+
+    /**
+     * Włącza tryb potokowy (przed run()). Wymaga, aby logika gry obsługiwała
+     * IEngineLogic.captureRenderSnapshot() - w przeciwnym razie pętla zostaje szeregowa.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isPipelined() { return pipelined; }
+
+    /** Snapshoty opublikowane przez wątek symulacji, ale nadpisane przed narysowaniem. */
+    public long getSkippedSnapshotCount() {
+        return snapshotBuffer != null ? snapshotBuffer.getSkippedCount() : 0;
+    }
+
+    /**
+     * Ustawia częstotliwość ticków symulacji (domyślnie właściwość TICK_RATE_PROPERTY albo DEFAULT_TICK_RATE).
+     * Niższa częstotliwość - tańsza symulacja przy tej samej płynności obrazu (interpolacja).
+     */
+    public void setTickRate(int ticksPerSecond) {
+        if (ticksPerSecond <= 0) throw new IllegalArgumentException("Tick rate must be positive: " + ticksPerSecond);
+        this.tickDelta = 1.0f / ticksPerSecond;
+        this.accumulator = 0.0f;
+    }
+
+    /** Maksymalna liczba ticków wykonywanych w jednej klatce (ochrona przed spiralą nadrabiania). */
+    public void setMaxTicksPerFrame(int maxTicksPerFrame) {
+        if (maxTicksPerFrame <= 0) throw new IllegalArgumentException("Max ticks per frame must be positive: " + maxTicksPerFrame);
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    /** Stały krok symulacji w sekundach (deltaTime przekazywany do IEngineLogic.update). */
+    public float getTickDelta() { return tickDelta; }
+    /** Liczba wykonanych ticków symulacji. */
+    public long getTickCount() { return tickCount; }
+    /** Liczba ticków pominiętych przez limit nadrabiania. */
+    public long getDroppedTickCount() { return droppedTicks; }
+
     // Metoda pomocnicza do sprzątania po częściowej inicjalizacji
     private void cleanupPartialInit() {
         System.out.println("Engine: Cleaning up after partial initialization due to error...");
@@ -108,6 +325,7 @@ public class Engine {
         if (renderer != null) { try { renderer.cleanup(); } catch (Exception e) { System.err.println("Error during partial renderer cleanup: "+e.getMessage());}}
         if (audioManager != null) { try { audioManager.cleanup(); } catch (Exception e) { System.err.println("Error during partial audioManager cleanup: "+e.getMessage());}}
         if (window != null) { try { window.cleanup(); } catch (Exception e) { System.err.println("Error during partial window cleanup: "+e.getMessage());}}
+        JobSystem.cleanup();
         // Input jest sprzątany przez Window.cleanup()
         System.out.println("Engine: Partial cleanup finished.");
     }
@@ -125,6 +343,8 @@ public class Engine {
         System.out.println("--- Starting Engine Cleanup ---");
         long cleanupStartTime = System.nanoTime(); // Zmierz czas trwania cleanup
 
+        JobSystem.cleanup(); // Zadania w tle mogą odwoływać się do zasobów gry - pula kończy pracę pierwsza
+
         try {
             System.out.println("Engine Cleanup: Stage 1/4 - Calling gameLogic.cleanup()...");
             if (gameLogic != null) gameLogic.cleanup();
@@ -0,0 +1,109 @@
+package org.example.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uchwyt zadania JobSystem. Zadanie startuje, gdy zakończą się wszystkie jego zależności;
+ * kontynuacja thenOnMainThread to zwykłe zadanie wątku GL zależne od tego uchwytu.
+ * <p>
+ * Błąd zadania nie przerywa silnika: zostaje zapamiętany, zadania zależne są pomijane
+ * (dziedziczą błąd), a await() rzuca go jako przyczynę IllegalStateException.
+ */
+public final class Job {
+
+    private final String name;
+    private final Runnable task;
+    private final boolean mainThread;  // Wykonanie tylko w wątku GL (JobSystem.runMainThreadJobs)
+    private final AtomicInteger pending; // Niezakończone zależności + 1 (blokada do końca rejestracji)
+    private final List<Job> continuations = new ArrayList<>(2);
+    private volatile boolean done = false;
+    private volatile Throwable failure;
+
+    Job(String name, Runnable task, boolean mainThread) {
+        this.name = name;
+        this.task = task;
+        this.mainThread = mainThread;
+        this.pending = new AtomicInteger(1);
+    }
+
+    /** Rejestruje zależności i zwalnia blokadę rejestracji - zadanie bez zależności trafia od razu do kolejki. */
+    void start(Job[] dependencies) {
+        if (dependencies != null) {
+            for (Job dependency : dependencies) {
+                if (dependency == null) continue;
+                pending.incrementAndGet();
+                if (!dependency.addContinuation(this)) {
+                    dependencyFinished(dependency); // Zależność już zakończona
+                }
+            }
+        }
+        if (pending.decrementAndGet() == 0) JobSystem.schedule(this);
+    }
+
+    private void dependencyFinished(Job dependency) {
+        if (dependency.failure != null && failure == null) failure = dependency.failure;
+        if (pending.decrementAndGet() == 0) JobSystem.schedule(this);
+    }
+
+    private boolean addContinuation(Job continuation) {
+        synchronized (this) {
+            if (done) return false;
+            continuations.add(continuation);
+            return true;
+        }
+    }
+
+    /** Wykonuje zadanie w bieżącym wątku (wywołuje JobSystem). */
+    void execute() {
+        try {
+            if (failure == null) task.run();
+        } catch (Throwable t) {
+            failure = t;
+            System.err.println("JobSystem: Job '" + name + "' failed: " + t);
+        } finally {
+            complete();
+        }
+    }
+
+    private void complete() {
+        synchronized (this) {
+            done = true;
+            notifyAll();
+        }
+        // Po ustawieniu done lista nie jest już modyfikowana
+        for (Job continuation : continuations) {
+            continuation.dependencyFinished(this);
+        }
+        continuations.clear();
+        JobSystem.jobCompleted();
+    }
+
+    /** Zadanie uruchamiane po zakończeniu tego w wątku GL (np. wysłanie danych wczytanych w tle). */
+    public Job thenOnMainThread(String name, Runnable continuation) {
+        return JobSystem.submit(name, continuation, true, this);
+    }
+
+    /**
+     * Czeka na zakończenie zadania. Wątek GL w tym czasie wykonuje zadania przypisane do niego
+     * (bez zakleszczenia na kontynuacjach thenOnMainThread).
+     * @throws IllegalStateException Jeśli zadanie (lub jego zależność) zakończyło się błędem.
+     */
+    public void await() {
+        if (!done) JobSystem.awaitJob(this);
+        if (failure != null) {
+            throw new IllegalStateException("Job '" + name + "' failed", failure);
+        }
+    }
+
+    // Oczekiwanie poza wątkiem GL (wywołuje JobSystem)
+    synchronized void waitUntilDone(long timeoutMillis) throws InterruptedException {
+        if (!done) wait(timeoutMillis);
+    }
+
+    public boolean isDone() { return done; }
+    public boolean isFailed() { return failure != null; }
+    public String getName() { return name; }
+    boolean isMainThread() { return mainThread; }
+}
@@ -0,0 +1,372 @@
+package org.example.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * System zadań silnika na puli work-stealing (ForkJoinPool): każdy wątek roboczy ma własną kolejkę,
+ * zadania zlecane z wątku roboczego trafiają do jego kolejki, a bezczynne wątki podkradają pracę
+ * innym. Podsystemy dzielą pętle na zakresy (parallelFor) albo zlecają zadania tła (submitBackground,
+ * np. dekodowanie tekstur - Texture.decode), które mogą trwać dłużej niż klatka.
+ * <p>
+ * Wywołania OpenGL/GLFW są dozwolone tylko w wątku GL (tym, który wywołał init()) - kontynuacje
+ * Job.thenOnMainThread (np. wysłanie zdekodowanych danych do GPU) są kolejkowane dla niego i wykonywane
+ * w runMainThreadJobs(), w endFrame() oraz podczas Job.await() w wątku GL.
+ * <p>
+ * Liczba wątków: WORKER_COUNT_PROPERTY, domyślnie rdzenie - 1 (wątek wywołujący parallelFor
+ * też wykonuje fragmenty). Przy 0 wątkach lub przed init() wszystko wykonuje się w miejscu.
+ * Jak GeometryArena - stan jest statyczny, silnik ma jedną pulę.
+ */
+public final class JobSystem {
+
+    /** Właściwość systemowa z liczbą wątków roboczych. */
+    public static final String WORKER_COUNT_PROPERTY = "engine.jobWorkers";
+    private static final long MAIN_THREAD_WAIT_NANOS = 100_000L; // Wątek GL sprawdza swoją kolejkę co najmniej co 0,1 ms
+
+    /** Ciało pętli parallelFor dla zakresu indeksów [start, end). */
+    @FunctionalInterface
+    public interface RangeTask {
+        void run(int start, int end);
+    }
+
+    // Wątek roboczy z numerem slotu statystyk
+    private static final class Worker extends ForkJoinWorkerThread {
+        private final int slot;
+
+        private Worker(ForkJoinPool pool, int slot) {
+            super(pool);
+            this.slot = slot;
+            setName("Job-" + slot);
+        }
+    }
+
+    private static ForkJoinPool pool;
+    private static int workerCount = 0;
+    private static Thread mainThread;
+    private static volatile boolean mainThreadWaiting = false;
+    private static final ConcurrentLinkedQueue<Job> mainThreadJobs = new ConcurrentLinkedQueue<>();
+
+    // Statystyki: sloty 0..workerCount-1 to wątki robocze, slot workerCount - wątki spoza puli (GL, symulacja)
+    private static AtomicLongArray busyNanos = new AtomicLongArray(1);
+    private static AtomicLongArray jobCounts = new AtomicLongArray(1);
+    private static float[] utilization = new float[1];
+    private static long[] frameJobCounts = new long[1];
+    private static long frameStartNanos;
+
+    private JobSystem() {
+    }
+
+    /** Tworzy pulę z liczbą wątków z WORKER_COUNT_PROPERTY. Wywołać w wątku GL. */
+    public static void init() {
+        init(Integer.getInteger(WORKER_COUNT_PROPERTY, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /** Tworzy pulę z podaną liczbą wątków roboczych (0 - wykonanie w miejscu). Wywołać w wątku GL. */
+    public static void init(int workers) {
+        if (mainThread != null) {
+            System.out.println("JobSystem: Already initialized.");
+            return;
+        }
+        mainThread = Thread.currentThread();
+        workerCount = Math.max(0, workers);
+        busyNanos = new AtomicLongArray(workerCount + 1);
+        jobCounts = new AtomicLongArray(workerCount + 1);
+        utilization = new float[workerCount + 1];
+        frameJobCounts = new long[workerCount + 1];
+        if (workerCount > 0) {
+            AtomicInteger nextSlot = new AtomicInteger();
+            // Wątki zastępcze (managedBlock) dzielą sloty z podstawowymi
+            pool = new ForkJoinPool(workerCount, forkJoinPool -> new Worker(forkJoinPool, nextSlot.getAndIncrement() % workerCount),
+                    (thread, error) -> System.err.println("JobSystem: Uncaught error in " + thread.getName() + ": " + error), false);
+        }
+        frameStartNanos = System.nanoTime();
+        System.out.println("JobSystem: Initialized with " + workerCount + " worker thread(s).");
+    }
+
+    public static void cleanup() {
+        if (mainThread == null) return;
+        if (pool != null) {
+            System.out.println("JobSystem: Shutting down (" + pool.getStealCount() + " stolen task(s) in total)...");
+            pool.shutdownNow();
+            try {
+                if (!pool.awaitTermination(2, TimeUnit.SECONDS)) {
+                    System.err.println("JobSystem: Worker threads did not stop in time.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pool = null;
+        }
+        mainThreadJobs.clear();
+        workerCount = 0;
+        mainThread = null;
+    }
+
+    // --- Zadania ---
+
+    /** Zadanie tła w puli - endFrame() na nie nie czeka (wczytywanie i dekodowanie zasobów itp.). */
+    public static Job submitBackground(String name, Runnable task) {
+        return submit(name, task, false);
+    }
+
+    static Job submit(String name, Runnable task, boolean onMainThread, Job... dependencies) {
+        if (task == null) throw new IllegalArgumentException("Job task cannot be null");
+        Job job = new Job(name, task, onMainThread);
+        job.start(dependencies);
+        return job;
+    }
+
+    // Zadanie gotowe do wykonania (zależności zakończone)
+    static void schedule(Job job) {
+        if (job.isMainThread()) {
+            mainThreadJobs.add(job);
+            wakeMainThread();
+            return;
+        }
+        if (pool == null) {
+            runTimed(job);
+            return;
+        }
+        fork(ForkJoinTask.adapt(() -> runTimed(job)), () -> runTimed(job));
+    }
+
+    static void jobCompleted() {
+        wakeMainThread();
+    }
+
+    // Z wątku roboczego - do jego własnej kolejki (LIFO, kradzione z drugiego końca); z innych wątków - do kolejki wspólnej
+    private static void fork(ForkJoinTask<?> task, Runnable fallback) {
+        ForkJoinPool current = pool;
+        Thread thread = Thread.currentThread();
+        if (current != null && thread instanceof Worker && ((Worker) thread).getPool() == current) {
+            task.fork();
+            return;
+        }
+        try {
+            if (current == null) throw new RejectedExecutionException("JobSystem is not running");
+            current.execute(task);
+        } catch (RejectedExecutionException e) {
+            fallback.run(); // Pula zamknięta (sprzątanie) - w miejscu
+        }
+    }
+
+    private static void runTimed(Job job) {
+        long start = System.nanoTime();
+        job.execute();
+        record(currentSlot(), System.nanoTime() - start, 1);
+    }
+
+    private static void record(int slot, long nanos, int jobs) {
+        if (slot >= busyNanos.length()) return; // Statystyki sprzed init()
+        busyNanos.addAndGet(slot, nanos);
+        jobCounts.addAndGet(slot, jobs);
+    }
+
+    private static int currentSlot() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof Worker ? ((Worker) thread).slot : workerCount;
+    }
+
+    // --- Wątek GL ---
+
+    public static boolean isMainThread() {
+        return mainThread == null || Thread.currentThread() == mainThread;
+    }
+
+    /** Rzuca IllegalStateException poza wątkiem GL (np. wywołanie OpenGL z zadania puli). */
+    public static void requireMainThread(String operation) {
+        if (!isMainThread()) {
+            throw new IllegalStateException(operation + " must run on the GL thread, not " + Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * Wykonuje zadania czekające na wątek GL.
+     * @return Liczba wykonanych zadań.
+     */
+    public static int runMainThreadJobs() {
+        requireMainThread("JobSystem.runMainThreadJobs()");
+        int count = 0;
+        Job job;
+        while ((job = mainThreadJobs.poll()) != null) {
+            runTimed(job);
+            count++;
+        }
+        return count;
+    }
+
+    private static void wakeMainThread() {
+        if (mainThreadWaiting) LockSupport.unpark(mainThread);
+    }
+
+    // Czekanie wątku GL - w tym czasie wykonuje zadania przypisane do niego (bez zakleszczenia)
+    private static void waitOnMainThread(BooleanSupplier condition) {
+        while (!condition.getAsBoolean()) {
+            if (runMainThreadJobs() > 0) continue;
+            mainThreadWaiting = true;
+            try {
+                if (!condition.getAsBoolean() && mainThreadJobs.isEmpty()) {
+                    LockSupport.parkNanos(MAIN_THREAD_WAIT_NANOS);
+                }
+            } finally {
+                mainThreadWaiting = false;
+            }
+        }
+    }
+
+    static void awaitJob(Job job) {
+        if (isMainThread()) {
+            waitOnMainThread(job::isDone);
+            return;
+        }
+        try {
+            if (Thread.currentThread() instanceof Worker) {
+                // Pula może uruchomić wątek zastępczy na czas blokady
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    @Override
+                    public boolean block() throws InterruptedException {
+                        job.waitUntilDone(0);
+                        return job.isDone();
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return job.isDone();
+                    }
+                });
+            } else {
+                while (!job.isDone()) job.waitUntilDone(0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Koniec klatki (wątek GL): wykonuje gotowe zadania wątku GL (np. wysłanie danych zdekodowanych w tle)
+     * i zamyka statystyki wykorzystania wątków za tę klatkę.
+     */
+    public static void endFrame() {
+        runMainThreadJobs();
+
+        long now = System.nanoTime();
+        float frameNanos = Math.max(1L, now - frameStartNanos);
+        for (int slot = 0; slot < utilization.length; slot++) {
+            utilization[slot] = Math.min(1.0f, busyNanos.getAndSet(slot, 0) / frameNanos);
+            frameJobCounts[slot] = jobCounts.getAndSet(slot, 0);
+        }
+        frameStartNanos = now;
+    }
+
+    // --- Pętle równoległe ---
+
+    /**
+     * Wykonuje body dla zakresu [0, count) podzielonego na fragmenty, równolegle w puli i w wątku
+     * wywołującym; wraca po zakończeniu wszystkich fragmentów. Podział jest adaptacyjny (guided):
+     * pierwsze fragmenty są duże, kolejne coraz mniejsze, ale nie mniejsze niż minChunk - wolniejsze
+     * zakresy są wyrównywane przez wątki, które skończyły wcześniej.
+     *
+     * @param minChunk Najmniejszy fragment - praca, która opłaca przekazanie do innego wątku.
+     * @throws IllegalStateException Jeśli body rzuciło wyjątek (pozostałe fragmenty są pomijane).
+     */
+    public static void parallelFor(int count, int minChunk, RangeTask body) {
+        if (count <= 0) return;
+        int grain = Math.max(1, minChunk);
+        int helpers = pool == null ? 0 : Math.min(workerCount, (count - 1) / grain);
+        if (helpers == 0) {
+            long start = System.nanoTime();
+            body.run(0, count);
+            record(currentSlot(), System.nanoTime() - start, 1);
+            return;
+        }
+        ParallelFor loop = new ParallelFor(count, grain, helpers + 1, body);
+        for (int i = 0; i < helpers; i++) {
+            fork(ForkJoinTask.adapt(loop::work), () -> { });
+        }
+        loop.work();
+        loop.awaitCompletion();
+    }
+
+    // Stan jednej pętli: fragmenty pobierane ze wspólnego licznika (bez przydziału z góry)
+    private static final class ParallelFor {
+        private final int count;
+        private final int grain;
+        private final int participants;
+        private final RangeTask body;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private volatile Throwable failure;
+
+        private ParallelFor(int count, int grain, int participants, RangeTask body) {
+            this.count = count;
+            this.grain = grain;
+            this.participants = participants;
+            this.body = body;
+            this.remaining = new AtomicInteger(count);
+        }
+
+        private void work() {
+            long start = System.nanoTime();
+            int chunks = 0;
+            while (true) {
+                int begin = next.get();
+                if (begin >= count) break;
+                int size = Math.max(grain, (count - begin) / (participants * 2));
+                int end = Math.min(count, begin + size);
+                if (!next.compareAndSet(begin, end)) continue;
+                try {
+                    if (failure == null) body.run(begin, end);
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                chunks++;
+                if (remaining.addAndGet(begin - end) == 0) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+            if (chunks > 0) record(currentSlot(), System.nanoTime() - start, chunks);
+        }
+
+        // Pobrane fragmenty są zawsze w trakcie wykonania - czekanie nie zależy od kolejek puli
+        private void awaitCompletion() {
+            boolean interrupted = false;
+            synchronized (this) {
+                while (remaining.get() > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            if (failure != null) throw new IllegalStateException("parallelFor body failed", failure);
+        }
+    }
+
+    // --- Statystyki ---
+
+    public static int getWorkerCount() { return workerCount; }
+
+    /** Część ostatniej klatki, przez którą wątek roboczy wykonywał zadania (0-1). */
+    public static float getWorkerUtilization(int worker) { return utilization[worker]; }
+
+    /** Jak getWorkerUtilization(), dla zadań wykonanych poza pulą (wątek GL, wątek symulacji). */
+    public static float getCallerUtilization() { return utilization[utilization.length - 1]; }
+
+    /** Zadania i fragmenty parallelFor wykonane przez wątek roboczy w ostatniej klatce. */
+    public static long getWorkerJobCount(int worker) { return frameJobCounts[worker]; }
+
+    /** Zadania przejęte z kolejek innych wątków od utworzenia puli. */
+    public static long getStealCount() { return pool != null ? pool.getStealCount() : 0; }
+}
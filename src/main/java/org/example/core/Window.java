@@ -1,5 +1,6 @@
 package org.example.core;
 
+import org.example.graphics.GLStateCache;
 import org.lwjgl.glfw.*;
 import org.lwjgl.opengl.*;
 import org.lwjgl.system.*;
@@ -86,10 +87,10 @@ public class Window {
         GL.createCapabilities();
         glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
 
-        glViewport(0, 0, width, height);
+        GLStateCache.viewport(0, 0, width, height);
         glfwSetFramebufferSizeCallback(windowHandle, (window, w, h) -> {
             if (w > 0 && h > 0) {
-                glViewport(0, 0, w, h);
+                GLStateCache.viewport(0, 0, w, h);
                 this.width = w;
                 this.height = h;
             }
@@ -3,6 +3,8 @@ package org.example.game;
 import org.example.audio.AudioManager;
 import org.example.audio.SoundSource;
 import org.example.core.Input;
+import org.example.core.Job;
+import org.example.core.JobSystem;
 import org.example.core.Window;
 import org.example.exception.ResourceLoadException;
 import org.example.exception.ResourceNotFoundException;
@@ -18,6 +20,7 @@ import org.example.graphics.light.SpotLight;
 import org.example.graphics.render.Renderer;
 import org.example.scene.GameObject;
 import org.example.scene.GameObjectProperties;
+import org.example.scene.RenderSnapshot;
 import org.example.util.MeshLoader;
 import org.example.util.ModelLoader;
 import org.joml.Vector2f;
@@ -107,17 +110,34 @@ public class DemoGame implements IEngineLogic {
 
     private void loadTexturesSafe() {
         System.out.println("  DemoGame: Loading textures...");
-        loadTexture("stone", "textures/stone.png");
-        loadTexture("wood", "textures/wood.png");
-        loadTexture("grass", "textures/grass.png");
+        // Pliki dekodowane równolegle w puli zadań, wysyłane do GPU w wątku GL (await wykonuje kontynuacje)
+        List<Job> uploads = new ArrayList<>();
+        uploads.add(loadTexture("stone", "textures/stone.png"));
+        uploads.add(loadTexture("wood", "textures/wood.png"));
+        uploads.add(loadTexture("grass", "textures/grass.png"));
+        for (Job upload : uploads) {
+            try {
+                upload.await();
+            } catch (IllegalStateException e) { System.err.println("    ERROR loading texture: " + e.getCause()); }
+        }
     }
 
-    private void loadTexture(String name, String path) {
-        try {
-            textures.put(name, new Texture(path));
-            System.out.println("    Texture loaded: " + name + " from " + path);
-        } catch (ResourceNotFoundException e) { System.err.println("    ERROR - Texture not found: " + path);
-        } catch (Exception e) { System.err.println("    ERROR loading texture '" + name + "': " + e.getMessage()); }
+    private Job loadTexture(String name, String path) {
+        Texture.DecodedImage[] decoded = new Texture.DecodedImage[1]; // Przekazanie z zadania tła do kontynuacji
+        Job decode = JobSystem.submitBackground("Decode " + path, () -> {
+            try {
+                decoded[0] = Texture.decode(path);
+            } catch (ResourceNotFoundException e) { System.err.println("    ERROR - Texture not found: " + path);
+            } catch (Exception e) { System.err.println("    ERROR loading texture '" + name + "': " + e.getMessage()); }
+        });
+        return decode.thenOnMainThread("Upload " + path, () -> {
+            if (decoded[0] == null) return;
+            try {
+                textures.put(name, new Texture(decoded[0]));
+                System.out.println("    Texture loaded: " + name + " from " + path);
+            } catch (ResourceNotFoundException e) { System.err.println("    ERROR - Texture not found: " + path);
+            } catch (Exception e) { System.err.println("    ERROR loading texture '" + name + "': " + e.getMessage()); }
+        });
     }
 
     private void createMaterials() {
@@ -198,7 +218,8 @@ public class DemoGame implements IEngineLogic {
         Material defaultMat = materials.getOrDefault("stone", new Material(defaultTexture));
 
         GameObjectProperties floorProps = new GameObjectProperties.Builder()
-                .typeName("Floor").material("Grass").setStatic(true).physicsEnabled(false).targetable(false).build();
+                .typeName("Floor").material("Grass").setStatic(true).physicsEnabled(false).targetable(false)
+                .occluder(true).build();
         if (planeMesh != null) {
             GameObject floor = new GameObject(planeMesh, materials.getOrDefault("grass", defaultMat), floorProps);
             floor.setPosition(0.0f, -0.5f, 0.0f);
@@ -262,6 +283,7 @@ public class DemoGame implements IEngineLogic {
                 new PointLight(new Vector3f(0f, 0f, 0f), flashlightColor, originalFlashlightIntensity, Attenuation.forRange(30f)),
                 new Vector3f(0, -1, 0), 12.5f, 17.5f
         );
+        flashlight.setShadowCaster(true); // Kafel w atlasie cieni reflektorów
         spotLights.add(flashlight);
         isFlashlightOn = true;
         System.out.println("    Created " + spotLights.size() + " spot lights.");
@@ -395,7 +417,7 @@ public class DemoGame implements IEngineLogic {
     }
 
     @Override
-    public void render(Window window, Camera camera, Renderer renderer) { // Typ Renderer jest teraz poprawny
+    public void render(Window window, Camera camera, Renderer renderer, float alpha) {
         if (renderer != null && renderer.isReady() && camera != null) {
             List<GameObject> visibleObjects = new ArrayList<>();
             for (GameObject go : gameObjects) {
@@ -403,7 +425,7 @@ public class DemoGame implements IEngineLogic {
                     visibleObjects.add(go);
                 }
             }
-            renderer.render(camera, visibleObjects, directionalLight, pointLights, spotLights);
+            renderer.render(camera, visibleObjects, directionalLight, pointLights, spotLights, alpha);
         } else {
             if (renderer == null || !renderer.isReady()) System.err.println("DemoGame.render(): Renderer not ready or null.");
             if (camera == null) System.err.println("DemoGame.render(): Camera is null.");
@@ -411,6 +433,15 @@ public class DemoGame implements IEngineLogic {
     }
 
 
+    @Override
+    public boolean captureRenderSnapshot(RenderSnapshot snapshot) {
+        for (GameObject go : gameObjects) {
+            snapshot.addObject(go); // Niewidoczne są pomijane
+        }
+        snapshot.setLights(directionalLight, pointLights, spotLights);
+        return true;
+    }
+
     @Override
     public void cleanup() {
         System.out.println("DemoGame: Cleaning up resources...");
@@ -6,16 +6,33 @@ import org.example.core.Window;
 import org.example.graphics.Camera;
 // Zmień ten import, aby wskazywał na nowy Renderer
 import org.example.graphics.render.Renderer; // <--- TUTAJ ZMIANA
+import org.example.scene.RenderSnapshot;
 
 public interface IEngineLogic {
 
     void init(Window window, Renderer renderer, AudioManager audioManager) throws Exception; // Typ Renderer musi być spójny
 
+    // Raz na klatkę, z rzeczywistym czasem klatki (kamera i wejście mają reagować bez opóźnienia ticku)
     void input(Window window, Input input, Camera camera, float deltaTime);
+
+    // Tick symulacji o stałym kroku (Engine.getTickDelta()) - zero lub więcej razy na klatkę
     void update(float deltaTime);
 
-    // Upewnij się, że typ Renderer jest poprawny
-    void render(Window window, Camera camera, Renderer renderer); // <--- TUTAJ ZMIANA (jeśli była inna)
+    /**
+     * Renderuje klatkę.
+     * @param alpha Współczynnik interpolacji między dwoma ostatnimi tickami (0..1) - do przekazania rendererowi.
+     */
+    void render(Window window, Camera camera, Renderer renderer, float alpha);
+
+    /**
+     * Tryb potokowy (Engine.setPipelined): zapisuje stan sceny do snapshotu renderowania.
+     * Wywoływane w wątku symulacji po tickach (w trybie potokowym Engine rysuje snapshot sam,
+     * zamiast wywoływać render()). input() działa wtedy w wątku GL, ale nigdy równolegle z update().
+     * @return false, jeśli logika nie obsługuje trybu potokowego (Engine zostaje przy pętli szeregowej).
+     */
+    default boolean captureRenderSnapshot(RenderSnapshot snapshot) {
+        return false;
+    }
 
     void cleanup();
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package org.example.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Podział jednego liniowego zakresu (np. bufora GPU) na podzakresy (czysta Java, bez GL).
+ * Jednostka jest dowolna - GeometryArena używa wierzchołków i indeksów.
+ * <p>
+ * Wolne bloki są trzymane na liście posortowanej po przesunięciu; przydział wybiera pierwszy
+ * pasujący blok (first-fit), a zwolnienie scala blok z sąsiadami. Gdy pamięci wystarcza,
+ * ale jest pofragmentowana, compact() przesuwa żywe zakresy na początek - przesunięcia obiektów
+ * Range są aktualizowane w miejscu, a wywołujący kopiuje dane przez MoveListener.
+ */
+public final class ArenaAllocator {
+
+    /** Przydzielony zakres. Przesunięcie może się zmienić przy compact(). */
+    public static final class Range {
+        private int offset;
+        private final int size;
+        private boolean live = true;
+
+        private Range(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public int getOffset() { return offset; }
+        public int getSize() { return size; }
+        public boolean isLive() { return live; }
+    }
+
+    /** Odbiorca przesunięć danych podczas compact(). */
+    public interface MoveListener {
+        void onMove(int fromOffset, int toOffset, int size);
+    }
+
+    private int capacity;
+    private final List<int[]> freeBlocks = new ArrayList<>(); // {offset, size}, posortowane po offset
+    private final List<Range> liveRanges = new ArrayList<>();  // Posortowane po offset
+    private int used = 0;
+
+    public ArenaAllocator(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Arena capacity must be positive");
+        this.capacity = capacity;
+        freeBlocks.add(new int[] { 0, capacity });
+    }
+
+    /**
+     * Przydziela zakres o podanym rozmiarze.
+     * @return Zakres albo null, gdy żaden wolny blok nie jest dość duży (zob. compact() i grow()).
+     */
+    public Range allocate(int size) {
+        if (size <= 0) throw new IllegalArgumentException("Allocation size must be positive");
+        for (int i = 0; i < freeBlocks.size(); i++) {
+            int[] block = freeBlocks.get(i);
+            if (block[1] < size) continue;
+            Range range = new Range(block[0], size);
+            if (block[1] == size) {
+                freeBlocks.remove(i);
+            } else {
+                block[0] += size;
+                block[1] -= size;
+            }
+            liveRanges.add(insertionPoint(range.offset), range);
+            used += size;
+            return range;
+        }
+        return null;
+    }
+
+    /** Zwalnia zakres i scala go z sąsiednimi wolnymi blokami. */
+    public void free(Range range) {
+        if (range == null || !range.live) return;
+        range.live = false;
+        liveRanges.remove(range);
+        used -= range.size;
+
+        int start = range.offset, end = range.offset + range.size;
+        int i = 0;
+        while (i < freeBlocks.size() && freeBlocks.get(i)[0] < start) i++;
+        int[] previous = i > 0 ? freeBlocks.get(i - 1) : null;
+        int[] next = i < freeBlocks.size() ? freeBlocks.get(i) : null;
+        boolean mergePrevious = previous != null && previous[0] + previous[1] == start;
+        boolean mergeNext = next != null && next[0] == end;
+        if (mergePrevious && mergeNext) {
+            previous[1] += range.size + next[1];
+            freeBlocks.remove(i);
+        } else if (mergePrevious) {
+            previous[1] += range.size;
+        } else if (mergeNext) {
+            next[0] = start;
+            next[1] += range.size;
+        } else {
+            freeBlocks.add(i, new int[] { start, range.size });
+        }
+    }
+
+    /**
+     * Defragmentacja: przesuwa wszystkie żywe zakresy na początek (zachowując kolejność)
+     * i zostawia jeden wolny blok na końcu. Listener dostaje każde przesunięcie (także zerowe,
+     * gdy alwaysReport - np. przy kopiowaniu do nowego bufora).
+     */
+    public void compact(MoveListener listener, boolean alwaysReport) {
+        int cursor = 0;
+        for (Range range : liveRanges) {
+            if (listener != null && (alwaysReport || range.offset != cursor)) {
+                listener.onMove(range.offset, cursor, range.size);
+            }
+            range.offset = cursor;
+            cursor += range.size;
+        }
+        freeBlocks.clear();
+        if (cursor < capacity) freeBlocks.add(new int[] { cursor, capacity - cursor });
+    }
+
+    /** Powiększa zakres (nowa pamięć dochodzi na końcu). */
+    public void grow(int newCapacity) {
+        if (newCapacity <= capacity) return;
+        int[] last = freeBlocks.isEmpty() ? null : freeBlocks.get(freeBlocks.size() - 1);
+        if (last != null && last[0] + last[1] == capacity) {
+            last[1] += newCapacity - capacity;
+        } else {
+            freeBlocks.add(new int[] { capacity, newCapacity - capacity });
+        }
+        capacity = newCapacity;
+    }
+
+    private int insertionPoint(int offset) {
+        int low = 0, high = liveRanges.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (liveRanges.get(mid).offset < offset) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    public int getCapacity() { return capacity; }
+    public int getUsed() { return used; }
+    public int getFree() { return capacity - used; }
+    public int getLiveCount() { return liveRanges.size(); }
+
+    /** Największy ciągły wolny blok. */
+    public int getLargestFreeBlock() {
+        int largest = 0;
+        for (int[] block : freeBlocks) largest = Math.max(largest, block[1]);
+        return largest;
+    }
+}
@@ -91,6 +91,18 @@ public class Camera {
     // --- Settery ---
     public void setFov(float fov) { this.fov = fov; }
 
+    /** Kopiuje stan innej kamery (np. do snapshotu renderowania w trybie potokowym). */
+    public void set(Camera other) {
+        position.set(other.position);
+        front.set(other.front);
+        up.set(other.up);
+        right.set(other.right);
+        worldUp.set(other.worldUp);
+        yaw = other.yaw;
+        pitch = other.pitch;
+        fov = other.fov;
+    }
+
     /**
      * Zwraca pozycję kamery jako początek promienia.
      * @return Wektor pozycji.
@@ -0,0 +1,246 @@
+package org.example.graphics;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.GL_TEXTURE_BUFFER;
+
+/**
+ * Pamięć podręczna stanu OpenGL eliminująca nadmiarowe wywołania sterownika.
+ * Śledzi aktualny program, VAO, tekstury na jednostkach, FBO, viewport i flagi glEnable.
+ * Wszystkie klasy silnika zmieniają ten stan wyłącznie przez tę klasę - wywołanie GL trafia
+ * do sterownika tylko wtedy, gdy wartość faktycznie się zmienia.
+ * Kontekst GL jest jeden i używany z jednego wątku, więc stan jest statyczny.
+ * Wartość -1 oznacza stan nieznany (np. po invalidate()) - następne ustawienie zawsze trafia do GL.
+ */
+public final class GLStateCache {
+
+    public static final int MAX_TEXTURE_UNITS = 32;
+
+    // Śledzone cele tekstur (indeksy w tablicy boundTextures)
+    private static final int[] TEXTURE_TARGETS = { GL_TEXTURE_2D, GL_TEXTURE_CUBE_MAP, GL_TEXTURE_2D_ARRAY, GL_TEXTURE_BUFFER };
+    // Śledzone flagi glEnable/glDisable
+    private static final int[] CAPABILITIES = { GL_DEPTH_TEST, GL_CULL_FACE, GL_BLEND, GL_POLYGON_OFFSET_FILL, GL_SCISSOR_TEST };
+
+    private static int currentProgram = -1;
+    private static int currentVertexArray = -1;
+    private static int currentFramebuffer = -1;
+    private static int activeTextureUnit = -1;
+    private static final int[][] boundTextures = new int[TEXTURE_TARGETS.length][MAX_TEXTURE_UNITS];
+    private static final int[] viewport = new int[4];
+    private static boolean viewportKnown = false;
+    private static final int[] capabilityStates = new int[CAPABILITIES.length]; // -1 nieznany, 0 wył., 1 wł.
+    private static int cullFaceMode = -1;
+    private static int depthFunc = -1;
+    private static int depthMask = -1;
+    private static int colorMask = -1; // Zapis wszystkich kanałów koloru naraz (1) albo żadnego (0)
+
+    // Liczniki (bieżąca klatka i ostatnia zakończona)
+    private static int issuedCalls = 0;
+    private static int skippedCalls = 0;
+    private static int lastFrameIssuedCalls = 0;
+    private static int lastFrameSkippedCalls = 0;
+
+    static {
+        invalidate();
+    }
+
+    private GLStateCache() {
+    }
+
+    /** Zapomina cały śledzony stan (np. po zmianie kontekstu lub kodzie zewnętrznym omijającym cache). */
+    public static void invalidate() {
+        currentProgram = -1;
+        currentVertexArray = -1;
+        currentFramebuffer = -1;
+        activeTextureUnit = -1;
+        for (int[] unitBindings : boundTextures) {
+            Arrays.fill(unitBindings, -1);
+        }
+        viewportKnown = false;
+        Arrays.fill(capabilityStates, -1);
+        cullFaceMode = -1;
+        depthFunc = -1;
+        depthMask = -1;
+        colorMask = -1;
+    }
+
+    /** Zamyka liczniki poprzedniej klatki i zaczyna liczenie od nowa. */
+    public static void beginFrame() {
+        lastFrameIssuedCalls = issuedCalls;
+        lastFrameSkippedCalls = skippedCalls;
+        issuedCalls = 0;
+        skippedCalls = 0;
+    }
+
+    // --- Program ---
+
+    public static void useProgram(int programId) {
+        if (currentProgram == programId) { skippedCalls++; return; }
+        glUseProgram(programId);
+        currentProgram = programId;
+        issuedCalls++;
+    }
+
+    public static void onProgramDeleted(int programId) {
+        if (currentProgram == programId) currentProgram = 0;
+    }
+
+    // --- VAO ---
+
+    public static void bindVertexArray(int vaoId) {
+        if (currentVertexArray == vaoId) { skippedCalls++; return; }
+        glBindVertexArray(vaoId);
+        currentVertexArray = vaoId;
+        issuedCalls++;
+    }
+
+    public static void onVertexArrayDeleted(int vaoId) {
+        if (currentVertexArray == vaoId) currentVertexArray = 0;
+    }
+
+    // --- Tekstury ---
+
+    /** Ustawia aktywną jednostkę tekstury (unit liczony od 0, nie GL_TEXTURE0). */
+    public static void activeTexture(int unit) {
+        if (activeTextureUnit == unit) { skippedCalls++; return; }
+        glActiveTexture(GL_TEXTURE0 + unit);
+        activeTextureUnit = unit;
+        issuedCalls++;
+    }
+
+    /** Wiąże teksturę z podaną jednostką (zmienia aktywną jednostkę tylko, gdy wiązanie się zmienia). */
+    public static void bindTexture(int unit, int target, int textureId) {
+        int slot = targetSlot(target);
+        if (slot >= 0 && unit >= 0 && unit < MAX_TEXTURE_UNITS && boundTextures[slot][unit] == textureId) {
+            skippedCalls++;
+            return;
+        }
+        activeTexture(unit);
+        glBindTexture(target, textureId);
+        if (slot >= 0 && unit >= 0 && unit < MAX_TEXTURE_UNITS) boundTextures[slot][unit] = textureId;
+        issuedCalls++;
+    }
+
+    /** Wiąże teksturę z aktualnie aktywną jednostką (np. przy tworzeniu tekstury). */
+    public static void bindTexture(int target, int textureId) {
+        bindTexture(activeTextureUnit < 0 ? 0 : activeTextureUnit, target, textureId);
+    }
+
+    public static void onTextureDeleted(int textureId) {
+        for (int[] unitBindings : boundTextures) {
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+                if (unitBindings[unit] == textureId) unitBindings[unit] = 0;
+            }
+        }
+    }
+
+    private static int targetSlot(int target) {
+        for (int i = 0; i < TEXTURE_TARGETS.length; i++) {
+            if (TEXTURE_TARGETS[i] == target) return i;
+        }
+        return -1; // Cel nieśledzony - zawsze wysyłany
+    }
+
+    // --- FBO ---
+
+    public static void bindFramebuffer(int framebufferId) {
+        if (currentFramebuffer == framebufferId) { skippedCalls++; return; }
+        glBindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+        currentFramebuffer = framebufferId;
+        issuedCalls++;
+    }
+
+    /**
+     * Wiąże osobne FBO do odczytu i zapisu (np. dla glBlitFramebuffer).
+     * Przy różnych celach stan GL_FRAMEBUFFER jest niejednoznaczny - następne bindFramebuffer() zawsze trafi do GL.
+     */
+    public static void bindFramebuffers(int readFramebufferId, int drawFramebufferId) {
+        if (readFramebufferId == drawFramebufferId) {
+            bindFramebuffer(drawFramebufferId);
+            return;
+        }
+        glBindFramebuffer(GL_READ_FRAMEBUFFER, readFramebufferId);
+        glBindFramebuffer(GL_DRAW_FRAMEBUFFER, drawFramebufferId);
+        currentFramebuffer = -1;
+        issuedCalls += 2;
+    }
+
+    public static void onFramebufferDeleted(int framebufferId) {
+        if (currentFramebuffer == framebufferId) currentFramebuffer = 0;
+    }
+
+    // --- Viewport ---
+
+    public static void viewport(int x, int y, int width, int height) {
+        if (viewportKnown && viewport[0] == x && viewport[1] == y && viewport[2] == width && viewport[3] == height) {
+            skippedCalls++;
+            return;
+        }
+        glViewport(x, y, width, height);
+        viewport[0] = x; viewport[1] = y; viewport[2] = width; viewport[3] = height;
+        viewportKnown = true;
+        issuedCalls++;
+    }
+
+    // --- Flagi i stan rasteryzacji ---
+
+    public static void enable(int capability) {
+        setCapability(capability, true);
+    }
+
+    public static void disable(int capability) {
+        setCapability(capability, false);
+    }
+
+    private static void setCapability(int capability, boolean enabled) {
+        int index = -1;
+        for (int i = 0; i < CAPABILITIES.length; i++) {
+            if (CAPABILITIES[i] == capability) { index = i; break; }
+        }
+        int wanted = enabled ? 1 : 0;
+        if (index >= 0 && capabilityStates[index] == wanted) { skippedCalls++; return; }
+        if (enabled) glEnable(capability); else glDisable(capability);
+        if (index >= 0) capabilityStates[index] = wanted;
+        issuedCalls++;
+    }
+
+    public static void cullFace(int mode) {
+        if (cullFaceMode == mode) { skippedCalls++; return; }
+        glCullFace(mode);
+        cullFaceMode = mode;
+        issuedCalls++;
+    }
+
+    public static void depthFunc(int func) {
+        if (depthFunc == func) { skippedCalls++; return; }
+        glDepthFunc(func);
+        depthFunc = func;
+        issuedCalls++;
+    }
+
+    public static void depthMask(boolean write) {
+        int wanted = write ? 1 : 0;
+        if (depthMask == wanted) { skippedCalls++; return; }
+        glDepthMask(write);
+        depthMask = wanted;
+        issuedCalls++;
+    }
+
+    public static void colorMask(boolean write) {
+        int wanted = write ? 1 : 0;
+        if (colorMask == wanted) { skippedCalls++; return; }
+        glColorMask(write, write, write, write);
+        colorMask = wanted;
+        issuedCalls++;
+    }
+
+    // --- Statystyki (ostatnia zakończona klatka) ---
+    public static int getIssuedCallCount() { return lastFrameIssuedCalls; }
+    public static int getSkippedCallCount() { return lastFrameSkippedCalls; }
+}
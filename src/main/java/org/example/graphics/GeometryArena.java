@@ -0,0 +1,237 @@
+package org.example.graphics;
+
+import org.lwjgl.opengl.GL;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL31.GL_COPY_READ_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL31.glCopyBufferSubData;
+
+/**
+ * Wspólne bufory geometrii: zamiast osobnego VAO i buforów dla każdej siatki, siatki o tym samym
+ * układzie wierzchołka (VertexLayout) trafiają do jednej puli - jednego dużego VBO, jednego EBO
+ * i jednego VAO. Rysowanie kolejnych siatek z puli nie zmienia VAO; siatkę wskazują
+ * baseVertex i przesunięcie pierwszego indeksu (glDrawElementsBaseVertex, GL 3.2).
+ * <p>
+ * Indeksy w puli są 16-bitowe i względne (dodawany jest baseVertex), więc siatki do 65536
+ * wierzchołków mieszczą się niezależnie od zajętości puli. Większe siatki pozostają samodzielne.
+ * Zakresy przydziela ArenaAllocator; gdy brakuje ciągłego miejsca, pula jest przepisywana do
+ * nowego bufora (defragmentacja, w razie potrzeby z powiększeniem) przez glCopyBufferSubData.
+ * <p>
+ * Na kontekstach GL 4.3+ partie z jednej puli można wysłać jednym glMultiDrawElementsIndirect
+ * (isMultiDrawIndirectSupported()). Kontekst jest jeden i używany z jednego wątku,
+ * więc - jak GLStateCache - stan jest statyczny.
+ */
+public final class GeometryArena {
+
+    public static final int MAX_VERTICES_PER_MESH = 65536; // Zakres względnych indeksów 16-bitowych
+    private static final int INITIAL_VERTEX_CAPACITY = 64 * 1024;
+    private static final int INITIAL_INDEX_CAPACITY = 256 * 1024;
+    private static final int INDEX_BYTES = 2;
+
+    /** Pula geometrii dla jednego układu wierzchołka. */
+    public static final class Pool {
+        private final VertexLayout layout;
+        private final ArenaAllocator vertexAllocator = new ArenaAllocator(INITIAL_VERTEX_CAPACITY);
+        private final ArenaAllocator indexAllocator = new ArenaAllocator(INITIAL_INDEX_CAPACITY);
+        private int vaoId;
+        private int vboId;
+        private int eboId;
+        private boolean instanceAttributesEnabled = false;
+        private int relocationCount = 0;
+
+        private Pool(VertexLayout layout) {
+            this.layout = layout;
+            vboId = createBuffer((long) INITIAL_VERTEX_CAPACITY * layout.getStride());
+            eboId = createBuffer((long) INITIAL_INDEX_CAPACITY * INDEX_BYTES);
+            vaoId = glGenVertexArrays();
+            setupVertexArray();
+        }
+
+        // Wskaźniki atrybutów 0-2 i EBO są stanem VAO - ustawiane na nowo po każdej zmianie buforów
+        private void setupVertexArray() {
+            GLStateCache.bindVertexArray(vaoId);
+            glBindBuffer(GL_ARRAY_BUFFER, vboId);
+            layout.setupAttributes();
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboId);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            GLStateCache.bindVertexArray(0);
+        }
+
+        /** Wiąże VAO puli (atrybuty per-instancja włączane przy pierwszym użyciu). */
+        public void bind(InstanceBuffer instances) {
+            GLStateCache.bindVertexArray(vaoId);
+            if (instances != null && !instanceAttributesEnabled) {
+                instances.enableAttributes();
+                instanceAttributesEnabled = true;
+            }
+        }
+
+        private Allocation allocate(ByteBuffer vertexData, int vertexCount, ShortBuffer indexData, int indexCount) {
+            ArenaAllocator.Range vertices = allocateOrRelocate(vertexAllocator, vertexCount, true);
+            ArenaAllocator.Range indices = allocateOrRelocate(indexAllocator, indexCount, false);
+            upload(vboId, (long) vertices.getOffset() * layout.getStride(), vertexData);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, eboId);
+            glBufferSubData(GL_COPY_WRITE_BUFFER, (long) indices.getOffset() * INDEX_BYTES, indexData);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+            return new Allocation(this, vertices, indices);
+        }
+
+        private ArenaAllocator.Range allocateOrRelocate(ArenaAllocator allocator, int size, boolean vertexBuffer) {
+            ArenaAllocator.Range range = allocator.allocate(size);
+            if (range != null) return range;
+            // Wolnego miejsca wystarcza - tylko defragmentacja; inaczej także powiększenie
+            int capacity = allocator.getCapacity();
+            if (allocator.getFree() < size) {
+                capacity = Math.max(capacity * 2, allocator.getUsed() + size);
+            }
+            relocate(allocator, capacity, vertexBuffer);
+            return allocator.allocate(size);
+        }
+
+        // Przepisuje żywe zakresy, bez przerw, do nowego bufora o podanej pojemności
+        private void relocate(ArenaAllocator allocator, int newCapacity, boolean vertexBuffer) {
+            int unitBytes = vertexBuffer ? layout.getStride() : INDEX_BYTES;
+            int oldBuffer = vertexBuffer ? vboId : eboId;
+            int newBuffer = createBuffer((long) newCapacity * unitBytes);
+            glBindBuffer(GL_COPY_READ_BUFFER, oldBuffer);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, newBuffer);
+            allocator.compact((from, to, size) -> glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER,
+                    (long) from * unitBytes, (long) to * unitBytes, (long) size * unitBytes), true);
+            allocator.grow(newCapacity);
+            glBindBuffer(GL_COPY_READ_BUFFER, 0);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+            glDeleteBuffers(oldBuffer);
+            if (vertexBuffer) vboId = newBuffer; else eboId = newBuffer;
+            setupVertexArray();
+            relocationCount++;
+            System.out.println("GeometryArena: Relocated " + (vertexBuffer ? "vertex" : "index") + " pool ("
+                    + allocator.getUsed() + "/" + newCapacity + " used, " + layout.getStride() + "-byte vertices).");
+        }
+
+        private void free(Allocation allocation) {
+            vertexAllocator.free(allocation.vertices);
+            indexAllocator.free(allocation.indices);
+        }
+
+        private void delete() {
+            GLStateCache.bindVertexArray(0);
+            glDeleteVertexArrays(vaoId);
+            GLStateCache.onVertexArrayDeleted(vaoId);
+            glDeleteBuffers(vboId);
+            glDeleteBuffers(eboId);
+        }
+
+        public VertexLayout getLayout() { return layout; }
+        public int getMeshCount() { return vertexAllocator.getLiveCount(); }
+        public int getRelocationCount() { return relocationCount; }
+        /** Zajęta pamięć GPU puli (w bajtach, bez wolnych bloków). */
+        public long getUsedBytes() {
+            return (long) vertexAllocator.getUsed() * layout.getStride() + (long) indexAllocator.getUsed() * INDEX_BYTES;
+        }
+    }
+
+    /** Miejsce siatki w puli. Przesunięcia mogą się zmienić przy defragmentacji - czytać przy rysowaniu. */
+    public static final class Allocation {
+        private final Pool pool;
+        private final ArenaAllocator.Range vertices;
+        private final ArenaAllocator.Range indices;
+
+        private Allocation(Pool pool, ArenaAllocator.Range vertices, ArenaAllocator.Range indices) {
+            this.pool = pool;
+            this.vertices = vertices;
+            this.indices = indices;
+        }
+
+        public Pool getPool() { return pool; }
+        public int getBaseVertex() { return vertices.getOffset(); }
+        public int getFirstIndex() { return indices.getOffset(); }
+        public long getIndexByteOffset() { return (long) indices.getOffset() * INDEX_BYTES; }
+        public int getIndexCount() { return indices.getSize(); }
+    }
+
+    private static final List<Pool> pools = new ArrayList<>();
+    private static boolean initialized = false;
+    private static boolean multiDrawIndirectSupported = false;
+
+    private GeometryArena() {
+    }
+
+    /** Włącza arenę (wymaga aktywnego kontekstu GL). Siatki utworzone wcześniej pozostają samodzielne. */
+    public static void init() {
+        if (initialized) return;
+        multiDrawIndirectSupported = GL.getCapabilities().OpenGL43;
+        initialized = true;
+        System.out.println("  GeometryArena: Initialized (multi-draw indirect " + (multiDrawIndirectSupported ? "available" : "unavailable, using base-vertex draws") + ").");
+    }
+
+    public static boolean isInitialized() { return initialized; }
+    public static boolean isMultiDrawIndirectSupported() { return initialized && multiDrawIndirectSupported; }
+
+    /** Czy siatkę o podanej liczbie wierzchołków można umieścić w arenie. */
+    public static boolean accepts(int vertexCount) {
+        return initialized && vertexCount > 0 && vertexCount <= MAX_VERTICES_PER_MESH;
+    }
+
+    /**
+     * Umieszcza dane siatki w puli jej układu.
+     * @param vertexData Przeplecione wierzchołki (układ layout), od pozycji 0 do limitu.
+     * @param indexData Indeksy 16-bitowe, względne względem pierwszego wierzchołka siatki.
+     */
+    static Allocation allocate(VertexLayout layout, ByteBuffer vertexData, int vertexCount, ShortBuffer indexData, int indexCount) {
+        return poolFor(layout).allocate(vertexData, vertexCount, indexData, indexCount);
+    }
+
+    static void free(Allocation allocation) {
+        if (allocation != null && initialized) allocation.pool.free(allocation);
+    }
+
+    // Układy porównywane po formatach (równe układy to ten sam format danych, nawet gdy to różne obiekty)
+    private static Pool poolFor(VertexLayout layout) {
+        for (Pool pool : pools) {
+            if (pool.layout.getNormalFormat() == layout.getNormalFormat() && pool.layout.getUvFormat() == layout.getUvFormat()) {
+                return pool;
+            }
+        }
+        Pool pool = new Pool(layout);
+        pools.add(pool);
+        return pool;
+    }
+
+    private static int createBuffer(long bytes) {
+        int buffer = glGenBuffers();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, buffer);
+        glBufferData(GL_COPY_WRITE_BUFFER, bytes, GL_STATIC_DRAW);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        return buffer;
+    }
+
+    private static void upload(int buffer, long byteOffset, ByteBuffer data) {
+        glBindBuffer(GL_COPY_WRITE_BUFFER, buffer);
+        glBufferSubData(GL_COPY_WRITE_BUFFER, byteOffset, data);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+    }
+
+    public static int getPoolCount() { return pools.size(); }
+    public static Pool getPool(int index) { return pools.get(index); }
+
+    /** Usuwa wszystkie pule (siatki z areny muszą być już zwolnione). */
+    public static void cleanup() {
+        for (Pool pool : pools) {
+            if (pool.getMeshCount() > 0) {
+                System.err.println("GeometryArena: " + pool.getMeshCount() + " mesh(es) still allocated at cleanup.");
+            }
+            pool.delete();
+        }
+        pools.clear();
+        initialized = false;
+        multiDrawIndirectSupported = false;
+    }
+}
@@ -0,0 +1,141 @@
+package org.example.graphics;
+
+import org.joml.Matrix3f;
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.glVertexAttribIPointer;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+/**
+ * Bufor danych per-instancja (VBO z dzielnikiem atrybutu = 1) dla rysowania instancjonowanego.
+ * Każda instancja to macierz modelu (mat4, lokacje 3-6), macierz normalnych (mat3, lokacje 7-9)
+ * i indeks materiału w MaterialTable (int, lokacja 10), upakowane jedna po drugiej. Cały bufor jest wypełniany i wysyłany raz na przebieg do kolejnego
+ * fragmentu StreamingBuffer (bez synchronizacji CPU-GPU i bez nadpisywania danych wcześniejszych przebiegów);
+ * poszczególne partie (batche) wskazują swój fragment przez przesunięcie wskaźników atrybutów
+ * (OpenGL 3.3 nie ma glDrawElementsInstancedBaseInstance). Komendy pośrednie (GL 4.3+) zamiast
+ * tego ustawiają baseInstance przy wskaźnikach od instancji 0.
+ */
+public class InstanceBuffer {
+
+    public static final int MODEL_MATRIX_ATTRIB = 3;  // mat4 zajmuje lokacje 3, 4, 5, 6
+    public static final int NORMAL_MATRIX_ATTRIB = 7; // mat3 zajmuje lokacje 7, 8, 9
+    public static final int MATERIAL_INDEX_ATTRIB = 10; // int (glVertexAttribIPointer)
+    public static final int FLOATS_PER_INSTANCE = 16 + 9 + 1;
+    public static final int INSTANCE_STRIDE = FLOATS_PER_INSTANCE * Float.BYTES;
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private StreamingBuffer stream = null;
+    private int uploadOffset = 0; // Przesunięcie ostatnio wysłanych danych w buforze strumieniowym
+    private FloatBuffer staging = null;
+    private int instanceCount = 0;
+
+    public void init() {
+        init(DEFAULT_CAPACITY);
+    }
+
+    public void init(int initialCapacity) {
+        // Region klatki mieści kilka przebiegów (cienie, pre-pass, scena) przy początkowej pojemności
+        stream = new StreamingBuffer("instances", Math.max(1, initialCapacity) * INSTANCE_STRIDE * 8);
+        stream.init();
+        staging = MemoryUtil.memAllocFloat(Math.max(1, initialCapacity) * FLOATS_PER_INSTANCE);
+    }
+
+    /** Zaczyna wypełnianie bufora od nowa (nie zwalnia pamięci). */
+    public void clear() {
+        instanceCount = 0;
+        staging.clear();
+    }
+
+    /**
+     * Dopisuje instancję do bufora staging (przebiegi bez materiałów - indeks 0).
+     * @return Indeks dopisanej instancji.
+     */
+    public int add(Matrix4f model, Matrix3f normalMatrix) {
+        return add(model, normalMatrix, 0);
+    }
+
+    /**
+     * Dopisuje instancję z indeksem materiału w tabeli klatki (MaterialTable).
+     * @return Indeks dopisanej instancji.
+     */
+    public int add(Matrix4f model, Matrix3f normalMatrix, int materialIndex) {
+        ensureCapacity(instanceCount + 1);
+        int base = instanceCount * FLOATS_PER_INSTANCE;
+        model.get(base, staging);
+        normalMatrix.get(base + 16, staging);
+        staging.put(base + 25, Float.intBitsToFloat(materialIndex)); // Bity inta - atrybut całkowitoliczbowy
+        return instanceCount++;
+    }
+
+    private void ensureCapacity(int instances) {
+        int required = instances * FLOATS_PER_INSTANCE;
+        if (required <= staging.capacity()) return;
+        int newCapacity = Math.max(required, staging.capacity() * 2);
+        staging = MemoryUtil.memRealloc(staging, newCapacity);
+    }
+
+    /** Wysyła wszystkie dopisane instancje do GPU (nowy fragment bufora strumieniowego). */
+    public void upload() {
+        if (stream == null || instanceCount == 0) return;
+        uploadOffset = stream.upload(MemoryUtil.memAddress(staging), instanceCount * INSTANCE_STRIDE, Float.BYTES);
+        staging.clear();
+    }
+
+    /**
+     * Włącza atrybuty per-instancja w aktualnie zbindowanym VAO i ustawia dla nich dzielnik 1.
+     * Wystarczy wywołać raz na VAO.
+     */
+    void enableAttributes() {
+        for (int i = 0; i < 4; i++) {
+            glEnableVertexAttribArray(MODEL_MATRIX_ATTRIB + i);
+            glVertexAttribDivisor(MODEL_MATRIX_ATTRIB + i, 1);
+        }
+        for (int i = 0; i < 3; i++) {
+            glEnableVertexAttribArray(NORMAL_MATRIX_ATTRIB + i);
+            glVertexAttribDivisor(NORMAL_MATRIX_ATTRIB + i, 1);
+        }
+        glEnableVertexAttribArray(MATERIAL_INDEX_ATTRIB);
+        glVertexAttribDivisor(MATERIAL_INDEX_ATTRIB, 1);
+    }
+
+    /**
+     * Ustawia wskaźniki atrybutów per-instancja aktualnie zbindowanego VAO na fragment bufora
+     * zaczynający się od podanej instancji.
+     */
+    public void bindAttributes(int firstInstance) {
+        long base = uploadOffset + (long) firstInstance * INSTANCE_STRIDE;
+        glBindBuffer(GL_ARRAY_BUFFER, stream.getBufferId());
+        for (int i = 0; i < 4; i++) {
+            glVertexAttribPointer(MODEL_MATRIX_ATTRIB + i, 4, GL_FLOAT, false, INSTANCE_STRIDE, base + i * 4L * Float.BYTES);
+        }
+        long normalBase = base + 16L * Float.BYTES;
+        for (int i = 0; i < 3; i++) {
+            glVertexAttribPointer(NORMAL_MATRIX_ATTRIB + i, 3, GL_FLOAT, false, INSTANCE_STRIDE, normalBase + i * 3L * Float.BYTES);
+        }
+        glVertexAttribIPointer(MATERIAL_INDEX_ATTRIB, 1, GL_INT, INSTANCE_STRIDE, base + 25L * Float.BYTES);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+
+    public void cleanup() {
+        if (stream != null) {
+            stream.cleanup();
+            stream = null;
+        }
+        if (staging != null) {
+            MemoryUtil.memFree(staging);
+            staging = null;
+        }
+        instanceCount = 0;
+    }
+}
@@ -1,17 +1,18 @@
 package org.example.graphics;
 
 import org.joml.Vector3f;
-import org.lwjgl.opengl.GL13; // Dla jednostek tekstur
 
-import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
-import static org.lwjgl.opengl.GL11.glBindTexture;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Reprezentuje właściwości materiałowe obiektu, definiujące jak oddziałuje ze światłem.
+ * Shader sceny czyta materiały z tabeli klatki (MaterialTable), a mapy z tablic tekstur
+ * (TextureArrayManager) - Material nie wiąże niczego sam.
  */
 public class Material {
 
-    // Konwencja jednostek tekstur - można przenieść do stałych w Rendererze
+    // Konwencja jednostek tekstur (tablice tekstur z MaterialTable w przebiegu sceny)
     public static final int DIFFUSE_MAP_TEXTURE_UNIT = 0;
     public static final int SPECULAR_MAP_TEXTURE_UNIT = 1;
     // public static final int NORMAL_MAP_TEXTURE_UNIT = 2; // Na przyszłość
@@ -27,6 +28,13 @@ public class Material {
     private Texture diffuseMap;  // Albedo/Base Color Map (może być null)
     private Texture specularMap; // Mapa kontrolująca odbicia (może być null)
 
+    // Małe identyfikatory dla kluczy RenderQueue. Zestaw tekstur to para (diffuse, specular) -
+    // materiały z tymi samymi mapami dostają ten sam identyfikator zestawu.
+    private static int nextSortId = 1;
+    private static final Map<Long, Integer> TEXTURE_SET_IDS = new HashMap<>();
+    private final int sortId = nextSortId++;
+    private int textureSetId;
+
     /**
      * Konstruktor domyślny - tworzy podstawowy, szary, matowy materiał.
      */
@@ -37,6 +45,7 @@ public class Material {
         this.reflectance = DEFAULT_REFLECTANCE;
         this.diffuseMap = null;
         this.specularMap = null;
+        updateTextureSetId();
     }
 
     /**
@@ -49,6 +58,7 @@ public class Material {
         // Jeśli mamy teksturę diffuse, możemy założyć, że kolory bazowe to biały
         this.ambientColor = new Vector3f(1.0f).mul(0.2f);
         this.diffuseColor = new Vector3f(1.0f);
+        updateTextureSetId();
     }
 
     /**
@@ -67,46 +77,22 @@ public class Material {
         this.reflectance = reflectance > 0 ? reflectance : DEFAULT_REFLECTANCE;
         this.diffuseMap = diffuseMap;
         this.specularMap = specularMap;
+        updateTextureSetId();
     }
 
-
-    /**
-     * Wiąże właściwości materiału i tekstury do shadera.
-     * UWAGA: Zakłada, że uniformy samplerów (`diffuseSampler`, `specularSampler`)
-     * zostały już ustawione przez Renderer wskazując odpowiednie jednostki teksturujące.
-     * @param shader Program shaderowy, do którego bindowane są uniformy.
-     * @param defaultTexture Tekstura używana, gdy brakuje mapy (np. biały piksel). Może być null.
-     */
-    public void bind(ShaderProgram shader, Texture defaultTexture) {
-        // Ustaw uniformy kolorów i odbicia (używamy bardziej opisowych nazw)
-        shader.setUniform("material.ambient", ambientColor);
-        shader.setUniform("material.diffuse", diffuseColor);
-        shader.setUniform("material.specular", specularColor);
-        shader.setUniform("material.reflectance", reflectance);
-
-        boolean hasDiffuse = (this.diffuseMap != null);
-        // Użyj setUniform(String, int) zamiast setUniform(String, boolean)
-        shader.setUniform("material.hasDiffuseMap", hasDiffuse ? 1 : 0); // <--- ZMIANA
-        Texture texToBindDiffuse = hasDiffuse ? this.diffuseMap : defaultTexture;
-        if (texToBindDiffuse != null) {
-            texToBindDiffuse.bind(DIFFUSE_MAP_TEXTURE_UNIT);
-        } else {
-            GL13.glActiveTexture(GL13.GL_TEXTURE0 + DIFFUSE_MAP_TEXTURE_UNIT);
-            glBindTexture(GL_TEXTURE_2D, 0);
-        }
-
-        boolean hasSpecular = (this.specularMap != null);
-        // Użyj setUniform(String, int) zamiast setUniform(String, boolean)
-        shader.setUniform("material.hasSpecularMap", hasSpecular ? 1 : 0); // <--- ZMIANA
-        Texture texToBindSpecular = hasSpecular ? this.specularMap : defaultTexture;
-        if (texToBindSpecular != null) {
-            texToBindSpecular.bind(SPECULAR_MAP_TEXTURE_UNIT);
-        } else {
-            GL13.glActiveTexture(GL13.GL_TEXTURE0 + SPECULAR_MAP_TEXTURE_UNIT);
-            glBindTexture(GL_TEXTURE_2D, 0);
+    private void updateTextureSetId() {
+        long diffuseId = diffuseMap != null ? diffuseMap.getTextureId() : 0;
+        long specularId = specularMap != null ? specularMap.getTextureId() : 0;
+        long pair = (diffuseId << 32) | specularId;
+        Integer id = TEXTURE_SET_IDS.get(pair);
+        if (id == null) {
+            id = TEXTURE_SET_IDS.size();
+            TEXTURE_SET_IDS.put(pair, id);
         }
+        textureSetId = id;
     }
 
+
     // --- Gettery i Settery ---
     public Vector3f getAmbientColor() { return ambientColor; }
     public void setAmbientColor(Vector3f ambientColor) { this.ambientColor = ambientColor; }
@@ -117,9 +103,11 @@ public class Material {
     public float getReflectance() { return reflectance; }
     public void setReflectance(float reflectance) { this.reflectance = reflectance > 0 ? reflectance : DEFAULT_REFLECTANCE; }
     public Texture getDiffuseMap() { return diffuseMap; }
-    public void setDiffuseMap(Texture diffuseMap) { this.diffuseMap = diffuseMap; }
+    public void setDiffuseMap(Texture diffuseMap) { this.diffuseMap = diffuseMap; updateTextureSetId(); }
     public Texture getSpecularMap() { return specularMap; }
-    public void setSpecularMap(Texture specularMap) { this.specularMap = specularMap; }
+    public void setSpecularMap(Texture specularMap) { this.specularMap = specularMap; updateTextureSetId(); }
+    public int getSortId() { return sortId; }
+    public int getTextureSetId() { return textureSetId; }
 
     // Nie ma metody cleanup() - Material nie jest właścicielem obiektów Texture
 }
\ No newline at end of file
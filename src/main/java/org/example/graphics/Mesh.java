@@ -1,93 +1,242 @@
 package org.example.graphics;
 
+import org.joml.Vector3f;
 import org.lwjgl.system.MemoryUtil;
-import java.nio.FloatBuffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
+import static org.lwjgl.opengl.GL32.glDrawElementsInstancedBaseVertex;
 
 public class Mesh {
 
+    // Maksymalna liczba wierzchołków adresowalna indeksami 16-bitowymi
+    private static final int MAX_SHORT_INDEXED_VERTICES = 65536;
+
     private int vaoId;
-    private int posVboId;
-    private int normalVboId;
-    private int uvVboId; // Dodano VBO dla UV
+    private int vboId;    // Jeden przeplatany VBO (układ opisany przez VertexLayout)
     private int idxVboId;
-    private int vertexCount;
+    private GeometryArena.Allocation arenaAllocation; // Miejsce we wspólnej puli (null = własne VAO i bufory)
+    private int vertexCount; // Liczba indeksów do narysowania
+    private final VertexLayout layout;
+    private final int indexType; // GL_UNSIGNED_SHORT lub GL_UNSIGNED_INT
+    private final int vertexDataBytes;
+    private final int indexDataBytes;
+
+    private static int nextSortId = 1;
+    private final int sortId = nextSortId++; // Mały identyfikator dla kluczy RenderQueue
+    private boolean instanceAttributesEnabled = false; // Atrybuty 3-9 włączane leniwie, przy pierwszym rysowaniu instancjonowanym
+
+    // Lokalne bryły otaczające (przestrzeń modelu), liczone z rzeczywistych pozycji wierzchołków
+    private final Vector3f boundsMin = new Vector3f();
+    private final Vector3f boundsMax = new Vector3f();
+    private final Vector3f boundsCenter = new Vector3f();
+    private float boundsRadius;
 
+    // Uproszczone poziomy szczegółowości (LOD 1..n); poziom 0 to ta siatka
+    private final List<Mesh> lodLevels = new ArrayList<>();
+
+    /**
+     * Tworzy siatkę w pełnej precyzji (VertexLayout.FULL).
+     */
     public Mesh(float[] positions, float[] normals, float[] uvs, int[] indices) {
-        FloatBuffer posBuffer = null;
-        FloatBuffer normalBuffer = null;
-        FloatBuffer uvBuffer = null; // Dodano
-        IntBuffer indicesBuffer = null;
+        this(positions, normals, uvs, indices, VertexLayout.FULL);
+    }
+
+    /**
+     * Tworzy siatkę z danymi przeplecionymi w jednym VBO według podanego układu.
+     * Indeksy są 16-bitowe, gdy liczba wierzchołków na to pozwala.
+     * @param layout Układ wierzchołka (np. VertexLayout.compactFor(uvs) dla danych z loaderów).
+     */
+    public Mesh(float[] positions, float[] normals, float[] uvs, int[] indices, VertexLayout layout) {
+        this.layout = layout != null ? layout : VertexLayout.FULL;
+        int numVertices = positions.length / 3;
+        this.indexType = numVertices <= MAX_SHORT_INDEXED_VERTICES ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+        this.vertexDataBytes = numVertices * this.layout.getStride();
+        this.indexDataBytes = indices.length * (indexType == GL_UNSIGNED_SHORT ? 2 : 4);
+
+        ByteBuffer vertexBuffer = null;
+        ShortBuffer shortIndices = null;
+        IntBuffer intIndices = null;
         try {
             vertexCount = indices.length;
+            computeBounds(positions);
+
+            // Przeplecione wierzchołki (atrybuty 0-2)
+            vertexBuffer = MemoryUtil.memAlloc(Math.max(1, vertexDataBytes));
+            float[] scratch = new float[2];
+            for (int v = 0; v < numVertices; v++) {
+                this.layout.writeVertex(vertexBuffer, v, positions, normals, uvs, scratch);
+            }
+            vertexBuffer.limit(vertexDataBytes);
 
-            vaoId = glGenVertexArrays();
-            glBindVertexArray(vaoId);
-
-            // VBO Pozycje (Attrib 0)
-            posVboId = glGenBuffers();
-            posBuffer = MemoryUtil.memAllocFloat(positions.length);
-            posBuffer.put(positions).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, posVboId);
-            glBufferData(GL_ARRAY_BUFFER, posBuffer, GL_STATIC_DRAW);
-            glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-            glEnableVertexAttribArray(0);
-
-            // VBO Normalne (Attrib 1)
-            normalVboId = glGenBuffers();
-            normalBuffer = MemoryUtil.memAllocFloat(normals.length);
-            normalBuffer.put(normals).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, normalVboId);
-            glBufferData(GL_ARRAY_BUFFER, normalBuffer, GL_STATIC_DRAW);
-            glVertexAttribPointer(1, 3, GL_FLOAT, false, 0, 0);
-            glEnableVertexAttribArray(1);
-
-            // VBO UV (Attrib 2) - Dodano
-            uvVboId = glGenBuffers();
-            uvBuffer = MemoryUtil.memAllocFloat(uvs.length);
-            uvBuffer.put(uvs).flip();
-            glBindBuffer(GL_ARRAY_BUFFER, uvVboId);
-            glBufferData(GL_ARRAY_BUFFER, uvBuffer, GL_STATIC_DRAW);
-            glVertexAttribPointer(2, 2, GL_FLOAT, false, 0, 0); // 2 komponenty
-            glEnableVertexAttribArray(2);
-
-            // EBO Indeksy
-            idxVboId = glGenBuffers();
-            indicesBuffer = MemoryUtil.memAllocInt(indices.length);
-            indicesBuffer.put(indices).flip();
-            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, idxVboId);
-            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
-
-            glBindBuffer(GL_ARRAY_BUFFER, 0);
-            glBindVertexArray(0);
+            if (indexType == GL_UNSIGNED_SHORT) {
+                shortIndices = MemoryUtil.memAllocShort(indices.length);
+                for (int index : indices) {
+                    shortIndices.put((short) index);
+                }
+                shortIndices.flip();
+            } else {
+                intIndices = MemoryUtil.memAllocInt(indices.length);
+                intIndices.put(indices).flip();
+            }
+
+            // Wspólna pula areny (bez własnego VAO) albo - dla dużych siatek i przed init() areny - własne bufory
+            if (GeometryArena.accepts(numVertices) && indices.length > 0) {
+                arenaAllocation = GeometryArena.allocate(this.layout, vertexBuffer, numVertices, shortIndices, indices.length);
+            } else {
+                createOwnBuffers(vertexBuffer, shortIndices, intIndices);
+            }
 
         } finally {
-            if (posBuffer != null) MemoryUtil.memFree(posBuffer);
-            if (normalBuffer != null) MemoryUtil.memFree(normalBuffer);
-            if (uvBuffer != null) MemoryUtil.memFree(uvBuffer); // Dodano
-            if (indicesBuffer != null) MemoryUtil.memFree(indicesBuffer);
+            if (vertexBuffer != null) MemoryUtil.memFree(vertexBuffer);
+            if (shortIndices != null) MemoryUtil.memFree(shortIndices);
+            if (intIndices != null) MemoryUtil.memFree(intIndices);
         }
     }
 
+    private void createOwnBuffers(ByteBuffer vertexBuffer, ShortBuffer shortIndices, IntBuffer intIndices) {
+        vaoId = glGenVertexArrays();
+        GLStateCache.bindVertexArray(vaoId);
+
+        vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, vertexBuffer, GL_STATIC_DRAW);
+        this.layout.setupAttributes();
+
+        // EBO Indeksy (16 lub 32 bity)
+        idxVboId = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, idxVboId);
+        if (shortIndices != null) {
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, shortIndices, GL_STATIC_DRAW);
+        } else {
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, intIndices, GL_STATIC_DRAW);
+        }
+
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        GLStateCache.bindVertexArray(0);
+    }
+
+    /**
+     * Wyznacza lokalny AABB oraz kulę otaczającą (środek AABB, promień do najdalszego wierzchołka).
+     */
+    private void computeBounds(float[] positions) {
+        if (positions == null || positions.length < 3) {
+            boundsMin.zero(); boundsMax.zero(); boundsCenter.zero(); boundsRadius = 0.0f;
+            return;
+        }
+        boundsMin.set(Float.POSITIVE_INFINITY);
+        boundsMax.set(Float.NEGATIVE_INFINITY);
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            boundsMin.set(Math.min(boundsMin.x, positions[i]), Math.min(boundsMin.y, positions[i + 1]), Math.min(boundsMin.z, positions[i + 2]));
+            boundsMax.set(Math.max(boundsMax.x, positions[i]), Math.max(boundsMax.y, positions[i + 1]), Math.max(boundsMax.z, positions[i + 2]));
+        }
+        boundsMin.add(boundsMax, boundsCenter).mul(0.5f);
+        float maxDistSq = 0.0f;
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            float dx = positions[i] - boundsCenter.x;
+            float dy = positions[i + 1] - boundsCenter.y;
+            float dz = positions[i + 2] - boundsCenter.z;
+            maxDistSq = Math.max(maxDistSq, dx * dx + dy * dy + dz * dz);
+        }
+        boundsRadius = (float) Math.sqrt(maxDistSq);
+    }
+
+    // VAO nie jest odwiązywane po rysowaniu - kolejne rysowanie tej samej siatki (lub puli areny) pominie wiązanie (GLStateCache)
     public void render() {
-        glBindVertexArray(vaoId);
-        glDrawElements(GL_TRIANGLES, vertexCount, GL_UNSIGNED_INT, 0);
-        glBindVertexArray(0);
+        if (arenaAllocation != null) {
+            arenaAllocation.getPool().bind(null);
+            glDrawElementsBaseVertex(GL_TRIANGLES, vertexCount, GL_UNSIGNED_SHORT,
+                    arenaAllocation.getIndexByteOffset(), arenaAllocation.getBaseVertex());
+            return;
+        }
+        GLStateCache.bindVertexArray(vaoId);
+        glDrawElements(GL_TRIANGLES, vertexCount, indexType, 0);
     }
 
-    public void cleanup() {
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2); // Dodano
+    /**
+     * Rysuje wiele instancji siatki jednym wywołaniem.
+     * @param instances Bufor z macierzami instancji (już wysłany do GPU).
+     * @param firstInstance Indeks pierwszej instancji partii w buforze.
+     * @param instanceCount Liczba instancji do narysowania.
+     */
+    public void renderInstanced(InstanceBuffer instances, int firstInstance, int instanceCount) {
+        if (instanceCount <= 0) return;
+        if (arenaAllocation != null) {
+            arenaAllocation.getPool().bind(instances);
+            instances.bindAttributes(firstInstance);
+            glDrawElementsInstancedBaseVertex(GL_TRIANGLES, vertexCount, GL_UNSIGNED_SHORT,
+                    arenaAllocation.getIndexByteOffset(), instanceCount, arenaAllocation.getBaseVertex());
+            return;
+        }
+        GLStateCache.bindVertexArray(vaoId);
+        if (!instanceAttributesEnabled) {
+            instances.enableAttributes();
+            instanceAttributesEnabled = true;
+        }
+        instances.bindAttributes(firstInstance);
+        glDrawElementsInstanced(GL_TRIANGLES, vertexCount, indexType, 0, instanceCount);
+    }
+
+    /**
+     * Dodaje kolejny, uproszczony poziom szczegółowości. Poziomy dodaje się od najdokładniejszego;
+     * siatka przejmuje ich własność (zwalniane w cleanup()).
+     */
+    public void addLodLevel(Mesh lod) {
+        if (lod == null || lod == this) throw new IllegalArgumentException("LOD level must be a different, non-null mesh");
+        lodLevels.add(lod);
+    }
 
+    /** Liczba poziomów szczegółowości razem z poziomem 0 (ta siatka). */
+    public int getLodCount() { return lodLevels.size() + 1; }
+
+    /** Siatka dla poziomu LOD (0 = ta siatka); poziomy poza zakresem są przycinane do najgrubszego. */
+    public Mesh getLod(int level) {
+        if (level <= 0 || lodLevels.isEmpty()) return this;
+        return lodLevels.get(Math.min(level, lodLevels.size()) - 1);
+    }
+
+    public void cleanup() {
+        for (Mesh lod : lodLevels) {
+            lod.cleanup();
+        }
+        lodLevels.clear();
+        if (arenaAllocation != null) {
+            GeometryArena.free(arenaAllocation);
+            arenaAllocation = null;
+            return;
+        }
+        // Atrybuty są stanem VAO - usunięcie VAO wystarcza, bez glDisableVertexAttribArray
         glBindBuffer(GL_ARRAY_BUFFER, 0);
-        glDeleteBuffers(posVboId);
-        glDeleteBuffers(normalVboId);
-        glDeleteBuffers(uvVboId); // Dodano
+        glDeleteBuffers(vboId);
         glDeleteBuffers(idxVboId);
 
-        glBindVertexArray(0);
+        GLStateCache.bindVertexArray(0);
         glDeleteVertexArrays(vaoId);
+        GLStateCache.onVertexArrayDeleted(vaoId);
+    }
+
+    public int getSortId() { return sortId; }
+    public VertexLayout getLayout() { return layout; }
+    /** Typ indeksów przy rysowaniu (siatki z areny mają zawsze względne indeksy 16-bitowe). */
+    public int getIndexType() { return arenaAllocation != null ? GL_UNSIGNED_SHORT : indexType; }
+    /** Miejsce siatki w GeometryArena (null dla siatek z własnymi buforami). */
+    public GeometryArena.Allocation getArenaAllocation() { return arenaAllocation; }
+    public int getTriangleCount() { return vertexCount / 3; }
+    /** Rozmiar danych wierzchołków i indeksów na GPU (w bajtach). */
+    public int getGpuMemoryBytes() {
+        int bytes = vertexDataBytes + indexDataBytes;
+        for (Mesh lod : lodLevels) bytes += lod.getGpuMemoryBytes();
+        return bytes;
     }
+
+    // --- Gettery brył otaczających (przestrzeń lokalna, nie modyfikować zwróconych wektorów) ---
+    public Vector3f getBoundsMin() { return boundsMin; }
+    public Vector3f getBoundsMax() { return boundsMax; }
+    public Vector3f getBoundsCenter() { return boundsCenter; }
+    public float getBoundsRadius() { return boundsRadius; }
 }
\ No newline at end of file
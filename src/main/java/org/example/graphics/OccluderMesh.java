@@ -0,0 +1,89 @@
+package org.example.graphics;
+
+import org.joml.Vector3f;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Uproszczona geometria zasłaniająca (occluder) - tylko pozycje i indeksy trójkątów w pamięci CPU,
+ * rasteryzowana przez OcclusionCuller do bufora głębi niskiej rozdzielczości.
+ * Occluder musi mieścić się wewnątrz rzeczywistej siatki obiektu - inaczej zasłoniłby coś,
+ * co w rzeczywistości jest widoczne.
+ * <p>
+ * Dla każdej krawędzi trójkąta zapamiętany jest przeciwległy wierzchołek sąsiedniego trójkąta -
+ * krawędzie wewnętrzne (nie sylwetkowe) rasteryzator może wtedy pokrywać bez zachowawczego zwężenia.
+ */
+public class OccluderMesh {
+
+    // Indeksy 12 trójkątów prostopadłościanu (wierzchołki jak w box())
+    private static final int[] BOX_INDICES = {
+            0, 1, 2, 0, 2, 3, // -Z
+            4, 6, 5, 4, 7, 6, // +Z
+            0, 4, 5, 0, 5, 1, // -Y
+            3, 2, 6, 3, 6, 7, // +Y
+            0, 3, 7, 0, 7, 4, // -X
+            1, 5, 6, 1, 6, 2  // +X
+    };
+    private static final int[] BOX_ADJACENCY = buildAdjacency(BOX_INDICES);
+
+    private final float[] positions; // xyz w przestrzeni lokalnej obiektu
+    private final int[] indices;     // Trójki indeksów
+    private final int[] adjacentVertices; // Dla krawędzi naprzeciw wierzchołka k trójkąta: wierzchołek sąsiada (-1 = brak)
+
+    public OccluderMesh(float[] positions, int[] indices) {
+        if (positions == null || positions.length % 3 != 0) throw new IllegalArgumentException("Occluder positions must be xyz triples");
+        if (indices == null || indices.length % 3 != 0) throw new IllegalArgumentException("Occluder indices must form triangles");
+        this.positions = positions;
+        this.indices = indices;
+        this.adjacentVertices = indices == BOX_INDICES ? BOX_ADJACENCY : buildAdjacency(indices);
+    }
+
+    /** Krawędź dzielona przez dokładnie dwa trójkąty łączy je; brzegowe i niemanifoldowe pozostają bez sąsiada. */
+    private static int[] buildAdjacency(int[] indices) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (int i = 0; i < indices.length; i++) {
+            counts.merge(edgeKey(indices, i), 1, Integer::sum);
+        }
+        int[] adjacent = new int[indices.length];
+        Map<Long, Integer> open = new HashMap<>(); // Krawędź -> pozycja w indices pierwszego trójkąta
+        for (int i = 0; i < indices.length; i++) {
+            adjacent[i] = -1;
+            long key = edgeKey(indices, i);
+            if (counts.get(key) != 2) continue;
+            Integer other = open.remove(key);
+            if (other == null) {
+                open.put(key, i);
+            } else {
+                adjacent[i] = indices[other];
+                adjacent[other] = indices[i];
+            }
+        }
+        return adjacent;
+    }
+
+    /** Krawędź (bez kierunku) naprzeciw wierzchołka indices[i] w jego trójkącie. */
+    private static long edgeKey(int[] indices, int i) {
+        int tri = i - i % 3;
+        int a = indices[tri + (i + 1) % 3], b = indices[tri + (i + 2) % 3];
+        return ((long) Math.min(a, b) << 32) | (Math.max(a, b) & 0xFFFFFFFFL);
+    }
+
+    /** Prostopadłościan o podanych narożnikach (np. lokalny AABB siatki ściany lub skrzyni). */
+    public static OccluderMesh box(Vector3f min, Vector3f max) {
+        float[] positions = {
+                min.x, min.y, min.z,  max.x, min.y, min.z,  max.x, max.y, min.z,  min.x, max.y, min.z,
+                min.x, min.y, max.z,  max.x, min.y, max.z,  max.x, max.y, max.z,  min.x, max.y, max.z
+        };
+        return new OccluderMesh(positions, BOX_INDICES);
+    }
+
+    public float[] getPositions() { return positions; }
+    public int[] getIndices() { return indices; }
+    /**
+     * Dla indices[i]: wierzchołek sąsiedniego trójkąta leżący naprzeciw krawędzi przeciwległej
+     * do wierzchołka indices[i] w jego trójkącie, albo -1 (krawędź brzegowa).
+     */
+    public int[] getAdjacentVertices() { return adjacentVertices; }
+    public int getTriangleCount() { return indices.length / 3; }
+}
@@ -0,0 +1,160 @@
+package org.example.graphics;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.GL_LINK_STATUS;
+import static org.lwjgl.opengl.GL20.glGetProgrami;
+import static org.lwjgl.opengl.GL41.*;
+
+/**
+ * Dyskowy cache zlinkowanych programów shaderowych (glGetProgramBinary / glProgramBinary, GL 4.1
+ * lub ARB_get_program_binary). Binarka jest specyficzna dla sterownika, więc katalog cache
+ * zależy od GL_VENDOR/GL_RENDERER/GL_VERSION, a plik - od skrótu SHA-256 źródeł wszystkich etapów
+ * (już z wstrzykniętymi definicjami). Zmiana shadera, definicji lub sterownika daje inny klucz.
+ * <p>
+ * Sterownik może odrzucić binarkę (np. po aktualizacji bez zmiany GL_VERSION) - wtedy plik jest
+ * usuwany, a program kompilowany ze źródeł jak bez cache (ShaderProgram.build()).
+ * Katalog bazowy: właściwość systemowa SHADER_CACHE_DIR_PROPERTY albo ~/.3debil/shader-cache.
+ */
+public class ShaderBinaryCache {
+
+    public static final String SHADER_CACHE_DIR_PROPERTY = "engine.shaderCacheDir";
+    private static final int FILE_MAGIC = 0x53484243; // "SHBC"
+
+    private final Path directory;
+    private final boolean supported;
+    private final String driverId;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    /** Tworzy cache dla bieżącego kontekstu GL (wymaga aktywnego kontekstu). */
+    public ShaderBinaryCache() {
+        GLCapabilities caps = GL.getCapabilities();
+        driverId = glGetString(GL_VENDOR) + "|" + glGetString(GL_RENDERER) + "|" + glGetString(GL_VERSION);
+        supported = (caps.OpenGL41 || caps.GL_ARB_get_program_binary) && glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+        String base = System.getProperty(SHADER_CACHE_DIR_PROPERTY,
+                Paths.get(System.getProperty("user.home"), ".3debil", "shader-cache").toString());
+        directory = Paths.get(base, sha256(driverId).substring(0, 16));
+        System.out.println("  ShaderBinaryCache: " + (supported ? "Using " + directory : "Program binaries not supported by driver, cache disabled."));
+    }
+
+    public boolean isSupported() { return supported; }
+
+    /** Klucz cache dla źródeł etapów programu (null dla brakujących etapów). */
+    public String key(String... stageSources) {
+        StringBuilder builder = new StringBuilder(driverId);
+        for (String source : stageSources) {
+            builder.append('\u0000').append(source != null ? source : "");
+        }
+        return sha256(builder.toString());
+    }
+
+    /** Ustawia wskazówkę, że binarka programu będzie pobierana (przed glLinkProgram). */
+    void prepareForLink(int programId) {
+        if (supported) glProgramParameteri(programId, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+    }
+
+    /**
+     * Próbuje załadować binarkę do programu.
+     * @return true, jeśli program jest zlinkowany z binarki; false - trzeba kompilować ze źródeł.
+     */
+    boolean load(int programId, String key) {
+        if (!supported) return false;
+        Path file = directory.resolve(key + ".bin");
+        if (!Files.isRegularFile(file)) {
+            missCount++;
+            return false;
+        }
+        ByteBuffer binary = null;
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            if (bytes.length < 8 || header.getInt(0) != FILE_MAGIC) {
+                throw new IOException("Invalid shader binary header");
+            }
+            int format = header.getInt(4);
+            binary = MemoryUtil.memAlloc(bytes.length - 8);
+            binary.put(bytes, 8, bytes.length - 8).flip();
+            glProgramBinary(programId, format, binary);
+            if (glGetProgrami(programId, GL_LINK_STATUS) == 0) {
+                throw new IOException("Driver rejected program binary");
+            }
+            hitCount++;
+            return true;
+        } catch (IOException e) {
+            System.err.println("ShaderBinaryCache: " + e.getMessage() + " (" + file.getFileName() + "), recompiling.");
+            deleteQuietly(file);
+            missCount++;
+            return false;
+        } finally {
+            if (binary != null) MemoryUtil.memFree(binary);
+        }
+    }
+
+    /** Zapisuje binarkę zlinkowanego programu (błędy zapisu tylko ostrzegają - cache jest opcjonalny). */
+    void store(int programId, String key) {
+        if (!supported) return;
+        int length = glGetProgrami(programId, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) return;
+        ByteBuffer binary = MemoryUtil.memAlloc(length);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer written = stack.mallocInt(1);
+            IntBuffer format = stack.mallocInt(1);
+            glGetProgramBinary(programId, written, format, binary);
+            byte[] bytes = new byte[8 + written.get(0)];
+            ByteBuffer out = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(FILE_MAGIC).putInt(format.get(0));
+            binary.get(bytes, 8, written.get(0));
+
+            // Zapis do pliku tymczasowego i przeniesienie - przerwany zapis nie zostawi uszkodzonej binarki
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, directory.resolve(key + ".bin"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("ShaderBinaryCache: Could not store program binary: " + e.getMessage());
+        } finally {
+            MemoryUtil.memFree(binary);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // Plik zostanie nadpisany przy następnym zapisie
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e); // Wymagany przez specyfikację JVM
+        }
+    }
+
+    /** Programy załadowane z cache od utworzenia. */
+    public int getHitCount() { return hitCount; }
+    /** Programy skompilowane ze źródeł (brak lub odrzucona binarka). */
+    public int getMissCount() { return missCount; }
+}
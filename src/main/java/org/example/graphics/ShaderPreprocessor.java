@@ -0,0 +1,110 @@
+package org.example.graphics;
+
+import org.example.exception.ResourceLoadException;
+import org.example.exception.ResourceNotFoundException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Prosty preprocesor źródeł GLSL wykonywany po stronie Javy przed kompilacją.
+ * Pozwala wstrzykiwać definicje (#define) tak, aby stałe współdzielone przez
+ * Javę i GLSL (np. maksymalna liczba świateł) miały jedno źródło prawdy,
+ * oraz rozwija dyrektywy #include (wspólne deklaracje bloków UBO).
+ */
+public final class ShaderPreprocessor {
+
+    private static final Pattern INCLUDE_PATTERN = Pattern.compile("(?m)^[ \\t]*#include[ \\t]+\"([^\"]+)\"[ \\t]*\\r?$");
+
+    private ShaderPreprocessor() {
+    }
+
+    /**
+     * Wczytuje shader (ShaderProgram.loadShaderSource) i rozwija jego dyrektywy #include "plik".
+     * Ścieżki są względne do katalogu pliku dołączającego; każdy plik jest dołączany raz
+     * (kolejne #include tego samego pliku są pomijane - także przy cyklach).
+     * Dołączane pliki nie mogą zawierać #version.
+     * @param path Ścieżka shadera (classpath lub system plików).
+     * @return Źródło z rozwiniętymi plikami.
+     */
+    public static String loadWithIncludes(String path) throws ResourceNotFoundException, ResourceLoadException {
+        Set<String> included = new HashSet<>();
+        included.add(path);
+        return resolveIncludes(ShaderProgram.loadShaderSource(path), path, included);
+    }
+
+    private static String resolveIncludes(String source, String path, Set<String> included)
+            throws ResourceNotFoundException, ResourceLoadException {
+        Matcher matcher = INCLUDE_PATTERN.matcher(source);
+        if (!matcher.find()) {
+            return source;
+        }
+        String directory = path.lastIndexOf('/') >= 0 ? path.substring(0, path.lastIndexOf('/') + 1) : "";
+        StringBuilder result = new StringBuilder(source.length() * 2);
+        int last = 0;
+        do {
+            result.append(source, last, matcher.start());
+            String includePath = normalize(directory + matcher.group(1));
+            if (included.add(includePath)) {
+                String includedSource = ShaderProgram.loadShaderSource(includePath);
+                if (includedSource.contains("#version")) {
+                    throw new ResourceLoadException("Included shader must not declare #version: " + includePath + " (from " + path + ")");
+                }
+                result.append("// --- ").append(includePath).append(" ---\n")
+                        .append(resolveIncludes(includedSource, includePath, included));
+            }
+            last = matcher.end();
+        } while (matcher.find());
+        return result.append(source, last, source.length()).toString();
+    }
+
+    // Usuwa segmenty "./" i "dir/../" (ścieżki classpath nie są normalizowane przez class loader)
+    private static String normalize(String path) {
+        String[] parts = path.split("/");
+        String[] stack = new String[parts.length];
+        int depth = 0;
+        for (String part : parts) {
+            if (part.isEmpty() || part.equals(".")) continue;
+            if (part.equals("..") && depth > 0 && !stack[depth - 1].equals("..")) {
+                depth--;
+            } else {
+                stack[depth++] = part;
+            }
+        }
+        return String.join("/", Arrays.copyOf(stack, depth));
+    }
+
+    /**
+     * Wstawia dyrektywy #define bezpośrednio po linii #version (lub na początku źródła, jeśli jej brak).
+     * @param source Źródło shadera.
+     * @param defines Mapa nazwa -> wartość (wartość może być pusta dla flag).
+     * @return Źródło z wstrzykniętymi definicjami.
+     */
+    public static String injectDefines(String source, Map<String, String> defines) {
+        if (defines == null || defines.isEmpty()) {
+            return source;
+        }
+        StringBuilder definesBlock = new StringBuilder();
+        for (Map.Entry<String, String> define : defines.entrySet()) {
+            definesBlock.append("#define ").append(define.getKey());
+            if (define.getValue() != null && !define.getValue().isEmpty()) {
+                definesBlock.append(' ').append(define.getValue());
+            }
+            definesBlock.append('\n');
+        }
+
+        int versionIndex = source.indexOf("#version");
+        if (versionIndex < 0) {
+            return definesBlock + source;
+        }
+        int lineEnd = source.indexOf('\n', versionIndex);
+        if (lineEnd < 0) {
+            return source + '\n' + definesBlock;
+        }
+        return source.substring(0, lineEnd + 1) + definesBlock + source.substring(lineEnd + 1);
+    }
+}
@@ -7,13 +7,19 @@ import org.example.exception.ResourceNotFoundException; // Import nowych wyjątk
 import java.nio.file.NoSuchFileException;                // Import dla specyficznego błędu pliku
 
 import java.io.IOException;
-import java.nio.FloatBuffer;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.IntBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.GL_INVALID_INDEX;
+import static org.lwjgl.opengl.GL32.GL_GEOMETRY_SHADER;
+import static org.lwjgl.opengl.GL31.glGetUniformBlockIndex;
+import static org.lwjgl.opengl.GL31.glUniformBlockBinding;
 import static org.lwjgl.opengl.GL11.GL_FALSE;
 
 public class ShaderProgram {
@@ -21,8 +27,13 @@ public class ShaderProgram {
     private final int programId;
     private int vertexShaderId;
     private int fragmentShaderId;
-    private final Map<String, Integer> uniforms;
+    private int geometryShaderId; // Opcjonalny (np. renderowanie do wszystkich ścian cube mapy w jednym przebiegu)
+    private final Map<String, Uniform> uniforms; // Wypełniane refleksją po linkowaniu
     private boolean linked = false;
+    private boolean loadedFromBinary = false;
+
+    private static int nextSortId = 1;
+    private final int sortId = nextSortId++; // Mały identyfikator dla kluczy RenderQueue
 
     public ShaderProgram() throws ResourceLoadException {
         programId = glCreateProgram();
@@ -40,6 +51,10 @@ public class ShaderProgram {
         fragmentShaderId = createShader(shaderCode, GL_FRAGMENT_SHADER);
     }
 
+    public void createGeometryShader(String shaderCode) throws ResourceLoadException {
+        geometryShaderId = createShader(shaderCode, GL_GEOMETRY_SHADER);
+    }
+
     protected int createShader(String shaderCode, int shaderType) throws ResourceLoadException {
         int shaderId = glCreateShader(shaderType);
         if (shaderId == 0) {
@@ -56,6 +71,28 @@ public class ShaderProgram {
         return shaderId;
     }
 
+    /**
+     * Tworzy i linkuje program z kodów źródłowych etapów. Z cache (może być null) program jest
+     * ładowany z binarki, gdy sterownik ją przyjmie; w przeciwnym razie kompilowany ze źródeł,
+     * a wynik zapisywany do cache.
+     * @param geometryCode Kod geometry shadera (null, jeśli program go nie ma).
+     */
+    public void build(ShaderBinaryCache cache, String vertexCode, String geometryCode, String fragmentCode) throws ResourceLoadException {
+        String key = cache != null ? cache.key(vertexCode, geometryCode, fragmentCode) : null;
+        if (cache != null && cache.load(programId, key)) {
+            linked = true;
+            loadedFromBinary = true;
+            reflectUniforms();
+            return;
+        }
+        createVertexShader(vertexCode);
+        if (geometryCode != null) createGeometryShader(geometryCode);
+        createFragmentShader(fragmentCode);
+        if (cache != null) cache.prepareForLink(programId);
+        link();
+        if (cache != null) cache.store(programId, key);
+    }
+
     public void link() throws ResourceLoadException {
         glLinkProgram(programId);
         if (glGetProgrami(programId, GL_LINK_STATUS) == 0) {
@@ -66,6 +103,7 @@ public class ShaderProgram {
         } else {
             linked = true;
         }
+        reflectUniforms();
         glValidateProgram(programId);
         if (glGetProgrami(programId, GL_VALIDATE_STATUS) == 0) {
             System.err.println("Warning validating Shader program: " + glGetProgramInfoLog(programId, 1024));
@@ -85,60 +123,130 @@ public class ShaderProgram {
                 glDeleteShader(fragmentShaderId);
                 fragmentShaderId = 0;
             }
+            if (geometryShaderId != 0) {
+                glDetachShader(programId, geometryShaderId);
+                glDeleteShader(geometryShaderId);
+                geometryShaderId = 0;
+            }
+        }
+    }
+
+    /**
+     * Odczytuje wszystkie aktywne uniformy programu (glGetActiveUniform) i tworzy dla nich uchwyty.
+     * Dla tablic rejestrowane są wszystkie elementy ("name[0]".."name[n-1]") oraz nazwa bazowa.
+     * Uniformy należące do bloków (UBO) nie mają lokacji i są pomijane.
+     */
+    private void reflectUniforms() {
+        uniforms.clear();
+        int count = glGetProgrami(programId, GL_ACTIVE_UNIFORMS);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+            for (int i = 0; i < count; i++) {
+                String name = glGetActiveUniform(programId, i, size, type);
+                int location = glGetUniformLocation(programId, name);
+                if (location < 0) {
+                    continue;
+                }
+                if (name.endsWith("[0]")) {
+                    String baseName = name.substring(0, name.length() - 3);
+                    uniforms.put(baseName, new Uniform(baseName, location, type.get(0)));
+                    for (int e = 0; e < size.get(0); e++) {
+                        String elementName = baseName + "[" + e + "]";
+                        int elementLocation = (e == 0) ? location : glGetUniformLocation(programId, elementName);
+                        if (elementLocation >= 0) {
+                            uniforms.put(elementName, new Uniform(elementName, elementLocation, type.get(0)));
+                        }
+                    }
+                } else {
+                    uniforms.put(name, new Uniform(name, location, type.get(0)));
+                }
+            }
         }
     }
 
-    public void createUniform(String uniformName) throws ResourceLoadException { // Zmieniono z Exception
+    /**
+     * Zwraca uchwyt do uniformu. Przeznaczone do wywołania raz (przy konfiguracji), a nie co klatkę.
+     * @param uniformName Pełna nazwa uniformu (np. "pointLights[2].att.linear").
+     * @return Uchwyt lub Uniform.INACTIVE, jeśli uniform nie istnieje / został zoptymalizowany.
+     */
+    public Uniform getUniform(String uniformName) {
         if (!linked) {
-            // Rzucanie wyjątku, jeśli próbuje się stworzyć uniform przed linkowaniem
-            throw new ResourceLoadException("Cannot create uniform '" + uniformName + "': Shader program is not linked yet.");
+            throw new IllegalStateException("Cannot get uniform '" + uniformName + "': Shader program is not linked yet.");
         }
-        int uniformLocation = glGetUniformLocation(programId, uniformName);
-        if (uniformLocation < 0) {
+        Uniform uniform = uniforms.get(uniformName);
+        if (uniform == null) {
             System.err.println("Warning: Could not find uniform location: '" + uniformName + "' (or it might be unused/optimized out)");
-            // Nie rzucaj błędu, bo to może być zamierzone (optymalizacja)
+            return Uniform.INACTIVE;
         }
-        uniforms.put(uniformName, uniformLocation);
+        return uniform;
     }
 
-    private int getUniformLocation(String uniformName) {
-        Integer location = uniforms.get(uniformName);
-        // Zwróć -1 lub null, jeśli nie znaleziono, ale nie rzucaj błędu tutaj
-        return (location != null) ? location : -1;
+    /**
+     * Podpina blok uniformów (UBO) o podanej nazwie do stałego punktu wiązania.
+     * @param blockName Nazwa bloku w GLSL (np. "CameraBlock").
+     * @param bindingPoint Indeks punktu wiązania (GL_UNIFORM_BUFFER).
+     * @return true, jeśli program deklaruje (i używa) danego bloku.
+     */
+    public boolean bindUniformBlock(String blockName, int bindingPoint) {
+        if (!linked) {
+            throw new IllegalStateException("Cannot bind uniform block '" + blockName + "': Shader program is not linked yet.");
+        }
+        int blockIndex = glGetUniformBlockIndex(programId, blockName);
+        if (blockIndex == GL_INVALID_INDEX) {
+            return false;
+        }
+        glUniformBlockBinding(programId, blockIndex, bindingPoint);
+        return true;
     }
 
-    public void setUniform(String uniformName, Matrix4f value) {
-        int location = getUniformLocation(uniformName);
-        if (location != -1) { // Ustawiaj tylko, jeśli uniform istnieje
-            try (MemoryStack stack = MemoryStack.stackPush()) {
-                FloatBuffer fb = stack.mallocFloat(16); value.get(fb);
-                glUniformMatrix4fv(location, false, fb);
-            }
-        } // else { System.err.println("DEBUG: Uniform '" + uniformName + "' not set (location not found)."); } // Opcjonalny debug
+    public boolean hasUniform(String uniformName) {
+        return uniforms.containsKey(uniformName);
     }
-    public void setUniform(String uniformName, Vector3f value) { int location = getUniformLocation(uniformName); if (location != -1) glUniform3f(location, value.x, value.y, value.z); }
-    public void setUniform(String uniformName, float value) { int location = getUniformLocation(uniformName); if (location != -1) glUniform1f(location, value); }
-    public void setUniform(String uniformName, int value) { int location = getUniformLocation(uniformName); if (location != -1) glUniform1i(location, value); }
 
-    public void bind() { glUseProgram(programId); }
-    public void unbind() { glUseProgram(0); }
+    // Wygodne settery po nazwie - do kodu poza gorącą ścieżką (gorąca ścieżka używa uchwytów Uniform)
+    public void setUniform(String uniformName, Matrix4f value) { Uniform u = uniforms.get(uniformName); if (u != null) u.set(value); }
+    public void setUniform(String uniformName, Vector3f value) { Uniform u = uniforms.get(uniformName); if (u != null) u.set(value); }
+    public void setUniform(String uniformName, float value) { Uniform u = uniforms.get(uniformName); if (u != null) u.set(value); }
+    public void setUniform(String uniformName, int value) { Uniform u = uniforms.get(uniformName); if (u != null) u.set(value); }
+
+    public void bind() { GLStateCache.useProgram(programId); }
+    public void unbind() { GLStateCache.useProgram(0); }
 
     public void cleanup() {
         unbind();
         // detachShaders(); // Już wywołane po link()
-        if (programId != 0) { glDeleteProgram(programId); }
+        if (programId != 0) {
+            glDeleteProgram(programId);
+            GLStateCache.onProgramDeleted(programId);
+        }
+        uniforms.clear();
         linked = false;
     }
 
     public boolean isLinked() { return linked; }
-
-    public static String loadShaderSource(String filePath) throws ResourceNotFoundException, ResourceLoadException {
+    /** Czy program pochodzi z cache binarek (bez kompilacji). */
+    public boolean isLoadedFromBinary() { return loadedFromBinary; }
+    public int getSortId() { return sortId; }
+
+    /**
+     * Wczytuje źródło shadera z classpath (np. "shaders/scene_vertex.glsl" - działa także z jar),
+     * a jeśli go tam nie ma - z systemu plików (ścieżka względna do katalogu roboczego).
+     */
+    public static String loadShaderSource(String path) throws ResourceNotFoundException, ResourceLoadException {
+        try (InputStream source = ShaderProgram.class.getClassLoader().getResourceAsStream(path)) {
+            if (source != null) {
+                return new String(source.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new ResourceLoadException("Failed to read shader resource: " + path, e);
+        }
         try {
-            return new String(Files.readAllBytes(Paths.get(filePath)));
+            return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
         } catch (NoSuchFileException e) {
-            throw new ResourceNotFoundException("Shader file not found: " + filePath, e);
+            throw new ResourceNotFoundException("Shader not found in classpath or file system: " + path, e);
         } catch (IOException e) {
-            throw new ResourceLoadException("Failed to read shader file: " + filePath, e);
+            throw new ResourceLoadException("Failed to read shader file: " + path, e);
         }
     }
 }
\ No newline at end of file
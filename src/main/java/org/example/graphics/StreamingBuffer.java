@@ -0,0 +1,229 @@
+package org.example.graphics;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_MAP_WRITE_BIT;
+import static org.lwjgl.opengl.GL30.glMapBufferRange;
+import static org.lwjgl.opengl.GL31.GL_COPY_WRITE_BUFFER;
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.opengl.GL44.GL_MAP_COHERENT_BIT;
+import static org.lwjgl.opengl.GL44.GL_MAP_PERSISTENT_BIT;
+import static org.lwjgl.opengl.GL44.glBufferStorage;
+
+/**
+ * Bufor strumieniowy dla danych zmienianych co klatkę (instancje, bloki uniformów).
+ * Działa jak alokator "bump": każde upload() dostaje kolejny fragment regionu bieżącej klatki
+ * i zwraca jego przesunięcie w buforze - dane z wcześniejszych wywołań w tej samej klatce
+ * pozostają nienaruszone, więc ten sam bufor może zasilać kilka przebiegów.
+ * <p>
+ * Z ARB_buffer_storage (GL 4.4) bufor ma REGION_COUNT regionów w jednej trwale zmapowanej
+ * (persistent + coherent) pamięci; zapis to memcpy bez wywołań GL. Przed ponownym użyciem regionu
+ * CPU czeka na jego fence (glFenceSync z klatki, która go zapisywała) - zwykle już zasygnalizowany.
+ * Bez rozszerzenia (GL 3.3) bufor jest orfanowany na początku każdej klatki (glBufferData z null),
+ * a fragmenty wysyłane przez glBufferSubData do świeżej pamięci - także bez czekania na GPU.
+ * <p>
+ * Granice klatek wyznacza beginFrame() (raz na klatkę, z Renderer); bufor przechodzi do
+ * następnego regionu leniwie, przy pierwszym upload() w nowej klatce.
+ * <p>
+ * Przepełniony region powiększa bufor w trakcie klatki: powstaje nowy bufor GL (getBufferId() się zmienia),
+ * a poprzedni żyje do pierwszego upload() następnej klatki - wiązania i przesunięcia z wcześniejszych
+ * upload() tej klatki pozostają ważne.
+ */
+public class StreamingBuffer {
+
+    public static final int REGION_COUNT = 3; // Potrójne buforowanie - CPU zapisuje klatkę N+2, GPU czyta N
+    private static final long FENCE_TIMEOUT_NS = 1_000_000L; // Pojedyncze czekanie; ponawiane do skutku
+
+    private static long frameIndex = 0;
+
+    private final String name;
+    private int regionBytes;
+    private boolean persistent;
+    private int bufferId = 0;
+    private ByteBuffer mapping = null;        // Tylko tryb trwały
+    private final long[] fences = new long[REGION_COUNT];
+    private int region = 0;
+    private int regionOffset = 0;             // Zajętość bieżącego regionu (bump)
+    private long regionFrame = -1;            // Klatka, do której należy bieżący region
+    private int fenceWaitCount = 0;           // Ile razy CPU faktycznie czekało na GPU
+    private final List<Integer> retiredBuffers = new ArrayList<>(1); // Bufory sprzed powiększenia (do końca klatki)
+
+    /**
+     * @param name Nazwa do komunikatów diagnostycznych.
+     * @param regionBytes Początkowy rozmiar regionu jednej klatki (rośnie w razie potrzeby).
+     */
+    public StreamingBuffer(String name, int regionBytes) {
+        if (regionBytes <= 0) throw new IllegalArgumentException("Region size must be positive");
+        this.name = name;
+        this.regionBytes = regionBytes;
+    }
+
+    /** Zaczyna nową klatkę dla wszystkich buforów strumieniowych. */
+    public static void beginFrame() {
+        frameIndex++;
+    }
+
+    public void init() {
+        GLCapabilities caps = GL.getCapabilities();
+        persistent = caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+        createStorage();
+        System.out.println("  StreamingBuffer '" + name + "': " + (persistent ? "persistent mapped, " + REGION_COUNT + " regions" : "orphaning")
+                + " (" + regionBytes + " bytes per frame).");
+    }
+
+    private void createStorage() {
+        bufferId = glGenBuffers();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, bufferId);
+        if (persistent) {
+            long size = (long) regionBytes * REGION_COUNT;
+            int flags = GL_MAP_WRITE_BIT | GL_MAP_PERSISTENT_BIT | GL_MAP_COHERENT_BIT;
+            glBufferStorage(GL_COPY_WRITE_BUFFER, size, flags);
+            mapping = glMapBufferRange(GL_COPY_WRITE_BUFFER, 0, size, flags);
+        } else {
+            glBufferData(GL_COPY_WRITE_BUFFER, regionBytes, GL_STREAM_DRAW);
+        }
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        region = 0;
+        regionOffset = 0;
+    }
+
+    /**
+     * Kopiuje dane (od pozycji do limitu) do bufora.
+     * @param alignment Wymagane wyrównanie przesunięcia (np. GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT).
+     * @return Przesunięcie danych w buforze (w bajtach), ważne do końca bieżącej klatki
+     *         w buforze getBufferId() odczytanym po tym wywołaniu.
+     */
+    public int upload(ByteBuffer data, int alignment) {
+        return upload(MemoryUtil.memAddress(data), data.remaining(), alignment);
+    }
+
+    /** Jak upload(ByteBuffer, int), dla danych pod adresem natywnym. */
+    public int upload(long address, int bytes, int alignment) {
+        int offset = allocate(bytes, alignment);
+        if (persistent) {
+            MemoryUtil.memCopy(address, MemoryUtil.memAddress(mapping) + offset, bytes);
+        } else {
+            glBindBuffer(GL_COPY_WRITE_BUFFER, bufferId);
+            nglBufferSubData(GL_COPY_WRITE_BUFFER, offset, bytes, address);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        }
+        return offset;
+    }
+
+    // Bump w regionie bieżącej klatki; przy przepełnieniu bufor rośnie (stara pamięć żyje, dopóki GPU jej używa)
+    private int allocate(int bytes, int alignment) {
+        if (regionFrame != frameIndex) {
+            deleteRetiredBuffers(); // Poprzednia klatka zakończona - jej wiązania nie są już używane
+            advanceRegion();
+        }
+        int aligned = align(regionOffset, Math.max(1, alignment));
+        if (aligned + bytes > regionBytes) {
+            grow(Math.max(regionBytes * 2, align(bytes, Math.max(1, alignment)) * 2));
+            aligned = 0;
+        }
+        regionOffset = aligned + bytes;
+        return (persistent ? region * regionBytes : 0) + aligned;
+    }
+
+    private void advanceRegion() {
+        if (persistent) {
+            if (regionFrame >= 0) {
+                // Region poprzedniej klatki jest już w całości wysłany - fence chroni go przed nadpisaniem
+                fences[region] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+                region = (region + 1) % REGION_COUNT;
+            }
+            waitForRegion(region);
+        } else {
+            // Orfanowanie: sterownik daje nową pamięć, poprzednia żyje do zakończenia odczytów GPU
+            glBindBuffer(GL_COPY_WRITE_BUFFER, bufferId);
+            glBufferData(GL_COPY_WRITE_BUFFER, regionBytes, GL_STREAM_DRAW);
+            glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        }
+        regionOffset = 0;
+        regionFrame = frameIndex;
+    }
+
+    private void waitForRegion(int index) {
+        long fence = fences[index];
+        if (fence == 0) return;
+        int result = glClientWaitSync(fence, 0, 0);
+        if (result == GL_TIMEOUT_EXPIRED) {
+            fenceWaitCount++;
+            do {
+                result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NS);
+            } while (result == GL_TIMEOUT_EXPIRED);
+        }
+        if (result == GL_WAIT_FAILED) {
+            System.err.println("StreamingBuffer '" + name + "': Fence wait failed, region reused without sync.");
+        }
+        glDeleteSync(fence);
+        fences[index] = 0;
+    }
+
+    private void grow(int newRegionBytes) {
+        System.out.println("StreamingBuffer '" + name + "': Growing region to " + newRegionBytes + " bytes.");
+        // Bez glDeleteBuffers w trakcie klatki - usunięcie zerowałoby wiązania z wcześniejszych upload()
+        releaseStorage(true);
+        regionBytes = newRegionBytes;
+        createStorage();
+        regionFrame = frameIndex;
+        if (!persistent) {
+            // Nowy bufor jest już pusty - orfanowanie w tej klatce niepotrzebne
+            regionOffset = 0;
+        }
+    }
+
+    private static int align(int value, int alignment) {
+        return ((value + alignment - 1) / alignment) * alignment;
+    }
+
+    // deferDelete - bufor trafia do retiredBuffers zamiast być usunięty od razu
+    private void releaseStorage(boolean deferDelete) {
+        for (int i = 0; i < REGION_COUNT; i++) {
+            if (fences[i] != 0) {
+                glDeleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        if (bufferId != 0) {
+            if (mapping != null) {
+                glBindBuffer(GL_COPY_WRITE_BUFFER, bufferId);
+                glUnmapBuffer(GL_COPY_WRITE_BUFFER);
+                glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+                mapping = null;
+            }
+            if (deferDelete) {
+                retiredBuffers.add(bufferId);
+            } else {
+                glDeleteBuffers(bufferId);
+            }
+            bufferId = 0;
+        }
+    }
+
+    private void deleteRetiredBuffers() {
+        for (int retired : retiredBuffers) {
+            glDeleteBuffers(retired);
+        }
+        retiredBuffers.clear();
+    }
+
+    /** Nazwa bufora GL (może się zmienić po powiększeniu - odczytywać przy wiązaniu). */
+    public int getBufferId() { return bufferId; }
+    public boolean isPersistent() { return persistent; }
+    /** Ile razy CPU czekało na GPU przed ponownym użyciem regionu (od utworzenia). */
+    public int getFenceWaitCount() { return fenceWaitCount; }
+
+    public void cleanup() {
+        releaseStorage(false);
+        deleteRetiredBuffers();
+        regionFrame = -1;
+    }
+}
@@ -4,34 +4,162 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 import org.example.exception.ResourceLoadException;
 import org.example.exception.ResourceNotFoundException;
+import org.example.util.CompressedImageLoader;
 import org.example.util.ResourceLoader;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.*;
 import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL13.glCompressedTexImage2D;
+import static org.lwjgl.opengl.GL30.GL_COMPRESSED_RG_RGTC2;
 import static org.lwjgl.opengl.GL30.glGenerateMipmap;
+import static org.lwjgl.opengl.GL42.GL_COMPRESSED_RGBA_BPTC_UNORM;
 import static org.lwjgl.stb.STBImage.*;
 
+/**
+ * Tekstura 2D. Z pliku ładowana jest albo jako obraz (PNG/JPG - dekodowany przez STB do RGBA8,
+ * mipmapy generowane na GPU), albo jako kontener skompresowany blokowo (DDS/KTX2 z formatami BCn
+ * i gotowym łańcuchem mipmap - dane idą do GPU bez dekodowania, glCompressedTexImage2D).
+ * Dla ścieżki obrazu najpierw szukany jest skompresowany odpowiednik o tej samej nazwie
+ * (np. textures/wood.ktx2 albo textures/wood.dds dla textures/wood.png) - tak zasoby
+ * przygotowane przez TextureCompressor są używane bez zmian w kodzie sceny.
+ */
 public class Texture {
 
-    private final int textureId;
+    private static final String[] COMPRESSED_EXTENSIONS = { ".ktx2", ".dds" };
+
+    private int textureId;
     private int width;
     private int height;
+    private int internalFormat = GL_RGBA8;
+    private int mipLevels = 1;
+    private boolean compressed = false;
+    private long gpuMemoryBytes = 0;
 
     /**
-     * Ładuje teksturę z pliku obrazu.
-     * Próbuje załadować z systemu plików, a następnie z classpath.
+     * Ładuje teksturę z pliku obrazu lub kontenera DDS/KTX2 (dekodowanie i wysłanie w bieżącym wątku GL).
+     * Obraz ze skompresowanym odpowiednikiem w classpath jest zastępowany odpowiednikiem
+     * (chyba że GPU nie obsługuje jego formatu).
      * @param resourcePath Ścieżka do pliku obrazu.
      * @throws ResourceNotFoundException Jeśli plik nie zostanie znaleziony.
      * @throws ResourceLoadException Jeśli wystąpi błąd podczas ładowania lub przetwarzania obrazu.
      */
     public Texture(String resourcePath)
             throws ResourceNotFoundException, ResourceLoadException {
+        this(decode(resourcePath));
+    }
+
+    /**
+     * Tworzy teksturę z danych przygotowanych przez decode() - tylko wysłanie do GPU (wątek GL).
+     * Dane są zwalniane także przy błędzie.
+     * @throws ResourceNotFoundException Jeśli plik obrazu zastępczego (fallback) nie zostanie znaleziony.
+     * @throws ResourceLoadException Jeśli GPU nie obsługuje formatu, a obraz zastępczy nie daje się wczytać.
+     */
+    public Texture(DecodedImage image) throws ResourceNotFoundException, ResourceLoadException {
+        try {
+            if (image.compressedImage != null && !isFormatSupported(image.compressedImage.format)) {
+                String message = "Compressed format " + image.compressedImage.format + " is not supported by this GPU: " + image.resourcePath;
+                if (image.fallbackPath == null) throw new ResourceLoadException(message);
+                System.err.println("Texture: " + message + " - falling back to " + image.fallbackPath);
+                image.free();
+                image = decodeImage(image.fallbackPath);
+            }
+            if (image.compressedImage != null) {
+                uploadCompressed(image);
+            } else {
+                uploadImage(image);
+            }
+        } finally {
+            image.free();
+        }
+    }
+
+    /**
+     * Dane tekstury wczytane i zdekodowane na CPU - obraz RGBA8 (STB) albo poziomy kontenera DDS/KTX2.
+     * Pamięć natywna należy do obiektu do czasu wysłania (new Texture(DecodedImage)) lub free().
+     */
+    public static final class DecodedImage {
+        private final String resourcePath;
+        private final String fallbackPath; // Obraz źródłowy skompresowanego odpowiednika (gdy GPU nie zna formatu)
+        private ByteBuffer fileData;       // Plik kontenera - poziomy CompressedImage wskazują do niego
+        private final CompressedImageLoader.CompressedImage compressedImage;
+        private ByteBuffer pixels;         // RGBA8 z STB
+        private final int width;
+        private final int height;
+
+        private DecodedImage(String resourcePath, String fallbackPath, ByteBuffer fileData,
+                             CompressedImageLoader.CompressedImage compressedImage) {
+            this.resourcePath = resourcePath;
+            this.fallbackPath = fallbackPath;
+            this.fileData = fileData;
+            this.compressedImage = compressedImage;
+            this.width = compressedImage.width;
+            this.height = compressedImage.height;
+        }
+
+        private DecodedImage(String resourcePath, ByteBuffer pixels, int width, int height) {
+            this.resourcePath = resourcePath;
+            this.fallbackPath = null;
+            this.compressedImage = null;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+
+        /** Zwalnia pamięć natywną (wielokrotne wywołanie jest bezpieczne). */
+        public void free() {
+            if (pixels != null) {
+                stbi_image_free(pixels);
+                pixels = null;
+            }
+            if (fileData != null) {
+                MemoryUtil.memFree(fileData);
+                fileData = null;
+            }
+        }
+
+        public String getResourcePath() { return resourcePath; }
+    }
+
+    /**
+     * Wczytuje i dekoduje plik tekstury bez wywołań OpenGL - bezpieczne w dowolnym wątku
+     * (np. zadanie JobSystem.submitBackground z wysłaniem w thenOnMainThread).
+     * Skompresowany odpowiednik obrazu ma pierwszeństwo jak w Texture(String).
+     * @throws ResourceNotFoundException Jeśli plik nie zostanie znaleziony.
+     * @throws ResourceLoadException Jeśli wystąpi błąd podczas ładowania lub dekodowania.
+     */
+    public static DecodedImage decode(String resourcePath) throws ResourceNotFoundException, ResourceLoadException {
+        if (CompressedImageLoader.isCompressedContainer(resourcePath)) {
+            return decodeCompressed(resourcePath, null);
+        }
+        String compressedPath = findCompressedVariant(resourcePath);
+        if (compressedPath != null) {
+            try {
+                return decodeCompressed(compressedPath, resourcePath);
+            } catch (ResourceLoadException e) {
+                System.err.println("Texture: " + e.getMessage() + " - falling back to " + resourcePath);
+            }
+        }
+        return decodeImage(resourcePath);
+    }
+
+    private static String findCompressedVariant(String resourcePath) {
+        int dot = resourcePath.lastIndexOf('.');
+        if (dot <= resourcePath.lastIndexOf('/')) return null;
+        String base = resourcePath.substring(0, dot);
+        for (String extension : COMPRESSED_EXTENSIONS) {
+            if (ResourceLoader.exists(base + extension)) return base + extension;
+        }
+        return null;
+    }
 
-        ByteBuffer imageBuffer = null;
+    private static DecodedImage decodeImage(String resourcePath) throws ResourceNotFoundException, ResourceLoadException {
         ByteBuffer fileData = null;
 
         try {
@@ -44,31 +172,14 @@ public class Texture {
                 IntBuffer h = stack.mallocInt(1);
                 IntBuffer channels = stack.mallocInt(1);
 
-                stbi_set_flip_vertically_on_load(true); // Dla OpenGL
-                imageBuffer = stbi_load_from_memory(fileData, w, h, channels, 4); // Wymuś RGBA
+                stbi_set_flip_vertically_on_load_thread(1); // Dla OpenGL; flaga per wątek - dekodowanie także w puli zadań
+                ByteBuffer imageBuffer = stbi_load_from_memory(fileData, w, h, channels, 4); // Wymuś RGBA
                 if (imageBuffer == null) {
                     throw new ResourceLoadException("Failed to load texture using STB: " + resourcePath + " - " + stbi_failure_reason());
                 }
-                this.width = w.get(0);
-                this.height = h.get(0);
+                return new DecodedImage(resourcePath, imageBuffer, w.get(0), h.get(0));
             }
 
-            // 3. Wygeneruj i skonfiguruj teksturę OpenGL
-            this.textureId = glGenTextures();
-            glBindTexture(GL_TEXTURE_2D, textureId);
-
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR); // Filtracja trójliniowa
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR); // Filtracja dwuliniowa
-
-            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, imageBuffer);
-
-            glGenerateMipmap(GL_TEXTURE_2D); // Generuj mipmapy
-
-            glBindTexture(GL_TEXTURE_2D, 0); // Odwiąż teksturę
-            System.out.println("Loaded texture: " + resourcePath + " (" + width + "x" + height + ")");
-
         } catch (IOException e) {
             if (e instanceof ResourceNotFoundException) throw (ResourceNotFoundException) e;
             throw new ResourceLoadException("IO error loading texture resource: " + resourcePath, e);
@@ -77,11 +188,110 @@ public class Texture {
             if (e instanceof ResourceNotFoundException) throw (ResourceNotFoundException) e;
             throw new ResourceLoadException("Failed to load or process texture: " + resourcePath, e);
         } finally {
-            if (imageBuffer != null) stbi_image_free(imageBuffer);
             if (fileData != null) MemoryUtil.memFree(fileData);
         }
     }
 
+    private static DecodedImage decodeCompressed(String resourcePath, String fallbackPath)
+            throws ResourceNotFoundException, ResourceLoadException {
+        ByteBuffer fileData = null;
+        try {
+            fileData = ResourceLoader.ioResourceToByteBuffer(resourcePath);
+            CompressedImageLoader.CompressedImage image = CompressedImageLoader.load(fileData, resourcePath);
+            DecodedImage decoded = new DecodedImage(resourcePath, fallbackPath, fileData, image);
+            fileData = null; // Własność przechodzi na DecodedImage
+            return decoded;
+        } catch (IOException e) {
+            if (e instanceof ResourceNotFoundException) throw (ResourceNotFoundException) e;
+            throw new ResourceLoadException("IO error loading texture resource: " + resourcePath, e);
+        } finally {
+            if (fileData != null) MemoryUtil.memFree(fileData);
+        }
+    }
+
+    private void uploadImage(DecodedImage image) {
+        this.width = image.width;
+        this.height = image.height;
+
+        // Wygeneruj i skonfiguruj teksturę OpenGL
+        this.textureId = glGenTextures();
+        GLStateCache.bindTexture(GL_TEXTURE_2D, textureId);
+
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR); // Filtracja trójliniowa
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR); // Filtracja dwuliniowa
+
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, image.pixels);
+
+        glGenerateMipmap(GL_TEXTURE_2D); // Generuj mipmapy
+        setUncompressedInfo(true);
+
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0); // Odwiąż teksturę
+        System.out.println("Loaded texture: " + image.resourcePath + " (" + width + "x" + height + ")");
+    }
+
+    // Kontener DDS/KTX2: poziomy mipmap wysyłane tak, jak leżą w pliku (bez dekodowania i glGenerateMipmap)
+    private void uploadCompressed(DecodedImage decoded) {
+        CompressedImageLoader.CompressedImage image = decoded.compressedImage;
+        int glFormat = glInternalFormat(image.format);
+
+        this.width = image.width;
+        this.height = image.height;
+        this.textureId = glGenTextures();
+        GLStateCache.bindTexture(GL_TEXTURE_2D, textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, image.levels.size() > 1 ? GL_LINEAR_MIPMAP_LINEAR : GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        // Łańcuch z pliku może się kończyć przed 1x1 - tekstura jest kompletna do ostatniego zapisanego poziomu
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, image.levels.size() - 1);
+
+        long bytes = 0;
+        for (int level = 0; level < image.levels.size(); level++) {
+            ByteBuffer levelData = image.levels.get(level);
+            glCompressedTexImage2D(GL_TEXTURE_2D, level, glFormat,
+                    Math.max(1, width >> level), Math.max(1, height >> level), 0, levelData);
+            bytes += levelData.remaining();
+        }
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0);
+
+        this.internalFormat = glFormat;
+        this.mipLevels = image.levels.size();
+        this.compressed = true;
+        this.gpuMemoryBytes = bytes;
+        System.out.println("Loaded compressed texture: " + decoded.resourcePath + " (" + width + "x" + height + ", "
+                + image.format + ", " + mipLevels + " mip levels, " + bytes / 1024 + " KiB)");
+    }
+
+    private static int glInternalFormat(CompressedImageLoader.BlockFormat format) {
+        switch (format) {
+            case BC1: return GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+            case BC1_ALPHA: return GL_COMPRESSED_RGBA_S3TC_DXT1_EXT;
+            case BC3: return GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+            case BC5: return GL_COMPRESSED_RG_RGTC2;
+            default: return GL_COMPRESSED_RGBA_BPTC_UNORM;
+        }
+    }
+
+    /** Czy bieżący kontekst GL obsługuje dany format bloków. */
+    public static boolean isFormatSupported(CompressedImageLoader.BlockFormat format) {
+        GLCapabilities caps = GL.getCapabilities();
+        switch (format) {
+            case BC5: return caps.OpenGL30; // RGTC jest w rdzeniu od GL 3.0
+            case BC7: return caps.OpenGL42 || caps.GL_ARB_texture_compression_bptc;
+            default: return caps.GL_EXT_texture_compression_s3tc;
+        }
+    }
+
+    private void setUncompressedInfo(boolean mipmaps) {
+        this.internalFormat = GL_RGBA8;
+        this.mipLevels = mipmaps ? 32 - Integer.numberOfLeadingZeros(Math.max(width, height)) : 1;
+        this.compressed = false;
+        long baseBytes = (long) width * height * 4;
+        this.gpuMemoryBytes = mipmaps ? baseBytes * 4 / 3 : baseBytes; // Łańcuch mipmap to ok. 1/3 poziomu 0
+    }
+
     /**
      * Tworzy teksturę programowo z dostarczonych danych (np. domyślna biała).
      * @param width Szerokość tekstury.
@@ -96,23 +306,24 @@ public class Texture {
         this.width = width;
         this.height = height;
         this.textureId = glGenTextures();
+        setUncompressedInfo(generateMipmaps);
 
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        GLStateCache.bindTexture(GL_TEXTURE_2D, textureId);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
 
         if (generateMipmaps) {
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, data);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, data);
             glGenerateMipmap(GL_TEXTURE_2D);
         } else {
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, data);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, data);
         }
 
-        glBindTexture(GL_TEXTURE_2D, 0);
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0);
     }
 
     /**
@@ -126,28 +337,34 @@ public class Texture {
     }
 
     /**
-     * Aktywuje jednostkę teksturującą i wiąże tę teksturę.
+     * Aktywuje jednostkę teksturującą i wiąże tę teksturę (przez GLStateCache - bez zmian, gdy już związana).
      * @param textureUnit Indeks jednostki teksturującej (0, 1, 2, ...).
      */
     public void bind(int textureUnit) {
-        glActiveTexture(GL_TEXTURE0 + textureUnit);
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        GLStateCache.bindTexture(textureUnit, GL_TEXTURE_2D, textureId);
     }
 
     /**
      * Odwiązuje teksturę 2D od aktualnie aktywnej jednostki teksturującej.
      */
     public void unbind() {
-        glBindTexture(GL_TEXTURE_2D, 0);
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0);
     }
 
     /** Zwalnia zasoby OpenGL powiązane z teksturą. */
     public void cleanup() {
         glDeleteTextures(textureId);
+        GLStateCache.onTextureDeleted(textureId);
     }
 
     // --- Gettery ---
     public int getWidth() { return width; }
     public int getHeight() { return height; }
     public int getTextureId() { return textureId; }
+    /** Format wewnętrzny GL (GL_RGBA8 albo format skompresowany). */
+    public int getInternalFormat() { return internalFormat; }
+    public int getMipLevels() { return mipLevels; }
+    public boolean isCompressed() { return compressed; }
+    /** Przybliżone zużycie pamięci GPU (z mipmapami). */
+    public long getGpuMemoryBytes() { return gpuMemoryBytes; }
 }
\ No newline at end of file
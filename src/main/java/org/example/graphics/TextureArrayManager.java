@@ -0,0 +1,331 @@
+package org.example.graphics;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.glCopyTexSubImage3D;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Tablice tekstur zamiast osobnych GL_TEXTURE_2D: tekstury o tym samym rozmiarze trafiają do
+ * warstw jednej GL_TEXTURE_2D_ARRAY, a małe tekstury (do ATLAS_MAX_ENTRY_SIZE) są pakowane
+ * półkowo (shelf packing) do warstw atlasu ATLAS_PAGE_SIZE x ATLAS_PAGE_SIZE.
+ * Obiekty z różnymi teksturami w tej samej tablicy różnią się tylko indeksem warstwy i prostokątem UV,
+ * więc mogą być rysowane jednym wywołaniem - w klatce zostaje kilka wiązań tablic zamiast
+ * wiązania tekstury na materiał.
+ * <p>
+ * Tekstury są kopiowane po stronie GPU (FBO do odczytu + glCopyTexSubImage3D), bez danych na CPU;
+ * oryginalne obiekty Texture pozostają własnością wywołującego. Gdy tablica się zapełni, jest
+ * przepisywana do większej tej samej metody. Mipmapy są odtwarzane leniwie w updateMipmaps().
+ * <p>
+ * Tekstury skompresowane (DDS/KTX2) trafiają do tablic o tym samym formacie i liczbie poziomów
+ * mipmap, zawsze na całą warstwę (bez atlasu - granice bloków 4x4). FBO nie odczyta formatu
+ * skompresowanego, więc ich bloki są kopiowane przez CPU (glGetCompressedTexImage) - jednorazowo,
+ * przy pierwszym użyciu tekstury.
+ */
+public class TextureArrayManager {
+
+    public static final int ATLAS_PAGE_SIZE = 1024;
+    public static final int ATLAS_MAX_ENTRY_SIZE = 128; // Większe tekstury dostają całą warstwę
+    private static final int ATLAS_PADDING = 4;         // Odstęp między wpisami atlasu (ogranicza przenikanie mipmap)
+    private static final int INITIAL_LAYERS = 4;
+
+    /** Miejsce tekstury: tablica, warstwa i prostokąt UV (x, y, szerokość, wysokość w [0, 1]). */
+    public static final class Entry {
+        private final TextureArray array;
+        private final int layer;
+        private final float u, v, uScale, vScale;
+
+        private Entry(TextureArray array, int layer, float u, float v, float uScale, float vScale) {
+            this.array = array;
+            this.layer = layer;
+            this.u = u;
+            this.v = v;
+            this.uScale = uScale;
+            this.vScale = vScale;
+        }
+
+        public TextureArray getArray() { return array; }
+        public int getLayer() { return layer; }
+        public float getU() { return u; }
+        public float getV() { return v; }
+        public float getUScale() { return uScale; }
+        public float getVScale() { return vScale; }
+        /** Czy tekstura zajmuje część warstwy atlasu (UV wymagają przeliczenia w shaderze). */
+        public boolean isAtlased() { return uScale < 1.0f || vScale < 1.0f; }
+    }
+
+    /** Jedna GL_TEXTURE_2D_ARRAY o stałym rozmiarze warstwy i formacie. */
+    public static final class TextureArray {
+        private final int index;
+        private final int width, height;
+        private final boolean atlas;
+        private final int internalFormat;
+        private final int levels;
+        private final int[] compressedLevelBytes; // Rozmiar poziomu jednej warstwy; null dla RGBA8
+        private int textureId;
+        private int capacity = 0;
+        private int layerCount = 0;
+        private boolean mipmapsDirty = false;
+        // Stan pakowania bieżącej (ostatniej) warstwy atlasu
+        private int shelfX = 0, shelfY = 0, shelfHeight = 0;
+
+        private TextureArray(int index, int width, int height, boolean atlas, int internalFormat, int levels, int[] compressedLevelBytes) {
+            this.index = index;
+            this.width = width;
+            this.height = height;
+            this.atlas = atlas;
+            this.internalFormat = internalFormat;
+            this.levels = levels;
+            this.compressedLevelBytes = compressedLevelBytes;
+        }
+
+        public int getIndex() { return index; }
+        public int getTextureId() { return textureId; }
+        public int getLayerCount() { return layerCount; }
+        public boolean isAtlas() { return atlas; }
+        public boolean isCompressed() { return compressedLevelBytes != null; }
+        public int getInternalFormat() { return internalFormat; }
+
+        public void bind(int unit) {
+            GLStateCache.bindTexture(unit, GL_TEXTURE_2D_ARRAY, textureId);
+        }
+    }
+
+    private final List<TextureArray> arrays = new ArrayList<>();
+    private final Map<Texture, Entry> entries = new IdentityHashMap<>();
+    private int copyFbo = 0;
+    private int maxLayers = 256;
+
+    public void init() {
+        copyFbo = glGenFramebuffers();
+        maxLayers = Math.max(1, glGetInteger(GL_MAX_ARRAY_TEXTURE_LAYERS));
+        System.out.println("  TextureArrayManager: Initialized (max " + maxLayers + " layers per array).");
+    }
+
+    /** Zwraca miejsce tekstury w tablicach, dodając ją przy pierwszym użyciu. */
+    public Entry getOrAdd(Texture texture) {
+        Entry entry = entries.get(texture);
+        if (entry == null) {
+            entry = add(texture);
+            entries.put(texture, entry);
+        }
+        return entry;
+    }
+
+    private Entry add(Texture texture) {
+        int w = texture.getWidth(), h = texture.getHeight();
+        if (texture.isCompressed()) {
+            return addCompressed(texture, w, h);
+        }
+        if (w <= ATLAS_MAX_ENTRY_SIZE && h <= ATLAS_MAX_ENTRY_SIZE) {
+            return addToAtlas(texture, w, h);
+        }
+        TextureArray array = findArray(w, h, false, GL_RGBA8, mipLevels(w, h));
+        if (array == null || array.layerCount == array.capacity && array.capacity >= maxLayers) {
+            array = createArray(w, h, false, GL_RGBA8, mipLevels(w, h), null);
+        }
+        int layer = appendLayer(array);
+        copyTexture(texture, array, 0, 0, layer, w, h);
+        return new Entry(array, layer, 0.0f, 0.0f, 1.0f, 1.0f);
+    }
+
+    private Entry addCompressed(Texture texture, int w, int h) {
+        TextureArray array = findArray(w, h, false, texture.getInternalFormat(), texture.getMipLevels());
+        if (array == null || array.layerCount == array.capacity && array.capacity >= maxLayers) {
+            int[] levelBytes = new int[texture.getMipLevels()];
+            GLStateCache.bindTexture(GL_TEXTURE_2D, texture.getTextureId());
+            for (int level = 0; level < levelBytes.length; level++) {
+                levelBytes[level] = glGetTexLevelParameteri(GL_TEXTURE_2D, level, GL_TEXTURE_COMPRESSED_IMAGE_SIZE);
+            }
+            array = createArray(w, h, false, texture.getInternalFormat(), texture.getMipLevels(), levelBytes);
+        }
+        int layer = appendLayer(array);
+        for (int level = 0; level < array.levels; level++) {
+            GLStateCache.bindTexture(GL_TEXTURE_2D, texture.getTextureId());
+            ByteBuffer blocks = MemoryUtil.memAlloc(array.compressedLevelBytes[level]);
+            try {
+                glGetCompressedTexImage(GL_TEXTURE_2D, level, blocks);
+                GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, array.textureId);
+                glCompressedTexSubImage3D(GL_TEXTURE_2D_ARRAY, level, 0, 0, layer,
+                        Math.max(1, w >> level), Math.max(1, h >> level), 1, array.internalFormat, blocks);
+            } finally {
+                MemoryUtil.memFree(blocks);
+            }
+        }
+        return new Entry(array, layer, 0.0f, 0.0f, 1.0f, 1.0f);
+    }
+
+    private Entry addToAtlas(Texture texture, int w, int h) {
+        int atlasLevels = mipLevels(ATLAS_PAGE_SIZE, ATLAS_PAGE_SIZE);
+        TextureArray array = findArray(ATLAS_PAGE_SIZE, ATLAS_PAGE_SIZE, true, GL_RGBA8, atlasLevels);
+        if (array == null) array = createArray(ATLAS_PAGE_SIZE, ATLAS_PAGE_SIZE, true, GL_RGBA8, atlasLevels, null);
+        int paddedW = w + 2 * ATLAS_PADDING, paddedH = h + 2 * ATLAS_PADDING;
+
+        // Półki: wpisy obok siebie w wierszu o wysokości najwyższego wpisu; nowy wiersz lub nowa warstwa, gdy brak miejsca
+        if (array.layerCount == 0) {
+            appendLayer(array);
+        } else if (array.shelfX + paddedW > ATLAS_PAGE_SIZE) {
+            array.shelfY += array.shelfHeight;
+            array.shelfX = 0;
+            array.shelfHeight = 0;
+        }
+        if (array.shelfY + paddedH > ATLAS_PAGE_SIZE) {
+            if (array.layerCount == array.capacity && array.capacity >= maxLayers) {
+                array = createArray(ATLAS_PAGE_SIZE, ATLAS_PAGE_SIZE, true, GL_RGBA8, atlasLevels, null);
+            }
+            appendLayer(array);
+            array.shelfX = 0;
+            array.shelfY = 0;
+            array.shelfHeight = 0;
+        }
+        int x = array.shelfX + ATLAS_PADDING, y = array.shelfY + ATLAS_PADDING;
+        int layer = array.layerCount - 1;
+        array.shelfX += paddedW;
+        array.shelfHeight = Math.max(array.shelfHeight, paddedH);
+
+        copyTexture(texture, array, x, y, layer, w, h);
+        float size = ATLAS_PAGE_SIZE;
+        return new Entry(array, layer, x / size, y / size, w / size, h / size);
+    }
+
+    // Ostatnia tablica o danym rozmiarze warstwy i formacie (wcześniejsze są pełne)
+    private TextureArray findArray(int width, int height, boolean atlas, int internalFormat, int levels) {
+        for (int i = arrays.size() - 1; i >= 0; i--) {
+            TextureArray array = arrays.get(i);
+            if (array.atlas == atlas && array.width == width && array.height == height
+                    && array.internalFormat == internalFormat && array.levels == levels) return array;
+        }
+        return null;
+    }
+
+    private TextureArray createArray(int width, int height, boolean atlas, int internalFormat, int levels, int[] compressedLevelBytes) {
+        TextureArray array = new TextureArray(arrays.size(), width, height, atlas, internalFormat, levels, compressedLevelBytes);
+        array.textureId = allocateStorage(array, INITIAL_LAYERS);
+        array.capacity = INITIAL_LAYERS;
+        arrays.add(array);
+        return array;
+    }
+
+    private int appendLayer(TextureArray array) {
+        if (array.layerCount == array.capacity) {
+            grow(array, Math.min(maxLayers, array.capacity * 2));
+        }
+        return array.layerCount++;
+    }
+
+    private static int mipLevels(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    private int allocateStorage(TextureArray array, int layers) {
+        int textureId = glGenTextures();
+        GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, textureId);
+        for (int level = 0; level < array.levels; level++) {
+            int levelWidth = Math.max(1, array.width >> level), levelHeight = Math.max(1, array.height >> level);
+            if (array.isCompressed()) {
+                nglCompressedTexImage3D(GL_TEXTURE_2D_ARRAY, level, array.internalFormat, levelWidth, levelHeight, layers, 0,
+                        array.compressedLevelBytes[level] * layers, 0L);
+            } else {
+                glTexImage3D(GL_TEXTURE_2D_ARRAY, level, GL_RGBA8, levelWidth, levelHeight,
+                        layers, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+            }
+        }
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAX_LEVEL, array.levels - 1);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        return textureId;
+    }
+
+    // Przepisuje warstwy do większej tablicy (RGBA8: poziom 0, mipmapy odtwarzane potem; skompresowane: wszystkie poziomy)
+    private void grow(TextureArray array, int newCapacity) {
+        int newTexture = allocateStorage(array, newCapacity);
+        if (array.isCompressed()) {
+            growCompressed(array, newTexture);
+        } else {
+            for (int layer = 0; layer < array.layerCount; layer++) {
+                GLStateCache.bindFramebuffers(copyFbo, 0);
+                glFramebufferTextureLayer(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, array.textureId, 0, layer);
+                glReadBuffer(GL_COLOR_ATTACHMENT0);
+                GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, newTexture);
+                glCopyTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, 0, 0, array.width, array.height);
+            }
+            GLStateCache.bindFramebuffer(0);
+        }
+        glDeleteTextures(array.textureId);
+        GLStateCache.onTextureDeleted(array.textureId);
+        array.textureId = newTexture;
+        array.capacity = newCapacity;
+        array.mipmapsDirty = !array.isCompressed();
+    }
+
+    // Bloki wszystkich poziomów przez CPU - warstwy leżą w poziomie jedna po drugiej
+    private void growCompressed(TextureArray array, int newTexture) {
+        for (int level = 0; level < array.levels; level++) {
+            ByteBuffer blocks = MemoryUtil.memAlloc(array.compressedLevelBytes[level] * array.capacity);
+            try {
+                GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, array.textureId);
+                glGetCompressedTexImage(GL_TEXTURE_2D_ARRAY, level, blocks);
+                blocks.limit(array.compressedLevelBytes[level] * array.layerCount);
+                GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, newTexture);
+                glCompressedTexSubImage3D(GL_TEXTURE_2D_ARRAY, level, 0, 0, 0, Math.max(1, array.width >> level),
+                        Math.max(1, array.height >> level), array.layerCount, array.internalFormat, blocks);
+            } finally {
+                MemoryUtil.memFree(blocks);
+            }
+        }
+    }
+
+    private void copyTexture(Texture texture, TextureArray array, int x, int y, int layer, int w, int h) {
+        GLStateCache.bindFramebuffers(copyFbo, 0);
+        glFramebufferTexture2D(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture.getTextureId(), 0);
+        glReadBuffer(GL_COLOR_ATTACHMENT0);
+        if (glCheckFramebufferStatus(GL_READ_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
+            System.err.println("TextureArrayManager: Texture " + texture.getTextureId() + " is not readable, layer left empty.");
+        } else {
+            GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, array.textureId);
+            glCopyTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, x, y, layer, 0, 0, w, h);
+        }
+        glFramebufferTexture2D(GL_READ_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, 0, 0);
+        GLStateCache.bindFramebuffer(0);
+        array.mipmapsDirty = true;
+    }
+
+    /** Odtwarza mipmapy tablic zmienionych od ostatniego wywołania (przed rysowaniem). */
+    public void updateMipmaps() {
+        for (TextureArray array : arrays) {
+            if (!array.mipmapsDirty) continue;
+            GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, array.textureId);
+            glGenerateMipmap(GL_TEXTURE_2D_ARRAY);
+            array.mipmapsDirty = false;
+        }
+    }
+
+    public int getArrayCount() { return arrays.size(); }
+    public TextureArray getArray(int index) { return arrays.get(index); }
+
+    public void cleanup() {
+        for (TextureArray array : arrays) {
+            glDeleteTextures(array.textureId);
+            GLStateCache.onTextureDeleted(array.textureId);
+        }
+        arrays.clear();
+        entries.clear();
+        if (copyFbo != 0) {
+            glDeleteFramebuffers(copyFbo);
+            GLStateCache.onFramebufferDeleted(copyFbo);
+            copyFbo = 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.example.graphics;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * Uchwyt do pojedynczego uniformu programu shaderowego.
+ * Uchwyty są tworzone raz, podczas refleksji po linkowaniu programu (ShaderProgram),
+ * i przechowują lokację jako int - bez budowania nazw i wyszukiwania w mapie co klatkę.
+ * Każdy uchwyt trzyma kopię (cień) ostatnio wysłanej wartości; ustawienie tej samej
+ * wartości ponownie nie generuje wywołania OpenGL.
+ * UWAGA: Jak każdy glUniform*, wymaga aby program-właściciel był aktualnie zbindowany.
+ */
+public class Uniform {
+
+    /** Uchwyt dla uniformu nieistniejącego (lub zoptymalizowanego przez kompilator) - ignoruje zapisy. */
+    public static final Uniform INACTIVE = new Uniform("<inactive>", -1, 0);
+
+    private final String name;
+    private final int location;
+    private final int type; // Typ GL zwrócony przez glGetActiveUniform (np. GL_FLOAT_VEC3)
+
+    // Cień wartości (ostatnio wysłanej do GL)
+    private final float[] shadow = new float[16];
+    private final float[] scratch = new float[16];
+    private int intShadow;
+    private boolean hasValue = false;
+
+    Uniform(String name, int location, int type) {
+        this.name = name;
+        this.location = location;
+        this.type = type;
+    }
+
+    public void set(int value) {
+        if (location < 0 || (hasValue && intShadow == value)) return;
+        intShadow = value;
+        hasValue = true;
+        glUniform1i(location, value);
+    }
+
+    public void set(boolean value) {
+        set(value ? 1 : 0);
+    }
+
+    public void set(float value) {
+        if (location < 0 || (hasValue && shadow[0] == value)) return;
+        shadow[0] = value;
+        hasValue = true;
+        glUniform1f(location, value);
+    }
+
+    public void set(float x, float y, float z) {
+        if (location < 0 || (hasValue && shadow[0] == x && shadow[1] == y && shadow[2] == z)) return;
+        shadow[0] = x; shadow[1] = y; shadow[2] = z;
+        hasValue = true;
+        glUniform3f(location, x, y, z);
+    }
+
+    public void set(Vector3f value) {
+        set(value.x, value.y, value.z);
+    }
+
+    public void set(Matrix4f value) {
+        if (location < 0) return;
+        value.get(scratch);
+        if (hasValue && equals16(scratch, shadow)) return;
+        System.arraycopy(scratch, 0, shadow, 0, 16);
+        hasValue = true;
+        glUniformMatrix4fv(location, false, shadow);
+    }
+
+    private static boolean equals16(float[] a, float[] b) {
+        for (int i = 0; i < 16; i++) {
+            if (a[i] != b[i]) return false;
+        }
+        return true;
+    }
+
+    /** Unieważnia cień wartości (np. po zewnętrznej zmianie stanu programu). */
+    public void invalidate() {
+        hasValue = false;
+    }
+
+    // --- Gettery ---
+    public String getName() { return name; }
+    public int getLocation() { return location; }
+    public int getType() { return type; }
+    public boolean isActive() { return location >= 0; }
+}
@@ -0,0 +1,179 @@
+package org.example.graphics;
+
+import org.example.util.VertexPacking;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+import static org.lwjgl.opengl.GL11.GL_SHORT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+
+/**
+ * Opis układu przeplatanego (interleaved) wierzchołka: pozycja (zawsze float3),
+ * normalna i UV w wybranym formacie. Wszystkie atrybuty leżą w jednym VBO,
+ * jeden wierzchołek po drugim, z przesunięciami wyrównanymi do 4 bajtów.
+ * <pre>
+ * FULL      : pos float3 (12) + normal float3 (12) + uv float2 (8)   = 32 B
+ * COMPACT   : pos float3 (12) + normal oct snorm16x2 (4) + uv unorm16x2 (4) = 20 B
+ * </pre>
+ * Normalne oktaedryczne są dekodowane w shaderze (uniform octahedralNormals).
+ */
+public final class VertexLayout {
+
+    public enum NormalFormat {
+        FLOAT(12),      // 3 x float
+        HALF(8),        // 3 x half float + 2 bajty dopełnienia
+        OCTAHEDRAL(4);  // 2 x snorm16, dekodowane w shaderze
+
+        final int bytes;
+        NormalFormat(int bytes) { this.bytes = bytes; }
+    }
+
+    public enum UvFormat {
+        FLOAT(8),       // 2 x float
+        HALF(4),        // 2 x half float
+        UNORM16(4);     // 2 x unorm16 - tylko dla UV w zakresie [0, 1]
+
+        final int bytes;
+        UvFormat(int bytes) { this.bytes = bytes; }
+    }
+
+    public static final int POSITION_ATTRIB = 0;
+    public static final int NORMAL_ATTRIB = 1;
+    public static final int UV_ATTRIB = 2;
+    private static final int POSITION_BYTES = 12;
+
+    /** Pełna precyzja (dotychczasowy format, przeplatany). */
+    public static final VertexLayout FULL = new VertexLayout(NormalFormat.FLOAT, UvFormat.FLOAT);
+    /** Najmniejszy układ: normalne oktaedryczne i UV unorm16. */
+    public static final VertexLayout COMPACT = new VertexLayout(NormalFormat.OCTAHEDRAL, UvFormat.UNORM16);
+    /** Normalne oktaedryczne, UV w pełnej precyzji (UV poza [0, 1], np. powtarzane tekstury). */
+    public static final VertexLayout COMPACT_NORMALS = new VertexLayout(NormalFormat.OCTAHEDRAL, UvFormat.FLOAT);
+
+    private final NormalFormat normalFormat;
+    private final UvFormat uvFormat;
+    private final int normalOffset;
+    private final int uvOffset;
+    private final int stride;
+
+    public VertexLayout(NormalFormat normalFormat, UvFormat uvFormat) {
+        this.normalFormat = normalFormat;
+        this.uvFormat = uvFormat;
+        this.normalOffset = POSITION_BYTES;
+        this.uvOffset = normalOffset + normalFormat.bytes;
+        this.stride = uvOffset + uvFormat.bytes;
+    }
+
+    /**
+     * Wybiera najmniejszy układ bezstratny dla danych UV: UNORM16 gdy wszystkie UV mieszczą się w [0, 1],
+     * w przeciwnym razie UV pozostają jako float (normalne zawsze oktaedryczne).
+     */
+    public static VertexLayout compactFor(float[] uvs) {
+        if (uvs != null) {
+            for (float uv : uvs) {
+                if (uv < 0.0f || uv > 1.0f) {
+                    return COMPACT_NORMALS;
+                }
+            }
+        }
+        return COMPACT;
+    }
+
+    /**
+     * Zapisuje jeden wierzchołek do bufora (zapis absolutny, pozycja bufora się nie zmienia).
+     * Brakujące dane (krótsze tablice normalnych/UV) są zapisywane jako zera.
+     */
+    void writeVertex(ByteBuffer buffer, int vertex, float[] positions, float[] normals, float[] uvs, float[] scratch) {
+        int base = vertex * stride;
+        int p = vertex * 3;
+        buffer.putFloat(base, positions[p]);
+        buffer.putFloat(base + 4, positions[p + 1]);
+        buffer.putFloat(base + 8, positions[p + 2]);
+
+        float nx = 0.0f, ny = 0.0f, nz = 0.0f;
+        if (normals != null && p + 2 < normals.length) {
+            nx = normals[p]; ny = normals[p + 1]; nz = normals[p + 2];
+        }
+        int n = base + normalOffset;
+        switch (normalFormat) {
+            case FLOAT:
+                buffer.putFloat(n, nx);
+                buffer.putFloat(n + 4, ny);
+                buffer.putFloat(n + 8, nz);
+                break;
+            case HALF:
+                buffer.putShort(n, VertexPacking.toHalf(nx));
+                buffer.putShort(n + 2, VertexPacking.toHalf(ny));
+                buffer.putShort(n + 4, VertexPacking.toHalf(nz));
+                buffer.putShort(n + 6, (short) 0);
+                break;
+            case OCTAHEDRAL:
+                VertexPacking.encodeOctahedral(nx, ny, nz, scratch);
+                buffer.putShort(n, VertexPacking.toSnorm16(scratch[0]));
+                buffer.putShort(n + 2, VertexPacking.toSnorm16(scratch[1]));
+                break;
+        }
+
+        float u = 0.0f, v = 0.0f;
+        int t = vertex * 2;
+        if (uvs != null && t + 1 < uvs.length) {
+            u = uvs[t]; v = uvs[t + 1];
+        }
+        int uvBase = base + uvOffset;
+        switch (uvFormat) {
+            case FLOAT:
+                buffer.putFloat(uvBase, u);
+                buffer.putFloat(uvBase + 4, v);
+                break;
+            case HALF:
+                buffer.putShort(uvBase, VertexPacking.toHalf(u));
+                buffer.putShort(uvBase + 2, VertexPacking.toHalf(v));
+                break;
+            case UNORM16:
+                buffer.putShort(uvBase, VertexPacking.toUnorm16(u));
+                buffer.putShort(uvBase + 2, VertexPacking.toUnorm16(v));
+                break;
+        }
+    }
+
+    /** Ustawia wskaźniki atrybutów 0-2 dla aktualnie zbindowanego VAO i VBO. */
+    void setupAttributes() {
+        glVertexAttribPointer(POSITION_ATTRIB, 3, GL_FLOAT, false, stride, 0);
+        glEnableVertexAttribArray(POSITION_ATTRIB);
+
+        switch (normalFormat) {
+            case FLOAT:
+                glVertexAttribPointer(NORMAL_ATTRIB, 3, GL_FLOAT, false, stride, normalOffset);
+                break;
+            case HALF:
+                glVertexAttribPointer(NORMAL_ATTRIB, 3, GL_HALF_FLOAT, false, stride, normalOffset);
+                break;
+            case OCTAHEDRAL:
+                glVertexAttribPointer(NORMAL_ATTRIB, 2, GL_SHORT, true, stride, normalOffset);
+                break;
+        }
+        glEnableVertexAttribArray(NORMAL_ATTRIB);
+
+        switch (uvFormat) {
+            case FLOAT:
+                glVertexAttribPointer(UV_ATTRIB, 2, GL_FLOAT, false, stride, uvOffset);
+                break;
+            case HALF:
+                glVertexAttribPointer(UV_ATTRIB, 2, GL_HALF_FLOAT, false, stride, uvOffset);
+                break;
+            case UNORM16:
+                glVertexAttribPointer(UV_ATTRIB, 2, GL_UNSIGNED_SHORT, true, stride, uvOffset);
+                break;
+        }
+        glEnableVertexAttribArray(UV_ATTRIB);
+    }
+
+    // --- Gettery ---
+    public NormalFormat getNormalFormat() { return normalFormat; }
+    public UvFormat getUvFormat() { return uvFormat; }
+    public int getStride() { return stride; }
+    public boolean hasOctahedralNormals() { return normalFormat == NormalFormat.OCTAHEDRAL; }
+}
@@ -5,6 +5,10 @@ package org.example.graphics.light;
  * Wzór: attenuation = 1.0 / (constant + linear * distance + quadratic * distance^2)
  */
 public class Attenuation {
+
+    /** Próg jasności (względem 1.0), poniżej którego wkład światła uznajemy za zerowy (1/256 - jeden poziom 8-bitowy). */
+    public static final float LIGHT_CUTOFF = 1.0f / 256.0f;
+
     public float constant;
     public float linear;
     public float quadratic;
@@ -24,6 +28,24 @@ public class Attenuation {
         this.quadratic = quadratic;
     }
 
+    /**
+     * Wyznacza zasięg światła z współczynników tłumienia: odległość, w której
+     * peakIntensity / (constant + linear * d + quadratic * d^2) spada do LIGHT_CUTOFF.
+     * @param peakIntensity Maksymalna jasność światła (intensywność * największa składowa koloru).
+     * @return Zasięg; Float.POSITIVE_INFINITY gdy światło nie gaśnie (linear == quadratic == 0).
+     */
+    public float computeRange(float peakIntensity) {
+        float target = peakIntensity / LIGHT_CUTOFF - constant; // quadratic*d^2 + linear*d - target = 0
+        if (target <= 0.0f) return 0.0f;
+        if (quadratic > 0.0f) {
+            return (float) ((-linear + Math.sqrt(linear * linear + 4.0 * quadratic * target)) / (2.0 * quadratic));
+        }
+        if (linear > 0.0f) {
+            return target / linear;
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+
     // Można dodać predefiniowane tłumienia dla różnych zasięgów
     public static Attenuation forRange(float range) {
         // Przykładowe wartości (wymagają dostrojenia!)
@@ -1,7 +1,6 @@
 package org.example.graphics.light;
 
 import org.joml.Vector3f;
-import org.joml.Matrix4f;
 
 public class DirectionalLight {
 
@@ -9,8 +8,11 @@ public class DirectionalLight {
     private Vector3f direction;
     private float intensity;
 
-    private float shadowPosMult = 10.0f;
-    private float orthoSize = 10.0f;
+    // Kaskadowe mapy cieni (ShadowCascades) - kaskady pokrywają bryłę widzenia kamery do shadowDistance
+    private int cascadeCount = 4;
+    private float cascadeSplitLambda = 0.75f; // 0 = podział równomierny, 1 = logarytmiczny
+    private float shadowDistance = 60.0f;     // Odległość (w przestrzeni widoku), do której rzucane są cienie
+    private float casterExtension = 30.0f;    // Przedłużenie bryły kaskady w stronę światła (obiekty poza kadrem rzucające cień)
 
     public DirectionalLight(Vector3f color, Vector3f direction, float intensity) {
         this.color = color;
@@ -21,26 +23,28 @@ public class DirectionalLight {
     public Vector3f getColor() { return color; }
     public Vector3f getDirection() { return direction; }
     public float getIntensity() { return intensity; }
+    public int getCascadeCount() { return cascadeCount; }
+    public float getCascadeSplitLambda() { return cascadeSplitLambda; }
+    public float getShadowDistance() { return shadowDistance; }
+    public float getCasterExtension() { return casterExtension; }
 
     public void setColor(Vector3f color) { this.color = color; }
     public void setDirection(Vector3f direction) { this.direction = direction.normalize(); }
     public void setIntensity(float intensity) { this.intensity = intensity; }
-
-    public Matrix4f getLightProjectionMatrix() {
-        return new Matrix4f().ortho(-orthoSize, orthoSize, -orthoSize, orthoSize, -20.0f, 20.0f);
-    }
-
-    public Matrix4f getLightViewMatrix() {
-        Vector3f lightPos = new Vector3f(direction).mul(-shadowPosMult);
-        Vector3f target = new Vector3f(0.0f, 0.0f, 0.0f);
-        Vector3f up = new Vector3f(0.0f, 1.0f, 0.0f);
-        if (Math.abs(direction.y) > 0.99f) {
-            up = new Vector3f(1.0f, 0.0f, 0.0f);
-        }
-        return new Matrix4f().lookAt(lightPos, target, up);
-    }
-
-    public Matrix4f getLightSpaceMatrix() {
-        return new Matrix4f(getLightProjectionMatrix()).mul(getLightViewMatrix());
+    /** Liczba kaskad (przycinana do ShadowCascades.MAX_CASCADES przy renderowaniu). */
+    public void setCascadeCount(int cascadeCount) { this.cascadeCount = Math.max(1, cascadeCount); }
+    public void setCascadeSplitLambda(float lambda) { this.cascadeSplitLambda = Math.max(0.0f, Math.min(1.0f, lambda)); }
+    public void setShadowDistance(float shadowDistance) { this.shadowDistance = shadowDistance; }
+    public void setCasterExtension(float casterExtension) { this.casterExtension = Math.max(0.0f, casterExtension); }
+
+    /** Kopiuje wszystkie parametry z innego światła (np. kopia renderowania w trybie potokowym). */
+    public void set(DirectionalLight other) {
+        this.color.set(other.color);
+        this.direction.set(other.direction);
+        this.intensity = other.intensity;
+        this.cascadeCount = other.cascadeCount;
+        this.cascadeSplitLambda = other.cascadeSplitLambda;
+        this.shadowDistance = other.shadowDistance;
+        this.casterExtension = other.casterExtension;
     }
-}
\ No newline at end of file
+}
@@ -20,8 +20,24 @@ public class PointLight {
         this(position, color, intensity, Attenuation.forRange(range));
     }
 
+    /** Zasięg światła wyznaczony z tłumienia (patrz Attenuation.computeRange). */
+    public float getRange() {
+        float peak = intensity * Math.max(color.x, Math.max(color.y, color.z));
+        return attenuation.computeRange(peak);
+    }
+
     // Prosty konstruktor
     public PointLight(Vector3f position, Vector3f color, float intensity) {
         this(position, color, intensity, new Attenuation(1.0f, 0.09f, 0.032f)); // Domyślne tłumienie dla ~50 jednostek
     }
-}
\ No newline at end of file
+
+    /** Kopiuje wszystkie parametry z innego światła (np. kopia renderowania w trybie potokowym). */
+    public void set(PointLight other) {
+        this.position.set(other.position);
+        this.color.set(other.color);
+        this.intensity = other.intensity;
+        this.attenuation.constant = other.attenuation.constant;
+        this.attenuation.linear = other.attenuation.linear;
+        this.attenuation.quadratic = other.attenuation.quadratic;
+    }
+}
@@ -7,6 +7,7 @@ public class SpotLight {
     public Vector3f direction;
     public float cutOffAngle;   // Kąt wewnętrznego stożka w stopniach
     public float outerCutOffAngle; // Kąt zewnętrznego stożka w stopniach
+    private boolean shadowCaster = false; // Czy reflektor rzuca cień (kafel w atlasie cieni)
 
     public SpotLight(PointLight pointLight, Vector3f direction, float cutOffAngle, float outerCutOffAngle) {
         if (pointLight == null) throw new IllegalArgumentException("PointLight cannot be null for SpotLight");
@@ -22,6 +23,18 @@ public class SpotLight {
         this(new PointLight(position, color, intensity, range), direction, cutOffAngle, outerCutOffAngle);
     }
 
+    public boolean isShadowCaster() { return shadowCaster; }
+    public void setShadowCaster(boolean shadowCaster) { this.shadowCaster = shadowCaster; }
+
+    /** Kopiuje wszystkie parametry z innego reflektora (np. kopia renderowania w trybie potokowym). */
+    public void set(SpotLight other) {
+        this.pointLight.set(other.pointLight);
+        this.direction.set(other.direction);
+        this.cutOffAngle = other.cutOffAngle;
+        this.outerCutOffAngle = other.outerCutOffAngle;
+        this.shadowCaster = other.shadowCaster;
+    }
+
     // Gettery cosinusów kątów (często używane w shaderach)
     public float getCutOffCos() {
         return (float) Math.cos(Math.toRadians(cutOffAngle));
@@ -30,4 +43,24 @@ public class SpotLight {
     public float getOuterCutOffCos() {
         return (float) Math.cos(Math.toRadians(outerCutOffAngle));
     }
+
+    /**
+     * Wyznacza najmniejszą kulę otaczającą stożek reflektora (zasięg z tłumienia, kąt zewnętrzny).
+     * @param outCenter Wektor wynikowy - środek kuli.
+     * @return Promień kuli.
+     */
+    public float getBoundingSphere(Vector3f outCenter) {
+        float range = pointLight.getRange();
+        double angle = Math.toRadians(outerCutOffAngle);
+        float cos = (float) Math.cos(angle);
+        if (angle > Math.PI / 4.0) {
+            // Szeroki stożek - kula o środku w podstawie stożka
+            outCenter.set(direction).mul(cos * range).add(pointLight.position);
+            return (float) Math.sin(angle) * range;
+        }
+        // Wąski stożek - kula przechodząca przez wierzchołek i krawędź podstawy
+        float radius = range / (2.0f * cos);
+        outCenter.set(direction).mul(radius).add(pointLight.position);
+        return radius;
+    }
 }
\ No newline at end of file
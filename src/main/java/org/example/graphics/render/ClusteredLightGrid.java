@@ -0,0 +1,369 @@
+package org.example.graphics.render;
+
+import org.example.core.JobSystem;
+import org.example.exception.ResourceLoadException;
+import org.example.graphics.GLStateCache;
+import org.example.graphics.light.PointLight;
+import org.example.graphics.light.SpotLight;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+
+import static org.example.graphics.render.Renderer.MAX_POINT_LIGHTS;
+import static org.example.graphics.render.Renderer.MAX_SPOT_LIGHTS;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_R16UI;
+import static org.lwjgl.opengl.GL30.GL_RG32UI;
+import static org.lwjgl.opengl.GL31.GL_TEXTURE_BUFFER;
+import static org.lwjgl.opengl.GL31.glTexBuffer;
+
+/**
+ * Siatka klastrów (froxeli) dla clustered forward shading.
+ * Bryła widzenia kamery jest dzielona na DIM_X x DIM_Y kafli ekranu i DIM_Z wykładniczych
+ * warstw głębokości. Co klatkę każde światło (kula z zasięgu tłumienia, dla reflektora
+ * kula otaczająca stożek) jest przypisywane do klastrów, które przecina. Przypisanie działa
+ * równolegle - każda warstwa Z jest osobnym zadaniem i zapisuje tylko swoje klastry.
+ *
+ * Wynik trafia do dwóch buforów tekstur (TBO):
+ * <pre>
+ * clusterGrid  (RG32UI) : x = przesunięcie w liście indeksów, y = liczba punktowych | (liczba reflektorów << 16)
+ * lightIndices (R16UI)  : indeksy świateł punktowych klastra, a po nich indeksy reflektorów
+ * </pre>
+ * Indeksy odpowiadają kolejności w tablicach LightBlock (SceneUniformBuffer): pominięte nulle,
+ * obcięcie do MAX_POINT_LIGHTS / MAX_SPOT_LIGHTS.
+ */
+public class ClusteredLightGrid {
+
+    public static final int DIM_X = 16;
+    public static final int DIM_Y = 9;
+    public static final int DIM_Z = 24;
+    public static final int CLUSTER_COUNT = DIM_X * DIM_Y * DIM_Z;
+
+    // Limity świateł na klaster (nadmiarowe światła są pomijane)
+    public static final int MAX_POINT_LIGHTS_PER_CLUSTER = 64;
+    public static final int MAX_SPOT_LIGHTS_PER_CLUSTER = 16;
+
+    // Jednostki tekstur dla samplerów TBO (0-2 zajmują materiał i mapa cieni)
+    public static final int CLUSTER_GRID_TEXTURE_UNIT = 3;
+    public static final int LIGHT_INDEX_TEXTURE_UNIT = 4;
+
+    // === Zasoby GL ===
+    private int gridBufferId, gridTextureId;
+    private int indexBufferId, indexTextureId;
+    private IntBuffer gridStaging;
+    private ShortBuffer indexStaging;
+
+    // === Geometria klastrów w przestrzeni widoku (przeliczana przy zmianie projekcji) ===
+    private final float[] clusterBounds = new float[CLUSTER_COUNT * 6]; // minX, minY, minZ, maxX, maxY, maxZ
+    private final Matrix4f cachedProjection = new Matrix4f();
+    private boolean boundsValid = false;
+    private float near, far;
+    private float sliceScale, sliceBias; // slice = log(z) * scale + bias
+
+    // === Światła w przestrzeni widoku (pierwsze numPoint to punktowe, potem reflektory) ===
+    private static final int MAX_LIGHTS = MAX_POINT_LIGHTS + MAX_SPOT_LIGHTS;
+    private final float[] lightX = new float[MAX_LIGHTS], lightY = new float[MAX_LIGHTS], lightZ = new float[MAX_LIGHTS];
+    private final float[] lightRadius = new float[MAX_LIGHTS];
+    private final int[] lightMinTileX = new int[MAX_LIGHTS], lightMaxTileX = new int[MAX_LIGHTS];
+    private final int[] lightMinTileY = new int[MAX_LIGHTS], lightMaxTileY = new int[MAX_LIGHTS];
+    private final int[] lightMinSlice = new int[MAX_LIGHTS], lightMaxSlice = new int[MAX_LIGHTS];
+    private final boolean[] lightActive = new boolean[MAX_LIGHTS];
+    private int numPointLights, numSpotLights;
+
+    // === Wynik przypisania (każdy klaster należy do jednej warstwy - brak wyścigów) ===
+    private final int[] pointCounts = new int[CLUSTER_COUNT];
+    private final int[] spotCounts = new int[CLUSTER_COUNT];
+    private final short[] pointIndices = new short[CLUSTER_COUNT * MAX_POINT_LIGHTS_PER_CLUSTER];
+    private final short[] spotIndices = new short[CLUSTER_COUNT * MAX_SPOT_LIGHTS_PER_CLUSTER];
+    private int totalIndexCount = 0;
+
+    private final JobSystem.RangeTask sliceTask = (start, end) -> {
+        for (int z = start; z < end; z++) assignSlice(z);
+    };
+    private final Vector4f tmp = new Vector4f();
+    private final Vector3f tmpCenter = new Vector3f();
+    private final Matrix4f inverseProjection = new Matrix4f();
+
+    public void init() throws ResourceLoadException {
+        System.out.println("  ClusteredLightGrid: Initializing (" + DIM_X + "x" + DIM_Y + "x" + DIM_Z + " clusters)...");
+        gridBufferId = glGenBuffers();
+        indexBufferId = glGenBuffers();
+        gridTextureId = glGenTextures();
+        indexTextureId = glGenTextures();
+        if (gridBufferId == 0 || indexBufferId == 0 || gridTextureId == 0 || indexTextureId == 0) {
+            throw new ResourceLoadException("Could not create cluster texture buffers");
+        }
+        gridStaging = MemoryUtil.memAllocInt(CLUSTER_COUNT * 2);
+        indexStaging = MemoryUtil.memAllocShort(CLUSTER_COUNT * 8); // Rośnie w razie potrzeby
+
+        // Pusta siatka - żeby samplery były poprawne przed pierwszym update()
+        upload();
+        GLStateCache.bindTexture(CLUSTER_GRID_TEXTURE_UNIT, GL_TEXTURE_BUFFER, gridTextureId);
+        glTexBuffer(GL_TEXTURE_BUFFER, GL_RG32UI, gridBufferId);
+        GLStateCache.bindTexture(LIGHT_INDEX_TEXTURE_UNIT, GL_TEXTURE_BUFFER, indexTextureId);
+        glTexBuffer(GL_TEXTURE_BUFFER, GL_R16UI, indexBufferId);
+        System.out.println("  ClusteredLightGrid: Initialized.");
+    }
+
+    /**
+     * Przypisuje światła do klastrów dla bieżącej klatki i wysyła wynik do GPU.
+     */
+    public void update(Matrix4f projection, Matrix4f view, int screenWidth, int screenHeight,
+                       List<PointLight> pointLights, List<SpotLight> spotLights) {
+        if (gridBufferId == 0) return;
+        if (!boundsValid || !cachedProjection.equals(projection)) {
+            rebuildClusterBounds(projection);
+        }
+
+        gatherLights(projection, view, pointLights, spotLights);
+
+        // Przypisanie - równolegle po warstwach Z (gęste warstwy bliżej kamery wyrównuje podział adaptacyjny)
+        JobSystem.parallelFor(DIM_Z, 1, sliceTask);
+
+        compact();
+        upload();
+    }
+
+    // --- Geometria klastrów ---
+
+    private void rebuildClusterBounds(Matrix4f projection) {
+        cachedProjection.set(projection);
+        near = projection.perspectiveNear();
+        far = projection.perspectiveFar();
+        float logRatio = (float) Math.log(far / near);
+        sliceScale = DIM_Z / logRatio;
+        sliceBias = (float) (-DIM_Z * Math.log(near) / logRatio);
+        projection.invert(inverseProjection);
+
+        float[] rayX = new float[(DIM_X + 1) * (DIM_Y + 1)];
+        float[] rayY = new float[(DIM_X + 1) * (DIM_Y + 1)];
+        // Kierunki promieni przez narożniki kafli, przeskalowane do z = -1
+        for (int ty = 0; ty <= DIM_Y; ty++) {
+            for (int tx = 0; tx <= DIM_X; tx++) {
+                float ndcX = -1.0f + 2.0f * tx / DIM_X;
+                float ndcY = -1.0f + 2.0f * ty / DIM_Y;
+                inverseProjection.transform(tmp.set(ndcX, ndcY, -1.0f, 1.0f));
+                tmp.div(tmp.w);
+                float scale = -1.0f / tmp.z;
+                rayX[ty * (DIM_X + 1) + tx] = tmp.x * scale;
+                rayY[ty * (DIM_X + 1) + tx] = tmp.y * scale;
+            }
+        }
+
+        for (int z = 0; z < DIM_Z; z++) {
+            float sliceNear = sliceDepth(z);
+            float sliceFar = sliceDepth(z + 1);
+            for (int ty = 0; ty < DIM_Y; ty++) {
+                for (int tx = 0; tx < DIM_X; tx++) {
+                    float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+                    float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+                    for (int c = 0; c < 4; c++) {
+                        int r = (ty + (c >> 1)) * (DIM_X + 1) + tx + (c & 1);
+                        for (int d = 0; d < 2; d++) {
+                            float depth = d == 0 ? sliceNear : sliceFar;
+                            float x = rayX[r] * depth, y = rayY[r] * depth;
+                            minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+                            minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+                        }
+                    }
+                    int base = clusterIndex(tx, ty, z) * 6;
+                    clusterBounds[base] = minX;
+                    clusterBounds[base + 1] = minY;
+                    clusterBounds[base + 2] = -sliceFar;
+                    clusterBounds[base + 3] = maxX;
+                    clusterBounds[base + 4] = maxY;
+                    clusterBounds[base + 5] = -sliceNear;
+                }
+            }
+        }
+        boundsValid = true;
+    }
+
+    private float sliceDepth(int slice) {
+        return near * (float) Math.pow(far / near, (double) slice / DIM_Z);
+    }
+
+    private int depthToSlice(float depth) {
+        if (depth <= near) return 0;
+        int slice = (int) Math.floor(Math.log(depth) * sliceScale + sliceBias);
+        return Math.max(0, Math.min(DIM_Z - 1, slice));
+    }
+
+    private static int clusterIndex(int x, int y, int z) {
+        return x + DIM_X * (y + DIM_Y * z);
+    }
+
+    // --- Światła ---
+
+    private void gatherLights(Matrix4f projection, Matrix4f view, List<PointLight> pointLights, List<SpotLight> spotLights) {
+        numPointLights = 0;
+        if (pointLights != null) {
+            for (int i = 0; i < pointLights.size() && numPointLights < MAX_POINT_LIGHTS; i++) {
+                PointLight pl = pointLights.get(i);
+                if (pl == null) continue;
+                setupLight(numPointLights, projection, view, pl.position, pl.intensity > 0.0f ? pl.getRange() : 0.0f);
+                numPointLights++;
+            }
+        }
+        numSpotLights = 0;
+        if (spotLights != null) {
+            for (int i = 0; i < spotLights.size() && numSpotLights < MAX_SPOT_LIGHTS; i++) {
+                SpotLight sl = spotLights.get(i);
+                if (sl == null || sl.pointLight == null) continue;
+                float radius = sl.pointLight.intensity > 0.0f ? sl.getBoundingSphere(tmpCenter) : 0.0f;
+                setupLight(numPointLights + numSpotLights, projection, view, tmpCenter, radius);
+                numSpotLights++;
+            }
+        }
+    }
+
+    private void setupLight(int index, Matrix4f projection, Matrix4f view, Vector3f worldCenter, float radius) {
+        radius = Math.min(radius, far); // Światła bez tłumienia obejmują całą bryłę widzenia
+        view.transform(tmp.set(worldCenter.x, worldCenter.y, worldCenter.z, 1.0f));
+        float x = tmp.x, y = tmp.y, z = tmp.z;
+        lightX[index] = x; lightY[index] = y; lightZ[index] = z;
+        lightRadius[index] = radius;
+
+        float depthNear = -z - radius, depthFar = -z + radius;
+        lightActive[index] = radius > 0.0f && depthFar > near && depthNear < far;
+        if (!lightActive[index]) return;
+
+        lightMinSlice[index] = depthToSlice(depthNear);
+        lightMaxSlice[index] = depthToSlice(depthFar);
+
+        // Zakres kafli: rzut narożników AABB kuli (konserwatywny); kula przecinająca płaszczyznę near -> cały ekran
+        if (depthNear <= near) {
+            lightMinTileX[index] = 0; lightMaxTileX[index] = DIM_X - 1;
+            lightMinTileY[index] = 0; lightMaxTileY[index] = DIM_Y - 1;
+            return;
+        }
+        float minNdcX = Float.POSITIVE_INFINITY, minNdcY = Float.POSITIVE_INFINITY;
+        float maxNdcX = Float.NEGATIVE_INFINITY, maxNdcY = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < 8; c++) {
+            float cx = x + ((c & 1) == 0 ? -radius : radius);
+            float cy = y + ((c & 2) == 0 ? -radius : radius);
+            float cz = z + ((c & 4) == 0 ? -radius : radius);
+            projection.transform(tmp.set(cx, cy, cz, 1.0f));
+            float ndcX = tmp.x / tmp.w, ndcY = tmp.y / tmp.w;
+            minNdcX = Math.min(minNdcX, ndcX); maxNdcX = Math.max(maxNdcX, ndcX);
+            minNdcY = Math.min(minNdcY, ndcY); maxNdcY = Math.max(maxNdcY, ndcY);
+        }
+        lightMinTileX[index] = clampTile((int) Math.floor((minNdcX * 0.5f + 0.5f) * DIM_X), DIM_X);
+        lightMaxTileX[index] = clampTile((int) Math.floor((maxNdcX * 0.5f + 0.5f) * DIM_X), DIM_X);
+        lightMinTileY[index] = clampTile((int) Math.floor((minNdcY * 0.5f + 0.5f) * DIM_Y), DIM_Y);
+        lightMaxTileY[index] = clampTile((int) Math.floor((maxNdcY * 0.5f + 0.5f) * DIM_Y), DIM_Y);
+        if (maxNdcX < -1.0f || minNdcX > 1.0f || maxNdcY < -1.0f || minNdcY > 1.0f) {
+            lightActive[index] = false; // Poza ekranem
+        }
+    }
+
+    private static int clampTile(int tile, int dim) {
+        return Math.max(0, Math.min(dim - 1, tile));
+    }
+
+    /** Zadanie jednej warstwy Z: zapisuje wyłącznie klastry tej warstwy. */
+    private void assignSlice(int z) {
+        int sliceStart = clusterIndex(0, 0, z);
+        for (int c = sliceStart; c < sliceStart + DIM_X * DIM_Y; c++) {
+            pointCounts[c] = 0;
+            spotCounts[c] = 0;
+        }
+        int totalLights = numPointLights + numSpotLights;
+        for (int i = 0; i < totalLights; i++) {
+            if (!lightActive[i] || z < lightMinSlice[i] || z > lightMaxSlice[i]) continue;
+            boolean isPoint = i < numPointLights;
+            float r2 = lightRadius[i] * lightRadius[i];
+            for (int ty = lightMinTileY[i]; ty <= lightMaxTileY[i]; ty++) {
+                for (int tx = lightMinTileX[i]; tx <= lightMaxTileX[i]; tx++) {
+                    int cluster = clusterIndex(tx, ty, z);
+                    if (!sphereIntersectsCluster(cluster, lightX[i], lightY[i], lightZ[i], r2)) continue;
+                    if (isPoint) {
+                        if (pointCounts[cluster] < MAX_POINT_LIGHTS_PER_CLUSTER) {
+                            pointIndices[cluster * MAX_POINT_LIGHTS_PER_CLUSTER + pointCounts[cluster]++] = (short) i;
+                        }
+                    } else if (spotCounts[cluster] < MAX_SPOT_LIGHTS_PER_CLUSTER) {
+                        spotIndices[cluster * MAX_SPOT_LIGHTS_PER_CLUSTER + spotCounts[cluster]++] = (short) (i - numPointLights);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean sphereIntersectsCluster(int cluster, float x, float y, float z, float radiusSq) {
+        int b = cluster * 6;
+        float dx = Math.max(0.0f, Math.max(clusterBounds[b] - x, x - clusterBounds[b + 3]));
+        float dy = Math.max(0.0f, Math.max(clusterBounds[b + 1] - y, y - clusterBounds[b + 4]));
+        float dz = Math.max(0.0f, Math.max(clusterBounds[b + 2] - z, z - clusterBounds[b + 5]));
+        return dx * dx + dy * dy + dz * dz <= radiusSq;
+    }
+
+    // --- Wynik ---
+
+    private void compact() {
+        int total = 0;
+        for (int c = 0; c < CLUSTER_COUNT; c++) {
+            total += pointCounts[c] + spotCounts[c];
+        }
+        if (indexStaging.capacity() < Math.max(1, total)) {
+            indexStaging = MemoryUtil.memRealloc(indexStaging, Math.max(total, indexStaging.capacity() * 2));
+        }
+        gridStaging.clear();
+        indexStaging.clear();
+        int offset = 0;
+        for (int c = 0; c < CLUSTER_COUNT; c++) {
+            int pc = pointCounts[c], sc = spotCounts[c];
+            gridStaging.put(offset).put(pc | (sc << 16));
+            indexStaging.put(pointIndices, c * MAX_POINT_LIGHTS_PER_CLUSTER, pc);
+            indexStaging.put(spotIndices, c * MAX_SPOT_LIGHTS_PER_CLUSTER, sc);
+            offset += pc + sc;
+        }
+        totalIndexCount = total;
+    }
+
+    private void upload() {
+        gridStaging.flip();
+        if (gridStaging.remaining() == 0) { // Pierwszy upload - pusta siatka
+            gridStaging.limit(CLUSTER_COUNT * 2);
+            MemoryUtil.memSet(gridStaging, 0);
+        }
+        indexStaging.flip();
+        if (indexStaging.remaining() == 0) {
+            indexStaging.limit(1).put(0, (short) 0); // TBO nie może być pusty
+        }
+        glBindBuffer(GL_TEXTURE_BUFFER, gridBufferId);
+        glBufferData(GL_TEXTURE_BUFFER, gridStaging, GL_STREAM_DRAW);
+        glBindBuffer(GL_TEXTURE_BUFFER, indexBufferId);
+        glBufferData(GL_TEXTURE_BUFFER, indexStaging, GL_STREAM_DRAW);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    /** Wiąże TBO siatki i listy indeksów z ich jednostkami tekstur. */
+    public void bindTextures() {
+        GLStateCache.bindTexture(CLUSTER_GRID_TEXTURE_UNIT, GL_TEXTURE_BUFFER, gridTextureId);
+        GLStateCache.bindTexture(LIGHT_INDEX_TEXTURE_UNIT, GL_TEXTURE_BUFFER, indexTextureId);
+    }
+
+    // --- Parametry dla shadera (LightBlock) ---
+    public float getSliceScale() { return sliceScale; }
+    public float getSliceBias() { return sliceBias; }
+    public float getNear() { return near; }
+    public float getFar() { return far; }
+    /** Łączna liczba przypisań światło-klaster w ostatniej klatce. */
+    public int getTotalIndexCount() { return totalIndexCount; }
+
+    public void cleanup() {
+        System.out.println("  ClusteredLightGrid: Cleaning up...");
+        if (gridTextureId != 0) { glDeleteTextures(gridTextureId); GLStateCache.onTextureDeleted(gridTextureId); gridTextureId = 0; }
+        if (indexTextureId != 0) { glDeleteTextures(indexTextureId); GLStateCache.onTextureDeleted(indexTextureId); indexTextureId = 0; }
+        if (gridBufferId != 0) { glDeleteBuffers(gridBufferId); gridBufferId = 0; }
+        if (indexBufferId != 0) { glDeleteBuffers(indexBufferId); indexBufferId = 0; }
+        if (gridStaging != null) { MemoryUtil.memFree(gridStaging); gridStaging = null; }
+        if (indexStaging != null) { MemoryUtil.memFree(indexStaging); indexStaging = null; }
+        boundsValid = false;
+    }
+}
@@ -0,0 +1,245 @@
+package org.example.graphics.render;
+
+import java.util.Arrays;
+
+/**
+ * Programowy rasteryzator głębi niskiej rozdzielczości dla occlusion cullingu (czysta Java, bez GL).
+ * <p>
+ * Bufor jest podzielony na kafle TILE_WIDTH x TILE_HEIGHT. Trójkąty (już w przestrzeni ekranu)
+ * są najpierw przypisywane do kafli, które pokrywa ich prostokąt otaczający, a potem każdy kafel
+ * rasteryzuje tylko swoje trójkąty - kafle nie dzielą pikseli, więc mogą być przetwarzane równolegle
+ * bez synchronizacji. Wiersz kafla jest przetwarzany pętlą po ciągłej tablicy z przyrostowymi
+ * funkcjami krawędzi (dobrze wektoryzowana przez JIT).
+ * <p>
+ * Głębia to z NDC przeskalowane do [0, 1] (jak bufor głębi GL); zapisywana jest najbliższa wartość.
+ * <p>
+ * Rasteryzacja jest zachowawcza: trójkąt zapisuje tylko piksele pokryte w całości (funkcja krawędzi
+ * w środku piksela musi przekraczać połowę jego rzutu na normalną krawędzi), a zapisaną głębią jest
+ * najdalszy punkt płaszczyzny trójkąta w obrębie piksela. Zasłonięcie w buforze oznacza więc
+ * zasłonięcie na pełnym ekranie. Krawędzie wewnętrzne occludera (wspólne z sąsiednim trójkątem leżącym
+ * po drugiej stronie) są testowane w środku piksela - inaczej przekątne ścian zostawiałyby dziury.
+ * Po rasteryzacji każdy kafel zna swoją najdalszą głębię - test prostokąta pomija całe kafle,
+ * gdy obiekt leży za nią.
+ */
+public class DepthRasterizer {
+
+    public static final int TILE_WIDTH = 32;
+    public static final int TILE_HEIGHT = 16;
+    private static final int FLOATS_PER_TRIANGLE = 9; // x, y, z dla trzech wierzchołków
+    private static final float MIN_AREA = 1e-6f;
+    // Zakładka krawędzi wewnętrznych (ułamek piksela) - środek leżący na wspólnej krawędzi pokrywa
+    // któryś z trójkątów mimo błędów zaokrągleń
+    private static final float INNER_EDGE_OVERLAP = 1e-3f;
+    /** Maska krawędzi dla addTriangle: krawędź naprzeciw wierzchołka k jest wewnętrzna (bit k). */
+    public static final int INNER_EDGE_0 = 1, INNER_EDGE_1 = 2, INNER_EDGE_2 = 4;
+
+    private final int width, height;
+    private final int tilesX, tilesY;
+    private final float[] depth;
+    private final float[] tileMaxDepth;
+
+    private float[] triangles = new float[FLOATS_PER_TRIANGLE * 256];
+    private int[] innerEdges = new int[256];
+    private int triangleCount = 0;
+    private final int[][] tileBins;
+    private final int[] tileBinCounts;
+
+    public DepthRasterizer(int width, int height) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Depth buffer size must be positive");
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_WIDTH - 1) / TILE_WIDTH;
+        this.tilesY = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+        this.depth = new float[width * height];
+        this.tileMaxDepth = new float[tilesX * tilesY];
+        this.tileBins = new int[tilesX * tilesY][64];
+        this.tileBinCounts = new int[tilesX * tilesY];
+        clear();
+    }
+
+    /** Usuwa wszystkie trójkąty i czyści bufor do najdalszej głębi. */
+    public void clear() {
+        triangleCount = 0;
+        Arrays.fill(tileBinCounts, 0);
+        Arrays.fill(depth, 1.0f);
+        Arrays.fill(tileMaxDepth, 1.0f);
+    }
+
+    /**
+     * Dodaje trójkąt w przestrzeni ekranu (x, y w pikselach bufora, z w [0, 1]) i przypisuje go do kafli.
+     * Trójkąty są dwustronne; zdegenerowane i leżące poza buforem są pomijane. Wszystkie krawędzie
+     * są traktowane jako sylwetkowe (pokrycie zachowawcze).
+     */
+    public void addTriangle(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2) {
+        addTriangle(x0, y0, z0, x1, y1, z1, x2, y2, z2, 0);
+    }
+
+    /**
+     * Jak addTriangle(), ale krawędzie z maski innerEdgeMask (INNER_EDGE_*) są wewnętrzne - sąsiedni trójkąt
+     * tego samego occludera leży po ich drugiej stronie, więc piksele są przy nich przypisywane po środku.
+     */
+    public void addTriangle(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2,
+                            int innerEdgeMask) {
+        float area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (Math.abs(area) < MIN_AREA) return;
+
+        // Prostokąt pikseli, które trójkąt może pokrywać
+        int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(height - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) return;
+
+        if ((triangleCount + 1) * FLOATS_PER_TRIANGLE > triangles.length) {
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
+            innerEdges = Arrays.copyOf(innerEdges, innerEdges.length * 2);
+        }
+        int base = triangleCount * FLOATS_PER_TRIANGLE;
+        // Kolejność wierzchołków z dodatnim polem - wnętrze to wszystkie funkcje krawędzi >= 0
+        // (zamiana wierzchołków 1 i 2 zamienia też krawędzie naprzeciw nich)
+        if (area < 0.0f) {
+            float tx = x1, ty = y1, tz = z1;
+            x1 = x2; y1 = y2; z1 = z2;
+            x2 = tx; y2 = ty; z2 = tz;
+            innerEdgeMask = (innerEdgeMask & INNER_EDGE_0)
+                    | ((innerEdgeMask & INNER_EDGE_1) << 1) | ((innerEdgeMask & INNER_EDGE_2) >> 1);
+        }
+        innerEdges[triangleCount] = innerEdgeMask;
+        triangles[base] = x0; triangles[base + 1] = y0; triangles[base + 2] = z0;
+        triangles[base + 3] = x1; triangles[base + 4] = y1; triangles[base + 5] = z1;
+        triangles[base + 6] = x2; triangles[base + 7] = y2; triangles[base + 8] = z2;
+
+        int tileMinX = minX / TILE_WIDTH, tileMaxX = maxX / TILE_WIDTH;
+        int tileMinY = minY / TILE_HEIGHT, tileMaxY = maxY / TILE_HEIGHT;
+        for (int ty = tileMinY; ty <= tileMaxY; ty++) {
+            for (int tx = tileMinX; tx <= tileMaxX; tx++) {
+                int tile = ty * tilesX + tx;
+                int count = tileBinCounts[tile];
+                if (count == tileBins[tile].length) {
+                    tileBins[tile] = Arrays.copyOf(tileBins[tile], count * 2);
+                }
+                tileBins[tile][count] = triangleCount;
+                tileBinCounts[tile] = count + 1;
+            }
+        }
+        triangleCount++;
+    }
+
+    /**
+     * Rasteryzuje wszystkie trójkąty przypisane do kafla. Różne kafle można rasteryzować
+     * równolegle (po zakończeniu addTriangle()).
+     */
+    public void rasterizeTile(int tile) {
+        int tileX0 = (tile % tilesX) * TILE_WIDTH;
+        int tileY0 = (tile / tilesX) * TILE_HEIGHT;
+        int tileX1 = Math.min(width, tileX0 + TILE_WIDTH) - 1;
+        int tileY1 = Math.min(height, tileY0 + TILE_HEIGHT) - 1;
+        int[] bin = tileBins[tile];
+        int binCount = tileBinCounts[tile];
+        if (binCount == 0) {
+            tileMaxDepth[tile] = 1.0f; // Wyczyszczony w clear()
+            return;
+        }
+
+        for (int i = 0; i < binCount; i++) {
+            rasterizeTriangle(bin[i], tileX0, tileY0, tileX1, tileY1);
+        }
+
+        float maxDepth = 0.0f;
+        for (int y = tileY0; y <= tileY1; y++) {
+            int row = y * width;
+            for (int x = tileX0; x <= tileX1; x++) {
+                maxDepth = Math.max(maxDepth, depth[row + x]);
+            }
+        }
+        tileMaxDepth[tile] = maxDepth;
+    }
+
+    private void rasterizeTriangle(int triangle, int clipX0, int clipY0, int clipX1, int clipY1) {
+        int base = triangle * FLOATS_PER_TRIANGLE;
+        float x0 = triangles[base], y0 = triangles[base + 1], z0 = triangles[base + 2];
+        float x1 = triangles[base + 3], y1 = triangles[base + 4], z1 = triangles[base + 5];
+        float x2 = triangles[base + 6], y2 = triangles[base + 7], z2 = triangles[base + 8];
+
+        int minX = Math.max(clipX0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(clipX1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(clipY0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(clipY1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) return;
+
+        // Funkcje krawędzi E(x, y) = a * x + b * y + c, liczone w środkach pikseli
+        float a0 = y1 - y2, b0 = x2 - x1;
+        float a1 = y2 - y0, b1 = x0 - x2;
+        float a2 = y0 - y1, b2 = x1 - x0;
+        // Próg pełnego pokrycia: najmniejsza wartość E w pikselu to E(środek) - (|a| + |b|) / 2
+        int inner = innerEdges[triangle];
+        float t0 = ((inner & INNER_EDGE_0) != 0 ? -INNER_EDGE_OVERLAP : 0.5f) * (Math.abs(a0) + Math.abs(b0));
+        float t1 = ((inner & INNER_EDGE_1) != 0 ? -INNER_EDGE_OVERLAP : 0.5f) * (Math.abs(a1) + Math.abs(b1));
+        float t2 = ((inner & INNER_EDGE_2) != 0 ? -INNER_EDGE_OVERLAP : 0.5f) * (Math.abs(a2) + Math.abs(b2));
+        float area = b2 * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        float invArea = 1.0f / area;
+        // Płaszczyzna głębi z(x, y) = z0 + dzdx * (x - x0) + dzdy * (y - y0)
+        float dzdx = ((z1 - z0) * (y2 - y0) - (z2 - z0) * (y1 - y0)) * invArea;
+        float dzdy = ((z2 - z0) * (x1 - x0) - (z1 - z0) * (x2 - x0)) * invArea;
+        // Najdalszy punkt płaszczyzny w pikselu, nie dalej niż najdalszy wierzchołek
+        float zPixelOffset = 0.5f * (Math.abs(dzdx) + Math.abs(dzdy));
+        float zLimit = Math.max(z0, Math.max(z1, z2));
+
+        float px = minX + 0.5f;
+        for (int y = minY; y <= maxY; y++) {
+            float py = y + 0.5f;
+            float e0 = a0 * (px - x1) + b0 * (py - y1);
+            float e1 = a1 * (px - x2) + b1 * (py - y2);
+            float e2 = a2 * (px - x0) + b2 * (py - y0);
+            float z = z0 + dzdx * (px - x0) + dzdy * (py - y0) + zPixelOffset;
+            int row = y * width;
+            for (int x = minX; x <= maxX; x++) {
+                if (e0 >= t0 && e1 >= t1 && e2 >= t2) {
+                    int index = row + x;
+                    depth[index] = Math.min(depth[index], Math.min(z, zLimit));
+                }
+                e0 += a0;
+                e1 += a1;
+                e2 += a2;
+                z += dzdx;
+            }
+        }
+    }
+
+    /**
+     * Czy prostokąt ekranu (piksele, włącznie) jest w całości zasłonięty przez głębię bliższą niż minDepth.
+     * Wymaga zakończonej rasteryzacji wszystkich kafli.
+     */
+    public boolean isRectOccluded(int minX, int minY, int maxX, int maxY, float minDepth) {
+        minX = Math.max(0, minX);
+        minY = Math.max(0, minY);
+        maxX = Math.min(width - 1, maxX);
+        maxY = Math.min(height - 1, maxY);
+        if (minX > maxX || minY > maxY) return false; // Poza buforem - decyduje frustum culling
+
+        for (int ty = minY / TILE_HEIGHT; ty <= maxY / TILE_HEIGHT; ty++) {
+            for (int tx = minX / TILE_WIDTH; tx <= maxX / TILE_WIDTH; tx++) {
+                int tile = ty * tilesX + tx;
+                if (tileMaxDepth[tile] < minDepth) continue; // Cały kafel bliżej niż obiekt
+                if (tileBinCounts[tile] == 0) return false;  // Pusty kafel - nic nie zasłania
+
+                int x0 = Math.max(minX, tx * TILE_WIDTH), x1 = Math.min(maxX, tx * TILE_WIDTH + TILE_WIDTH - 1);
+                int y0 = Math.max(minY, ty * TILE_HEIGHT), y1 = Math.min(maxY, ty * TILE_HEIGHT + TILE_HEIGHT - 1);
+                for (int y = y0; y <= y1; y++) {
+                    int row = y * width;
+                    for (int x = x0; x <= x1; x++) {
+                        if (depth[row + x] >= minDepth) return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getTileCount() { return tilesX * tilesY; }
+    public int getTriangleCount() { return triangleCount; }
+    /** Głębia piksela (do podglądu/diagnostyki). */
+    public float getDepth(int x, int y) { return depth[y * width + x]; }
+}
@@ -0,0 +1,94 @@
+package org.example.graphics.render;
+
+import org.example.scene.GameObject;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Etap odrzucania obiektów spoza bryły widzenia kamery (View-Frustum Culling).
+ * Wyznacza sześć płaszczyzn z iloczynu macierzy projekcji i widoku, a następnie
+ * testuje każdy obiekt: najpierw tanią kulą otaczającą, potem AABB w przestrzeni świata
+ * (oba liczone z rzeczywistych danych wierzchołków siatki).
+ * Wynikiem jest zwarta lista widocznych obiektów, ponownie używana między klatkami.
+ */
+public class FrustumCuller {
+
+    private final Matrix4f projView = new Matrix4f();
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final List<GameObject> visibleObjects = new ArrayList<>();
+
+    // Bufory robocze (bez alokacji w pętli)
+    private final Vector3f worldMin = new Vector3f();
+    private final Vector3f worldMax = new Vector3f();
+    private final Vector3f worldCenter = new Vector3f();
+    private final Vector3f worldScale = new Vector3f();
+
+    private boolean enabled = true;
+
+    // Statystyki ostatniego wywołania cull()
+    private int culledCount = 0;
+    private int submittedCount = 0;
+
+    /**
+     * Odrzuca obiekty leżące poza bryłą widzenia.
+     *
+     * @param projection Macierz projekcji kamery.
+     * @param view Macierz widoku kamery.
+     * @param gameObjects Lista obiektów kandydujących.
+     * @return Lista widocznych obiektów (należy do cullera - ważna do następnego wywołania).
+     */
+    public List<GameObject> cull(Matrix4f projection, Matrix4f view, List<GameObject> gameObjects) {
+        visibleObjects.clear();
+        culledCount = 0;
+
+        setFrustum(projection, view);
+
+        for (GameObject go : gameObjects) {
+            if (go == null || !go.isVisible() || go.getMesh() == null) {
+                continue;
+            }
+            if (!enabled || test(go)) {
+                visibleObjects.add(go);
+            } else {
+                culledCount++;
+            }
+        }
+
+        submittedCount = visibleObjects.size();
+        return visibleObjects;
+    }
+
+    /** Ustawia bryłę dla pojedynczych testów test() (cull() ustawia ją sam). */
+    public void setFrustum(Matrix4f projection, Matrix4f view) {
+        projection.mul(view, projView);
+        frustum.set(projView, false);
+    }
+
+    /** Czy obiekt (z siatką) przecina bryłę ustawioną ostatnio przez setFrustum() lub cull(). */
+    public boolean test(GameObject go) {
+        Matrix4f model = go.getModelMatrix();
+
+        // 1. Test kulą otaczającą (środek z AABB siatki, promień przeskalowany największą składową skali).
+        // Skala z tej samej (interpolowanej) macierzy co środek - nie z bieżącego stanu obiektu
+        model.getScale(worldScale);
+        float maxScale = Math.max(worldScale.x, Math.max(worldScale.y, worldScale.z));
+        model.transformPosition(go.getMesh().getBoundsCenter(), worldCenter);
+        if (!frustum.testSphere(worldCenter, go.getMesh().getBoundsRadius() * maxScale)) {
+            return false;
+        }
+
+        // 2. Dokładniejszy test AABB w przestrzeni świata
+        go.getWorldBounds(model, worldMin, worldMax);
+        return frustum.testAab(worldMin, worldMax);
+    }
+
+    // --- Konfiguracja i statystyki ---
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public int getCulledCount() { return culledCount; }
+    public int getSubmittedCount() { return submittedCount; }
+}
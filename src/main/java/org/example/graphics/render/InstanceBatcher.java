@@ -0,0 +1,259 @@
+package org.example.graphics.render;
+
+import org.example.graphics.GeometryArena;
+import org.example.graphics.InstanceBuffer;
+import org.example.graphics.Material;
+import org.example.graphics.Mesh;
+import org.example.graphics.ShaderProgram;
+import org.example.scene.GameObject;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glMultiDrawElementsIndirect;
+
+/**
+ * Grupuje obiekty w partie (batche) o wspólnej siatce (i opcjonalnie materiale)
+ * i zapisuje ich macierze do jednego bufora instancji. Liczba wywołań rysujących
+ * rośnie z liczbą unikalnych par (Mesh, Material), a nie z liczbą obiektów;
+ * z tabelą materiałów (MaterialTable) - z liczbą par (Mesh, zestaw tablic tekstur).
+ * Partia ma zawsze jeden program shaderowy (wariant shadera sceny z kolejki) - zmiana shadera
+ * również zaczyna nową partię.
+ * Partie powstają z kolejnych elementów posortowanej RenderQueue, więc sąsiednie partie
+ * różnią się minimalnym stanem, a instancje w partii zachowują kolejność przód-do-tyłu.
+ * Listy i obiekty partii są używane ponownie między klatkami.
+ * <p>
+ * Gdy siatki leżą w GeometryArena, kolejne partie z tej samej puli rysuje jedno wywołanie:
+ * na GL 4.3+ glMultiDrawElementsIndirect (komenda na partię, baseInstance wskazuje instancje),
+ * a na GL 3.3 - osobne glDrawElementsInstancedBaseVertex bez zmiany VAO między partiami.
+ */
+public class InstanceBatcher {
+
+    /** Ciągły zakres instancji rysowany jednym glDrawElementsInstanced. */
+    public static final class Batch {
+        private Mesh mesh;
+        private Material material;
+        private ShaderProgram shader; // Program z kolejki (null w przebiegach głębi z jednym programem)
+        private int firstInstance;
+        private int instanceCount;
+        private int textureSetId; // Zestaw tekstur (przy tabeli materiałów - zestaw tablic MaterialTable)
+        private long sortKey; // Klucz pierwszego elementu partii
+
+        public Mesh getMesh() { return mesh; }
+        public Material getMaterial() { return material; }
+        public ShaderProgram getShader() { return shader; }
+        public int getFirstInstance() { return firstInstance; }
+        public int getInstanceCount() { return instanceCount; }
+        public int getTextureSetId() { return textureSetId; }
+        public long getSortKey() { return sortKey; }
+    }
+
+    private final InstanceBuffer instanceBuffer = new InstanceBuffer();
+    private final RenderQueue ownQueue = new RenderQueue(); // Dla przebiegów bez własnej kolejki
+    private final List<Batch> batchPool = new ArrayList<>();
+    private int batchCount = 0;
+
+    // Komendy pośrednie (DrawElementsIndirectCommand: count, instanceCount, firstIndex, baseVertex, baseInstance)
+    private static final int INTS_PER_COMMAND = 5;
+    private static final int COMMAND_STRIDE = INTS_PER_COMMAND * Integer.BYTES;
+    private int indirectBufferId = 0;
+    private IntBuffer commandStaging = null;
+    private boolean commandsValid = false;
+    private int drawSubmitCount = 0;
+
+    public void init() {
+        instanceBuffer.init();
+        if (GeometryArena.isMultiDrawIndirectSupported()) {
+            indirectBufferId = glGenBuffers();
+            commandStaging = MemoryUtil.memAllocInt(64 * INTS_PER_COMMAND);
+        }
+    }
+
+    /**
+     * Buduje partie dla listy obiektów (przebiegi głębi - kolejność tylko po siatce/materiale).
+     *
+     * @param gameObjects Obiekty do narysowania (niewidoczne i bez siatki są pomijane).
+     * @param splitByMaterial Czy dzielić partie także według materiału (false dla przebiegów głębi).
+     * @param defaultMaterial Materiał podstawiany za null (może być null, gdy splitByMaterial == false).
+     */
+    public void build(List<GameObject> gameObjects, boolean splitByMaterial, Material defaultMaterial) {
+        build(gameObjects, splitByMaterial, defaultMaterial, null);
+    }
+
+    /**
+     * Jak build(List, boolean, Material), ale siatkę każdego obiektu wybiera selektor LOD
+     * (poziom cieni - zwykle grubszy niż w przebiegu kolorów).
+     *
+     * @param lodSelector Selektor poziomów (null = zawsze siatka bazowa).
+     */
+    public void build(List<GameObject> gameObjects, boolean splitByMaterial, Material defaultMaterial, LodSelector lodSelector) {
+        ownQueue.clear();
+        if (gameObjects != null) {
+            for (GameObject go : gameObjects) {
+                if (go != null && go.isVisible() && go.getMesh() != null) {
+                    Material material = !splitByMaterial ? null
+                            : (go.getMaterial() != null ? go.getMaterial() : defaultMaterial);
+                    Mesh mesh = lodSelector != null ? lodSelector.selectShadowMesh(go) : go.getMesh();
+                    ownQueue.submit(go, mesh, material, null, RenderQueue.PASS_DEPTH, 0.0f);
+                }
+            }
+        }
+        ownQueue.sort();
+        build(ownQueue, splitByMaterial);
+    }
+
+    /**
+     * Buduje partie z posortowanej kolejki i wysyła dane instancji do GPU.
+     * Nowa partia zaczyna się, gdy zmienia się siatka (lub materiał, gdy splitByMaterial).
+     */
+    public void build(RenderQueue queue, boolean splitByMaterial) {
+        build(queue, splitByMaterial, null);
+    }
+
+    /**
+     * Buduje partie z posortowanej kolejki, zapisując w instancjach indeksy materiałów z tabeli klatki.
+     * Materiały są wtedy danymi instancji, więc nowa partia zaczyna się tylko przy zmianie siatki
+     * lub zestawu tablic tekstur (RenderQueue.getTextureSetId()). Materiały muszą być już w tabeli.
+     */
+    public void build(RenderQueue queue, MaterialTable materialTable) {
+        build(queue, false, materialTable);
+    }
+
+    private void build(RenderQueue queue, boolean splitByMaterial, MaterialTable materialTable) {
+        batchCount = 0;
+        instanceBuffer.clear();
+
+        Batch current = null;
+        for (int i = 0; i < queue.size(); i++) {
+            GameObject go = queue.getObject(i);
+            Mesh mesh = queue.getMesh(i);
+            Material material = splitByMaterial || materialTable != null ? queue.getMaterial(i) : null;
+            int textureSetId = queue.getTextureSetId(i);
+            ShaderProgram shader = queue.getShader(i);
+            boolean split = materialTable != null ? current == null || current.textureSetId != textureSetId
+                    : current == null || current.material != material;
+            if (split || current.mesh != mesh || current.shader != shader) {
+                current = nextBatch();
+                current.mesh = mesh;
+                current.shader = shader;
+                current.material = material; // Przy tabeli materiałów - materiał pierwszej instancji
+                current.textureSetId = textureSetId;
+                current.sortKey = queue.getKey(i);
+                current.firstInstance = instanceBuffer.getInstanceCount();
+                current.instanceCount = 0;
+            }
+            // Macierze są cache'owane w GameObject - dla obiektów statycznych to tylko kopiowanie
+            int materialIndex = materialTable != null ? materialTable.register(material) : 0;
+            instanceBuffer.add(go.getModelMatrix(), go.getNormalMatrix(), materialIndex);
+            current.instanceCount++;
+        }
+        instanceBuffer.upload();
+        drawSubmitCount = 0;
+        uploadIndirectCommands();
+    }
+
+    // Jedna komenda na partię (partie spoza areny dostają komendę pustą - nie są rysowane pośrednio)
+    private void uploadIndirectCommands() {
+        commandsValid = false;
+        if (indirectBufferId == 0 || batchCount == 0) return;
+        int required = batchCount * INTS_PER_COMMAND;
+        if (commandStaging.capacity() < required) {
+            commandStaging = MemoryUtil.memRealloc(commandStaging, Math.max(required, commandStaging.capacity() * 2));
+        }
+        commandStaging.clear();
+        for (int i = 0; i < batchCount; i++) {
+            Batch batch = batchPool.get(i);
+            GeometryArena.Allocation allocation = batch.mesh.getArenaAllocation();
+            if (allocation == null) {
+                commandStaging.put(0).put(0).put(0).put(0).put(0);
+            } else {
+                commandStaging.put(allocation.getIndexCount()).put(batch.instanceCount)
+                        .put(allocation.getFirstIndex()).put(allocation.getBaseVertex()).put(batch.firstInstance);
+            }
+        }
+        commandStaging.flip();
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, indirectBufferId);
+        glBufferData(GL_DRAW_INDIRECT_BUFFER, commandStaging, GL_STREAM_DRAW);
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+        commandsValid = true;
+    }
+
+    private Batch nextBatch() {
+        if (batchCount == batchPool.size()) {
+            batchPool.add(new Batch());
+        }
+        return batchPool.get(batchCount++);
+    }
+
+    /** Rysuje partię o podanym indeksie (shader i materiał muszą być już zbindowane). */
+    public void draw(int batchIndex) {
+        Batch batch = batchPool.get(batchIndex);
+        batch.mesh.renderInstanced(instanceBuffer, batch.firstInstance, batch.instanceCount);
+        drawSubmitCount++;
+    }
+
+    /**
+     * Rysuje partie [first, first + count) ze wspólnym stanem (shader, materiał).
+     * Ciągi partii z jednej puli areny idą jednym glMultiDrawElementsIndirect, gdy jest dostępne.
+     */
+    public void drawRange(int first, int count) {
+        int end = first + count;
+        int i = first;
+        while (i < end) {
+            GeometryArena.Pool pool = poolOf(i);
+            int runEnd = i + 1;
+            while (pool != null && runEnd < end && poolOf(runEnd) == pool) runEnd++;
+            if (pool != null && commandsValid && runEnd - i > 1) {
+                pool.bind(instanceBuffer);
+                instanceBuffer.bindAttributes(0); // Instancje partii wskazuje baseInstance komendy
+                glBindBuffer(GL_DRAW_INDIRECT_BUFFER, indirectBufferId);
+                glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_SHORT, (long) i * COMMAND_STRIDE, runEnd - i, COMMAND_STRIDE);
+                glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+                drawSubmitCount++;
+            } else {
+                for (int b = i; b < runEnd; b++) {
+                    draw(b);
+                }
+            }
+            i = runEnd;
+        }
+    }
+
+    private GeometryArena.Pool poolOf(int batchIndex) {
+        GeometryArena.Allocation allocation = batchPool.get(batchIndex).mesh.getArenaAllocation();
+        return allocation != null ? allocation.getPool() : null;
+    }
+
+    /** Rysuje wszystkie partie bez zmiany materiału (przebiegi głębi). */
+    public void drawAll() {
+        drawRange(0, batchCount);
+    }
+
+    public int getBatchCount() { return batchCount; }
+    public Batch getBatch(int index) { return batchPool.get(index); }
+    public int getInstanceCount() { return instanceBuffer.getInstanceCount(); }
+    /** Liczba wywołań rysujących wysłanych do GL od ostatniego build() (multi-draw liczony raz). */
+    public int getDrawSubmitCount() { return drawSubmitCount; }
+
+    public void cleanup() {
+        instanceBuffer.cleanup();
+        if (indirectBufferId != 0) {
+            glDeleteBuffers(indirectBufferId);
+            indirectBufferId = 0;
+        }
+        if (commandStaging != null) {
+            MemoryUtil.memFree(commandStaging);
+            commandStaging = null;
+        }
+        commandsValid = false;
+        ownQueue.clear();
+        batchPool.clear();
+        batchCount = 0;
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.graphics.render;
+
+import org.example.graphics.Mesh;
+import org.example.scene.GameObject;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Wybiera poziom szczegółowości (LOD) siatki obiektu na podstawie jego rzutowanego rozmiaru na ekranie.
+ * <p>
+ * Rozmiar to promień kuli otaczającej podzielony przez połowę wysokości bryły widzenia w odległości
+ * obiektu (1.0 = kula wypełnia wysokość ekranu). Poziom i przechodzi na i+1, gdy rozmiar spada poniżej
+ * SCREEN_SIZE_THRESHOLDS[i]. Zmiana poziomu wymaga przekroczenia progu o HYSTERESIS, więc obiekt
+ * stojący na granicy nie przełącza siatki w każdej klatce. Aktualny poziom jest stanem obiektu
+ * (GameObject.getLodLevel()); wybór jest idempotentny w obrębie klatki - przebiegi cieni i sceny
+ * mogą go wywoływać niezależnie.
+ * <p>
+ * Przebiegi cieni używają poziomu przesuniętego o shadowLodBias - mapa cieni ma zwykle mniejszą
+ * rozdzielczość niż ekran i drobne szczegóły sylwetki giną w filtrowaniu.
+ */
+public class LodSelector {
+
+    private static final float[] SCREEN_SIZE_THRESHOLDS = { 0.25f, 0.12f, 0.05f };
+    private static final float HYSTERESIS = 0.15f; // Względny margines progu przy zmianie poziomu
+    public static final int DEFAULT_SHADOW_LOD_BIAS = 1;
+
+    private final Vector3f cameraPosition = new Vector3f();
+    private final Vector3f worldCenter = new Vector3f();
+    private float projectionScale = 1.0f; // 1 / tan(fovY / 2) - element m11 macierzy projekcji
+    private boolean enabled = true;
+    private int shadowLodBias = DEFAULT_SHADOW_LOD_BIAS;
+
+    /** Zapamiętuje dane kamery dla bieżącej klatki (wywoływać przed przebiegami renderowania). */
+    public void update(Matrix4f projection, Vector3f cameraPos) {
+        projectionScale = Math.abs(projection.m11());
+        cameraPosition.set(cameraPos);
+    }
+
+    /** Wybiera (z histerezą) i zapisuje w obiekcie poziom LOD dla przebiegu kolorów. */
+    public int selectLevel(GameObject go) {
+        Mesh mesh = go.getMesh();
+        int maxLevel = mesh.getLodCount() - 1;
+        if (!enabled || maxLevel == 0) {
+            go.setLodLevel(0);
+            return 0;
+        }
+        float size = screenSize(go);
+        int current = Math.min(go.getLodLevel(), maxLevel);
+        int level = current;
+        if (levelFor(size, maxLevel) > current) {
+            // Grubszy poziom tylko, jeśli obiekt jest wyraźnie poniżej progu
+            level = Math.max(current, levelFor(size * (1.0f + HYSTERESIS), maxLevel));
+        } else if (levelFor(size, maxLevel) < current) {
+            level = Math.min(current, levelFor(size * (1.0f - HYSTERESIS), maxLevel));
+        }
+        go.setLodLevel(level);
+        return level;
+    }
+
+    /** Siatka do narysowania w przebiegu kolorów. */
+    public Mesh selectMesh(GameObject go) {
+        return go.getMesh().getLod(selectLevel(go));
+    }
+
+    /** Siatka do narysowania w przebiegach cieni (poziom kolorów + shadowLodBias). */
+    public Mesh selectShadowMesh(GameObject go) {
+        return go.getMesh().getLod(selectLevel(go) + (enabled ? shadowLodBias : 0));
+    }
+
+    private static int levelFor(float screenSize, int maxLevel) {
+        int level = 0;
+        while (level < maxLevel && level < SCREEN_SIZE_THRESHOLDS.length && screenSize < SCREEN_SIZE_THRESHOLDS[level]) {
+            level++;
+        }
+        return level;
+    }
+
+    private float screenSize(GameObject go) {
+        Mesh mesh = go.getMesh();
+        go.getModelMatrix().transformPosition(mesh.getBoundsCenter(), worldCenter);
+        Vector3f scale = go.getScaleVector();
+        float radius = mesh.getBoundsRadius() * Math.max(Math.abs(scale.x), Math.max(Math.abs(scale.y), Math.abs(scale.z)));
+        float distance = worldCenter.distance(cameraPosition);
+        if (distance <= radius) return Float.POSITIVE_INFINITY; // Kamera wewnątrz kuli - pełna szczegółowość
+        return radius * projectionScale / distance;
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public int getShadowLodBias() { return shadowLodBias; }
+    public void setShadowLodBias(int shadowLodBias) {
+        if (shadowLodBias < 0) throw new IllegalArgumentException("Shadow LOD bias cannot be negative");
+        this.shadowLodBias = shadowLodBias;
+    }
+}
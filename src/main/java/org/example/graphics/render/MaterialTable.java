@@ -0,0 +1,202 @@
+package org.example.graphics.render;
+
+import org.example.exception.ResourceLoadException;
+import org.example.graphics.GLStateCache;
+import org.example.graphics.Material;
+import org.example.graphics.Texture;
+import org.example.graphics.TextureArrayManager;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_RGBA32F;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
+import static org.lwjgl.opengl.GL31.GL_TEXTURE_BUFFER;
+import static org.lwjgl.opengl.GL31.glTexBuffer;
+
+/**
+ * Tabela materiałów klatki w TBO (jednostka MATERIAL_TABLE_TEXTURE_UNIT), czytana w shaderze sceny
+ * po indeksie materiału z atrybutu instancji. Materiał nie jest więc już stanem partii - obiekty
+ * z różnymi materiałami i tą samą siatką trafiają do jednej partii, o ile ich tekstury leżą
+ * w tych samych tablicach (TextureArrayManager).
+ * <p>
+ * Zestaw tablic tekstur to para (tablica diffuse, tablica specular); GL 3.3 nie pozwala indeksować
+ * tablicy samplerów dynamicznie, więc partie wciąż dzielą się po zestawie - ale zestawów jest tyle,
+ * ile różnych rozmiarów tekstur w scenie, a nie tyle, ile materiałów.
+ * <p>
+ * Układ wpisu (TEXELS_PER_MATERIAL x vec4):
+ * <pre>
+ *  0: ambient.rgb,  reflectance
+ *  1: diffuse.rgb,  warstwa mapy diffuse (-1 = brak mapy)
+ *  2: specular.rgb, warstwa mapy specular (-1 = brak mapy)
+ *  3: prostokąt UV mapy diffuse (x, y, szerokość, wysokość)
+ *  4: prostokąt UV mapy specular
+ * </pre>
+ */
+public class MaterialTable {
+
+    public static final int MATERIAL_TABLE_TEXTURE_UNIT = 6;
+    public static final int TEXELS_PER_MATERIAL = 5;
+    private static final int FLOATS_PER_MATERIAL = TEXELS_PER_MATERIAL * 4;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final TextureArrayManager textureArrays = new TextureArrayManager();
+
+    // Indeksy materiałów są ważne w obrębie klatki (clear() na początku przebiegu)
+    private final Map<Material, Integer> indices = new IdentityHashMap<>();
+    private final List<Material> materials = new ArrayList<>();
+    private int[] textureSets = new int[DEFAULT_CAPACITY];
+
+    // Zestawy tablic są trwałe: (indeks tablicy diffuse + 1) << 32 | (indeks tablicy specular + 1)
+    private final Map<Long, Integer> textureSetIds = new HashMap<>();
+    private final List<TextureArrayManager.TextureArray[]> textureSetArrays = new ArrayList<>();
+
+    private int bufferId = 0;
+    private int textureId = 0;
+    private FloatBuffer staging = null;
+
+    public void init() throws ResourceLoadException {
+        bufferId = glGenBuffers();
+        textureId = glGenTextures();
+        if (bufferId == 0 || textureId == 0) {
+            throw new ResourceLoadException("Could not create material table texture buffer");
+        }
+        staging = MemoryUtil.memAllocFloat(DEFAULT_CAPACITY * FLOATS_PER_MATERIAL);
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferData(GL_TEXTURE_BUFFER, (long) DEFAULT_CAPACITY * FLOATS_PER_MATERIAL * Float.BYTES, GL_STREAM_DRAW);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+        GLStateCache.bindTexture(MATERIAL_TABLE_TEXTURE_UNIT, GL_TEXTURE_BUFFER, textureId);
+        glTexBuffer(GL_TEXTURE_BUFFER, GL_RGBA32F, bufferId);
+        textureArrays.init();
+        System.out.println("  MaterialTable: Initialized.");
+    }
+
+    /** Zaczyna nową klatkę - indeksy z poprzedniej przestają obowiązywać. */
+    public void clear() {
+        indices.clear();
+        materials.clear();
+    }
+
+    /**
+     * Dodaje materiał do tabeli klatki (tekstury przy pierwszym użyciu trafiają do tablic).
+     * @return Indeks materiału w tabeli (dla atrybutu instancji).
+     */
+    public int register(Material material) {
+        Integer index = indices.get(material);
+        if (index != null) return index;
+        int newIndex = materials.size();
+        if (newIndex == textureSets.length) {
+            textureSets = Arrays.copyOf(textureSets, newIndex * 2);
+        }
+        textureSets[newIndex] = textureSetFor(material);
+        materials.add(material);
+        indices.put(material, newIndex);
+        return newIndex;
+    }
+
+    private int textureSetFor(Material material) {
+        TextureArrayManager.TextureArray diffuse = arrayOf(material.getDiffuseMap());
+        TextureArrayManager.TextureArray specular = arrayOf(material.getSpecularMap());
+        long pair = ((long) (diffuse != null ? diffuse.getIndex() + 1 : 0) << 32) | (specular != null ? specular.getIndex() + 1 : 0);
+        Integer id = textureSetIds.get(pair);
+        if (id == null) {
+            id = textureSetArrays.size();
+            textureSetIds.put(pair, id);
+            textureSetArrays.add(new TextureArrayManager.TextureArray[] { diffuse, specular });
+        }
+        return id;
+    }
+
+    private TextureArrayManager.TextureArray arrayOf(Texture texture) {
+        return texture != null ? textureArrays.getOrAdd(texture).getArray() : null;
+    }
+
+    /** Zestaw tablic tekstur materiału o podanym indeksie (do klucza RenderQueue i podziału partii). */
+    public int getTextureSetId(int materialIndex) {
+        return textureSets[materialIndex];
+    }
+
+    /** Zapisuje tabelę klatki do TBO i odtwarza mipmapy nowo dodanych tekstur. */
+    public void upload() {
+        textureArrays.updateMipmaps();
+        int required = Math.max(1, materials.size()) * FLOATS_PER_MATERIAL;
+        if (staging.capacity() < required) {
+            staging = MemoryUtil.memRealloc(staging, Math.max(required, staging.capacity() * 2));
+        }
+        staging.clear();
+        for (Material material : materials) {
+            putColor(material.getAmbientColor().x, material.getAmbientColor().y, material.getAmbientColor().z, material.getReflectance());
+            TextureArrayManager.Entry diffuse = entryOf(material.getDiffuseMap());
+            TextureArrayManager.Entry specular = entryOf(material.getSpecularMap());
+            putColor(material.getDiffuseColor().x, material.getDiffuseColor().y, material.getDiffuseColor().z, diffuse != null ? diffuse.getLayer() : -1);
+            putColor(material.getSpecularColor().x, material.getSpecularColor().y, material.getSpecularColor().z, specular != null ? specular.getLayer() : -1);
+            putRect(diffuse);
+            putRect(specular);
+        }
+        if (materials.isEmpty()) {
+            for (int i = 0; i < FLOATS_PER_MATERIAL; i++) staging.put(0.0f);
+        }
+        staging.flip();
+        glBindBuffer(GL_TEXTURE_BUFFER, bufferId);
+        glBufferData(GL_TEXTURE_BUFFER, staging, GL_STREAM_DRAW);
+        glBindBuffer(GL_TEXTURE_BUFFER, 0);
+    }
+
+    private TextureArrayManager.Entry entryOf(Texture texture) {
+        return texture != null ? textureArrays.getOrAdd(texture) : null;
+    }
+
+    private void putColor(float r, float g, float b, float w) {
+        staging.put(r).put(g).put(b).put(w);
+    }
+
+    private void putRect(TextureArrayManager.Entry entry) {
+        if (entry == null) {
+            staging.put(0.0f).put(0.0f).put(1.0f).put(1.0f);
+        } else {
+            staging.put(entry.getU()).put(entry.getV()).put(entry.getUScale()).put(entry.getVScale());
+        }
+    }
+
+    /** Wiąże TBO tabeli z jego jednostką. */
+    public void bindTable() {
+        GLStateCache.bindTexture(MATERIAL_TABLE_TEXTURE_UNIT, GL_TEXTURE_BUFFER, textureId);
+    }
+
+    /** Wiąże tablice tekstur zestawu z jednostkami map diffuse i specular. */
+    public void bindTextureSet(int textureSetId) {
+        TextureArrayManager.TextureArray[] arrays = textureSetArrays.get(textureSetId);
+        bindArray(Material.DIFFUSE_MAP_TEXTURE_UNIT, arrays[0]);
+        bindArray(Material.SPECULAR_MAP_TEXTURE_UNIT, arrays[1]);
+    }
+
+    private static void bindArray(int unit, TextureArrayManager.TextureArray array) {
+        if (array != null) {
+            array.bind(unit);
+        } else {
+            // Materiał bez mapy nie próbkuje tej jednostki (warstwa -1)
+            GLStateCache.bindTexture(unit, GL_TEXTURE_2D_ARRAY, 0);
+        }
+    }
+
+    public int getMaterialCount() { return materials.size(); }
+    public int getTextureSetCount() { return textureSetArrays.size(); }
+    public TextureArrayManager getTextureArrays() { return textureArrays; }
+
+    public void cleanup() {
+        textureArrays.cleanup();
+        textureSetIds.clear();
+        textureSetArrays.clear();
+        clear();
+        if (textureId != 0) { glDeleteTextures(textureId); GLStateCache.onTextureDeleted(textureId); textureId = 0; }
+        if (bufferId != 0) { glDeleteBuffers(bufferId); bufferId = 0; }
+        if (staging != null) { MemoryUtil.memFree(staging); staging = null; }
+    }
+}
@@ -0,0 +1,262 @@
+package org.example.graphics.render;
+
+import org.example.core.JobSystem;
+import org.example.graphics.OccluderMesh;
+import org.example.scene.GameObject;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Occlusion culling na CPU: obiekty oznaczone jako occludery (GameObjectProperties.isOccluder())
+ * są rasteryzowane do bufora głębi niskiej rozdzielczości (DepthRasterizer), a prostokąt ekranu
+ * AABB każdego pozostałego obiektu jest sprawdzany z tym buforem przed wysłaniem do GPU.
+ * <p>
+ * Kafle bufora są rasteryzowane równolegle (JobSystem.parallelFor); test obiektów działa na wątku
+ * renderującym. Wynik jest dostępny w tej samej klatce - bez opóźnienia zapytań okluzji GPU.
+ * Obiekt, którego AABB przecina bliską płaszczyznę kamery, jest zawsze uznawany za widoczny.
+ * <p>
+ * Occludery są rasteryzowane zachowawczo (DepthRasterizer): krawędź trójkąta jest wewnętrzna tylko wtedy,
+ * gdy sąsiedni trójkąt occludera (OccluderMesh.getAdjacentVertices()) leży na ekranie po jej drugiej
+ * stronie; pozostałe krawędzie (sylwetka, krawędzie po przycięciu bliską płaszczyzną) pokrywają
+ * wyłącznie piksele w całości należące do trójkąta.
+ */
+public class OcclusionCuller {
+
+    public static final int BUFFER_WIDTH = 256;
+    public static final int BUFFER_HEIGHT = 128;
+    private static final int MAX_POLYGON_VERTICES = 4; // Trójkąt przycięty jedną płaszczyzną
+
+    private final DepthRasterizer rasterizer = new DepthRasterizer(BUFFER_WIDTH, BUFFER_HEIGHT);
+    private final Map<Object, OccluderMesh> boxOccluders = new IdentityHashMap<>(); // AABB siatek jako occludery
+    private final List<GameObject> visibleObjects = new ArrayList<>();
+    private final JobSystem.RangeTask rasterTask = (start, end) -> {
+        for (int tile = start; tile < end; tile++) rasterizer.rasterizeTile(tile);
+    };
+
+    // Bufory robocze (bez alokacji w pętli)
+    private final Matrix4f projView = new Matrix4f();
+    private final Matrix4f modelProjView = new Matrix4f();
+    private final Vector4f[] clipVertices = { new Vector4f(), new Vector4f(), new Vector4f() };
+    private final Vector4f[] polygon = new Vector4f[MAX_POLYGON_VERTICES];
+    private float[] screenVertices = new float[4 * 8]; // x, y, z bufora i w obcięcia dla wierzchołków occludera
+    private final Vector4f corner = new Vector4f();
+    private final Vector3f worldMin = new Vector3f();
+    private final Vector3f worldMax = new Vector3f();
+
+    private boolean enabled = true;
+    private int occluderCount = 0;
+    private int occludedCount = 0;
+
+    public OcclusionCuller() {
+        for (int i = 0; i < MAX_POLYGON_VERTICES; i++) {
+            polygon[i] = new Vector4f();
+        }
+    }
+
+    public void init() {
+        System.out.println("  OcclusionCuller: Initialized (" + BUFFER_WIDTH + "x" + BUFFER_HEIGHT + ", "
+                + rasterizer.getTileCount() + " tiles on " + (JobSystem.getWorkerCount() + 1) + " thread(s)).");
+    }
+
+    /**
+     * Odrzuca obiekty zasłonięte przez occludery.
+     *
+     * @param projection Macierz projekcji kamery.
+     * @param view Macierz widoku kamery.
+     * @param candidates Obiekty po frustum cullingu (occludery spośród nich wypełniają bufor głębi).
+     * @return Lista widocznych obiektów (należy do cullera - ważna do następnego wywołania).
+     */
+    public List<GameObject> cull(Matrix4f projection, Matrix4f view, List<GameObject> candidates) {
+        visibleObjects.clear();
+        occluderCount = 0;
+        occludedCount = 0;
+        if (!enabled) {
+            visibleObjects.addAll(candidates);
+            return visibleObjects;
+        }
+
+        // 1. Occludery -> trójkąty w przestrzeni ekranu bufora
+        projection.mul(view, projView);
+        rasterizer.clear();
+        for (GameObject go : candidates) {
+            if (go != null && go.getProperties().isOccluder()) {
+                addOccluder(go);
+                occluderCount++;
+            }
+        }
+        if (rasterizer.getTriangleCount() == 0) {
+            visibleObjects.addAll(candidates);
+            return visibleObjects;
+        }
+
+        // 2. Rasteryzacja kafli (równolegle)
+        if (!rasterize()) {
+            visibleObjects.addAll(candidates);
+            return visibleObjects;
+        }
+
+        // 3. Test AABB obiektów
+        for (GameObject go : candidates) {
+            if (go == null) continue;
+            if (go.getProperties().isOccluder() || !isOccluded(go)) {
+                visibleObjects.add(go);
+            } else {
+                occludedCount++;
+            }
+        }
+        return visibleObjects;
+    }
+
+    private boolean rasterize() {
+        try {
+            // Kafle z geometrią są nierówno rozłożone - drobne fragmenty wyrównuje podział adaptacyjny
+            JobSystem.parallelFor(rasterizer.getTileCount(), 1, rasterTask);
+            return true;
+        } catch (IllegalStateException e) {
+            System.err.println("OcclusionCuller: Rasterization failed, occlusion culling skipped this frame: " + e.getCause());
+        }
+        return false;
+    }
+
+    private void addOccluder(GameObject go) {
+        OccluderMesh occluder = go.getOccluderMesh();
+        if (occluder == null) {
+            // Domyślnie lokalny AABB siatki - poprawne dla siatek wypełniających swój AABB (ściany, skrzynie)
+            occluder = boxOccluders.computeIfAbsent(go.getMesh(),
+                    key -> OccluderMesh.box(go.getMesh().getBoundsMin(), go.getMesh().getBoundsMax()));
+        }
+        projView.mul(go.getModelMatrix(), modelProjView);
+
+        // Wierzchołki dzielone przez trójkąty są transformowane raz; w <= 0 oznacza wierzchołek za bliską płaszczyzną
+        float[] positions = occluder.getPositions();
+        int vertexCount = positions.length / 3;
+        if (screenVertices.length < vertexCount * 4) {
+            screenVertices = new float[vertexCount * 4];
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            Vector4f c = corner.set(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2], 1.0f).mul(modelProjView);
+            int s = v * 4;
+            if (c.z < -c.w || c.w <= 0.0f) {
+                screenVertices[s + 3] = 0.0f;
+            } else {
+                screenVertices[s] = toScreenX(c);
+                screenVertices[s + 1] = toScreenY(c);
+                screenVertices[s + 2] = toDepth(c);
+                screenVertices[s + 3] = c.w;
+            }
+        }
+
+        int[] indices = occluder.getIndices();
+        int[] adjacent = occluder.getAdjacentVertices();
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            int s0 = indices[i] * 4, s1 = indices[i + 1] * 4, s2 = indices[i + 2] * 4;
+            if (screenVertices[s0 + 3] > 0.0f && screenVertices[s1 + 3] > 0.0f && screenVertices[s2 + 3] > 0.0f) {
+                int innerEdgeMask = 0;
+                if (isInnerEdge(s1, s2, s0, adjacent[i])) innerEdgeMask |= DepthRasterizer.INNER_EDGE_0;
+                if (isInnerEdge(s2, s0, s1, adjacent[i + 1])) innerEdgeMask |= DepthRasterizer.INNER_EDGE_1;
+                if (isInnerEdge(s0, s1, s2, adjacent[i + 2])) innerEdgeMask |= DepthRasterizer.INNER_EDGE_2;
+                rasterizer.addTriangle(
+                        screenVertices[s0], screenVertices[s0 + 1], screenVertices[s0 + 2],
+                        screenVertices[s1], screenVertices[s1 + 1], screenVertices[s1 + 2],
+                        screenVertices[s2], screenVertices[s2 + 1], screenVertices[s2 + 2], innerEdgeMask);
+            } else {
+                for (int v = 0; v < 3; v++) {
+                    int p = indices[i + v] * 3;
+                    clipVertices[v].set(positions[p], positions[p + 1], positions[p + 2], 1.0f).mul(modelProjView);
+                }
+                addClippedTriangle();
+            }
+        }
+    }
+
+    /**
+     * Czy krawędź (a, b) trójkąta z wierzchołkiem opposite jest wewnętrzna: sąsiedni trójkąt (wierzchołek
+     * adjacentVertex) istnieje, nie jest przycinany i leży na ekranie po przeciwnej stronie krawędzi.
+     * Argumenty a, b, opposite to przesunięcia w screenVertices.
+     */
+    private boolean isInnerEdge(int a, int b, int opposite, int adjacentVertex) {
+        if (adjacentVertex < 0) return false;
+        int n = adjacentVertex * 4;
+        if (screenVertices[n + 3] <= 0.0f) return false;
+        float ax = screenVertices[a], ay = screenVertices[a + 1];
+        float ex = screenVertices[b] - ax, ey = screenVertices[b + 1] - ay;
+        float sideOwn = ex * (screenVertices[opposite + 1] - ay) - ey * (screenVertices[opposite] - ax);
+        float sideAdjacent = ex * (screenVertices[n + 1] - ay) - ey * (screenVertices[n] - ax);
+        return (sideOwn > 0.0f && sideAdjacent < 0.0f) || (sideOwn < 0.0f && sideAdjacent > 0.0f);
+    }
+
+    /** Przycina trójkąt bliską płaszczyzną (z >= -w w przestrzeni obcięcia) i dodaje powstały wielokąt jako wachlarz. */
+    private void addClippedTriangle() {
+        int count = 0;
+        for (int v = 0; v < 3; v++) {
+            Vector4f a = clipVertices[v];
+            Vector4f b = clipVertices[(v + 1) % 3];
+            float da = a.z + a.w, db = b.z + b.w;
+            if (da >= 0.0f) {
+                polygon[count++].set(a);
+            }
+            if ((da >= 0.0f) != (db >= 0.0f)) {
+                float t = da / (da - db);
+                polygon[count++].set(a).lerp(b, t);
+            }
+        }
+        for (int v = 1; v + 1 < count; v++) {
+            addScreenTriangle(polygon[0], polygon[v], polygon[v + 1]);
+        }
+    }
+
+    private void addScreenTriangle(Vector4f a, Vector4f b, Vector4f c) {
+        if (a.w <= 0.0f || b.w <= 0.0f || c.w <= 0.0f) return;
+        rasterizer.addTriangle(
+                toScreenX(a), toScreenY(a), toDepth(a),
+                toScreenX(b), toScreenY(b), toDepth(b),
+                toScreenX(c), toScreenY(c), toDepth(c));
+    }
+
+    private static float toScreenX(Vector4f v) { return (v.x / v.w * 0.5f + 0.5f) * BUFFER_WIDTH; }
+    private static float toScreenY(Vector4f v) { return (v.y / v.w * 0.5f + 0.5f) * BUFFER_HEIGHT; }
+    private static float toDepth(Vector4f v) { return v.z / v.w * 0.5f + 0.5f; }
+
+    /** Czy prostokąt ekranu AABB obiektu leży w całości za occluderami. */
+    private boolean isOccluded(GameObject go) {
+        if (go.getMesh() == null) return false;
+        go.getWorldBounds(go.getModelMatrix(), worldMin, worldMax);
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minDepth = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < 8; i++) {
+            corner.set((i & 1) == 0 ? worldMin.x : worldMax.x,
+                    (i & 2) == 0 ? worldMin.y : worldMax.y,
+                    (i & 4) == 0 ? worldMin.z : worldMax.z, 1.0f).mul(projView);
+            if (corner.z < -corner.w || corner.w <= 0.0f) {
+                return false; // AABB przecina bliską płaszczyznę - widoczny
+            }
+            float x = toScreenX(corner), y = toScreenY(corner);
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+            minDepth = Math.min(minDepth, toDepth(corner));
+        }
+        return rasterizer.isRectOccluded((int) Math.floor(minX), (int) Math.floor(minY),
+                (int) Math.floor(maxX), (int) Math.floor(maxY), minDepth);
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    /** Liczba occluderów zrasteryzowanych w ostatniej klatce. */
+    public int getOccluderCount() { return occluderCount; }
+    /** Liczba obiektów odrzuconych jako zasłonięte w ostatniej klatce. */
+    public int getOccludedCount() { return occludedCount; }
+
+    public void cleanup() {
+        boxOccluders.clear();
+        visibleObjects.clear();
+    }
+}
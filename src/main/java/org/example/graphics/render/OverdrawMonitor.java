@@ -0,0 +1,87 @@
+package org.example.graphics.render;
+
+import static org.lwjgl.opengl.GL15.*;
+
+/**
+ * Mierzy overdraw przebiegu sceny: liczbę próbek, które przeszły test głębi (GL_SAMPLES_PASSED),
+ * podzieloną przez liczbę pikseli ekranu. Wynik 1.0 oznacza, że każdy piksel był cieniowany raz.
+ * <p>
+ * Zapytania tworzą pierścień (QUERY_COUNT) i są odczytywane dopiero, gdy wynik jest dostępny -
+ * pomiar spóźnia się o kilka klatek, ale nigdy nie zatrzymuje CPU w oczekiwaniu na GPU.
+ * Wynik jest wygładzany średnią wykładniczą, żeby pojedyncza klatka nie przełączała trybu renderowania.
+ */
+public class OverdrawMonitor {
+
+    private static final int QUERY_COUNT = 4;
+    private static final float SMOOTHING = 0.1f; // Waga nowej próbki w średniej wykładniczej
+
+    private final int[] queries = new int[QUERY_COUNT];
+    private final boolean[] pending = new boolean[QUERY_COUNT];
+    private final long[] pixelCounts = new long[QUERY_COUNT];
+    private int current = 0;
+    private boolean active = false;
+
+    private float overdraw = 1.0f;
+    private boolean hasMeasurement = false;
+
+    public void init() {
+        glGenQueries(queries);
+    }
+
+    /**
+     * Zaczyna pomiar (jeśli wolne jest kolejne zapytanie pierścienia).
+     * Wywołania begin()/end() nie mogą się zagnieżdżać.
+     */
+    public void begin() {
+        poll();
+        active = !pending[current];
+        if (active) {
+            glBeginQuery(GL_SAMPLES_PASSED, queries[current]);
+        }
+    }
+
+    /** Kończy pomiar rozpoczęty w begin(). */
+    public void end(int screenWidth, int screenHeight) {
+        if (!active) return;
+        glEndQuery(GL_SAMPLES_PASSED);
+        pending[current] = true;
+        pixelCounts[current] = (long) Math.max(1, screenWidth) * Math.max(1, screenHeight);
+        current = (current + 1) % QUERY_COUNT;
+        active = false;
+    }
+
+    /** Odczytuje wyniki zakończonych zapytań bez czekania na GPU. */
+    private void poll() {
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            if (!pending[i] || glGetQueryObjecti(queries[i], GL_QUERY_RESULT_AVAILABLE) == 0) {
+                continue;
+            }
+            long samples = glGetQueryObjecti(queries[i], GL_QUERY_RESULT) & 0xFFFFFFFFL;
+            float sample = (float) samples / pixelCounts[i];
+            overdraw = hasMeasurement ? overdraw + (sample - overdraw) * SMOOTHING : sample;
+            hasMeasurement = true;
+            pending[i] = false;
+        }
+    }
+
+    /** Wygładzony overdraw (próbki / piksele ekranu); 1.0 przed pierwszym pomiarem. */
+    public float getOverdraw() {
+        return overdraw;
+    }
+
+    public boolean hasMeasurement() {
+        return hasMeasurement;
+    }
+
+    public void cleanup() {
+        if (queries[0] != 0) {
+            glDeleteQueries(queries);
+        }
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = 0;
+            pending[i] = false;
+        }
+        hasMeasurement = false;
+        overdraw = 1.0f;
+    }
+}
@@ -0,0 +1,190 @@
+package org.example.graphics.render;
+
+import org.example.graphics.Material;
+import org.example.graphics.Mesh;
+import org.example.graphics.ShaderProgram;
+import org.example.scene.GameObject;
+
+import java.util.Arrays;
+
+/**
+ * Kolejka renderowania z 64-bitowymi kluczami sortowania.
+ * Każdy element dostaje klucz kodujący (od najbardziej znaczących bitów):
+ * <pre>
+ *  63..60  przebieg (pass)          4 bity
+ *  59..52  shader                   8 bitów
+ *  51..40  zestaw tekstur           12 bitów
+ *  39..28  siatka                   12 bitów
+ *  27..16  materiał                 12 bitów
+ *  15..0   skwantowana głębokość    16 bitów (bliżej = mniej, czyli przód-do-tyłu)
+ * </pre>
+ * Po posortowaniu kolejne elementy o tym samym stanie leżą obok siebie, więc przy wysyłaniu
+ * wystarczy porównać pola kluczy sąsiednich elementów i zmieniać tylko to, co się różni.
+ * Siatka jest przed materiałem: materiały z tabeli klatki (MaterialTable) nie dzielą partii,
+ * więc obiekty z tą samą siatką i zestawem tablic tekstur mają leżeć obok siebie.
+ * Zestaw tekstur może być podany jawnie (np. zestaw tablic z MaterialTable) - domyślnie
+ * to Material.getTextureSetId(). Pole shadera rozróżnia też warianty shadera sceny
+ * (ShaderFeatures) - każdy wariant to osobny ShaderProgram z własnym identyfikatorem.
+ * Identyfikatory są przycinane do szerokości pola - kolizja psuje jedynie optymalność
+ * kolejności, nie poprawność (odbiorcy porównują właściwe obiekty).
+ * Sortowanie to LSD radix sort po bajtach na tablicach wielokrotnego użytku - bez alokacji w klatce.
+ */
+public class RenderQueue {
+
+    // === Przebiegi ===
+    public static final int PASS_DEPTH = 0;
+    public static final int PASS_OPAQUE = 1;
+
+    // === Układ klucza ===
+    private static final int PASS_SHIFT = 60;
+    private static final int SHADER_SHIFT = 52;
+    private static final int TEXTURE_SET_SHIFT = 40;
+    private static final int MESH_SHIFT = 28;
+    private static final int MATERIAL_SHIFT = 16;
+    private static final long PASS_MASK = 0xFL;
+    private static final long SHADER_MASK = 0xFFL;
+    private static final long ID12_MASK = 0xFFFL;
+    private static final int DEPTH_MAX = 0xFFFF;
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private long[] keys = new long[DEFAULT_CAPACITY];
+    private int[] order = new int[DEFAULT_CAPACITY];
+    private GameObject[] objects = new GameObject[DEFAULT_CAPACITY];
+    private Material[] materials = new Material[DEFAULT_CAPACITY];
+    private Mesh[] meshes = new Mesh[DEFAULT_CAPACITY]; // Siatka do narysowania (np. wybrany poziom LOD)
+    private int[] textureSets = new int[DEFAULT_CAPACITY];
+    private ShaderProgram[] shaders = new ShaderProgram[DEFAULT_CAPACITY];
+    private int count = 0;
+
+    // Bufory robocze sortowania
+    private long[] keysScratch = new long[DEFAULT_CAPACITY];
+    private int[] orderScratch = new int[DEFAULT_CAPACITY];
+    private final int[] histogram = new int[256];
+
+    public void clear() {
+        Arrays.fill(objects, 0, count, null);
+        Arrays.fill(materials, 0, count, null);
+        Arrays.fill(meshes, 0, count, null);
+        Arrays.fill(shaders, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Dodaje obiekt do kolejki.
+     *
+     * @param go Obiekt do narysowania (musi mieć siatkę).
+     * @param material Materiał do użycia (już rozwiązany - bez null, chyba że przebieg go nie potrzebuje).
+     * @param shader Program shaderowy (może być null dla przebiegów z jednym programem).
+     * @param pass Przebieg (PASS_*).
+     * @param normalizedDepth Głębokość w zakresie [0, 1] (0 = najbliżej kamery).
+     */
+    public void submit(GameObject go, Material material, ShaderProgram shader, int pass, float normalizedDepth) {
+        submit(go, go.getMesh(), material, shader, pass, normalizedDepth);
+    }
+
+    /**
+     * Dodaje obiekt do kolejki z jawnie podaną siatką (np. poziomem LOD zamiast go.getMesh()).
+     */
+    public void submit(GameObject go, Mesh mesh, Material material, ShaderProgram shader, int pass, float normalizedDepth) {
+        submit(go, mesh, material, material != null ? material.getTextureSetId() : 0, shader, pass, normalizedDepth);
+    }
+
+    /**
+     * Dodaje obiekt do kolejki z jawnie podanym zestawem tekstur (np. zestawem tablic z MaterialTable).
+     */
+    public void submit(GameObject go, Mesh mesh, Material material, int textureSetId, ShaderProgram shader, int pass, float normalizedDepth) {
+        ensureCapacity(count + 1);
+        objects[count] = go;
+        materials[count] = material;
+        meshes[count] = mesh;
+        textureSets[count] = textureSetId;
+        shaders[count] = shader;
+        keys[count] = buildKey(pass, shader, textureSetId, material, mesh, normalizedDepth);
+        order[count] = count;
+        count++;
+    }
+
+    public static long buildKey(int pass, ShaderProgram shader, Material material, Mesh mesh, float normalizedDepth) {
+        return buildKey(pass, shader, material != null ? material.getTextureSetId() : 0, material, mesh, normalizedDepth);
+    }
+
+    public static long buildKey(int pass, ShaderProgram shader, int textureSetId, Material material, Mesh mesh, float normalizedDepth) {
+        float clamped = normalizedDepth < 0.0f ? 0.0f : (normalizedDepth > 1.0f ? 1.0f : normalizedDepth);
+        long depth = (long) (clamped * DEPTH_MAX);
+        long key = (pass & PASS_MASK) << PASS_SHIFT;
+        if (shader != null) key |= (shader.getSortId() & SHADER_MASK) << SHADER_SHIFT;
+        key |= (textureSetId & ID12_MASK) << TEXTURE_SET_SHIFT;
+        if (material != null) key |= (material.getSortId() & ID12_MASK) << MATERIAL_SHIFT;
+        if (mesh != null) key |= (mesh.getSortId() & ID12_MASK) << MESH_SHIFT;
+        return key | depth;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= keys.length) return;
+        int newCapacity = Math.max(required, keys.length * 2);
+        keys = Arrays.copyOf(keys, newCapacity);
+        order = Arrays.copyOf(order, newCapacity);
+        objects = Arrays.copyOf(objects, newCapacity);
+        materials = Arrays.copyOf(materials, newCapacity);
+        meshes = Arrays.copyOf(meshes, newCapacity);
+        textureSets = Arrays.copyOf(textureSets, newCapacity);
+        shaders = Arrays.copyOf(shaders, newCapacity);
+        keysScratch = new long[newCapacity];
+        orderScratch = new int[newCapacity];
+    }
+
+    /** Sortuje kolejkę rosnąco po kluczach (stabilnie). */
+    public void sort() {
+        long[] srcKeys = keys, dstKeys = keysScratch;
+        int[] srcOrder = order, dstOrder = orderScratch;
+
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < count; i++) {
+                histogram[(int) ((srcKeys[i] >>> shift) & 0xFF)]++;
+            }
+            // Wszystkie elementy mają ten sam bajt - przebieg niczego nie zmieni
+            if (count == 0 || histogram[(int) ((srcKeys[0] >>> shift) & 0xFF)] == count) {
+                continue;
+            }
+            int sum = 0;
+            for (int b = 0; b < 256; b++) {
+                int c = histogram[b];
+                histogram[b] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < count; i++) {
+                int dst = histogram[(int) ((srcKeys[i] >>> shift) & 0xFF)]++;
+                dstKeys[dst] = srcKeys[i];
+                dstOrder[dst] = srcOrder[i];
+            }
+            long[] tk = srcKeys; srcKeys = dstKeys; dstKeys = tk;
+            int[] to = srcOrder; srcOrder = dstOrder; dstOrder = to;
+        }
+
+        // Wynik zawsze w tablicach głównych (zamiana referencji zamiast kopiowania)
+        if (srcKeys != keys) {
+            keysScratch = keys;
+            orderScratch = order;
+            keys = srcKeys;
+            order = srcOrder;
+        }
+    }
+
+    // --- Dostęp w kolejności posortowanej ---
+    public int size() { return count; }
+    public long getKey(int index) { return keys[index]; }
+    public GameObject getObject(int index) { return objects[order[index]]; }
+    public Material getMaterial(int index) { return materials[order[index]]; }
+    public Mesh getMesh(int index) { return meshes[order[index]]; }
+    public int getTextureSetId(int index) { return textureSets[order[index]]; }
+    public ShaderProgram getShader(int index) { return shaders[order[index]]; }
+
+    // --- Dekodowanie pól klucza ---
+    public static int passOf(long key) { return (int) ((key >>> PASS_SHIFT) & PASS_MASK); }
+    public static int shaderOf(long key) { return (int) ((key >>> SHADER_SHIFT) & SHADER_MASK); }
+    public static int textureSetOf(long key) { return (int) ((key >>> TEXTURE_SET_SHIFT) & ID12_MASK); }
+    public static int materialOf(long key) { return (int) ((key >>> MATERIAL_SHIFT) & ID12_MASK); }
+    public static int meshOf(long key) { return (int) ((key >>> MESH_SHIFT) & ID12_MASK); }
+}
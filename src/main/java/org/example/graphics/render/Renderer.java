@@ -1,13 +1,18 @@
 package org.example.graphics.render;
 
+import org.example.core.JobSystem;
 import org.example.core.Window;
 import org.example.exception.ResourceLoadException;
 import org.example.exception.ResourceNotFoundException;
 import org.example.graphics.Camera;
+import org.example.graphics.GLStateCache;
+import org.example.graphics.GeometryArena;
+import org.example.graphics.StreamingBuffer;
 import org.example.graphics.light.DirectionalLight;
 import org.example.graphics.light.PointLight;
 import org.example.graphics.light.SpotLight;
 import org.example.scene.GameObject;
+import org.joml.Matrix4f;
 
 import java.util.List;
 
@@ -21,9 +26,9 @@ import static org.lwjgl.opengl.GL11.*; // Importy dla stanu OpenGL
  */
 public class Renderer {
 
-    // === Stałe (przeniesione tutaj dla centralizacji) ===
-    public static final int MAX_POINT_LIGHTS = 4;
-    public static final int MAX_SPOT_LIGHTS = 2;
+    // === Stałe (jedyne źródło - wstrzykiwane do GLSL jako #define przez ShaderManager) ===
+    public static final int MAX_POINT_LIGHTS = 256;
+    public static final int MAX_SPOT_LIGHTS = 32;
 
     // === Zależności ===
     private final Window window;
@@ -33,6 +38,20 @@ public class Renderer {
     private ShadowRenderer shadowRenderer;
     private SceneRenderer sceneRenderer;
     private DefaultResourceManager defaultResourceManager;
+    private SceneUniformBuffer sceneUniformBuffer;
+    private ClusteredLightGrid clusteredLightGrid;
+    private ShadowAtlasRenderer shadowAtlasRenderer;
+    private final LodSelector lodSelector = new LodSelector(); // Poziomy LOD siatek - wspólny dla sceny i cieni
+
+    // Macierze kamery liczone raz na klatkę
+    private final Matrix4f projectionMatrix = new Matrix4f();
+    private final Matrix4f viewMatrix = new Matrix4f();
+
+    // Równoległe przeliczenie macierzy obiektów (stan bieżącej klatki dla zadania)
+    private static final int TRANSFORM_CHUNK = 64;
+    private final JobSystem.RangeTask transformTask = this::updateTransforms;
+    private List<GameObject> transformObjects;
+    private float transformAlpha;
 
     private boolean initialized = false;
 
@@ -58,24 +77,38 @@ public class Renderer {
         long startTime = System.nanoTime();
 
         try {
+            // Wspólne bufory geometrii - przed utworzeniem pierwszej siatki
+            GeometryArena.init();
+
             // Utwórz instancje komponentów
             shaderManager = new ShaderManager();
             shadowRenderer = new ShadowRenderer(window); // Przekaż zależność Window
             sceneRenderer = new SceneRenderer(window);   // Przekaż zależność Window
             defaultResourceManager = new DefaultResourceManager();
+            sceneUniformBuffer = new SceneUniformBuffer();
+            clusteredLightGrid = new ClusteredLightGrid();
+            shadowAtlasRenderer = new ShadowAtlasRenderer(window);
 
             // Zainicjalizuj komponenty w odpowiedniej kolejności
             defaultResourceManager.init(); // Domyślne zasoby najpierw
+            sceneUniformBuffer.init();     // Współdzielone bloki UBO
+            clusteredLightGrid.init();     // Siatka klastrów świateł (TBO)
             shaderManager.init();          // Potem shadery
             shadowRenderer.init();         // Potem mapa cieni
+            shadowAtlasRenderer.init();    // Atlas cieni reflektorów
 
             // Ustaw zależności dla SceneRenderer po inicjalizacji pozostałych
             sceneRenderer.setupDependencies(
-                    shaderManager.getSceneShaderProgram(),
+                    shaderManager,
                     defaultResourceManager.getDefaultTexture(),
                     defaultResourceManager.getDefaultMaterial(),
-                    shadowRenderer.getShadowMapTextureId()
+                    shadowRenderer.getShadowMapTextureId(),
+                    clusteredLightGrid,
+                    shadowAtlasRenderer.getShadowAtlasTextureId()
             );
+            sceneRenderer.setLodSelector(lodSelector);
+            shadowRenderer.setLodSelector(lodSelector);
+            shadowAtlasRenderer.setLodSelector(lodSelector);
 
             // Ustaw ogólny stan OpenGL
             setupOpenGLState();
@@ -98,9 +131,9 @@ public class Renderer {
 
     private void setupOpenGLState() {
         System.out.println("  Renderer: Setting up global OpenGL state...");
-        glEnable(GL_DEPTH_TEST);
-        glEnable(GL_CULL_FACE);
-        glCullFace(GL_BACK);
+        GLStateCache.enable(GL_DEPTH_TEST);
+        GLStateCache.enable(GL_CULL_FACE);
+        GLStateCache.cullFace(GL_BACK);
         glClearColor(0.1f, 0.1f, 0.15f, 1.0f); // Kolor tła
         System.out.println("  Renderer: Global OpenGL state set.");
         // Uwaga: Viewport jest zarządzany przez ShadowRenderer i SceneRenderer
@@ -110,22 +143,68 @@ public class Renderer {
 
     public void render(Camera camera, List<GameObject> gameObjects,
                        DirectionalLight dirLight, List<PointLight> pointLights, List<SpotLight> spotLights) {
+        render(camera, gameObjects, dirLight, pointLights, spotLights, 1.0f);
+    }
+
+    /**
+     * Renderuje klatkę z obiektami interpolowanymi między dwoma ostatnimi tickami symulacji.
+     * @param alpha Współczynnik interpolacji (0 = stan z początku ostatniego ticku, 1 = stan bieżący).
+     */
+    public void render(Camera camera, List<GameObject> gameObjects,
+                       DirectionalLight dirLight, List<PointLight> pointLights, List<SpotLight> spotLights, float alpha) {
 
         if (!isReady()) {
             System.err.println("Renderer.render(): Not ready. Skipping frame.");
             return;
         }
 
-        // 1. Przebieg Cieni (Depth Pass) - delegacja do ShadowRenderer
+        GLStateCache.beginFrame(); // Liczniki wywołań GL wysłanych/pominiętych - per klatka
+        if (gameObjects != null) {
+            // Macierze renderowania wszystkich przebiegów (culling, cienie, instancje) - przed ich pierwszym użyciem,
+            // równolegle; kolejne przebiegi tylko je czytają
+            transformObjects = gameObjects;
+            transformAlpha = alpha;
+            JobSystem.parallelFor(gameObjects.size(), TRANSFORM_CHUNK, transformTask);
+            transformObjects = null;
+        }
+        StreamingBuffer.beginFrame(); // Bufory strumieniowe (instancje, UBO) przechodzą do kolejnego regionu
+
+        // 0. Dane per-klatka (kamera, światła, cienie) - jeden zapis do współdzielonego UBO
+        float aspectRatio = (float) window.getWidth() / Math.max(1, window.getHeight());
+        projectionMatrix.set(camera.getProjectionMatrix(aspectRatio));
+        viewMatrix.set(camera.getViewMatrix());
+        lodSelector.update(projectionMatrix, camera.getPosition()); // Przed przebiegami cieni i sceny
+        clusteredLightGrid.update(projectionMatrix, viewMatrix, window.getWidth(), window.getHeight(), pointLights, spotLights);
+        shadowRenderer.updateCascades(projectionMatrix, viewMatrix, dirLight); // Kaskady cieni dopasowane do bryły kamery
+
+        // 1a. Atlas cieni reflektorów - przydział kafli i odświeżenie w ramach budżetu (przed UBO: macierze kafli)
+        shadowAtlasRenderer.render(projectionMatrix, viewMatrix, camera.getPosition(), spotLights, gameObjects,
+                shaderManager.getSpotShadowDepthShaderProgram());
+        sceneUniformBuffer.update(projectionMatrix, viewMatrix, camera.getPosition(), dirLight, pointLights, spotLights,
+                clusteredLightGrid, window.getWidth(), window.getHeight(), shadowRenderer.getCascades(), shadowAtlasRenderer);
+
+        // 1b. Przebieg Cieni (Depth Pass, po jednym na kaskadę) - delegacja do ShadowRenderer
         shadowRenderer.render(gameObjects, dirLight, shaderManager.getDepthShaderProgram());
 
         // 2. Przebieg Sceny (Scene Pass) - delegacja do SceneRenderer
-        sceneRenderer.render(camera, gameObjects, dirLight, pointLights, spotLights);
+        int localLightCount = (pointLights != null ? pointLights.size() : 0) + (spotLights != null ? spotLights.size() : 0);
+        int lightingFeatures = ShaderFeatures.ofLighting(dirLight, shadowRenderer.getCascades().getCascadeCount(),
+                localLightCount, shadowAtlasRenderer.getShadowedLightCount());
+        sceneRenderer.render(projectionMatrix, viewMatrix, gameObjects, dirLight, lightingFeatures);
 
         // Sprawdzenie błędów OpenGL na koniec klatki (opcjonalne, może wpływać na wydajność)
         // checkGLErrors("EndOfFrame");
     }
 
+    private void updateTransforms(int start, int end) {
+        for (int i = start; i < end; i++) {
+            GameObject go = transformObjects.get(i);
+            if (go == null) continue;
+            go.setInterpolationAlpha(transformAlpha);
+            go.getModelMatrix(); // Przelicza macierz modelu i normalnych, jeśli się zmieniła
+        }
+    }
+
     // Opcjonalna metoda do sprawdzania błędów GL
     private void checkGLErrors(String context) {
         int error;
@@ -138,7 +217,9 @@ public class Renderer {
     // --- Sprzątanie ---
 
     public void cleanup() {
-        if (!initialized && shaderManager == null && shadowRenderer == null && sceneRenderer == null && defaultResourceManager == null) {
+        if (!initialized && shaderManager == null && shadowRenderer == null && sceneRenderer == null
+                && defaultResourceManager == null && sceneUniformBuffer == null && clusteredLightGrid == null
+                && shadowAtlasRenderer == null) {
             System.out.println("Renderer: Cleanup skipped (already clean or never initialized).");
             return;
         }
@@ -154,6 +235,10 @@ public class Renderer {
             shadowRenderer.cleanup();
             shadowRenderer = null;
         }
+        if (shadowAtlasRenderer != null) {
+            shadowAtlasRenderer.cleanup();
+            shadowAtlasRenderer = null;
+        }
         if (shaderManager != null) {
             shaderManager.cleanup();
             shaderManager = null;
@@ -162,6 +247,15 @@ public class Renderer {
             defaultResourceManager.cleanup();
             defaultResourceManager = null;
         }
+        if (sceneUniformBuffer != null) {
+            sceneUniformBuffer.cleanup();
+            sceneUniformBuffer = null;
+        }
+        if (clusteredLightGrid != null) {
+            clusteredLightGrid.cleanup();
+            clusteredLightGrid = null;
+        }
+        GeometryArena.cleanup(); // Po zwolnieniu wszystkich siatek (logika gry sprząta przed Rendererem)
 
         initialized = false; // Zresetuj flagę
 
@@ -176,6 +270,116 @@ public class Renderer {
         System.out.println("Renderer: Partial cleanup finished.");
     }
 
+    // --- Statystyki ---
+
+    /** Liczba obiektów odrzuconych przez frustum culling w ostatniej klatce. */
+    public int getCulledObjectCount() {
+        return sceneRenderer != null ? sceneRenderer.getFrustumCuller().getCulledCount() : 0;
+    }
+
+    /** Liczba obiektów odrzuconych przez occlusion culling (za occluderami) w ostatniej klatce. */
+    public int getOccludedObjectCount() {
+        return sceneRenderer != null ? sceneRenderer.getOcclusionCuller().getOccludedCount() : 0;
+    }
+
+    /**
+     * Liczba obiektów przekazanych do rysowania w ostatniej klatce - elementy kolejki przebiegu sceny,
+     * po frustum i occlusion cullingu oraz pominięciu obiektów niewidocznych i bez siatki.
+     */
+    public int getSubmittedObjectCount() {
+        return sceneRenderer != null ? sceneRenderer.getSubmittedObjectCount() : 0;
+    }
+
+    /** Liczba wywołań rysujących przebiegu sceny (partii instancji Mesh/Material) w ostatniej klatce. */
+    public int getSceneDrawCallCount() {
+        return sceneRenderer != null ? sceneRenderer.getDrawCallCount() : 0;
+    }
+
+    /** Liczba wywołań GL rysujących scenę (partie z jednej puli areny idą jednym multi-draw na GL 4.3+). */
+    public int getSceneDrawSubmitCount() {
+        return sceneRenderer != null ? sceneRenderer.getDrawSubmitCount() : 0;
+    }
+
+    /** Liczba materiałów w tabeli materiałów przebiegu sceny w ostatniej klatce. */
+    public int getMaterialBindCount() {
+        return sceneRenderer != null ? sceneRenderer.getMaterialBindCount() : 0;
+    }
+
+    /** Liczba zmian zestawu tablic tekstur w przebiegu sceny w ostatniej klatce. */
+    public int getTextureBindCount() {
+        return sceneRenderer != null ? sceneRenderer.getTextureBindCount() : 0;
+    }
+
+    /** Liczba zmian wariantu shadera sceny w ostatniej klatce. */
+    public int getShaderBindCount() {
+        return sceneRenderer != null ? sceneRenderer.getShaderBindCount() : 0;
+    }
+
+    /** Liczba wariantów shadera sceny utworzonych od startu. */
+    public int getSceneShaderVariantCount() {
+        return shaderManager != null ? shaderManager.getSceneVariantCount() : 0;
+    }
+
+    /** Liczba kaskad cieni, dla których w ostatniej klatce przerysowano obiekty statyczne (0 = wszystko z cache). */
+    public int getShadowStaticRefreshCount() {
+        return shadowRenderer != null ? shadowRenderer.getStaticRefreshCount() : 0;
+    }
+
+    /** Liczba kafli atlasu cieni reflektorów przerysowanych w ostatniej klatce (ograniczona budżetem). */
+    public int getShadowAtlasUpdateCount() {
+        return shadowAtlasRenderer != null ? shadowAtlasRenderer.getUpdatedTileCount() : 0;
+    }
+
+    /** Liczba reflektorów z kaflem w atlasie cieni w ostatniej klatce. */
+    public int getShadowedSpotLightCount() {
+        return shadowAtlasRenderer != null ? shadowAtlasRenderer.getShadowedLightCount() : 0;
+    }
+
+    /** Liczba zmian stanu GL wysłanych do sterownika w ostatniej klatce. */
+    public int getIssuedStateCallCount() {
+        return GLStateCache.getIssuedCallCount();
+    }
+
+    /** Liczba nadmiarowych zmian stanu GL pominiętych przez GLStateCache w ostatniej klatce. */
+    public int getSkippedStateCallCount() {
+        return GLStateCache.getSkippedCallCount();
+    }
+
+    /** Ustawia tryb depth pre-pass przebiegu sceny (OFF, ON, AUTO - według zmierzonego overdraw). */
+    public void setDepthPrePassMode(SceneRenderer.DepthPrePassMode mode) {
+        if (sceneRenderer != null) sceneRenderer.setDepthPrePassMode(mode);
+    }
+
+    /** Czy depth pre-pass wykonano w ostatniej klatce. */
+    public boolean isDepthPrePassActive() {
+        return sceneRenderer != null && sceneRenderer.isDepthPrePassActive();
+    }
+
+    /** Wygładzony overdraw przebiegu sceny (próbki przechodzące test głębi / piksele ekranu). */
+    public float getMeasuredOverdraw() {
+        return sceneRenderer != null ? sceneRenderer.getMeasuredOverdraw() : 0.0f;
+    }
+
+    /** Włącza/wyłącza occlusion culling na CPU (np. do porównań wydajności). */
+    public void setOcclusionCullingEnabled(boolean enabled) {
+        if (sceneRenderer != null) sceneRenderer.getOcclusionCuller().setEnabled(enabled);
+    }
+
+    /** Włącza/wyłącza wybór poziomów LOD (wyłączony - zawsze siatki bazowe). */
+    public void setLodEnabled(boolean enabled) {
+        lodSelector.setEnabled(enabled);
+    }
+
+    /** Ile poziomów LOD grubsze są siatki w przebiegach cieni względem przebiegu kolorów. */
+    public void setShadowLodBias(int bias) {
+        lodSelector.setShadowLodBias(bias);
+    }
+
+    /** Włącza/wyłącza frustum culling (np. do porównań wydajności). */
+    public void setFrustumCullingEnabled(boolean enabled) {
+        if (sceneRenderer != null) sceneRenderer.getFrustumCuller().setEnabled(enabled);
+    }
+
     // --- Stan ---
 
     public boolean isReady() {
@@ -185,6 +389,9 @@ public class Renderer {
                 shaderManager != null && shaderManager.areShadersReady() &&
                 shadowRenderer != null && shadowRenderer.getShadowMap() != null && // Proste sprawdzenie
                 sceneRenderer != null && // SceneRenderer nie ma złożonego stanu "ready" poza ustawionymi zależnościami
-                defaultResourceManager != null; // DefaultResourceManager nie ma złożonego stanu
+                defaultResourceManager != null && // DefaultResourceManager nie ma złożonego stanu
+                sceneUniformBuffer != null &&
+                clusteredLightGrid != null &&
+                shadowAtlasRenderer != null;
     }
 }
\ No newline at end of file
@@ -1,37 +1,80 @@
 package org.example.graphics.render;
 
 import org.example.core.Window;
-import org.example.graphics.Camera;
+import org.example.exception.ResourceLoadException;
+import org.example.graphics.GLStateCache;
 import org.example.graphics.Material;
+import org.example.graphics.Mesh;
 import org.example.graphics.ShaderProgram;
 import org.example.graphics.Texture;
+import org.example.graphics.Uniform;
 import org.example.graphics.light.DirectionalLight;
-import org.example.graphics.light.PointLight;
-import org.example.graphics.light.SpotLight;
 import org.example.scene.GameObject;
-import org.joml.Vector3f; // Dodano import
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
 
 import java.util.List;
 
 import static org.lwjgl.opengl.GL11.*;
-import static org.lwjgl.opengl.GL13.*;
-import static org.example.graphics.render.Renderer.MAX_POINT_LIGHTS; // Import stałych
-import static org.example.graphics.render.Renderer.MAX_SPOT_LIGHTS; // Import stałych
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
 
 /**
  * Odpowiada za główny przebieg renderowania sceny (Forward Pass).
  * Renderuje obiekty do domyślnego bufora ramki, uwzględniając oświetlenie,
  * materiały i cienie (przy użyciu mapy cieni z ShadowRenderer).
+ * <p>
+ * Opcjonalny depth pre-pass rysuje najpierw samą głębię tych samych partii (ta sama posortowana
+ * kolejka i bufor instancji), a przebieg koloru działa z GL_LEQUAL i wyłączonym zapisem głębi -
+ * fragment shader z pętlami świateł wykonuje się tylko dla widocznych fragmentów.
+ * W trybie AUTO pre-pass jest włączany, gdy zmierzony overdraw (OverdrawMonitor) przekracza próg.
+ * <p>
+ * Materiały trafiają do tabeli klatki (MaterialTable), a tekstury do tablic GL_TEXTURE_2D_ARRAY -
+ * partie dzielą się tylko po siatce i zestawie tablic, więc obiekty z różnymi materiałami
+ * rysuje jedno wywołanie.
+ * <p>
+ * Każdy obiekt dostaje wariant shadera sceny (ShaderManager.getSceneShaderVariant()) z cech
+ * materiału i świateł klatki (ShaderFeatures) - proste materiały nie płacą za próbkowanie map,
+ * a scena bez świateł lokalnych - za pętle klastrów. Wariant jest częścią klucza kolejki.
  */
 public class SceneRenderer {
 
+    /** Tryb depth pre-pass. */
+    public enum DepthPrePassMode { OFF, ON, AUTO }
+
+    // Progi overdraw dla trybu AUTO (histereza - bez przełączania w każdej klatce)
+    private static final float PRE_PASS_ENABLE_OVERDRAW = 1.6f;
+    private static final float PRE_PASS_DISABLE_OVERDRAW = 1.25f;
+
     private final Window window;
-    private ShaderProgram sceneShader; // Zależność wstrzykiwana
+    private ShaderManager shaderManager; // Zależność wstrzykiwana (warianty shadera sceny)
     private Texture defaultTexture;    // Zależność wstrzykiwana
     private Material defaultMaterial;   // Zależność wstrzykiwana
     private int shadowMapTextureId = -1; // Zależność wstrzykiwana (ID tekstury)
+    private ClusteredLightGrid lightGrid; // Zależność wstrzykiwana (TBO klastrów świateł)
+    private int shadowAtlasTextureId = -1; // Zależność wstrzykiwana (atlas cieni reflektorów)
+    private ShaderProgram prePassShader; // Zależność wstrzykiwana (głębia z kamery, depth_fragment.glsl)
+
+    // Jedyny uniform per-partia (dane per-klatka są w blokach UBO - SceneUniformBuffer, jednostki
+    // samplerów ustawia ShaderManager przy tworzeniu wariantu) - uchwyt bieżącego wariantu
+    private Uniform octahedralNormalsUniform;
 
-    private static final float DEFAULT_SHADOW_BIAS = 0.005f;
+    private final FrustumCuller frustumCuller = new FrustumCuller();
+    private final OcclusionCuller occlusionCuller = new OcclusionCuller();
+    private final RenderQueue renderQueue = new RenderQueue();
+    private final InstanceBatcher instanceBatcher = new InstanceBatcher();
+    private final MaterialTable materialTable = new MaterialTable();
+    private final Vector3f objectPosition = new Vector3f(); // Bufor roboczy głębokości sortowania
+    private LodSelector lodSelector; // Opcjonalny (null = zawsze siatka bazowa)
+    private int materialBindCount = 0;
+    private int textureBindCount = 0;
+    private int shaderBindCount = 0;
+    private boolean batcherInitialized = false;
+
+    private final OverdrawMonitor overdrawMonitor = new OverdrawMonitor();
+    private DepthPrePassMode depthPrePassMode = DepthPrePassMode.AUTO;
+    private boolean autoPrePassEnabled = false;
+    private boolean prePassActive = false; // Czy pre-pass wykonano w ostatniej klatce
+    private int prePassSubmitCount = 0;
 
     // Konstruktor przyjmuje niezbędne zależności
     public SceneRenderer(Window window) {
@@ -40,161 +83,267 @@ public class SceneRenderer {
     }
 
     // Metoda do ustawienia zależności po ich zainicjalizowaniu w głównym Rendererze
-    public void setupDependencies(ShaderProgram sceneShader, Texture defaultTexture, Material defaultMaterial, int shadowMapTextureId) {
-        this.sceneShader = sceneShader;
+    public void setupDependencies(ShaderManager shaderManager, Texture defaultTexture, Material defaultMaterial,
+                                  int shadowMapTextureId, ClusteredLightGrid lightGrid, int shadowAtlasTextureId) throws ResourceLoadException {
+        this.shaderManager = shaderManager;
         this.defaultTexture = defaultTexture;
         this.defaultMaterial = defaultMaterial;
         this.shadowMapTextureId = shadowMapTextureId;
+        this.lightGrid = lightGrid;
+        this.shadowAtlasTextureId = shadowAtlasTextureId;
+        this.prePassShader = shaderManager != null ? shaderManager.getDepthPrePassShaderProgram() : null;
 
-        if (this.sceneShader == null || this.defaultTexture == null || this.defaultMaterial == null || this.shadowMapTextureId == -1) {
+        if (this.shaderManager == null || this.defaultTexture == null || this.defaultMaterial == null
+                || this.shadowMapTextureId == -1 || this.lightGrid == null || this.shadowAtlasTextureId == -1
+                || this.prePassShader == null) {
             throw new IllegalStateException("SceneRenderer dependencies not fully set.");
         }
+        if (!batcherInitialized) {
+            materialTable.init(); // Jedyny krok, który może rzucić - przed pozostałymi
+            instanceBatcher.init();
+            overdrawMonitor.init();
+            occlusionCuller.init();
+            batcherInitialized = true;
+        }
         System.out.println("  SceneRenderer: Dependencies set.");
     }
 
-
     /**
      * Wykonuje główny przebieg renderowania sceny.
+     * Dane kamery, świateł i cieni są już zapisane w blokach UBO (SceneUniformBuffer).
      *
-     * @param camera Kamera sceny.
+     * @param projection Macierz projekcji kamery (dla cullingu).
+     * @param view Macierz widoku kamery (dla cullingu).
      * @param gameObjects Lista obiektów do renderowania.
-     * @param dirLight Światło kierunkowe (może być null).
-     * @param pointLights Lista świateł punktowych.
-     * @param spotLights Lista świateł reflektorowych.
+     * @param dirLight Światło kierunkowe (może być null) - decyduje o podpięciu mapy cieni.
+     * @param lightingFeatures Cechy oświetlenia klatki (ShaderFeatures.ofLighting()) dla wyboru wariantów.
      */
-    public void render(Camera camera, List<GameObject> gameObjects,
-                       DirectionalLight dirLight, List<PointLight> pointLights, List<SpotLight> spotLights) {
+    public void render(Matrix4f projection, Matrix4f view, List<GameObject> gameObjects, DirectionalLight dirLight,
+                       int lightingFeatures) {
 
-        if (sceneShader == null || defaultTexture == null || defaultMaterial == null || shadowMapTextureId == -1) {
+        if (shaderManager == null || defaultTexture == null || defaultMaterial == null || shadowMapTextureId == -1) {
             System.err.println("SceneRenderer.render(): Dependencies not set. Skipping scene pass.");
             return;
         }
-        if (camera == null || gameObjects == null) {
-            System.err.println("SceneRenderer.render(): Camera or gameObjects list is null. Skipping scene pass.");
+        if (gameObjects == null) {
+            System.err.println("SceneRenderer.render(): gameObjects list is null. Skipping scene pass.");
             return;
         }
 
         // Ustaw viewport na rozmiar okna
-        glViewport(0, 0, window.getWidth(), window.getHeight());
-        // Wyczyść domyślny bufor ramki
+        GLStateCache.viewport(0, 0, window.getWidth(), window.getHeight());
+        // Wyczyść domyślny bufor ramki (glClear respektuje maskę zapisu głębi)
+        GLStateCache.depthMask(true);
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-        sceneShader.bind();
+        // --- Frustum culling: do GPU trafiają tylko obiekty w bryle widzenia ---
+        List<GameObject> visibleObjects = frustumCuller.cull(projection, view, gameObjects);
+        // --- Occlusion culling na CPU: obiekty za occluderami (ściany itp.) nie trafiają do kolejki ---
+        visibleObjects = occlusionCuller.cull(projection, view, visibleObjects);
+
+        // --- Kolejka: sortowanie po stanie i przód-do-tyłu, jeden bufor instancji dla obu przebiegów ---
+        buildRenderQueue(visibleObjects, view, projection.perspectiveFar(), lightingFeatures & ShaderFeatures.LIGHTING_MASK);
+        instanceBatcher.build(renderQueue, materialTable);
+        materialTable.upload();
 
-        // --- Ustawienie uniformów globalnych (per-frame) ---
-        setGlobalUniforms(camera, dirLight, pointLights, spotLights);
+        // --- Depth pre-pass (opcjonalnie) ---
+        prePassActive = shouldRunPrePass();
+        int width = window.getWidth(), height = window.getHeight();
+        if (prePassActive) {
+            // Próbki przechodzące test głębi w pre-passie = fragmenty, które cieniowałby przebieg bez niego
+            overdrawMonitor.begin();
+            renderDepthPrePass();
+            overdrawMonitor.end(width, height);
+            GLStateCache.depthMask(false);
+            GLStateCache.depthFunc(GL_LEQUAL);
+        }
 
-        // --- Renderowanie obiektów sceny ---
-        renderSceneObjects(gameObjects);
+        bindShadowMap(dirLight);
+        lightGrid.bindTextures(); // Jednostki 3 i 4 - siatka klastrów i lista indeksów świateł
+        materialTable.bindTable(); // Jednostka 6 - tabela materiałów klatki
 
-        sceneShader.unbind();
+        if (!prePassActive) overdrawMonitor.begin();
+        renderSceneObjects();
+        if (!prePassActive) overdrawMonitor.end(width, height);
+
+        // Przywróć domyślny stan głębi (przebiegi cieni czyszczą i zapisują głębię)
+        GLStateCache.depthMask(true);
+        GLStateCache.depthFunc(GL_LESS);
+        // Program zostaje zbindowany - GLStateCache pominie ponowne wiązanie, jeśli nic go nie zmieni
     }
 
-    private void setGlobalUniforms(Camera camera, DirectionalLight dirLight, List<PointLight> pointLights, List<SpotLight> spotLights) {
-        setCameraUniforms(camera);
-        setDirectionalLightUniforms(dirLight);
-        setPointLightsUniforms(pointLights);
-        setSpotLightsUniforms(spotLights);
-        setSamplerUniforms();
+    private boolean shouldRunPrePass() {
+        switch (depthPrePassMode) {
+            case ON:
+                return true;
+            case OFF:
+                return false;
+            default:
+                float overdraw = overdrawMonitor.getOverdraw();
+                if (!autoPrePassEnabled && overdraw > PRE_PASS_ENABLE_OVERDRAW) {
+                    autoPrePassEnabled = true;
+                } else if (autoPrePassEnabled && overdraw < PRE_PASS_DISABLE_OVERDRAW) {
+                    autoPrePassEnabled = false;
+                }
+                return autoPrePassEnabled;
+        }
     }
 
-    private void setCameraUniforms(Camera camera) {
-        float aspectRatio = (float) window.getWidth() / Math.max(1, window.getHeight());
-        sceneShader.setUniform("projection", camera.getProjectionMatrix(aspectRatio));
-        sceneShader.setUniform("view", camera.getViewMatrix());
-        sceneShader.setUniform("viewPos", camera.getPosition());
+    // Sama głębia - te same partie co przebieg koloru, bez materiałów i zapisu koloru
+    private void renderDepthPrePass() {
+        prePassShader.bind();
+        GLStateCache.colorMask(false);
+        instanceBatcher.drawAll();
+        prePassSubmitCount = instanceBatcher.getDrawSubmitCount();
+        GLStateCache.colorMask(true);
     }
 
-    private void setDirectionalLightUniforms(DirectionalLight dirLight) {
-        if (dirLight != null) {
-            sceneShader.setUniform("dirLight.direction", dirLight.getDirection());
-            sceneShader.setUniform("dirLight.color", dirLight.getColor());
-            sceneShader.setUniform("dirLight.intensity", dirLight.getIntensity());
-            sceneShader.setUniform("lightSpaceMatrix", dirLight.getLightSpaceMatrix());
-            sceneShader.setUniform("shadowBias", DEFAULT_SHADOW_BIAS);
+    private void bindShadowMap(DirectionalLight dirLight) {
+        // Zwiąż tablicę kaskad mapy cieni z jej jednostką (zgodnie z ustawieniem samplera)
+        GLStateCache.bindTexture(ShadowRenderer.SHADOW_MAP_TEXTURE_UNIT, GL_TEXTURE_2D_ARRAY, dirLight != null ? shadowMapTextureId : 0);
+        // Atlas cieni reflektorów - jednostka 5 (kafle bez cienia mają w = 0 w ShadowBlock)
+        GLStateCache.bindTexture(ShadowAtlasRenderer.SHADOW_ATLAS_TEXTURE_UNIT, GL_TEXTURE_2D, shadowAtlasTextureId);
+    }
 
-            // Zwiąż teksturę mapy cieni z jednostką 2 (zgodnie z ustawieniem samplera)
-            glActiveTexture(GL_TEXTURE2);
-            glBindTexture(GL_TEXTURE_2D, shadowMapTextureId);
-        } else {
-            sceneShader.setUniform("dirLight.intensity", 0.0f);
-            glActiveTexture(GL_TEXTURE2);
-            glBindTexture(GL_TEXTURE_2D, 0); // Odwiąż teksturę
+    private void buildRenderQueue(List<GameObject> gameObjects, Matrix4f view, float farPlane, int lightingFeatures) {
+        renderQueue.clear();
+        materialTable.clear();
+        float invFar = farPlane > 0.0f ? 1.0f / farPlane : 0.0f;
+        for (GameObject go : gameObjects) {
+            if (go == null || !go.isVisible() || go.getMesh() == null) {
+                continue;
+            }
+            Material material = go.getMaterial() != null ? go.getMaterial() : defaultMaterial;
+            // Głębokość w przestrzeni widoku (kamera patrzy wzdłuż -Z), z pozycji renderowanej (interpolowanej)
+            go.getModelMatrix().getTranslation(objectPosition);
+            float viewDepth = -(view.m02() * objectPosition.x + view.m12() * objectPosition.y
+                    + view.m22() * objectPosition.z + view.m32());
+            Mesh mesh = lodSelector != null ? lodSelector.selectMesh(go) : go.getMesh();
+            int textureSetId = materialTable.getTextureSetId(materialTable.register(material));
+            ShaderProgram shader = shaderManager.getSceneShaderVariant(lightingFeatures | ShaderFeatures.ofMaterial(material));
+            renderQueue.submit(go, mesh, material, textureSetId, shader, RenderQueue.PASS_OPAQUE, viewDepth * invFar);
         }
+        renderQueue.sort();
     }
 
-    private void setPointLightsUniforms(List<PointLight> pointLights) {
-        int numActiveLights = 0;
-        if (pointLights != null) {
-            numActiveLights = Math.min(pointLights.size(), MAX_POINT_LIGHTS);
-            for (int i = 0; i < numActiveLights; i++) {
-                PointLight pl = pointLights.get(i);
-                if (pl == null) continue;
-                String base = "pointLights[" + i + "].";
-                sceneShader.setUniform(base + "position", pl.position);
-                sceneShader.setUniform(base + "color", pl.color);
-                sceneShader.setUniform(base + "intensity", pl.intensity);
-                sceneShader.setUniform(base + "att.constant", pl.attenuation.constant);
-                sceneShader.setUniform(base + "att.linear", pl.attenuation.linear);
-                sceneShader.setUniform(base + "att.quadratic", pl.attenuation.quadratic);
+    private void renderSceneObjects() {
+        // Jedno wywołanie rysujące na ciąg elementów kolejki z tą samą trójką (wariant shadera, Mesh,
+        // zestaw tablic tekstur); ciągi partii z tym samym stanem i pulą areny - jedno wywołanie multi-draw
+        materialBindCount = materialTable.getMaterialCount();
+        textureBindCount = 0;
+        shaderBindCount = 0;
+        int previousTextureSet = -1;
+        ShaderProgram previousShader = null;
+        int batchCount = instanceBatcher.getBatchCount();
+        int i = 0;
+        while (i < batchCount) {
+            InstanceBatcher.Batch batch = instanceBatcher.getBatch(i);
+            ShaderProgram shader = batch.getShader();
+            if (shader != previousShader) {
+                shader.bind();
+                octahedralNormalsUniform = shader.getUniform("octahedralNormals");
+                shaderBindCount++;
+                previousShader = shader;
             }
-        }
-        sceneShader.setUniform("numPointLights", numActiveLights);
-    }
-
-    private void setSpotLightsUniforms(List<SpotLight> spotLights) {
-        int numActiveLights = 0;
-        if (spotLights != null) {
-            numActiveLights = Math.min(spotLights.size(), MAX_SPOT_LIGHTS);
-            for (int i = 0; i < numActiveLights; i++) {
-                SpotLight sl = spotLights.get(i);
-                if (sl == null || sl.pointLight == null) continue;
-                String base = "spotLights[" + i + "].";
-                String plBase = base + "pl.";
-                sceneShader.setUniform(plBase + "position", sl.pointLight.position);
-                sceneShader.setUniform(plBase + "color", sl.pointLight.color);
-                sceneShader.setUniform(plBase + "intensity", sl.pointLight.intensity);
-                sceneShader.setUniform(plBase + "att.constant", sl.pointLight.attenuation.constant);
-                sceneShader.setUniform(plBase + "att.linear", sl.pointLight.attenuation.linear);
-                sceneShader.setUniform(plBase + "att.quadratic", sl.pointLight.attenuation.quadratic);
-                sceneShader.setUniform(base + "direction", sl.direction);
-                sceneShader.setUniform(base + "cutOffCos", sl.getCutOffCos());
-                sceneShader.setUniform(base + "outerCutOffCos", sl.getOuterCutOffCos());
+            int textureSet = batch.getTextureSetId();
+            // Materiały są w tabeli - między partiami zmieniają się co najwyżej tablice tekstur
+            if (textureSet != previousTextureSet) {
+                materialTable.bindTextureSet(textureSet);
+                textureBindCount++;
+                previousTextureSet = textureSet;
+            }
+            boolean octahedral = batch.getMesh().getLayout().hasOctahedralNormals();
+            octahedralNormalsUniform.set(octahedral); // Bez wywołania GL, gdy bez zmian
+            int runEnd = i + 1;
+            while (runEnd < batchCount && instanceBatcher.getBatch(runEnd).getShader() == shader
+                    && instanceBatcher.getBatch(runEnd).getTextureSetId() == textureSet
+                    && instanceBatcher.getBatch(runEnd).getMesh().getLayout().hasOctahedralNormals() == octahedral) {
+                runEnd++;
             }
+            instanceBatcher.drawRange(i, runEnd - i);
+            i = runEnd;
         }
-        sceneShader.setUniform("numSpotLights", numActiveLights);
     }
 
-    private void setSamplerUniforms() {
-        sceneShader.setUniform("diffuseSampler", Material.DIFFUSE_MAP_TEXTURE_UNIT);   // 0
-        sceneShader.setUniform("specularSampler", Material.SPECULAR_MAP_TEXTURE_UNIT); // 1
-        sceneShader.setUniform("shadowMapSampler", 2);                                // 2
+    public DepthPrePassMode getDepthPrePassMode() { return depthPrePassMode; }
+    public void setDepthPrePassMode(DepthPrePassMode mode) {
+        if (mode == null) throw new IllegalArgumentException("DepthPrePassMode cannot be null");
+        this.depthPrePassMode = mode;
     }
 
-    private void renderSceneObjects(List<GameObject> gameObjects) {
-        for (GameObject go : gameObjects) {
-            if (go == null || !go.isVisible() || go.getMesh() == null) {
-                continue;
-            }
+    /** Czy depth pre-pass wykonano w ostatniej klatce. */
+    public boolean isDepthPrePassActive() {
+        return prePassActive;
+    }
 
-            sceneShader.setUniform("model", go.getModelMatrix());
+    /** Wygładzony overdraw przebiegu sceny (próbki przechodzące test głębi / piksele ekranu). */
+    public float getMeasuredOverdraw() {
+        return overdrawMonitor.getOverdraw();
+    }
 
-            Material materialToBind = go.getMaterial() != null ? go.getMaterial() : defaultMaterial;
-            materialToBind.bind(sceneShader, defaultTexture); // bind używa defaultTexture jako fallbacku
+    /** Selektor poziomów LOD dla przebiegu kolorów; null - siatki bazowe. */
+    public void setLodSelector(LodSelector lodSelector) {
+        this.lodSelector = lodSelector;
+    }
 
-            go.getMesh().render();
-        }
+    public FrustumCuller getFrustumCuller() {
+        return frustumCuller;
+    }
+
+    public OcclusionCuller getOcclusionCuller() {
+        return occlusionCuller;
+    }
+
+    /** Liczba elementów kolejki przebiegu sceny (obiektów po cullingu) w ostatniej klatce. */
+    public int getSubmittedObjectCount() {
+        return renderQueue.size();
+    }
+
+    /** Liczba wywołań rysujących (partii instancji) w ostatniej klatce. */
+    public int getDrawCallCount() {
+        return instanceBatcher.getBatchCount();
+    }
+
+    /** Liczba wywołań GL rysujących scenę w ostatniej klatce (multi-draw liczony raz, bez pre-passu). */
+    public int getDrawSubmitCount() {
+        return instanceBatcher.getDrawSubmitCount() - (prePassActive ? prePassSubmitCount : 0);
+    }
+
+    /** Liczba materiałów w tabeli ostatniej klatki (wysłanych jednym zapisem TBO zamiast zmian uniformów). */
+    public int getMaterialBindCount() {
+        return materialBindCount;
     }
 
-    // SceneRenderer nie zarządza bezpośrednio zasobami GPU (shadery, tekstury),
-    // więc jego metoda cleanup jest pusta lub niepotrzebna.
-    // Zasoby są zarządzane przez ShaderManager, DefaultResourceManager, ShadowRenderer.
+    /** Liczba zmian zestawu tablic tekstur w ostatniej klatce. */
+    public int getTextureBindCount() {
+        return textureBindCount;
+    }
+
+    /** Liczba zmian wariantu shadera sceny w ostatniej klatce. */
+    public int getShaderBindCount() {
+        return shaderBindCount;
+    }
+
+    // Zasobami GPU należącymi do SceneRenderer są bufor instancji, zapytania pomiaru overdraw
+    // i tabela materiałów z tablicami tekstur.
+    // Shadery (z wariantami) i tekstury są zarządzane przez ShaderManager, DefaultResourceManager, ShadowRenderer.
     public void cleanup() {
-        System.out.println("  SceneRenderer: Cleanup (no direct GPU resources to clean).");
+        System.out.println("  SceneRenderer: Cleaning up instance buffer...");
+        if (batcherInitialized) {
+            instanceBatcher.cleanup();
+            overdrawMonitor.cleanup();
+            occlusionCuller.cleanup();
+            materialTable.cleanup();
+            batcherInitialized = false;
+        }
+        renderQueue.clear();
         // Ewentualnie zerowanie referencji dla pewności
-        sceneShader = null;
+        shaderManager = null;
         defaultTexture = null;
         defaultMaterial = null;
         shadowMapTextureId = -1;
+        lightGrid = null;
+        shadowAtlasTextureId = -1;
+        prePassShader = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+package org.example.graphics.render;
+
+import org.example.exception.ResourceLoadException;
+import org.example.graphics.StreamingBuffer;
+import org.example.graphics.light.DirectionalLight;
+import org.example.graphics.light.PointLight;
+import org.example.graphics.light.SpotLight;
+import org.example.graphics.shadow.ShadowCascades;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.example.graphics.render.Renderer.MAX_POINT_LIGHTS;
+import static org.example.graphics.render.Renderer.MAX_SPOT_LIGHTS;
+import static org.lwjgl.opengl.GL11.glGetInteger;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.glBindBufferRange;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT;
+
+/**
+ * Współdzielone bloki uniformów (UBO, układ std140) z danymi per-klatka:
+ * kamera, światła i parametry cieni. Wszystkie trzy bloki są zapisywane raz na klatkę jednym
+ * fragmentem bufora strumieniowego (StreamingBuffer - bez czekania na GPU, które może jeszcze
+ * czytać dane poprzedniej klatki) i podpinane do stałych punktów wiązania,
+ * więc każdy program shaderowy deklarujący dany blok widzi te same dane.
+ *
+ * Układ bloków (musi odpowiadać deklaracjom w plikach GLSL):
+ * <pre>
+ * CameraBlock  { mat4 projection; mat4 view; vec4 viewPos; }
+ * LightBlock   { vec4 dirLightDirection; vec4 dirLightColor; ivec4 lightCounts;
+ *                ivec4 clusterDims; vec4 clusterZParams; vec4 clusterTileSize;
+ *                PointLightData pointLights[MAX_POINT_LIGHTS]; SpotLightData spotLights[MAX_SPOT_LIGHTS]; }
+ * ShadowBlock  { mat4 lightSpaceMatrices[MAX_SHADOW_CASCADES]; vec4 cascadeSplits; vec4 cascadeBiases; vec4 shadowParams;
+ *                mat4 spotShadowMatrices[MAX_SPOT_LIGHTS]; vec4 spotShadowTiles[MAX_SPOT_LIGHTS];
+ *                vec4 spotShadowDepth[MAX_SPOT_LIGHTS]; }
+ * </pre>
+ */
+public class SceneUniformBuffer {
+
+    // === Punkty wiązania i nazwy bloków ===
+    public static final int CAMERA_BLOCK_BINDING = 0;
+    public static final int LIGHT_BLOCK_BINDING = 1;
+    public static final int SHADOW_BLOCK_BINDING = 2;
+    public static final String CAMERA_BLOCK_NAME = "CameraBlock";
+    public static final String LIGHT_BLOCK_NAME = "LightBlock";
+    public static final String SHADOW_BLOCK_NAME = "ShadowBlock";
+
+    // === Rozmiary std140 (w bajtach) ===
+    private static final int MAT4_SIZE = 64;
+    private static final int VEC4_SIZE = 16;
+    private static final int POINT_LIGHT_STRIDE = 3 * VEC4_SIZE; // positionIntensity, color, attenuation
+    private static final int SPOT_LIGHT_STRIDE = 5 * VEC4_SIZE;  // + directionCutOff, outerCutOff
+    private static final int CAMERA_BLOCK_SIZE = 2 * MAT4_SIZE + VEC4_SIZE;
+    private static final int LIGHT_HEADER_SIZE = 6 * VEC4_SIZE;
+    private static final int LIGHT_BLOCK_SIZE = LIGHT_HEADER_SIZE
+            + MAX_POINT_LIGHTS * POINT_LIGHT_STRIDE + MAX_SPOT_LIGHTS * SPOT_LIGHT_STRIDE;
+    private static final int SHADOW_HEADER_SIZE = ShadowCascades.MAX_CASCADES * MAT4_SIZE + 3 * VEC4_SIZE;
+    private static final int SHADOW_BLOCK_SIZE = SHADOW_HEADER_SIZE + MAX_SPOT_LIGHTS * (MAT4_SIZE + 2 * VEC4_SIZE);
+
+    private StreamingBuffer stream = null;
+    private ByteBuffer staging = null;
+    private int cameraOffset, lightOffset, shadowOffset, totalSize;
+    private int uniformAlignment = 1;
+
+    private final Matrix4f identity = new Matrix4f();
+    // Granice i biasy kaskad pakowane do jednego vec4 (ShadowCascades.MAX_CASCADES <= 4)
+    private final float[] cascadeSplits = new float[4];
+    private final float[] cascadeBiases = new float[4];
+    // Dane kafla atlasu cieni reflektora (bufory wielokrotnego użytku)
+    private final Matrix4f spotShadowMatrix = new Matrix4f();
+    private final Vector4f spotShadowTile = new Vector4f();
+    private final Vector4f spotShadowDepth = new Vector4f();
+
+    public void init() throws ResourceLoadException {
+        System.out.println("  SceneUniformBuffer: Initializing...");
+        uniformAlignment = Math.max(1, glGetInteger(GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT));
+        cameraOffset = 0;
+        lightOffset = align(cameraOffset + CAMERA_BLOCK_SIZE, uniformAlignment);
+        shadowOffset = align(lightOffset + LIGHT_BLOCK_SIZE, uniformAlignment);
+        totalSize = shadowOffset + SHADOW_BLOCK_SIZE;
+
+        stream = new StreamingBuffer("scene uniforms", align(totalSize, uniformAlignment));
+        stream.init();
+        if (stream.getBufferId() == 0) {
+            throw new ResourceLoadException("Could not create uniform buffer object");
+        }
+        staging = MemoryUtil.memCalloc(totalSize);
+        System.out.println("  SceneUniformBuffer: Initialized (" + totalSize + " bytes per frame).");
+    }
+
+    private static int align(int value, int alignment) {
+        return ((value + alignment - 1) / alignment) * alignment;
+    }
+
+    /**
+     * Zapisuje wszystkie dane per-klatka do bufora staging i wysyła je jednym wywołaniem.
+     */
+    public void update(Matrix4f projection, Matrix4f view, Vector3f viewPos,
+                       DirectionalLight dirLight, List<PointLight> pointLights, List<SpotLight> spotLights,
+                       ClusteredLightGrid lightGrid, int screenWidth, int screenHeight, ShadowCascades cascades,
+                       ShadowAtlasRenderer shadowAtlas) {
+        if (stream == null) return;
+
+        writeCameraBlock(projection, view, viewPos);
+        writeLightBlock(dirLight, pointLights, spotLights);
+        writeClusterParams(lightGrid, screenWidth, screenHeight);
+        writeShadowBlock(cascades);
+        writeSpotShadows(spotLights, shadowAtlas);
+
+        // Fragment tej klatki - zakresy bloków podpinane na nowo (przesunięcie zmienia się co klatkę)
+        int base = stream.upload(staging, uniformAlignment);
+        int bufferId = stream.getBufferId();
+        glBindBufferRange(GL_UNIFORM_BUFFER, CAMERA_BLOCK_BINDING, bufferId, base + cameraOffset, CAMERA_BLOCK_SIZE);
+        glBindBufferRange(GL_UNIFORM_BUFFER, LIGHT_BLOCK_BINDING, bufferId, base + lightOffset, LIGHT_BLOCK_SIZE);
+        glBindBufferRange(GL_UNIFORM_BUFFER, SHADOW_BLOCK_BINDING, bufferId, base + shadowOffset, SHADOW_BLOCK_SIZE);
+    }
+
+    private void writeCameraBlock(Matrix4f projection, Matrix4f view, Vector3f viewPos) {
+        projection.get(cameraOffset, staging);
+        view.get(cameraOffset + MAT4_SIZE, staging);
+        putVec4(cameraOffset + 2 * MAT4_SIZE, viewPos.x, viewPos.y, viewPos.z, 1.0f);
+    }
+
+    private void writeLightBlock(DirectionalLight dirLight, List<PointLight> pointLights, List<SpotLight> spotLights) {
+        int offset = lightOffset;
+        if (dirLight != null) {
+            Vector3f dir = dirLight.getDirection();
+            Vector3f color = dirLight.getColor();
+            putVec4(offset, dir.x, dir.y, dir.z, 0.0f);
+            putVec4(offset + VEC4_SIZE, color.x, color.y, color.z, dirLight.getIntensity());
+        } else {
+            putVec4(offset, 0.0f, -1.0f, 0.0f, 0.0f);
+            putVec4(offset + VEC4_SIZE, 0.0f, 0.0f, 0.0f, 0.0f); // intensywność 0 = wyłączone
+        }
+
+        // Tablica świateł punktowych (upakowana bez dziur po nullach)
+        int numPointLights = 0;
+        int pointBase = offset + LIGHT_HEADER_SIZE;
+        if (pointLights != null) {
+            for (int i = 0; i < pointLights.size() && numPointLights < MAX_POINT_LIGHTS; i++) {
+                PointLight pl = pointLights.get(i);
+                if (pl == null) continue;
+                putPointLight(pointBase + numPointLights * POINT_LIGHT_STRIDE, pl);
+                numPointLights++;
+            }
+        }
+
+        // Tablica świateł reflektorowych
+        int numSpotLights = 0;
+        int spotBase = pointBase + MAX_POINT_LIGHTS * POINT_LIGHT_STRIDE;
+        if (spotLights != null) {
+            for (int i = 0; i < spotLights.size() && numSpotLights < MAX_SPOT_LIGHTS; i++) {
+                SpotLight sl = spotLights.get(i);
+                if (sl == null || sl.pointLight == null) continue;
+                int base = spotBase + numSpotLights * SPOT_LIGHT_STRIDE;
+                putPointLight(base, sl.pointLight);
+                putVec4(base + 3 * VEC4_SIZE, sl.direction.x, sl.direction.y, sl.direction.z, sl.getCutOffCos());
+                putVec4(base + 4 * VEC4_SIZE, sl.getOuterCutOffCos(), 0.0f, 0.0f, 0.0f);
+                numSpotLights++;
+            }
+        }
+
+        // ivec4 lightCounts
+        int countsOffset = offset + 2 * VEC4_SIZE;
+        staging.putInt(countsOffset, numPointLights);
+        staging.putInt(countsOffset + 4, numSpotLights);
+        staging.putInt(countsOffset + 8, 0);
+        staging.putInt(countsOffset + 12, 0);
+    }
+
+    private void writeClusterParams(ClusteredLightGrid lightGrid, int screenWidth, int screenHeight) {
+        int offset = lightOffset + 3 * VEC4_SIZE;
+        // ivec4 clusterDims
+        staging.putInt(offset, ClusteredLightGrid.DIM_X);
+        staging.putInt(offset + 4, ClusteredLightGrid.DIM_Y);
+        staging.putInt(offset + 8, ClusteredLightGrid.DIM_Z);
+        staging.putInt(offset + 12, 0);
+        // vec4 clusterZParams: x = skala, y = przesunięcie (warstwa = log(z) * x + y), z = near, w = far
+        putVec4(offset + VEC4_SIZE, lightGrid.getSliceScale(), lightGrid.getSliceBias(), lightGrid.getNear(), lightGrid.getFar());
+        // vec4 clusterTileSize: rozmiar kafla w pikselach
+        float tileWidth = (float) Math.max(1, screenWidth) / ClusteredLightGrid.DIM_X;
+        float tileHeight = (float) Math.max(1, screenHeight) / ClusteredLightGrid.DIM_Y;
+        putVec4(offset + 2 * VEC4_SIZE, tileWidth, tileHeight, 0.0f, 0.0f);
+    }
+
+    private void writeShadowBlock(ShadowCascades cascades) {
+        int count = cascades != null ? cascades.getCascadeCount() : 0;
+        for (int i = 0; i < ShadowCascades.MAX_CASCADES; i++) {
+            Matrix4f matrix = i < count ? cascades.getLightSpaceMatrix(i) : identity;
+            matrix.get(shadowOffset + i * MAT4_SIZE, staging);
+            cascadeSplits[i] = i < count ? cascades.getSplitDistance(i) : 0.0f;
+            cascadeBiases[i] = i < count ? cascades.getDepthBias(i) : 0.0f;
+        }
+        int offset = shadowOffset + ShadowCascades.MAX_CASCADES * MAT4_SIZE;
+        // vec4 cascadeSplits: daleka granica każdej kaskady (głębokość w przestrzeni widoku)
+        putVec4(offset, cascadeSplits[0], cascadeSplits[1], cascadeSplits[2], cascadeSplits[3]);
+        // vec4 cascadeBiases: bias głębokości każdej kaskady
+        putVec4(offset + VEC4_SIZE, cascadeBiases[0], cascadeBiases[1], cascadeBiases[2], cascadeBiases[3]);
+        // vec4 shadowParams: x = liczba kaskad
+        putVec4(offset + 2 * VEC4_SIZE, count, 0.0f, 0.0f, 0.0f);
+    }
+
+    private void writeSpotShadows(List<SpotLight> spotLights, ShadowAtlasRenderer shadowAtlas) {
+        int matrixBase = shadowOffset + SHADOW_HEADER_SIZE;
+        int tileBase = matrixBase + MAX_SPOT_LIGHTS * MAT4_SIZE;
+        int depthBase = tileBase + MAX_SPOT_LIGHTS * VEC4_SIZE;
+
+        // Indeksy jak w tablicy spotLights z LightBlock (te same pominięcia nulli)
+        int index = 0;
+        if (spotLights != null) {
+            for (int i = 0; i < spotLights.size() && index < MAX_SPOT_LIGHTS; i++) {
+                SpotLight sl = spotLights.get(i);
+                if (sl == null || sl.pointLight == null) continue;
+                if (shadowAtlas == null || !shadowAtlas.getShadowData(sl, spotShadowMatrix, spotShadowTile, spotShadowDepth)) {
+                    spotShadowMatrix.identity();
+                    spotShadowTile.set(0.0f); // w = 0 - brak cienia
+                    spotShadowDepth.set(0.0f);
+                }
+                spotShadowMatrix.get(matrixBase + index * MAT4_SIZE, staging);
+                putVec4(tileBase + index * VEC4_SIZE, spotShadowTile.x, spotShadowTile.y, spotShadowTile.z, spotShadowTile.w);
+                putVec4(depthBase + index * VEC4_SIZE, spotShadowDepth.x, spotShadowDepth.y, spotShadowDepth.z, spotShadowDepth.w);
+                index++;
+            }
+        }
+        for (; index < MAX_SPOT_LIGHTS; index++) {
+            putVec4(tileBase + index * VEC4_SIZE, 0.0f, 0.0f, 0.0f, 0.0f);
+        }
+    }
+
+    private void putPointLight(int base, PointLight pl) {
+        putVec4(base, pl.position.x, pl.position.y, pl.position.z, pl.intensity);
+        putVec4(base + VEC4_SIZE, pl.color.x, pl.color.y, pl.color.z, 0.0f);
+        putVec4(base + 2 * VEC4_SIZE, pl.attenuation.constant, pl.attenuation.linear, pl.attenuation.quadratic, 0.0f);
+    }
+
+    private void putVec4(int offset, float x, float y, float z, float w) {
+        staging.putFloat(offset, x);
+        staging.putFloat(offset + 4, y);
+        staging.putFloat(offset + 8, z);
+        staging.putFloat(offset + 12, w);
+    }
+
+    public void cleanup() {
+        System.out.println("  SceneUniformBuffer: Cleaning up...");
+        if (stream != null) {
+            stream.cleanup();
+            stream = null;
+        }
+        if (staging != null) {
+            MemoryUtil.memFree(staging);
+            staging = null;
+        }
+    }
+}
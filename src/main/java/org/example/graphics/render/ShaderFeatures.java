@@ -0,0 +1,90 @@
+package org.example.graphics.render;
+
+import org.example.graphics.Material;
+import org.example.graphics.light.DirectionalLight;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maska cech wariantu shadera sceny (permutacji scene_fragment.glsl). Każdy bit to definicja
+ * wstrzykiwana przed kompilacją - wariant zawiera tylko kod i uniformy potrzebne danemu
+ * materiałowi przy bieżącym zestawie świateł, zamiast rozgałęzień w czasie wykonania.
+ * <p>
+ * Bity materiału zależą wyłącznie od obecności map (materiały z jednego zestawu tablic tekstur
+ * mają więc ten sam wariant), bity świateł - od stanu sceny w klatce.
+ */
+public final class ShaderFeatures {
+
+    // === Cechy materiału ===
+    public static final int DIFFUSE_MAP = 1;
+    public static final int SPECULAR_MAP = 1 << 1;
+    // === Cechy oświetlenia ===
+    public static final int DIRECTIONAL_LIGHT = 1 << 2;
+    public static final int DIRECTIONAL_SHADOWS = 1 << 3;
+    public static final int LOCAL_LIGHTS = 1 << 4; // Światła punktowe/reflektory (clustered forward)
+    public static final int SPOT_SHADOWS = 1 << 5;
+
+    public static final int MATERIAL_MASK = DIFFUSE_MAP | SPECULAR_MAP;
+    public static final int LIGHTING_MASK = DIRECTIONAL_LIGHT | DIRECTIONAL_SHADOWS | LOCAL_LIGHTS | SPOT_SHADOWS;
+    /** Wariant ogólny - wszystkie cechy (odpowiednik shadera sprzed permutacji). */
+    public static final int ALL = MATERIAL_MASK | LIGHTING_MASK;
+
+    // Nazwy definicji GLSL w kolejności bitów
+    private static final String[] DEFINE_NAMES = {
+            "HAS_DIFFUSE_MAP", "HAS_SPECULAR_MAP", "DIRECTIONAL_LIGHT", "DIRECTIONAL_SHADOWS", "LOCAL_LIGHTS", "SPOT_SHADOWS"
+    };
+
+    private ShaderFeatures() {
+    }
+
+    /** Cechy wynikające z materiału (obecność map). */
+    public static int ofMaterial(Material material) {
+        if (material == null) return 0;
+        int features = 0;
+        if (material.getDiffuseMap() != null) features |= DIFFUSE_MAP;
+        if (material.getSpecularMap() != null) features |= SPECULAR_MAP;
+        return features;
+    }
+
+    /**
+     * Cechy wynikające ze świateł klatki.
+     * @param dirLight Światło kierunkowe (może być null).
+     * @param shadowCascades Liczba kaskad cieni światła kierunkowego.
+     * @param localLightCount Liczba świateł punktowych i reflektorów.
+     * @param shadowedSpotCount Liczba reflektorów z kaflem w atlasie cieni.
+     */
+    public static int ofLighting(DirectionalLight dirLight, int shadowCascades, int localLightCount, int shadowedSpotCount) {
+        int features = 0;
+        if (dirLight != null && dirLight.getIntensity() > 0.0f) {
+            features |= DIRECTIONAL_LIGHT;
+            if (shadowCascades > 0) features |= DIRECTIONAL_SHADOWS;
+        }
+        if (localLightCount > 0) {
+            features |= LOCAL_LIGHTS;
+            if (shadowedSpotCount > 0) features |= SPOT_SHADOWS;
+        }
+        return features;
+    }
+
+    /** Definicje GLSL wariantu (flagi bez wartości). */
+    public static Map<String, String> toDefines(int features) {
+        Map<String, String> defines = new LinkedHashMap<>();
+        for (int bit = 0; bit < DEFINE_NAMES.length; bit++) {
+            if ((features & (1 << bit)) != 0) defines.put(DEFINE_NAMES[bit], "");
+        }
+        return defines;
+    }
+
+    /** Czytelny opis wariantu do logów (np. "HAS_DIFFUSE_MAP|LOCAL_LIGHTS"). */
+    public static String describe(int features) {
+        StringBuilder builder = new StringBuilder();
+        for (int bit = 0; bit < DEFINE_NAMES.length; bit++) {
+            if ((features & (1 << bit)) != 0) {
+                if (builder.length() > 0) builder.append('|');
+                builder.append(DEFINE_NAMES[bit]);
+            }
+        }
+        return builder.length() > 0 ? builder.toString() : "BASE";
+    }
+}
@@ -2,26 +2,74 @@ package org.example.graphics.render;
 
 import org.example.exception.ResourceLoadException;
 import org.example.exception.ResourceNotFoundException;
+import org.example.graphics.Material;
+import org.example.graphics.ShaderBinaryCache;
+import org.example.graphics.ShaderPreprocessor;
 import org.example.graphics.ShaderProgram;
+import org.example.graphics.shadow.ShadowCascades;
 
-import static org.example.graphics.render.Renderer.MAX_POINT_LIGHTS; // Import stałych
-import static org.example.graphics.render.Renderer.MAX_SPOT_LIGHTS; // Import stałych
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Zarządza cyklem życia programów shaderowych używanych w rendererze.
  * Odpowiada za ich ładowanie, kompilację, linkowanie i udostępnianie.
+ * Źródła są czytane z classpath (katalog shaders/), a zlinkowane programy trafiają
+ * do dyskowego cache binarek (ShaderBinaryCache) - kolejne uruchomienia pomijają kompilację.
+ * <p>
+ * Shader sceny ma warianty (permutacje) wybierane maską ShaderFeatures. Wariant ogólny (ALL)
+ * powstaje w init(), pozostałe - przy pierwszym użyciu (getSceneShaderVariant()).
  */
 public class ShaderManager {
 
     private ShaderProgram sceneShaderProgram;
     private ShaderProgram depthShaderProgram;
+    private ShaderProgram spotShadowDepthShaderProgram; // Kafle atlasu cieni (macierz światła jako uniform)
+    private ShaderProgram cubeShadowDepthShaderProgram; // Cube mapa cieni w jednym przebiegu (geometry shader), leniwie
+    private boolean cubeShadowDepthShaderFailed = false;
+    private ShaderProgram depthPrePassShaderProgram; // Głębia z kamery przed przebiegiem koloru
+    private ShaderBinaryCache binaryCache;
+
+    // Warianty shadera sceny: maska cech -> program (wariant, którego nie udało się zbudować,
+    // wskazuje na wariant ogólny - bez ponawiania kompilacji w każdej klatce)
+    private final Map<Integer, ShaderProgram> sceneVariants = new HashMap<>();
+    private String sceneVertexSource;   // Po #include i definicjach wspólnych
+    private String sceneFragmentSource; // Po #include, bez definicji (te zależą od wariantu)
+
+    /**
+     * Definicje wstrzykiwane do każdego shadera - jedyne źródło stałych współdzielonych z GLSL.
+     */
+    static Map<String, String> createSharedDefines() {
+        Map<String, String> defines = new LinkedHashMap<>();
+        defines.put("MAX_POINT_LIGHTS", Integer.toString(Renderer.MAX_POINT_LIGHTS));
+        defines.put("MAX_SPOT_LIGHTS", Integer.toString(Renderer.MAX_SPOT_LIGHTS));
+        defines.put("MAX_SHADOW_CASCADES", Integer.toString(ShadowCascades.MAX_CASCADES));
+        return defines;
+    }
+
+    private static String loadSource(String path) throws ResourceNotFoundException, ResourceLoadException {
+        return ShaderPreprocessor.injectDefines(ShaderPreprocessor.loadWithIncludes(path), createSharedDefines());
+    }
+
+    /** Podpina współdzielone bloki UBO (jeśli program je deklaruje) do ich stałych punktów wiązania. */
+    private static void bindSharedUniformBlocks(ShaderProgram program) {
+        program.bindUniformBlock(SceneUniformBuffer.CAMERA_BLOCK_NAME, SceneUniformBuffer.CAMERA_BLOCK_BINDING);
+        program.bindUniformBlock(SceneUniformBuffer.LIGHT_BLOCK_NAME, SceneUniformBuffer.LIGHT_BLOCK_BINDING);
+        program.bindUniformBlock(SceneUniformBuffer.SHADOW_BLOCK_NAME, SceneUniformBuffer.SHADOW_BLOCK_BINDING);
+    }
 
     public void init() throws ResourceNotFoundException, ResourceLoadException {
         System.out.println("  ShaderManager: Initializing shaders...");
+        long startTime = System.nanoTime();
+        binaryCache = new ShaderBinaryCache();
         try {
             initDepthShaderProgram();
+            initSpotShadowDepthShaderProgram();
+            initDepthPrePassShaderProgram();
             initSceneShaderProgram();
-            System.out.println("  ShaderManager: Shaders initialized successfully.");
+            System.out.println("  ShaderManager: Shaders initialized successfully (" + binaryCache.getHitCount() + " from binary cache, "
+                    + binaryCache.getMissCount() + " compiled, " + (System.nanoTime() - startTime) / 1_000_000 + " ms).");
         } catch (ResourceNotFoundException | ResourceLoadException e) {
             System.err.println("  ShaderManager: Shader initialization failed!");
             cleanup(); // Posprzątaj, co się da
@@ -32,15 +80,12 @@ public class ShaderManager {
     private void initDepthShaderProgram() throws ResourceNotFoundException, ResourceLoadException {
         depthShaderProgram = new ShaderProgram();
         try {
-            depthShaderProgram.createVertexShader(ShaderProgram.loadShaderSource("src/main/resources/shaders/depth_vertex.glsl"));
-            depthShaderProgram.createFragmentShader(ShaderProgram.loadShaderSource("src/main/resources/shaders/depth_fragment.glsl"));
-            depthShaderProgram.link();
+            depthShaderProgram.build(binaryCache, loadSource("shaders/depth_vertex.glsl"), null, loadSource("shaders/depth_fragment.glsl"));
             if (!depthShaderProgram.isLinked()) {
                 throw new ResourceLoadException("Depth shader program failed to link.");
             }
-            // Utwórz tylko niezbędne uniformy dla tego shadera
-            depthShaderProgram.createUniform("model");
-            depthShaderProgram.createUniform("lightSpaceMatrix");
+            // Uniformy są odczytywane automatycznie (refleksja w ShaderProgram.link())
+            bindSharedUniformBlocks(depthShaderProgram);
             System.out.println("    Depth shader program created and linked.");
         } catch (ResourceNotFoundException | ResourceLoadException e) {
             if (depthShaderProgram != null) depthShaderProgram.cleanup();
@@ -49,74 +94,120 @@ public class ShaderManager {
         }
     }
 
-    private void initSceneShaderProgram() throws ResourceNotFoundException, ResourceLoadException {
-        sceneShaderProgram = new ShaderProgram();
+    private void initSpotShadowDepthShaderProgram() throws ResourceNotFoundException, ResourceLoadException {
+        spotShadowDepthShaderProgram = new ShaderProgram();
         try {
-            sceneShaderProgram.createVertexShader(ShaderProgram.loadShaderSource("src/main/resources/shaders/scene_vertex.glsl"));
-            sceneShaderProgram.createFragmentShader(ShaderProgram.loadShaderSource("src/main/resources/shaders/scene_fragment.glsl"));
-            sceneShaderProgram.link();
-            if (!sceneShaderProgram.isLinked()) {
-                throw new ResourceLoadException("Scene shader program failed to link.");
+            spotShadowDepthShaderProgram.build(binaryCache, loadSource("shaders/spotlight_depth_vertex.glsl"), null, loadSource("shaders/depth_fragment.glsl"));
+            if (!spotShadowDepthShaderProgram.isLinked()) {
+                throw new ResourceLoadException("Spot shadow depth shader program failed to link.");
             }
-            createSceneShaderUniforms(); // Tworzenie uniformów po udanym linkowaniu
-            System.out.println("    Scene shader program created and linked.");
+            System.out.println("    Spot shadow depth shader program created and linked.");
         } catch (ResourceNotFoundException | ResourceLoadException e) {
-            if (sceneShaderProgram != null) sceneShaderProgram.cleanup();
-            sceneShaderProgram = null;
+            if (spotShadowDepthShaderProgram != null) spotShadowDepthShaderProgram.cleanup();
+            spotShadowDepthShaderProgram = null;
             throw e;
         }
     }
 
-    // Metoda pomocnicza do tworzenia uniformów shadera sceny
-    private void createSceneShaderUniforms() throws ResourceLoadException {
-        // Uniformy transformacji i kamery
-        sceneShaderProgram.createUniform("projection");
-        sceneShaderProgram.createUniform("view");
-        sceneShaderProgram.createUniform("model");
-        sceneShaderProgram.createUniform("viewPos");
-
-        // Uniformy światła kierunkowego i cienia
-        sceneShaderProgram.createUniform("dirLight.direction");
-        sceneShaderProgram.createUniform("dirLight.color");
-        sceneShaderProgram.createUniform("dirLight.intensity");
-        sceneShaderProgram.createUniform("lightSpaceMatrix");
-        sceneShaderProgram.createUniform("shadowMapSampler");
-        sceneShaderProgram.createUniform("shadowBias");
-
-        // Uniformy materiału
-        sceneShaderProgram.createUniform("material.ambient");
-        sceneShaderProgram.createUniform("material.diffuse");
-        sceneShaderProgram.createUniform("material.specular");
-        sceneShaderProgram.createUniform("material.reflectance");
-        sceneShaderProgram.createUniform("material.hasDiffuseMap");
-        sceneShaderProgram.createUniform("material.hasSpecularMap");
-
-        // Uniformy samplerów tekstur
-        sceneShaderProgram.createUniform("diffuseSampler");
-        sceneShaderProgram.createUniform("specularSampler");
-
-        // Uniformy liczby aktywnych świateł
-        sceneShaderProgram.createUniform("numPointLights");
-        sceneShaderProgram.createUniform("numSpotLights");
-
-        // Uniformy dla tablic świateł punktowych
-        for (int i = 0; i < MAX_POINT_LIGHTS; i++) {
-            String base = "pointLights[" + i + "].";
-            sceneShaderProgram.createUniform(base + "position"); sceneShaderProgram.createUniform(base + "color");
-            sceneShaderProgram.createUniform(base + "intensity"); sceneShaderProgram.createUniform(base + "att.constant");
-            sceneShaderProgram.createUniform(base + "att.linear"); sceneShaderProgram.createUniform(base + "att.quadratic");
-        }
-        // Uniformy dla tablic świateł reflektorowych
-        for (int i = 0; i < MAX_SPOT_LIGHTS; i++) {
-            String base = "spotLights[" + i + "].";
-            sceneShaderProgram.createUniform(base + "pl.position"); sceneShaderProgram.createUniform(base + "pl.color");
-            sceneShaderProgram.createUniform(base + "pl.intensity"); sceneShaderProgram.createUniform(base + "pl.att.constant");
-            sceneShaderProgram.createUniform(base + "pl.att.linear"); sceneShaderProgram.createUniform(base + "pl.att.quadratic");
-            sceneShaderProgram.createUniform(base + "direction"); sceneShaderProgram.createUniform(base + "cutOffCos");
-            sceneShaderProgram.createUniform(base + "outerCutOffCos");
+    private void initCubeShadowDepthShaderProgram() throws ResourceNotFoundException, ResourceLoadException {
+        cubeShadowDepthShaderProgram = new ShaderProgram();
+        try {
+            cubeShadowDepthShaderProgram.build(binaryCache, loadSource("shaders/spotlight_cube_depth_vertex.glsl"), loadSource("shaders/spotlight_cube_depth_geometry.glsl"), loadSource("shaders/spotlight_depth_fragment.glsl"));
+            if (!cubeShadowDepthShaderProgram.isLinked()) {
+                throw new ResourceLoadException("Cube shadow depth shader program failed to link.");
+            }
+            System.out.println("    Cube shadow depth shader program created and linked.");
+        } catch (ResourceNotFoundException | ResourceLoadException e) {
+            if (cubeShadowDepthShaderProgram != null) cubeShadowDepthShaderProgram.cleanup();
+            cubeShadowDepthShaderProgram = null;
+            throw e;
         }
     }
 
+    private void initDepthPrePassShaderProgram() throws ResourceNotFoundException, ResourceLoadException {
+        depthPrePassShaderProgram = new ShaderProgram();
+        try {
+            depthPrePassShaderProgram.build(binaryCache, loadSource("shaders/depth_prepass_vertex.glsl"), null, loadSource("shaders/depth_fragment.glsl"));
+            if (!depthPrePassShaderProgram.isLinked()) {
+                throw new ResourceLoadException("Depth pre-pass shader program failed to link.");
+            }
+            bindSharedUniformBlocks(depthPrePassShaderProgram); // CameraBlock
+            System.out.println("    Depth pre-pass shader program created and linked.");
+        } catch (ResourceNotFoundException | ResourceLoadException e) {
+            if (depthPrePassShaderProgram != null) depthPrePassShaderProgram.cleanup();
+            depthPrePassShaderProgram = null;
+            throw e;
+        }
+    }
+
+    private void initSceneShaderProgram() throws ResourceNotFoundException, ResourceLoadException {
+        sceneVertexSource = loadSource("shaders/scene_vertex.glsl");
+        sceneFragmentSource = ShaderPreprocessor.loadWithIncludes("shaders/scene_fragment.glsl");
+        sceneShaderProgram = createSceneVariant(ShaderFeatures.ALL);
+        sceneVariants.put(ShaderFeatures.ALL, sceneShaderProgram);
+        System.out.println("    Scene shader program created and linked.");
+    }
+
+    private ShaderProgram createSceneVariant(int features) throws ResourceLoadException {
+        Map<String, String> defines = createSharedDefines();
+        defines.putAll(ShaderFeatures.toDefines(features));
+        ShaderProgram program = new ShaderProgram();
+        try {
+            program.build(binaryCache, sceneVertexSource, null, ShaderPreprocessor.injectDefines(sceneFragmentSource, defines));
+            if (!program.isLinked()) {
+                throw new ResourceLoadException("Scene shader variant " + ShaderFeatures.describe(features) + " failed to link.");
+            }
+            // Uniformy są odczytywane automatycznie (refleksja w ShaderProgram.link())
+            bindSharedUniformBlocks(program);
+            setSceneSamplerUnits(program);
+            return program;
+        } catch (ResourceLoadException e) {
+            program.cleanup();
+            throw e;
+        }
+    }
+
+    // Jednostki samplerów są stałe - ustawiane raz na wariant (warianty bez danej cechy nie mają samplera)
+    private static void setSceneSamplerUnits(ShaderProgram program) {
+        program.bind();
+        program.setUniform("diffuseSampler", Material.DIFFUSE_MAP_TEXTURE_UNIT);
+        program.setUniform("specularSampler", Material.SPECULAR_MAP_TEXTURE_UNIT);
+        program.setUniform("shadowMapSampler", ShadowRenderer.SHADOW_MAP_TEXTURE_UNIT);
+        program.setUniform("clusterGridSampler", ClusteredLightGrid.CLUSTER_GRID_TEXTURE_UNIT);
+        program.setUniform("lightIndexSampler", ClusteredLightGrid.LIGHT_INDEX_TEXTURE_UNIT);
+        program.setUniform("shadowAtlasSampler", ShadowAtlasRenderer.SHADOW_ATLAS_TEXTURE_UNIT);
+        program.setUniform("materialTableSampler", MaterialTable.MATERIAL_TABLE_TEXTURE_UNIT);
+    }
+
+    /**
+     * Zwraca wariant shadera sceny dla maski cech (ShaderFeatures), kompilując go przy pierwszym użyciu
+     * (lub ładując z cache binarek). Gdy wariantu nie da się zbudować, zwracany jest wariant ogólny.
+     */
+    public ShaderProgram getSceneShaderVariant(int features) {
+        ShaderProgram program = sceneVariants.get(features);
+        if (program != null) {
+            return program;
+        }
+        long startTime = System.nanoTime();
+        try {
+            program = createSceneVariant(features);
+            System.out.println("  ShaderManager: Scene shader variant " + ShaderFeatures.describe(features) + " ready ("
+                    + (program.isLoadedFromBinary() ? "binary cache" : "compiled") + ", "
+                    + (System.nanoTime() - startTime) / 1_000_000 + " ms).");
+        } catch (ResourceLoadException e) {
+            System.err.println("ShaderManager: Scene shader variant " + ShaderFeatures.describe(features)
+                    + " failed, using the general variant: " + e.getMessage());
+            program = getSceneShaderProgram();
+        }
+        sceneVariants.put(features, program);
+        return program;
+    }
+
+    /** Liczba utworzonych wariantów shadera sceny. */
+    public int getSceneVariantCount() {
+        return sceneVariants.size();
+    }
+
     public ShaderProgram getSceneShaderProgram() {
         if (sceneShaderProgram == null || !sceneShaderProgram.isLinked()) {
             throw new IllegalStateException("Scene shader program accessed before successful initialization or is not linked.");
@@ -131,23 +222,77 @@ public class ShaderManager {
         return depthShaderProgram;
     }
 
+    public ShaderProgram getSpotShadowDepthShaderProgram() {
+        if (spotShadowDepthShaderProgram == null || !spotShadowDepthShaderProgram.isLinked()) {
+            throw new IllegalStateException("Spot shadow depth shader program accessed before successful initialization or is not linked.");
+        }
+        return spotShadowDepthShaderProgram;
+    }
+
+    /**
+     * Program głębi cube mapy z geometry shaderem (SpotLightShadowRenderer). Budowany przy pierwszym
+     * wywołaniu - nie wpływa na czas startu ani na areShadersReady(); nieudana budowa nie jest ponawiana.
+     */
+    public ShaderProgram getCubeShadowDepthShaderProgram() {
+        if (cubeShadowDepthShaderProgram == null && !cubeShadowDepthShaderFailed && binaryCache != null) {
+            try {
+                initCubeShadowDepthShaderProgram();
+            } catch (ResourceNotFoundException | ResourceLoadException e) {
+                cubeShadowDepthShaderFailed = true;
+                throw new IllegalStateException("Cube shadow depth shader program could not be built.", e);
+            }
+        }
+        if (cubeShadowDepthShaderProgram == null || !cubeShadowDepthShaderProgram.isLinked()) {
+            throw new IllegalStateException("Cube shadow depth shader program accessed before successful initialization or is not linked.");
+        }
+        return cubeShadowDepthShaderProgram;
+    }
+
+    public ShaderProgram getDepthPrePassShaderProgram() {
+        if (depthPrePassShaderProgram == null || !depthPrePassShaderProgram.isLinked()) {
+            throw new IllegalStateException("Depth pre-pass shader program accessed before successful initialization or is not linked.");
+        }
+        return depthPrePassShaderProgram;
+    }
+
     public void cleanup() {
         System.out.println("  ShaderManager: Cleaning up shaders...");
+        for (ShaderProgram variant : sceneVariants.values()) {
+            if (variant != sceneShaderProgram) variant.cleanup(); // Nieudane warianty wskazują na ogólny
+        }
+        sceneVariants.clear();
         if (sceneShaderProgram != null) {
             sceneShaderProgram.cleanup();
             sceneShaderProgram = null;
-            System.out.println("    Scene shader program cleaned.");
+            System.out.println("    Scene shader programs cleaned.");
         }
         if (depthShaderProgram != null) {
             depthShaderProgram.cleanup();
             depthShaderProgram = null;
             System.out.println("    Depth shader program cleaned.");
         }
+        if (spotShadowDepthShaderProgram != null) {
+            spotShadowDepthShaderProgram.cleanup();
+            spotShadowDepthShaderProgram = null;
+            System.out.println("    Spot shadow depth shader program cleaned.");
+        }
+        if (cubeShadowDepthShaderProgram != null) {
+            cubeShadowDepthShaderProgram.cleanup();
+            cubeShadowDepthShaderProgram = null;
+            System.out.println("    Cube shadow depth shader program cleaned.");
+        }
+        if (depthPrePassShaderProgram != null) {
+            depthPrePassShaderProgram.cleanup();
+            depthPrePassShaderProgram = null;
+            System.out.println("    Depth pre-pass shader program cleaned.");
+        }
         System.out.println("  ShaderManager: Shader cleanup complete.");
     }
 
     public boolean areShadersReady() {
         return sceneShaderProgram != null && sceneShaderProgram.isLinked() &&
-                depthShaderProgram != null && depthShaderProgram.isLinked();
+                depthShaderProgram != null && depthShaderProgram.isLinked() &&
+                spotShadowDepthShaderProgram != null && spotShadowDepthShaderProgram.isLinked() &&
+                depthPrePassShaderProgram != null && depthPrePassShaderProgram.isLinked();
     }
 }
\ No newline at end of file
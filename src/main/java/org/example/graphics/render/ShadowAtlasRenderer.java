@@ -0,0 +1,390 @@
+package org.example.graphics.render;
+
+import org.example.core.Window;
+import org.example.exception.ResourceLoadException;
+import org.example.graphics.ShaderProgram;
+import org.example.graphics.Uniform;
+import org.example.graphics.light.SpotLight;
+import org.example.graphics.shadow.ShadowAtlas;
+import org.example.graphics.shadow.ShadowAtlasAllocator;
+import org.example.scene.GameObject;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.example.graphics.render.Renderer.MAX_SPOT_LIGHTS;
+
+/**
+ * Cienie wielu reflektorów w jednym atlasie (ShadowAtlas) przy stałym koszcie GPU na klatkę.
+ * <p>
+ * Co klatkę:
+ * <ol>
+ *   <li>reflektory rzucające cień (SpotLight.isShadowCaster()) poza bryłą widzenia kamery są pomijane,</li>
+ *   <li>pozostałe dostają kafel o rozmiarze zależnym od pokrycia ekranu (promień kuli stożka / odległość);
+ *       kafel zostaje przy świetle, dopóki nie uda się przydzielić kafla w nowym rozmiarze - przy pełnym
+ *       atlasie światło zostaje przy dotychczasowym (narysowanym) kaflu, a kolejna próba następuje
+ *       po PRESSURE_RETRY_FRAMES klatkach,</li>
+ *   <li>planista wybiera kafle do przerysowania w ramach budżetu tekseli (UPDATE_BUDGET_TEXELS):
+ *       najpierw kafle jeszcze nienarysowane, potem ważone pokryciem, liczbą klatek od ostatniej
+ *       aktualizacji i ruchem światła - nieaktualne światła są odświeżane rotacyjnie.</li>
+ * </ol>
+ * Kafel nieodświeżony w tej klatce jest próbkowany z macierzą, z którą go narysowano, więc cień
+ * co najwyżej nieco się spóźnia, ale nigdy nie jest błędny.
+ */
+public class ShadowAtlasRenderer {
+
+    public static final int SHADOW_ATLAS_TEXTURE_UNIT = 5;
+    /** Budżet aktualizacji na klatkę: suma pól przerysowanych kafli (2 kafle 1024^2 albo 32 kafle 256^2). */
+    public static final int UPDATE_BUDGET_TEXELS = 2 * 1024 * 1024;
+
+    private static final float SHADOW_NEAR_PLANE = 0.1f;
+    private static final float MAX_SHADOW_FOV_DEGREES = 160.0f; // Szersze stożki są cieniowane tylko w tym zakresie
+    private static final float BIAS_TEXELS = 1.5f;
+    private static final float CHANGED_LIGHT_WEIGHT = 4.0f;
+    // Progi pokrycia ekranu dla poziomów atlasu (1024, 512, 256, 128) i histereza przeciw przeskakiwaniu rozmiarów
+    private static final float[] LEVEL_COVERAGE = { 0.5f, 0.25f, 0.1f, 0.0f };
+    private static final float LEVEL_HYSTERESIS = 0.2f;
+    // Po nieudanym przydziale docelowego rozmiaru (pełny atlas) - odstęp do kolejnej próby
+    private static final int PRESSURE_RETRY_FRAMES = 30;
+
+    /** Stan kafla jednego reflektora. */
+    private static final class Entry {
+        int tile = -1;
+        int targetLevel = -1;      // Poziom wynikający z pokrycia (z histerezą); kafel może być mniejszy przy pełnym atlasie
+        long retryFrame;           // Pierwsza klatka kolejnej próby przydziału targetLevel
+        float coverage;
+        long lastSeenFrame;
+        long lastUpdateFrame;
+        boolean rendered;          // Kafel zawiera aktualną (lub spóźnioną) mapę dla renderedMatrix
+        float score;
+        final Matrix4f lightProjection = new Matrix4f();
+        final Matrix4f lightView = new Matrix4f();
+        final Matrix4f lightSpaceMatrix = new Matrix4f();  // Bieżąca macierz światła
+        final Matrix4f renderedMatrix = new Matrix4f();    // Macierz, z którą narysowano kafel
+        float renderedFar;
+        float renderedBiasSlope;
+        float currentFar;
+        float currentBiasSlope;
+    }
+
+    private final Window window;
+    private ShadowAtlas atlas;
+    private final Map<SpotLight, Entry> entries = new IdentityHashMap<>();
+    private final List<Entry> activeEntries = new ArrayList<>();
+    private final List<Entry> scheduled = new ArrayList<>();
+    private final InstanceBatcher instanceBatcher = new InstanceBatcher();
+    private LodSelector lodSelector; // Opcjonalny - poziomy LOD dla cieni (null = siatki bazowe)
+    private final FrustumCuller casterCuller = new FrustumCuller();
+    private final FrustumIntersection cameraFrustum = new FrustumIntersection();
+    private final Matrix4f cameraProjView = new Matrix4f();
+    private final Vector3f sphereCenter = new Vector3f();
+    private final Vector3f lightUp = new Vector3f();
+    private final Vector3f lightTarget = new Vector3f();
+
+    private ShaderProgram cachedDepthShader;
+    private Uniform lightSpaceMatrixUniform;
+
+    private long frame = 0;
+    private int updatedTileCount = 0;
+    private int updatedTexelCount = 0;
+
+    public ShadowAtlasRenderer(Window window) {
+        if (window == null) throw new IllegalArgumentException("Window cannot be null for ShadowAtlasRenderer");
+        this.window = window;
+    }
+
+    public void init() throws ResourceLoadException {
+        System.out.println("  ShadowAtlasRenderer: Initializing shadow atlas...");
+        try {
+            atlas = new ShadowAtlas();
+            instanceBatcher.init();
+        } catch (Exception e) {
+            throw new ResourceLoadException("Failed to create shadow atlas", e);
+        }
+        System.out.println("  ShadowAtlasRenderer: Initialized (" + ShadowAtlas.ATLAS_SIZE + "x" + ShadowAtlas.ATLAS_SIZE
+                + ", Texture ID: " + atlas.getDepthTexture() + ").");
+    }
+
+    /**
+     * Przydziela kafle, wybiera kafle do odświeżenia w ramach budżetu i rysuje je.
+     *
+     * @param projection Macierz projekcji kamery.
+     * @param view Macierz widoku kamery.
+     * @param cameraPosition Pozycja kamery (pokrycie ekranu).
+     * @param spotLights Reflektory sceny (kolejność jak w LightBlock).
+     * @param gameObjects Obiekty rzucające cień.
+     * @param depthShader Program głębi z uniformem lightSpaceMatrix.
+     */
+    public void render(Matrix4f projection, Matrix4f view, Vector3f cameraPosition, List<SpotLight> spotLights,
+                       List<GameObject> gameObjects, ShaderProgram depthShader) {
+        if (atlas == null || depthShader == null) {
+            System.err.println("ShadowAtlasRenderer.render(): Atlas or depth shader not initialized. Skipping.");
+            return;
+        }
+        frame++;
+        updatedTileCount = 0;
+        updatedTexelCount = 0;
+
+        gatherLights(projection, view, cameraPosition, spotLights);
+        releaseUnusedEntries();
+        allocateTiles();
+        scheduleUpdates();
+        if (scheduled.isEmpty()) {
+            return;
+        }
+
+        if (depthShader != cachedDepthShader) {
+            lightSpaceMatrixUniform = depthShader.getUniform("lightSpaceMatrix");
+            cachedDepthShader = depthShader;
+        }
+        depthShader.bind();
+        for (Entry entry : scheduled) {
+            atlas.bindTileForWriting(entry.tile);
+            lightSpaceMatrixUniform.set(entry.lightSpaceMatrix);
+            List<GameObject> casters = casterCuller.cull(entry.lightProjection, entry.lightView, gameObjects);
+            instanceBatcher.build(casters, false, null, lodSelector);
+            instanceBatcher.drawAll();
+
+            entry.renderedMatrix.set(entry.lightSpaceMatrix);
+            entry.renderedFar = entry.currentFar;
+            entry.renderedBiasSlope = entry.currentBiasSlope;
+            entry.rendered = true;
+            entry.lastUpdateFrame = frame;
+            int size = ShadowAtlasAllocator.tileSize(entry.tile);
+            updatedTileCount++;
+            updatedTexelCount += size * size;
+        }
+        atlas.unbindAfterWriting(window.getWidth(), window.getHeight());
+    }
+
+    // --- Światła i pokrycie ekranu ---
+
+    private void gatherLights(Matrix4f projection, Matrix4f view, Vector3f cameraPosition, List<SpotLight> spotLights) {
+        activeEntries.clear();
+        if (spotLights == null) return;
+        projection.mul(view, cameraProjView);
+        cameraFrustum.set(cameraProjView, false);
+        float tanHalfFov = 1.0f / Math.max(1e-4f, projection.m11());
+
+        int packedIndex = 0; // Ten sam limit i pomijanie nulli co w SceneUniformBuffer
+        for (int i = 0; i < spotLights.size() && packedIndex < MAX_SPOT_LIGHTS; i++) {
+            SpotLight sl = spotLights.get(i);
+            if (sl == null || sl.pointLight == null) continue;
+            packedIndex++;
+            if (!sl.isShadowCaster() || sl.pointLight.intensity <= 0.0f) continue;
+
+            float radius = sl.getBoundingSphere(sphereCenter);
+            if (!Float.isFinite(radius) || !cameraFrustum.testSphere(sphereCenter, radius)) continue;
+
+            float distance = Math.max(sphereCenter.distance(cameraPosition), radius);
+            Entry entry = entries.computeIfAbsent(sl, key -> new Entry());
+            entry.coverage = Math.min(1.0f, radius / (distance * tanHalfFov));
+            entry.lastSeenFrame = frame;
+            computeLightMatrices(sl, entry);
+            activeEntries.add(entry);
+        }
+    }
+
+    private void computeLightMatrices(SpotLight sl, Entry entry) {
+        float range = sl.pointLight.getRange();
+        float far = Float.isFinite(range) && range > SHADOW_NEAR_PLANE ? range : 30.0f;
+        float fovDegrees = Math.min(2.0f * sl.outerCutOffAngle + 2.0f, MAX_SHADOW_FOV_DEGREES);
+        float fov = (float) Math.toRadians(fovDegrees);
+        entry.lightProjection.setPerspective(fov, 1.0f, SHADOW_NEAR_PLANE, far);
+
+        Vector3f position = sl.pointLight.position;
+        Vector3f dir = sl.direction;
+        if (Math.abs(dir.y) > 0.99f) {
+            lightUp.set(1.0f, 0.0f, 0.0f);
+        } else {
+            lightUp.set(0.0f, 1.0f, 0.0f);
+        }
+        position.add(dir, lightTarget);
+        entry.lightView.setLookAt(position, lightTarget, lightUp);
+        entry.lightProjection.mul(entry.lightView, entry.lightSpaceMatrix);
+
+        entry.currentFar = far;
+        // Bias w jednostkach świata rośnie z odległością od światła (rozmiar teksela w tej odległości);
+        // rozmiar kafla może się jeszcze zmienić - liczony ponownie przy przydziale
+        entry.currentBiasSlope = (float) Math.tan(fov * 0.5f) * 2.0f * BIAS_TEXELS;
+    }
+
+    private void releaseUnusedEntries() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.lastSeenFrame != frame) {
+                atlas.getAllocator().free(entry.tile);
+                it.remove();
+            }
+        }
+    }
+
+    // --- Przydział kafli ---
+
+    private static int levelFor(float coverage, int currentLevel) {
+        for (int level = 0; level < LEVEL_COVERAGE.length; level++) {
+            float threshold = LEVEL_COVERAGE[level];
+            // Histereza: utrzymanie bieżącego (lub większego) poziomu wymaga mniejszego pokrycia niż awans
+            if (currentLevel >= 0 && level >= currentLevel) threshold *= (1.0f - LEVEL_HYSTERESIS);
+            else if (currentLevel >= 0) threshold *= (1.0f + LEVEL_HYSTERESIS);
+            if (coverage >= threshold) return level;
+        }
+        return LEVEL_COVERAGE.length - 1;
+    }
+
+    private void allocateTiles() {
+        activeEntries.sort((a, b) -> Float.compare(b.coverage, a.coverage));
+        for (Entry entry : activeEntries) {
+            entry.targetLevel = levelFor(entry.coverage, entry.targetLevel);
+        }
+
+        // Najpierw zmniejszenia - zwalniają miejsce dla świateł o wyższym priorytecie
+        for (Entry entry : activeEntries) {
+            if (entry.tile >= 0 && entry.targetLevel > tileLevel(entry.tile)) {
+                resizeTile(entry);
+            }
+        }
+        // Nowe kafle i powiększenia w kolejności pokrycia; brak miejsca -> mniejszy kafel, w ostateczności brak cienia
+        for (Entry entry : activeEntries) {
+            if (entry.tile < 0) {
+                for (int level = entry.targetLevel; level < ShadowAtlasAllocator.LEVEL_COUNT && entry.tile < 0; level++) {
+                    entry.tile = atlas.getAllocator().allocate(level);
+                }
+                entry.rendered = false;
+                if (entry.tile >= 0 && tileLevel(entry.tile) != entry.targetLevel) {
+                    entry.retryFrame = frame + PRESSURE_RETRY_FRAMES;
+                }
+            } else if (entry.targetLevel < tileLevel(entry.tile)) {
+                resizeTile(entry);
+            }
+        }
+        for (Entry entry : activeEntries) {
+            if (entry.tile >= 0) {
+                entry.currentBiasSlope /= ShadowAtlasAllocator.tileSize(entry.tile);
+            }
+        }
+    }
+
+    private static int tileLevel(int tile) {
+        return tile >>> 16;
+    }
+
+    /**
+     * Przenosi światło do kafla docelowego rozmiaru. Stary kafel jest zwalniany dopiero po udanym przydziale -
+     * przy pełnym atlasie światło zostaje przy dotychczasowym kaflu (z narysowaną mapą), bez przerysowania.
+     */
+    private void resizeTile(Entry entry) {
+        if (frame < entry.retryFrame) return;
+        int tile = atlas.getAllocator().allocate(entry.targetLevel);
+        if (tile < 0) {
+            entry.retryFrame = frame + PRESSURE_RETRY_FRAMES;
+            return;
+        }
+        atlas.getAllocator().free(entry.tile);
+        entry.tile = tile;
+        entry.rendered = false;
+    }
+
+    // --- Planista aktualizacji ---
+
+    private void scheduleUpdates() {
+        scheduled.clear();
+        for (Entry entry : activeEntries) {
+            if (entry.tile < 0) continue;
+            if (!entry.rendered) {
+                entry.score = Float.MAX_VALUE; // Pusty kafel - zawsze pierwszy
+            } else {
+                float age = frame - entry.lastUpdateFrame;
+                boolean changed = !entry.renderedMatrix.equals(entry.lightSpaceMatrix);
+                entry.score = entry.coverage * age * (changed ? CHANGED_LIGHT_WEIGHT : 1.0f);
+            }
+            scheduled.add(entry);
+        }
+        scheduled.sort((a, b) -> Float.compare(b.score, a.score));
+
+        // Budżet tekseli - pierwszy kafel zawsze mieści się w budżecie, żeby kolejka się nie zablokowała
+        int budget = UPDATE_BUDGET_TEXELS;
+        int kept = 0;
+        for (int i = 0; i < scheduled.size(); i++) {
+            Entry entry = scheduled.get(i);
+            int size = ShadowAtlasAllocator.tileSize(entry.tile);
+            int cost = size * size;
+            if (kept > 0 && cost > budget) continue;
+            budget -= cost;
+            scheduled.set(kept++, entry);
+        }
+        while (scheduled.size() > kept) {
+            scheduled.remove(scheduled.size() - 1);
+        }
+    }
+
+    // --- Dane dla shadera ---
+
+    /**
+     * Zapisuje dane próbkowania cienia reflektora.
+     *
+     * @param light Reflektor.
+     * @param outMatrix Macierz światła, z którą narysowano kafel.
+     * @param outTile xy = przesunięcie UV kafla w atlasie, z = skala UV, w = 1 (cień dostępny).
+     * @param outDepth x = near, y = far, z = bias (jednostki świata na jednostkę odległości od światła).
+     * @return false, gdy reflektor nie ma narysowanego kafla (brak cienia).
+     */
+    public boolean getShadowData(SpotLight light, Matrix4f outMatrix, Vector4f outTile, Vector4f outDepth) {
+        Entry entry = entries.get(light);
+        if (entry == null || entry.tile < 0 || !entry.rendered || entry.lastSeenFrame != frame) {
+            return false;
+        }
+        float invAtlas = 1.0f / ShadowAtlas.ATLAS_SIZE;
+        outMatrix.set(entry.renderedMatrix);
+        outTile.set(ShadowAtlasAllocator.tileX(entry.tile) * invAtlas, ShadowAtlasAllocator.tileY(entry.tile) * invAtlas,
+                ShadowAtlasAllocator.tileSize(entry.tile) * invAtlas, 1.0f);
+        outDepth.set(SHADOW_NEAR_PLANE, entry.renderedFar, entry.renderedBiasSlope, 0.0f);
+        return true;
+    }
+
+    public int getShadowAtlasTextureId() {
+        if (atlas == null) {
+            throw new IllegalStateException("Shadow atlas accessed before initialization.");
+        }
+        return atlas.getDepthTexture();
+    }
+
+    // --- Statystyki ---
+    /** Liczba reflektorów z kaflem w atlasie w ostatniej klatce. */
+    public int getShadowedLightCount() {
+        int count = 0;
+        for (Entry entry : activeEntries) {
+            if (entry.tile >= 0) count++;
+        }
+        return count;
+    }
+    public int getUpdatedTileCount() { return updatedTileCount; }
+    public int getUpdatedTexelCount() { return updatedTexelCount; }
+
+    /** Selektor LOD dla rzucających cień (siatki z przesunięciem poziomu cieni); null - siatki bazowe. */
+    public void setLodSelector(LodSelector lodSelector) {
+        this.lodSelector = lodSelector;
+    }
+
+    public void cleanup() {
+        System.out.println("  ShadowAtlasRenderer: Cleaning up shadow atlas...");
+        if (atlas != null) {
+            atlas.cleanup();
+            atlas = null;
+        }
+        instanceBatcher.cleanup();
+        entries.clear();
+        activeEntries.clear();
+        scheduled.clear();
+        cachedDepthShader = null;
+        System.out.println("  ShadowAtlasRenderer: Cleanup complete.");
+    }
+}
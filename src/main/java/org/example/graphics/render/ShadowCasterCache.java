@@ -0,0 +1,108 @@
+package org.example.graphics.render;
+
+import org.example.scene.GameObject;
+import org.joml.Matrix4f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stan cache statycznych rzucających cień dla mapy cieni złożonej z kilku warstw
+ * (kaskady światła kierunkowego lub ściany cube mapy reflektora).
+ * <p>
+ * Obiekty są dzielone na statyczne (GameObjectProperties.isStatic()) i dynamiczne. Statyczne
+ * są rysowane do osobnej, zapamiętanej warstwy głębi tylko wtedy, gdy zmieni się zbiór statycznych
+ * obiektów (ich transformacja - GameObject.getTransformVersion() - albo siatka LOD wybrana dla cieni)
+ * albo macierz światła warstwy. Macierze kaskad są przyciągane do grubej siatki (ShadowCascades),
+ * więc przy zwykłym ruchu kamery pozostają bitowo równe przez wiele klatek.
+ * W pozostałych klatkach warstwa statyczna jest kopiowana do mapy roboczej i dorysowywane są
+ * tylko obiekty dynamiczne - koszt przebiegu cieni zależy od tego, co się porusza.
+ */
+public class ShadowCasterCache {
+
+    private final List<GameObject> staticCasters = new ArrayList<>();
+    private final List<GameObject> dynamicCasters = new ArrayList<>();
+
+    private final Matrix4f[] layerMatrices;     // Macierz światła, z którą narysowano warstwę statyczną
+    private final boolean[] layerValid;
+    private final boolean[] layerHasDynamic;    // Mapa robocza zawiera obiekty dynamiczne (różni się od statycznej)
+    private long staticSignature = 0;
+    private int refreshCount = 0;               // Warstwy statyczne przerysowane w ostatniej klatce
+
+    public ShadowCasterCache(int layerCount) {
+        layerMatrices = new Matrix4f[layerCount];
+        layerValid = new boolean[layerCount];
+        layerHasDynamic = new boolean[layerCount];
+        for (int i = 0; i < layerCount; i++) {
+            layerMatrices[i] = new Matrix4f();
+        }
+    }
+
+    /**
+     * Dzieli obiekty na statyczne i dynamiczne. Jeśli zmienił się zbiór statycznych obiektów,
+     * ich siatki lub transformacje - unieważnia wszystkie warstwy.
+     */
+    public void partition(List<GameObject> gameObjects) {
+        partition(gameObjects, null);
+    }
+
+    /**
+     * Jak partition(List), ale sygnatura obejmuje też siatkę cieni wybraną przez lodSelector -
+     * zmiana poziomu LOD obiektu statycznego przerysowuje warstwy.
+     */
+    public void partition(List<GameObject> gameObjects, LodSelector lodSelector) {
+        staticCasters.clear();
+        dynamicCasters.clear();
+        refreshCount = 0;
+
+        long signature = 1;
+        if (gameObjects != null) {
+            for (GameObject go : gameObjects) {
+                if (go == null || !go.isVisible() || go.getMesh() == null) {
+                    continue;
+                }
+                if (go.getProperties().isStatic()) {
+                    staticCasters.add(go);
+                    signature = 31 * signature + System.identityHashCode(go);
+                    signature = 31 * signature + System.identityHashCode(go.getMesh());
+                    if (lodSelector != null) {
+                        signature = 31 * signature + System.identityHashCode(lodSelector.selectShadowMesh(go));
+                    }
+                    signature = 31 * signature + go.getTransformVersion();
+                } else {
+                    dynamicCasters.add(go);
+                }
+            }
+        }
+        if (signature != staticSignature) {
+            staticSignature = signature;
+            invalidate();
+        }
+    }
+
+    /** Czy warstwa statyczna jest aktualna dla podanej macierzy światła. */
+    public boolean isLayerValid(int layer, Matrix4f lightSpaceMatrix) {
+        return layerValid[layer] && layerMatrices[layer].equals(lightSpaceMatrix);
+    }
+
+    /** Zapamiętuje, że warstwa statyczna została narysowana z podaną macierzą światła. */
+    public void markLayerValid(int layer, Matrix4f lightSpaceMatrix) {
+        layerMatrices[layer].set(lightSpaceMatrix);
+        layerValid[layer] = true;
+        refreshCount++;
+    }
+
+    public boolean layerHasDynamic(int layer) { return layerHasDynamic[layer]; }
+    public void setLayerHasDynamic(int layer, boolean hasDynamic) { layerHasDynamic[layer] = hasDynamic; }
+
+    /** Wymusza przerysowanie wszystkich warstw statycznych (np. po zmianie światła spoza macierzy). */
+    public void invalidate() {
+        for (int i = 0; i < layerValid.length; i++) {
+            layerValid[i] = false;
+        }
+    }
+
+    public List<GameObject> getStaticCasters() { return staticCasters; }
+    public List<GameObject> getDynamicCasters() { return dynamicCasters; }
+    public int getRefreshCount() { return refreshCount; }
+}
@@ -4,24 +4,37 @@ import org.example.core.Window;
 import org.example.exception.ResourceLoadException;
 import org.example.graphics.ShaderProgram;
 import org.example.graphics.light.DirectionalLight;
+import org.example.graphics.shadow.ShadowCascades;
 import org.example.graphics.shadow.ShadowMap;
 import org.example.scene.GameObject;
+import org.joml.Matrix4f;
 
 import java.util.List;
 
-import static org.lwjgl.opengl.GL11.GL_DEPTH_BUFFER_BIT;
-import static org.lwjgl.opengl.GL11.glClear;
-
 /**
  * Odpowiada za przebieg renderowania mapy cieni (Depth Pass).
- * Używa dedykowanego shadera głębi i renderuje scenę
- * z perspektywy światła do obiektu ShadowMap (FBO).
+ * Używa dedykowanego shadera głębi i renderuje scenę z perspektywy światła
+ * do kolejnych warstw ShadowMap - po jednej na kaskadę (ShadowCascades).
+ * Obiekty statyczne są rysowane tylko przy unieważnieniu warstwy (ShadowCasterCache),
+ * w pozostałych klatkach dorysowywane są wyłącznie obiekty dynamiczne.
  */
 public class ShadowRenderer {
 
+    /** Jednostka tekstury tablicy kaskad mapy cieni w przebiegu sceny. */
+    public static final int SHADOW_MAP_TEXTURE_UNIT = 2;
+
     private ShadowMap shadowMap;
     private final Window window; // Potrzebne do przywrócenia viewportu
 
+    // Macierz przestrzeni światła pochodzi z bloku ShadowBlock (SceneUniformBuffer),
+    // a macierze modelu z bufora instancji - shader głębi nie ma uniformów per-obiekt.
+    private final InstanceBatcher instanceBatcher = new InstanceBatcher();
+    private LodSelector lodSelector; // Opcjonalny - poziomy LOD dla cieni (null = siatki bazowe)
+    private final ShadowCascades cascades = new ShadowCascades();
+    private final FrustumCuller cascadeCuller = new FrustumCuller(); // Odrzucanie obiektów spoza bryły kaskady
+    private final ShadowCasterCache casterCache = new ShadowCasterCache(ShadowCascades.MAX_CASCADES);
+    private final Matrix4f identity = new Matrix4f();
+
     public ShadowRenderer(Window window) {
         if (window == null) throw new IllegalArgumentException("Window cannot be null for ShadowRenderer");
         this.window = window;
@@ -30,8 +43,9 @@ public class ShadowRenderer {
     public void init() throws ResourceLoadException {
         System.out.println("  ShadowRenderer: Initializing shadow map...");
         try {
-            shadowMap = new ShadowMap();
+            shadowMap = new ShadowMap(ShadowCascades.MAX_CASCADES);
             System.out.println("    Shadow Map initialized (Texture ID: " + shadowMap.getDepthMapTexture() + ").");
+            instanceBatcher.init();
         } catch (Exception e) {
             throw new ResourceLoadException("Failed to create Shadow Map", e);
         }
@@ -39,7 +53,18 @@ public class ShadowRenderer {
     }
 
     /**
-     * Wykonuje przebieg generowania mapy cieni dla światła kierunkowego.
+     * Przelicza kaskady dla bieżącej kamery. Wywoływane przed zapisem bloku ShadowBlock (SceneUniformBuffer).
+     *
+     * @param projection Macierz projekcji kamery.
+     * @param view Macierz widoku kamery.
+     * @param dirLight Światło kierunkowe (null = brak kaskad).
+     */
+    public void updateCascades(Matrix4f projection, Matrix4f view, DirectionalLight dirLight) {
+        cascades.update(projection, view, dirLight, ShadowMap.SHADOW_MAP_WIDTH);
+    }
+
+    /**
+     * Wykonuje przebieg generowania mapy cieni dla światła kierunkowego - każda kaskada do swojej warstwy.
      *
      * @param gameObjects Lista obiektów w scenie.
      * @param dirLight Światło kierunkowe rzucające cień (jeśli null, mapa cieni jest tylko czyszczona).
@@ -51,28 +76,40 @@ public class ShadowRenderer {
             return;
         }
 
-        // Jeśli nie ma światła kierunkowego, tylko wyczyść mapę cieni.
-        if (dirLight == null) {
-            shadowMap.bindForWriting();
-            // glClear(GL_DEPTH_BUFFER_BIT); // Jest już w bindForWriting()
-            shadowMap.unbindAfterWriting(window.getWidth(), window.getHeight());
+        // Jeśli nie ma światła kierunkowego, shader sceny nie próbkuje mapy cieni - nic do zrobienia.
+        if (dirLight == null || cascades.getCascadeCount() == 0) {
             return;
         }
 
-        shadowMap.bindForWriting(); // Zwiąż FBO mapy cieni i wyczyść
-
         depthShader.bind();
-        depthShader.setUniform("lightSpaceMatrix", dirLight.getLightSpaceMatrix());
+        casterCache.partition(gameObjects, lodSelector); // Statyczne/dynamiczne + unieważnienie po ruchu obiektu statycznego
+
+        for (int cascade = 0; cascade < cascades.getCascadeCount(); cascade++) {
+            Matrix4f lightSpaceMatrix = cascades.getLightSpaceMatrix(cascade);
+            depthShader.setUniform("cascadeIndex", cascade);
+
+            // Warstwa statyczna - tylko gdy zmieniła się kaskada (ruch kamery o krok siatki, zmiana światła) lub obiekty statyczne
+            boolean staticValid = casterCache.isLayerValid(cascade, lightSpaceMatrix);
+            if (!staticValid) {
+                shadowMap.bindStaticForWriting(cascade);
+                drawCasters(casterCache.getStaticCasters(), lightSpaceMatrix);
+                casterCache.markLayerValid(cascade, lightSpaceMatrix);
+            }
 
-        // Renderuj geometrię widocznych obiektów
-        for (GameObject go : gameObjects) {
-            if (go != null && go.getMesh() != null && go.isVisible()) {
-                depthShader.setUniform("model", go.getModelMatrix());
-                go.getMesh().render();
+            // Obiekty dynamiczne dorysowane na kopię warstwy statycznej.
+            // Gdy nic dynamicznego nie ma ani nie było, mapa robocza jest już aktualna - brak pracy.
+            List<GameObject> dynamicCasters = cascadeCuller.cull(lightSpaceMatrix, identity, casterCache.getDynamicCasters());
+            boolean hasDynamic = !dynamicCasters.isEmpty();
+            if (!staticValid || hasDynamic || casterCache.layerHasDynamic(cascade)) {
+                shadowMap.bindForWritingFromStatic(cascade);
+                if (hasDynamic) {
+                    instanceBatcher.build(dynamicCasters, false, null, lodSelector);
+                    instanceBatcher.drawAll();
+                }
+                casterCache.setLayerHasDynamic(cascade, hasDynamic);
             }
         }
 
-        depthShader.unbind();
         shadowMap.unbindAfterWriting(window.getWidth(), window.getHeight()); // Odwiąż FBO i przywróć viewport
     }
 
@@ -83,10 +120,32 @@ public class ShadowRenderer {
         return shadowMap;
     }
 
+    // Tylko obiekty w bryle kaskady (wydłużonej w stronę światła) - macierz kaskady zawiera już widok światła
+    private void drawCasters(List<GameObject> casters, Matrix4f lightSpaceMatrix) {
+        List<GameObject> visible = cascadeCuller.cull(lightSpaceMatrix, identity, casters);
+        // Partie grupowane tylko po siatce (materiał nie ma znaczenia dla głębi)
+        instanceBatcher.build(visible, false, null, lodSelector);
+        instanceBatcher.drawAll();
+    }
+
+    /** Liczba warstw statycznych (kaskad) przerysowanych w ostatniej klatce. */
+    public int getStaticRefreshCount() {
+        return casterCache.getRefreshCount();
+    }
+
+    public ShadowCascades getCascades() {
+        return cascades;
+    }
+
     public int getShadowMapTextureId() {
         return getShadowMap().getDepthMapTexture();
     }
 
+    /** Selektor LOD dla rzucających cień (siatki z przesunięciem poziomu cieni); null - siatki bazowe. */
+    public void setLodSelector(LodSelector lodSelector) {
+        this.lodSelector = lodSelector;
+    }
+
     public void cleanup() {
         System.out.println("  ShadowRenderer: Cleaning up shadow map...");
         if (shadowMap != null) {
@@ -94,6 +153,7 @@ public class ShadowRenderer {
             shadowMap = null;
             System.out.println("    Shadow map cleaned.");
         }
+        instanceBatcher.cleanup();
         System.out.println("  ShadowRenderer: Cleanup complete.");
     }
 }
\ No newline at end of file
@@ -3,30 +3,63 @@ package org.example.graphics.render;
 import org.example.core.Window;
 import org.example.exception.ResourceLoadException;
 import org.example.graphics.ShaderProgram;
+import org.example.graphics.Uniform;
 import org.example.graphics.light.SpotLight;
 import org.example.graphics.shadow.SpotLightShadowMap; // Używamy nowej mapy cieni
 import org.example.scene.GameObject;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Odpowiada za renderowanie mapy głębi (cube map) dla cieni rzucanych przez SpotLight.
- * Wykonuje 6 przebiegów renderowania (po jednym dla każdej ściany cube mapy).
+ * Wszystkie 6 ścian powstaje w jednym przebiegu: cała cube mapa jest warstwowym celem renderowania,
+ * a geometry shader kieruje trójkąty do ścian (gl_Layer). Obiekty są odrzucane osobno dla bryły
+ * każdej ściany - maska ścian obiektu (faceMask) ogranicza geometry shader do ścian, które obiekt przecina.
+ * Obiekty statyczne są rysowane do statycznej cube mapy tylko po unieważnieniu
+ * (ShadowCasterCache) - w pozostałych klatkach dorysowywane są wyłącznie obiekty dynamiczne.
+ * <p>
+ * Renderer nie jest częścią przebiegu cieni Renderer - cienie reflektorów sceny pochodzą z atlasu
+ * (ShadowAtlasRenderer). Program z geometry shaderem jest więc budowany dopiero przy pierwszym
+ * ShaderManager.getCubeShadowDepthShaderProgram(), a nie przy starcie.
  */
 public class SpotLightShadowRenderer {
 
+    private static final int FACE_COUNT = SpotLightShadowMap.FACE_COUNT;
+
     private SpotLightShadowMap spotLightShadowMap;
     private final Window window; // Potrzebne do przywrócenia viewportu
 
+    // Uchwyty uniformów shadera głębi (odświeżane tylko przy zmianie programu)
+    private ShaderProgram cachedDepthShader;
+    private final Uniform[] shadowMatrixUniforms = new Uniform[FACE_COUNT];
+    private Uniform faceMaskUniform, lightPosUniform, farPlaneUniform;
+    private final InstanceBatcher instanceBatcher = new InstanceBatcher();
+    private LodSelector lodSelector; // Opcjonalny - poziomy LOD dla cieni (null = siatki bazowe)
+    private final Matrix4f[] faceMatrices = new Matrix4f[FACE_COUNT];
+    private final FrustumCuller[] faceCullers = new FrustumCuller[FACE_COUNT];
+    // Obiekty pogrupowane według maski ścian (bit i = ściana i) - jedna partia instancji na grupę
+    private final List<List<GameObject>> maskGroups = new ArrayList<>(1 << FACE_COUNT);
+    private final ShadowCasterCache casterCache = new ShadowCasterCache(1); // Cała cube mapa jako jedna warstwa
+    private SpotLight cachedSpotLight; // Cache dotyczy jednego reflektora
+    private int culledCasterCount = 0;
+
     // Parametry projekcji dla mapy cieni
     private static final float SHADOW_NEAR_PLANE = 0.1f;
-    // FAR_PLANE będzie pobierane z zasięgu światła
+    private static final float DEFAULT_FAR_PLANE = 30.0f; // Gdy światło nie gaśnie (brak tłumienia)
 
     public SpotLightShadowRenderer(Window window) {
         if (window == null) throw new IllegalArgumentException("Window cannot be null for SpotLightShadowRenderer");
         this.window = window;
+        for (int i = 0; i < FACE_COUNT; ++i) {
+            faceMatrices[i] = new Matrix4f();
+            faceCullers[i] = new FrustumCuller();
+        }
+        for (int mask = 0; mask < 1 << FACE_COUNT; ++mask) {
+            maskGroups.add(new ArrayList<>());
+        }
     }
 
     /**
@@ -39,6 +72,7 @@ public class SpotLightShadowRenderer {
         try {
             spotLightShadowMap = new SpotLightShadowMap();
             System.out.println("    SpotLight Shadow Map (Cube Map) initialized (Texture ID: " + spotLightShadowMap.getDepthCubeMapTexture() + ").");
+            instanceBatcher.init();
         } catch (Exception e) {
             throw new ResourceLoadException("Failed to create SpotLightShadowMap", e);
         }
@@ -46,11 +80,11 @@ public class SpotLightShadowRenderer {
     }
 
     /**
-     * Renderuje mapę głębi (cube mapę) dla podanego reflektora.
+     * Renderuje mapę głębi (cube mapę) dla podanego reflektora w jednym przebiegu.
      *
      * @param gameObjects Lista obiektów w scenie do renderowania.
      * @param spotLight Reflektor, dla którego generowana jest mapa cieni.
-     * @param depthShader Shader programu używany do renderowania głębokości (powinien to być spotLightDepthShader z ShaderManager).
+     * @param depthShader Program głębi cube mapy z geometry shaderem (ShaderManager.getCubeShadowDepthShaderProgram()).
      */
     public void render(List<GameObject> gameObjects, SpotLight spotLight, ShaderProgram depthShader) {
         if (spotLightShadowMap == null || depthShader == null || spotLight == null || gameObjects == null) {
@@ -64,50 +98,89 @@ public class SpotLightShadowRenderer {
 
         // Pobierz pozycję światła i zasięg (far plane)
         Vector3f lightPos = spotLight.pointLight.position;
-        // Potrzebujemy sposobu na określenie far plane. Na razie przyjmijmy, że jest to zapisane
-        // w PointLight lub obliczone z tłumienia. Dodajmy pole 'range' do PointLight jeśli go nie ma,
-        // lub obliczmy je. Dla uproszczenia, dodajmy getter dla zasięgu do PointLight.
-        // Załóżmy, że PointLight ma metodę getEffectiveRange().
-        //float lightFarPlane = spotLight.pointLight.getEffectiveRange(); // TODO: Implement getEffectiveRange() in PointLight
-        // Tymczasowo, użyjmy stałej lub wartości z Attenuation, jeśli jest dostępna.
-        // Jeśli używamy Attenuation.forRange(), możemy przechować ten range.
-        // Na razie użyjemy stałej wartości, np. zasięgu latarki.
-        float lightFarPlane = 30.0f; // TODO: Pobierz to dynamicznie z właściwości światła
-
-        // Wygeneruj macierze projekcji i widoku dla cube mapy
+        float lightFarPlane = getShadowFarPlane(spotLight); // Zasięg wyznaczony z tłumienia
+
+        // Macierze i bryły ścian cube mapy
         Matrix4f shadowProj = SpotLightShadowMap.getCubeMapProjectionMatrix(SHADOW_NEAR_PLANE, lightFarPlane);
         Matrix4f[] shadowViews = SpotLightShadowMap.getCubeMapViewMatrices(lightPos);
+        for (int i = 0; i < FACE_COUNT; ++i) {
+            shadowProj.mul(shadowViews[i], faceMatrices[i]);
+            faceCullers[i].setFrustum(shadowProj, shadowViews[i]);
+        }
+
+        if (depthShader != cachedDepthShader) {
+            for (int i = 0; i < FACE_COUNT; ++i) {
+                shadowMatrixUniforms[i] = depthShader.getUniform("shadowMatrices[" + i + "]");
+            }
+            faceMaskUniform = depthShader.getUniform("faceMask");
+            lightPosUniform = depthShader.getUniform("lightPos");
+            farPlaneUniform = depthShader.getUniform("farPlane");
+            cachedDepthShader = depthShader;
+        }
+
+        // Podział na statyczne/dynamiczne - ruch obiektu statycznego unieważnia cube mapę
+        casterCache.partition(gameObjects, lodSelector);
+        if (spotLight != cachedSpotLight) {
+            casterCache.invalidate();
+            cachedSpotLight = spotLight;
+        }
+        List<GameObject> dynamicCasters = casterCache.getDynamicCasters();
+        boolean hasDynamic = !dynamicCasters.isEmpty();
+        culledCasterCount = 0;
 
-        // --- Pętla renderowania 6 ścian cube mapy ---
         depthShader.bind();
-        for (int i = 0; i < 6; ++i) {
-            // 1. Oblicz macierz transformacji dla bieżącej ściany
-            Matrix4f lightSpaceMatrix = new Matrix4f(shadowProj).mul(shadowViews[i]);
-
-            // 2. Zwiąż FBO dla zapisu do odpowiedniej ściany cube mapy
-            spotLightShadowMap.bindForWritingToFace(i); // To również ustawia viewport i czyści bufor
-
-            // 3. Ustaw uniformy shadera głębi
-            depthShader.setUniform("lightSpaceMatrix", lightSpaceMatrix);
-            // Jeśli używalibyśmy zlinearyzowanej głębi:
-            // depthShader.setUniform("lightPos", lightPos);
-            // depthShader.setUniform("far_plane", lightFarPlane);
-
-            // 4. Renderuj obiekty sceny
-            for (GameObject go : gameObjects) {
-                if (go != null && go.getMesh() != null && go.isVisible()) {
-                    // TODO: Optymalizacja - Frustum Culling dla każdej ściany?
-                    depthShader.setUniform("model", go.getModelMatrix());
-                    go.getMesh().render();
-                }
+        for (int i = 0; i < FACE_COUNT; ++i) {
+            shadowMatrixUniforms[i].set(faceMatrices[i]);
+        }
+        lightPosUniform.set(lightPos);
+        farPlaneUniform.set(lightFarPlane);
+
+        // 1. Cube mapa statyczna - tylko po unieważnieniu (zmiana pozycji/zasięgu światła zmienia macierz ściany 0)
+        boolean staticValid = casterCache.isLayerValid(0, faceMatrices[0]);
+        if (!staticValid) {
+            spotLightShadowMap.bindStaticForWriting(); // Ustawia viewport i czyści wszystkie ściany
+            drawCasters(casterCache.getStaticCasters());
+            casterCache.markLayerValid(0, faceMatrices[0]);
+        }
+
+        // 2. Kopia statycznej + obiekty dynamiczne (pomijane, gdy mapa robocza jest aktualna)
+        if (!staticValid || hasDynamic || casterCache.layerHasDynamic(0)) {
+            spotLightShadowMap.bindForWritingFromStatic();
+            if (hasDynamic) {
+                drawCasters(dynamicCasters);
             }
+            casterCache.setLayerHasDynamic(0, hasDynamic);
         }
-        depthShader.unbind();
 
-        // 5. Odwiąż FBO i przywróć viewport okna
+        // 3. Odwiąż FBO i przywróć viewport okna
         spotLightShadowMap.unbindAfterWriting(window.getWidth(), window.getHeight());
     }
 
+    /** Odrzuca obiekty dla każdej ściany i rysuje je w grupach o wspólnej masce ścian. */
+    private void drawCasters(List<GameObject> casters) {
+        for (GameObject go : casters) {
+            int mask = 0;
+            for (int i = 0; i < FACE_COUNT; ++i) {
+                if (faceCullers[i].test(go)) {
+                    mask |= 1 << i;
+                }
+            }
+            if (mask == 0) {
+                culledCasterCount++; // Poza zasięgiem światła
+                continue;
+            }
+            maskGroups.get(mask).add(go);
+        }
+        for (int mask = 1; mask < maskGroups.size(); ++mask) {
+            List<GameObject> group = maskGroups.get(mask);
+            if (group.isEmpty()) continue;
+            faceMaskUniform.set(mask);
+            instanceBatcher.build(group, false, null, lodSelector);
+            instanceBatcher.drawAll();
+            group.clear();
+        }
+    }
+
     /**
      * Zwraca ID tekstury cube mapy głębi.
      * @return ID tekstury OpenGL.
@@ -120,13 +193,21 @@ public class SpotLightShadowRenderer {
         return spotLightShadowMap.getDepthCubeMapTexture();
     }
 
-    /** Zwraca zasięg (far plane) używany do generowania mapy cieni. */
+    /** Zwraca zasięg (far plane) używany do generowania mapy cieni - zasięg światła wyznaczony z tłumienia. */
     public float getShadowFarPlane(SpotLight spotLight) {
-        // TODO: Implement dynamiczne pobieranie far plane
-        if (spotLight == null || spotLight.pointLight == null) return 30.0f; // Wartość domyślna
-        // float range = spotLight.pointLight.getEffectiveRange(); // Zakładając, że taka metoda istnieje
-        // return range > 0 ? range : 30.0f;
-        return 30.0f; // Na razie stała
+        if (spotLight == null || spotLight.pointLight == null) return DEFAULT_FAR_PLANE;
+        float range = spotLight.pointLight.getRange();
+        return (range > SHADOW_NEAR_PLANE && Float.isFinite(range)) ? range : DEFAULT_FAR_PLANE;
+    }
+
+    /** Liczba obiektów odrzuconych dla wszystkich ścian w ostatnim przebiegu. */
+    public int getCulledCasterCount() {
+        return culledCasterCount;
+    }
+
+    /** Selektor LOD dla rzucających cień (siatki z przesunięciem poziomu cieni); null - siatki bazowe. */
+    public void setLodSelector(LodSelector lodSelector) {
+        this.lodSelector = lodSelector;
     }
 
     public void cleanup() {
@@ -136,6 +217,10 @@ public class SpotLightShadowRenderer {
             spotLightShadowMap = null;
             System.out.println("    SpotLight Shadow Map (Cube Map) cleaned.");
         }
+        instanceBatcher.cleanup();
+        cachedDepthShader = null;
+        cachedSpotLight = null;
+        casterCache.invalidate();
         System.out.println("  SpotLightShadowRenderer: Cleanup complete.");
     }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package org.example.graphics.shadow;
+
+import org.example.graphics.GLStateCache;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL14.GL_DEPTH_COMPONENT24;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Atlas cieni: jedna duża tekstura głębi (ATLAS_SIZE x ATLAS_SIZE) z jednym FBO.
+ * Kafle przydziela ShadowAtlasAllocator; renderowanie do kafla ogranicza viewport i scissor
+ * do jego prostokąta, więc czyszczenie i rysowanie nie naruszają pozostałych kafli.
+ */
+public class ShadowAtlas {
+
+    public static final int ATLAS_SIZE = ShadowAtlasAllocator.ATLAS_SIZE;
+
+    private final ShadowAtlasAllocator allocator = new ShadowAtlasAllocator();
+    private final int depthTexture;
+    private final int fbo;
+
+    public ShadowAtlas() throws Exception {
+        depthTexture = glGenTextures();
+        GLStateCache.bindTexture(GL_TEXTURE_2D, depthTexture);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT24, ATLAS_SIZE, ATLAS_SIZE, 0,
+                GL_DEPTH_COMPONENT, GL_FLOAT, (java.nio.ByteBuffer) null);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+
+        fbo = glGenFramebuffers();
+        GLStateCache.bindFramebuffer(fbo);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, depthTexture, 0);
+        glDrawBuffer(GL_NONE);
+        glReadBuffer(GL_NONE);
+        if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
+            GLStateCache.bindFramebuffer(0);
+            cleanup();
+            throw new Exception("Could not create FrameBuffer for shadow atlas");
+        }
+        glClear(GL_DEPTH_BUFFER_BIT);
+        GLStateCache.bindFramebuffer(0);
+    }
+
+    // --- Renderowanie ---
+
+    /** Wiąże FBO atlasu, ogranicza viewport i scissor do kafla i czyści tylko jego głębię. */
+    public void bindTileForWriting(int tile) {
+        int x = ShadowAtlasAllocator.tileX(tile), y = ShadowAtlasAllocator.tileY(tile);
+        int size = ShadowAtlasAllocator.tileSize(tile);
+        GLStateCache.bindFramebuffer(fbo);
+        GLStateCache.viewport(x, y, size, size);
+        GLStateCache.enable(GL_SCISSOR_TEST);
+        glScissor(x, y, size, size);
+        glClear(GL_DEPTH_BUFFER_BIT);
+    }
+
+    public void unbindAfterWriting(int windowWidth, int windowHeight) {
+        GLStateCache.disable(GL_SCISSOR_TEST);
+        GLStateCache.bindFramebuffer(0);
+        GLStateCache.viewport(0, 0, windowWidth, windowHeight);
+    }
+
+    public ShadowAtlasAllocator getAllocator() {
+        return allocator;
+    }
+
+    public int getDepthTexture() {
+        return depthTexture;
+    }
+
+    public void cleanup() {
+        glDeleteFramebuffers(fbo);
+        GLStateCache.onFramebufferDeleted(fbo);
+        glDeleteTextures(depthTexture);
+        GLStateCache.onTextureDeleted(depthTexture);
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.graphics.shadow;
+
+import java.util.Arrays;
+
+/**
+ * Przydział kwadratowych kafli atlasu cieni o rozmiarach od MAX_TILE_SIZE do MIN_TILE_SIZE
+ * (potęgi dwójki) - drzewo czwórkowe (buddy allocator): wolny kafel poziomu k dzieli się
+ * na 4 kafle poziomu k + 1, a cztery wolne rodzeństwa łączą się z powrotem przy zwalnianiu.
+ * <p>
+ * Uchwyt kafla to indeks węzła: {@code (poziom << 16) | (y * kafleNaBok + x)}.
+ */
+public class ShadowAtlasAllocator {
+
+    public static final int ATLAS_SIZE = 4096;
+    public static final int MAX_TILE_SIZE = 1024;
+    public static final int MIN_TILE_SIZE = 128;
+    public static final int LEVEL_COUNT = 4; // 1024, 512, 256, 128
+
+    // Stan węzła drzewa czwórkowego
+    private static final byte NODE_ABSENT = 0; // Rodzic nie jest podzielony
+    private static final byte NODE_FREE = 1;
+    private static final byte NODE_USED = 2;
+    private static final byte NODE_SPLIT = 3;
+
+    private final byte[][] nodes = new byte[LEVEL_COUNT][];
+
+    public ShadowAtlasAllocator() {
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            int perSide = tilesPerSide(level);
+            nodes[level] = new byte[perSide * perSide];
+        }
+        Arrays.fill(nodes[0], NODE_FREE);
+    }
+
+    /** Poziom drzewa dla rozmiaru kafla (rozmiar zaokrąglany w dół do obsługiwanej potęgi dwójki). */
+    public static int levelForSize(int tileSize) {
+        int level = 0;
+        int size = MAX_TILE_SIZE;
+        while (size > tileSize && level < LEVEL_COUNT - 1) {
+            size >>= 1;
+            level++;
+        }
+        return level;
+    }
+
+    public static int tileSizeForLevel(int level) {
+        return MAX_TILE_SIZE >> level;
+    }
+
+    private static int tilesPerSide(int level) {
+        return ATLAS_SIZE / tileSizeForLevel(level);
+    }
+
+    /**
+     * Przydziela kafel danego poziomu.
+     * @return Uchwyt kafla lub -1, gdy w atlasie nie ma miejsca.
+     */
+    public int allocate(int level) {
+        int index = findFree(level);
+        if (index < 0) return -1;
+        nodes[level][index] = NODE_USED;
+        return (level << 16) | index;
+    }
+
+    // Zwraca wolny węzeł poziomu (dzieląc w razie potrzeby większy wolny węzeł)
+    private int findFree(int level) {
+        byte[] levelNodes = nodes[level];
+        for (int i = 0; i < levelNodes.length; i++) {
+            if (levelNodes[i] == NODE_FREE) return i;
+        }
+        if (level == 0) return -1;
+        int parent = findFree(level - 1);
+        if (parent < 0) return -1;
+        nodes[level - 1][parent] = NODE_SPLIT;
+        int parentSide = tilesPerSide(level - 1);
+        int side = tilesPerSide(level);
+        int px = parent % parentSide, py = parent / parentSide;
+        int first = -1;
+        for (int c = 0; c < 4; c++) {
+            int child = (py * 2 + (c >> 1)) * side + px * 2 + (c & 1);
+            levelNodes[child] = NODE_FREE;
+            if (first < 0) first = child;
+        }
+        return first;
+    }
+
+    /** Zwalnia kafel i łączy wolne rodzeństwo w większe kafle. */
+    public void free(int tile) {
+        if (tile < 0) return;
+        int level = tile >>> 16;
+        int index = tile & 0xFFFF;
+        nodes[level][index] = NODE_FREE;
+        while (level > 0) {
+            int side = tilesPerSide(level);
+            int x = (index % side) & ~1, y = (index / side) & ~1;
+            int c0 = y * side + x, c1 = c0 + 1, c2 = c0 + side, c3 = c2 + 1;
+            byte[] levelNodes = nodes[level];
+            if (levelNodes[c0] != NODE_FREE || levelNodes[c1] != NODE_FREE
+                    || levelNodes[c2] != NODE_FREE || levelNodes[c3] != NODE_FREE) {
+                return;
+            }
+            levelNodes[c0] = levelNodes[c1] = levelNodes[c2] = levelNodes[c3] = NODE_ABSENT;
+            level--;
+            index = (y / 2) * tilesPerSide(level) + x / 2;
+            nodes[level][index] = NODE_FREE;
+        }
+    }
+
+    public static int tileSize(int tile) {
+        return tileSizeForLevel(tile >>> 16);
+    }
+
+    /** Pozycja X kafla w tekselach atlasu. */
+    public static int tileX(int tile) {
+        int level = tile >>> 16;
+        return ((tile & 0xFFFF) % tilesPerSide(level)) * tileSizeForLevel(level);
+    }
+
+    /** Pozycja Y kafla w tekselach atlasu. */
+    public static int tileY(int tile) {
+        int level = tile >>> 16;
+        return ((tile & 0xFFFF) / tilesPerSide(level)) * tileSizeForLevel(level);
+    }
+}
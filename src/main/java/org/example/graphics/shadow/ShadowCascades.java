@@ -0,0 +1,174 @@
+package org.example.graphics.shadow;
+
+import org.example.graphics.light.DirectionalLight;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Wyznacza kaskady mapy cieni światła kierunkowego (Cascaded Shadow Maps).
+ * Bryła widzenia kamery (do DirectionalLight.getShadowDistance()) jest dzielona wzdłuż głębokości
+ * na kilka przedziałów - schemat "practical split": mieszanka podziału logarytmicznego i równomiernego
+ * (lambda). Każda kaskada dostaje własną macierz ortograficzną dopasowaną do swojego wycinka bryły.
+ * <p>
+ * Wycinek jest opisany kulą otaczającą, więc rozmiar kaskady nie zmienia się przy obrocie kamery.
+ * Środek kaskady jest przyciągany do grubej siatki (PLACEMENT_SNAP_FRACTION zasięgu, całkowita liczba
+ * tekseli - krawędzie cieni nie migoczą), a zasięg jest powiększony o pół kroku, by kula zawsze się
+ * mieściła. Zakres głębokości jest kwantowany podobnie (DEPTH_SNAP_FRACTION promienia) z zapasem.
+ * Macierz kaskady zmienia się więc dopiero po przesunięciu wycinka o krok siatki, a nie o teksel -
+ * warstwa statyczna ShadowCasterCache pozostaje ważna przez wiele klatek ruchu kamery, kosztem
+ * kilku procent rozdzielczości.
+ */
+public class ShadowCascades {
+
+    /**
+     * Maksymalna liczba kaskad (warstw tablicy tekstur ShadowMap, wstrzykiwana do GLSL jako MAX_SHADOW_CASCADES).
+     * Co najwyżej 4 - granice kaskad są przekazywane do shadera w jednym vec4.
+     */
+    public static final int MAX_CASCADES = 4;
+
+    // Bias głębokości w jednostkach świata, wyrażony w tekselach kaskady
+    private static final float BIAS_TEXELS = 1.5f;
+    // Krok kwantyzacji środka kaskady wzdłuż kierunku światła (ułamek promienia kaskady)
+    private static final float DEPTH_SNAP_FRACTION = 0.25f;
+    // Krok przyciągania środka kaskady w płaszczyźnie światła (ułamek zasięgu; 1/8 daje rozdzielczość/16 tekseli)
+    private static final float PLACEMENT_SNAP_FRACTION = 0.125f;
+
+    private final Matrix4f[] lightSpaceMatrices = new Matrix4f[MAX_CASCADES];
+    private final float[] splitDistances = new float[MAX_CASCADES]; // Daleka granica kaskady (głębokość w przestrzeni widoku)
+    private final float[] depthBiases = new float[MAX_CASCADES];    // Bias w jednostkach głębokości [0, 1] danej kaskady
+    private final float[] texelWorldSizes = new float[MAX_CASCADES];
+    private int cascadeCount = 0;
+
+    // Bufory robocze (bez alokacji co klatkę)
+    private final Matrix4f invProjView = new Matrix4f();
+    private final Matrix4f lightView = new Matrix4f();
+    private final Matrix4f lightProjection = new Matrix4f();
+    private final Vector3f[] nearCorners = new Vector3f[4];
+    private final Vector3f[] farCorners = new Vector3f[4];
+    private final Vector3f[] sliceCorners = new Vector3f[8];
+    private final Vector3f center = new Vector3f();
+    private final Vector3f lightUp = new Vector3f();
+    private final Vector3f centerLightSpace = new Vector3f();
+
+    public ShadowCascades() {
+        for (int i = 0; i < MAX_CASCADES; i++) {
+            lightSpaceMatrices[i] = new Matrix4f();
+        }
+        for (int i = 0; i < 4; i++) {
+            nearCorners[i] = new Vector3f();
+            farCorners[i] = new Vector3f();
+        }
+        for (int i = 0; i < 8; i++) {
+            sliceCorners[i] = new Vector3f();
+        }
+    }
+
+    /**
+     * Przelicza kaskady dla bieżącej kamery.
+     *
+     * @param projection Macierz projekcji perspektywicznej kamery.
+     * @param view Macierz widoku kamery.
+     * @param light Światło kierunkowe (null = brak kaskad).
+     * @param resolution Rozdzielczość jednej warstwy mapy cieni (w tekselach).
+     */
+    public void update(Matrix4f projection, Matrix4f view, DirectionalLight light, int resolution) {
+        if (light == null) {
+            cascadeCount = 0;
+            return;
+        }
+        cascadeCount = Math.min(Math.max(1, light.getCascadeCount()), MAX_CASCADES);
+
+        float cameraNear = projection.perspectiveNear();
+        float cameraFar = projection.perspectiveFar();
+        float shadowFar = Math.min(cameraFar, Math.max(light.getShadowDistance(), cameraNear * 2.0f));
+        computeSplits(cameraNear, shadowFar, light.getCascadeSplitLambda());
+
+        // Narożniki pełnej bryły widzenia w przestrzeni świata (bliska i daleka płaszczyzna)
+        projection.mul(view, invProjView).invert();
+        for (int i = 0; i < 4; i++) {
+            float x = (i == 1 || i == 2) ? 1.0f : -1.0f;
+            float y = (i >= 2) ? 1.0f : -1.0f;
+            invProjView.transformProject(x, y, -1.0f, nearCorners[i]);
+            invProjView.transformProject(x, y, 1.0f, farCorners[i]);
+        }
+
+        // Widok światła: tylko obrót (oko w początku układu) - przesunięcie trafia do macierzy ortograficznej,
+        // dzięki czemu przyciąganie do siatki tekseli działa w stałym układzie współrzędnych
+        Vector3f dir = light.getDirection();
+        if (Math.abs(dir.y) > 0.99f) {
+            lightUp.set(1.0f, 0.0f, 0.0f);
+        } else {
+            lightUp.set(0.0f, 1.0f, 0.0f);
+        }
+        lightView.setLookAt(0.0f, 0.0f, 0.0f, dir.x, dir.y, dir.z, lightUp.x, lightUp.y, lightUp.z);
+
+        float sliceStart = cameraNear;
+        for (int c = 0; c < cascadeCount; c++) {
+            float sliceEnd = splitDistances[c];
+            fitCascade(c, cameraNear, cameraFar, sliceStart, sliceEnd, light.getCasterExtension(), resolution);
+            sliceStart = sliceEnd;
+        }
+    }
+
+    /** Schemat "practical split": lambda * podział logarytmiczny + (1 - lambda) * równomierny. */
+    private void computeSplits(float near, float far, float lambda) {
+        for (int i = 1; i <= cascadeCount; i++) {
+            float p = (float) i / cascadeCount;
+            float logSplit = near * (float) Math.pow(far / near, p);
+            float uniformSplit = near + (far - near) * p;
+            splitDistances[i - 1] = lambda * logSplit + (1.0f - lambda) * uniformSplit;
+        }
+        splitDistances[cascadeCount - 1] = far; // Ostatnia kaskada kończy się dokładnie na odległości cieni
+    }
+
+    private void fitCascade(int cascade, float cameraNear, float cameraFar, float sliceStart, float sliceEnd,
+                            float casterExtension, int resolution) {
+        // Narożniki wycinka bryły: punkt na krawędzi bryły o głębokości d leży w (d - near) / (far - near) jej długości
+        float t0 = (sliceStart - cameraNear) / (cameraFar - cameraNear);
+        float t1 = (sliceEnd - cameraNear) / (cameraFar - cameraNear);
+        center.zero();
+        for (int i = 0; i < 4; i++) {
+            nearCorners[i].lerp(farCorners[i], t0, sliceCorners[i]);
+            nearCorners[i].lerp(farCorners[i], t1, sliceCorners[i + 4]);
+            center.add(sliceCorners[i]).add(sliceCorners[i + 4]);
+        }
+        center.div(8.0f);
+
+        // Kula otaczająca wycinek - promień zależy tylko od kształtu wycinka, nie od orientacji kamery
+        float radius = 0.0f;
+        for (Vector3f corner : sliceCorners) {
+            radius = Math.max(radius, corner.distance(center));
+        }
+        radius = (float) Math.ceil(radius * 16.0f) / 16.0f; // Stały rozmiar mimo błędów zaokrągleń
+
+        // Przyciągnięcie środka do grubej siatki w przestrzeni światła: zaokrąglenie przesuwa środek najwyżej
+        // o pół kroku, więc zasięg extent = radius + step / 2, gdzie step = extent * PLACEMENT_SNAP_FRACTION
+        float extent = radius / (1.0f - 0.5f * PLACEMENT_SNAP_FRACTION);
+        float texelSize = 2.0f * extent / resolution;
+        float placementStep = Math.max(1.0f, Math.round(extent * PLACEMENT_SNAP_FRACTION / texelSize)) * texelSize;
+        lightView.transformPosition(center, centerLightSpace);
+        float cx = (float) Math.floor(centerLightSpace.x / placementStep + 0.5f) * placementStep;
+        float cy = (float) Math.floor(centerLightSpace.y / placementStep + 0.5f) * placementStep;
+        // Wzdłuż światła - grubszy krok; przyciągnięty środek jest najwyżej o krok dalej od światła niż rzeczywisty
+        float depthStep = radius * DEPTH_SNAP_FRACTION;
+        float cz = (float) Math.floor(centerLightSpace.z / depthStep) * depthStep;
+
+        // Światło patrzy wzdłuż -Z; bliska płaszczyzna cofnięta o krok kwantyzacji (zapas na przyciągnięcie)
+        // i o casterExtension, by złapać rzucających cień spoza kadru
+        float zNear = -cz - radius - depthStep - casterExtension;
+        float zFar = -cz + radius;
+        lightProjection.setOrtho(cx - extent, cx + extent, cy - extent, cy + extent, zNear, zFar);
+        lightProjection.mul(lightView, lightSpaceMatrices[cascade]);
+
+        texelWorldSizes[cascade] = texelSize;
+        depthBiases[cascade] = BIAS_TEXELS * texelSize / (zFar - zNear);
+    }
+
+    // --- Gettery ---
+    public int getCascadeCount() { return cascadeCount; }
+    /** Macierz przestrzeni światła kaskady (współdzielona - tylko do odczytu). */
+    public Matrix4f getLightSpaceMatrix(int cascade) { return lightSpaceMatrices[cascade]; }
+    public float getSplitDistance(int cascade) { return splitDistances[cascade]; }
+    public float getDepthBias(int cascade) { return depthBiases[cascade]; }
+    public float getTexelWorldSize(int cascade) { return texelWorldSizes[cascade]; }
+}
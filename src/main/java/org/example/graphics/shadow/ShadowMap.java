@@ -1,62 +1,127 @@
 package org.example.graphics.shadow;
 
+import org.example.graphics.GLStateCache;
+
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
-import static org.lwjgl.opengl.GL14.GL_DEPTH_COMPONENT16;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL14.GL_DEPTH_COMPONENT24;
 import static org.lwjgl.opengl.GL30.*;
-import static org.lwjgl.opengl.GL32.glFramebufferTexture;
 
+/**
+ * Mapa cieni światła kierunkowego: jedna tekstura GL_TEXTURE_2D_ARRAY głębi,
+ * warstwa na kaskadę (ShadowCascades). Każda warstwa ma własny FBO, więc przełączenie
+ * kaskady to tylko zmiana wiązania FBO.
+ * Druga tablica o tym samym układzie przechowuje głębię samych obiektów statycznych
+ * (ShadowCasterCache) - kopiowaną co klatkę do mapy roboczej przez glBlitFramebuffer.
+ */
 public class ShadowMap {
 
     public static final int SHADOW_MAP_WIDTH = 2048;
     public static final int SHADOW_MAP_HEIGHT = 2048;
 
-    private final int depthMapFBO;
+    private final int layerCount;
+    private final int[] depthMapFBOs;
     private final int depthMapTexture;
+    private final int[] staticDepthFBOs;
+    private final int staticDepthTexture;
 
-    public ShadowMap() throws Exception {
-        depthMapFBO = glGenFramebuffers();
+    public ShadowMap(int layerCount) throws Exception {
+        this.layerCount = layerCount;
 
-        depthMapTexture = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, depthMapTexture);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT16,
-                SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT, 0,
-                GL_DEPTH_COMPONENT, GL_FLOAT, (java.nio.ByteBuffer) null);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        depthMapTexture = createDepthArray(layerCount);
+        staticDepthTexture = createDepthArray(layerCount);
+        depthMapFBOs = new int[layerCount];
+        staticDepthFBOs = new int[layerCount];
+        for (int layer = 0; layer < layerCount; layer++) {
+            depthMapFBOs[layer] = glGenFramebuffers();
+            staticDepthFBOs[layer] = glGenFramebuffers();
+            if (!attachLayer(depthMapFBOs[layer], depthMapTexture, layer)
+                    || !attachLayer(staticDepthFBOs[layer], staticDepthTexture, layer)) {
+                GLStateCache.bindFramebuffer(0);
+                cleanup();
+                throw new Exception("Could not create FrameBuffer for shadow map layer " + layer);
+            }
+        }
 
-        glBindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
-        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, depthMapTexture, 0);
+        GLStateCache.bindFramebuffer(0);
+    }
 
+    private static int createDepthArray(int layerCount) {
+        int texture = glGenTextures();
+        GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, texture);
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_DEPTH_COMPONENT24,
+                SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT, layerCount, 0,
+                GL_DEPTH_COMPONENT, GL_FLOAT, (java.nio.ByteBuffer) null);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        return texture;
+    }
+
+    private static boolean attachLayer(int fbo, int texture, int layer) {
+        GLStateCache.bindFramebuffer(fbo);
+        glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, texture, 0, layer);
         glDrawBuffer(GL_NONE);
         glReadBuffer(GL_NONE);
+        return glCheckFramebufferStatus(GL_FRAMEBUFFER) == GL_FRAMEBUFFER_COMPLETE;
+    }
 
-        if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
-            throw new Exception("Could not create FrameBuffer for shadow map");
-        }
-
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    /** Wiąże FBO warstwy (kaskady), ustawia viewport i czyści głębię. */
+    public void bindForWriting(int layer) {
+        GLStateCache.viewport(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT);
+        GLStateCache.bindFramebuffer(depthMapFBOs[layer]);
+        glClear(GL_DEPTH_BUFFER_BIT);
     }
 
-    public void bindForWriting() {
-        glViewport(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT);
-        glBindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
+    /** Wiąże FBO warstwy statycznej (tylko obiekty statyczne), ustawia viewport i czyści głębię. */
+    public void bindStaticForWriting(int layer) {
+        GLStateCache.viewport(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT);
+        GLStateCache.bindFramebuffer(staticDepthFBOs[layer]);
         glClear(GL_DEPTH_BUFFER_BIT);
     }
 
+    /**
+     * Kopiuje warstwę statyczną do mapy roboczej i zostawia FBO warstwy roboczej zbindowany
+     * do dorysowania obiektów dynamicznych.
+     */
+    public void bindForWritingFromStatic(int layer) {
+        GLStateCache.viewport(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT);
+        GLStateCache.bindFramebuffers(staticDepthFBOs[layer], depthMapFBOs[layer]);
+        glBlitFramebuffer(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT, 0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT,
+                GL_DEPTH_BUFFER_BIT, GL_NEAREST);
+        GLStateCache.bindFramebuffer(depthMapFBOs[layer]);
+    }
+
     public void unbindAfterWriting(int windowWidth, int windowHeight) {
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
-        glViewport(0, 0, windowWidth, windowHeight);
+        GLStateCache.bindFramebuffer(0);
+        GLStateCache.viewport(0, 0, windowWidth, windowHeight);
     }
 
     public int getDepthMapTexture() {
         return depthMapTexture;
     }
 
+    public int getLayerCount() {
+        return layerCount;
+    }
+
     public void cleanup() {
-        glDeleteFramebuffers(depthMapFBO);
+        deleteFramebuffers(depthMapFBOs);
+        deleteFramebuffers(staticDepthFBOs);
         glDeleteTextures(depthMapTexture);
+        GLStateCache.onTextureDeleted(depthMapTexture);
+        glDeleteTextures(staticDepthTexture);
+        GLStateCache.onTextureDeleted(staticDepthTexture);
+    }
+
+    private static void deleteFramebuffers(int[] fbos) {
+        for (int fbo : fbos) {
+            if (fbo != 0) {
+                glDeleteFramebuffers(fbo);
+                GLStateCache.onFramebufferDeleted(fbo);
+            }
+        }
     }
-}
\ No newline at end of file
+}
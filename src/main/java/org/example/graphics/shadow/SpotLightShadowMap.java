@@ -1,40 +1,73 @@
 package org.example.graphics.shadow;
 
+import org.example.graphics.GLStateCache;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL12;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL30;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_WRAP_R;
+import static org.lwjgl.opengl.GL14.GL_DEPTH_COMPONENT24;
 import static org.lwjgl.opengl.GL30.*;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP_POSITIVE_X;
+import static org.lwjgl.opengl.GL32.glFramebufferTexture;
 
 /**
  * Zarządza Framebuffer Object (FBO) i teksturą sześcienną (Cube Map)
  * do przechowywania mapy głębi dla cieni rzucanych przez SpotLight (lub PointLight).
+ * Cała cube mapa jest podpięta jako warstwowy załącznik (glFramebufferTexture) - wszystkie
+ * ściany są renderowane w jednym przebiegu, a ścianę wybiera geometry shader (gl_Layer).
+ * Załączniki są ustawiane i sprawdzane raz, w konstruktorze.
  */
 public class SpotLightShadowMap {
 
     public static final int SHADOW_MAP_WIDTH = 1024; // Rozdzielczość mapy cieni (można dostosować)
     public static final int SHADOW_MAP_HEIGHT = 1024;
+    public static final int FACE_COUNT = 6;
 
-    private final int depthMapFBO;
+    private final int depthMapFBO;         // Warstwowy FBO całej cube mapy roboczej
     private final int depthCubeMapTexture; // ID tekstury cube mapy głębi
+    // Cube mapa z głębią samych obiektów statycznych (ShadowCasterCache) i jej warstwowy FBO
+    private final int staticDepthFBO;
+    private final int staticDepthCubeMapTexture;
+    // FBO pojedynczych ścian - tylko do kopiowania (glBlitFramebuffer nie obsługuje warstw)
+    private final int[] faceFBOs = new int[FACE_COUNT];
+    private final int[] staticFaceFBOs = new int[FACE_COUNT];
 
     public SpotLightShadowMap() throws Exception {
-        // 1. Utwórz Framebuffer Object (FBO)
+        // 1. Tekstury cube map głębi (robocza i statyczna)
+        depthCubeMapTexture = createDepthCubeMap();
+        staticDepthCubeMapTexture = createDepthCubeMap();
+
+        // 2. Warstwowe FBO całych cube map
         depthMapFBO = glGenFramebuffers();
+        staticDepthFBO = glGenFramebuffers();
+        boolean complete = attachLayered(depthMapFBO, depthCubeMapTexture)
+                && attachLayered(staticDepthFBO, staticDepthCubeMapTexture);
+
+        // 3. FBO pojedynczych ścian do kopiowania ściany statycznej do roboczej
+        for (int i = 0; i < FACE_COUNT && complete; ++i) {
+            faceFBOs[i] = glGenFramebuffers();
+            staticFaceFBOs[i] = glGenFramebuffers();
+            complete = attachFace(faceFBOs[i], depthCubeMapTexture, i)
+                    && attachFace(staticFaceFBOs[i], staticDepthCubeMapTexture, i);
+        }
 
-        // 2. Utwórz teksturę Cube Map dla głębi
-        depthCubeMapTexture = glGenTextures();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, depthCubeMapTexture);
+        GLStateCache.bindFramebuffer(0); // Odwiąż FBO
+        GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, 0); // Odwiąż teksturę
+        if (!complete) {
+            cleanup();
+            throw new Exception("Could not create FrameBuffer for SpotLight shadow map");
+        }
+    }
 
-        for (int i = 0; i < 6; ++i) {
+    private static int createDepthCubeMap() {
+        int texture = glGenTextures();
+        GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, texture);
+        for (int i = 0; i < FACE_COUNT; ++i) {
             // GL_TEXTURE_CUBE_MAP_POSITIVE_X + i daje kolejne ściany: +X, -X, +Y, -Y, +Z, -Z
-            glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL_DEPTH_COMPONENT,
+            glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL_DEPTH_COMPONENT24,
                     SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT, 0, GL_DEPTH_COMPONENT, GL_FLOAT, (java.nio.ByteBuffer) null);
         }
 
@@ -43,60 +76,57 @@ public class SpotLightShadowMap {
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE); // Dla cube mapy potrzebny też WRAP_R
+        return texture;
+    }
+
+    /** Podpina całą cube mapę jako warstwowy załącznik głębi (warstwa = ściana). */
+    private static boolean attachLayered(int fbo, int texture) {
+        GLStateCache.bindFramebuffer(fbo);
+        glFramebufferTexture(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, texture, 0);
+        glDrawBuffer(GL_NONE); // Nie renderujemy do żadnego bufora koloru
+        glReadBuffer(GL_NONE);
+        return glCheckFramebufferStatus(GL_FRAMEBUFFER) == GL_FRAMEBUFFER_COMPLETE;
+    }
 
-        // 3. Dołącz teksturę cube mapy jako załącznik głębi do FBO
-        glBindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
-        // Dołączamy całą cube mapę, a potem w pętli renderowania będziemy wybierać konkretną ścianę
-        // za pomocą glFramebufferTexture2D z odpowiednim celem (np. GL_TEXTURE_CUBE_MAP_POSITIVE_X + i)
-        // LUB używamy glFramebufferTexture, która jest bardziej generyczna (ale może być mniej wspierana na starym sprzęcie)
-        // Na razie zostawimy to tak, będziemy dołączać konkretne ściany w pętli renderowania.
-        // Alternatywnie, można by użyć glFramebufferTextureLayer dla każdej ściany,
-        // ale uprośćmy i dołączajmy dynamicznie przed renderowaniem każdej ściany.
-        // Na razie wystarczy samo powiązanie FBO, konkretna ściana będzie dołączana w metodzie `bindForWritingToFace`.
-
-        // Określ, że nie będziemy renderować do żadnego bufora koloru
+    private static boolean attachFace(int fbo, int texture, int faceIndex) {
+        GLStateCache.bindFramebuffer(fbo);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_CUBE_MAP_POSITIVE_X + faceIndex, texture, 0);
         glDrawBuffer(GL_NONE);
         glReadBuffer(GL_NONE);
+        return glCheckFramebufferStatus(GL_FRAMEBUFFER) == GL_FRAMEBUFFER_COMPLETE;
+    }
 
-        // Sprawdź kompletność FBO (bez dołączonej tekstury jeszcze nie będzie kompletny)
-        // Sprawdzenie kompletności wykonamy po dołączeniu pierwszej ściany.
-        // if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
-        //     glBindFramebuffer(GL_FRAMEBUFFER, 0); // Odwiąż przed rzuceniem wyjątku
-        //     throw new Exception("Could not create FrameBuffer for SpotLight shadow map. Status: " + glCheckFramebufferStatus(GL_FRAMEBUFFER));
-        // }
+    /** Wiąże warstwowy FBO roboczej cube mapy, ustawia viewport i czyści głębię wszystkich ścian. */
+    public void bindForWriting() {
+        GLStateCache.bindFramebuffer(depthMapFBO);
+        GLStateCache.viewport(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT); // Ustaw viewport na rozmiar mapy cieni
+        glClear(GL_DEPTH_BUFFER_BIT); // Czyści wszystkie warstwy załącznika
+    }
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0); // Odwiąż FBO
-        glBindTexture(GL_TEXTURE_CUBE_MAP, 0); // Odwiąż teksturę
+    /** Wiąże warstwowy FBO statycznej cube mapy (tylko obiekty statyczne), ustawia viewport i czyści głębię. */
+    public void bindStaticForWriting() {
+        GLStateCache.bindFramebuffer(staticDepthFBO);
+        GLStateCache.viewport(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT);
+        glClear(GL_DEPTH_BUFFER_BIT);
     }
 
     /**
-     * Wiąże FBO i konkretną ścianę cube mapy jako cel renderowania.
-     * @param faceIndex Indeks ściany (0 do 5, odpowiadający GL_TEXTURE_CUBE_MAP_POSITIVE_X + i)
+     * Kopiuje statyczną cube mapę do roboczej (glBlitFramebuffer po ścianie) i zostawia warstwowy
+     * FBO roboczy zbindowany do dorysowania obiektów dynamicznych.
      */
-    public void bindForWritingToFace(int faceIndex) {
-        if (faceIndex < 0 || faceIndex > 5) {
-            throw new IllegalArgumentException("Invalid face index for cube map: " + faceIndex);
+    public void bindForWritingFromStatic() {
+        GLStateCache.viewport(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT);
+        for (int i = 0; i < FACE_COUNT; ++i) {
+            GLStateCache.bindFramebuffers(staticFaceFBOs[i], faceFBOs[i]);
+            glBlitFramebuffer(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT, 0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT,
+                    GL_DEPTH_BUFFER_BIT, GL_NEAREST);
         }
-        glBindFramebuffer(GL_FRAMEBUFFER, depthMapFBO);
-        // Dołącz konkretną ścianę cube mapy do FBO
-        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_CUBE_MAP_POSITIVE_X + faceIndex, depthCubeMapTexture, 0);
-
-        // Sprawdź kompletność FBO po dołączeniu ściany (ważne przy pierwszym użyciu)
-        // Można to robić tylko raz, np. w konstruktorze po dołączeniu pierwszej ściany, ale dla bezpieczeństwa
-        int fboStatus = glCheckFramebufferStatus(GL_FRAMEBUFFER);
-        if (fboStatus != GL_FRAMEBUFFER_COMPLETE) {
-            System.err.println("SpotLightShadowMap FBO not complete! Status: " + fboStatus + " for face " + faceIndex);
-            // Można rzucić wyjątek, jeśli to krytyczne
-            // throw new RuntimeException("SpotLightShadowMap FBO not complete! Status: " + fboStatus);
-        }
-
-        glViewport(0, 0, SHADOW_MAP_WIDTH, SHADOW_MAP_HEIGHT); // Ustaw viewport na rozmiar mapy cieni
-        glClear(GL_DEPTH_BUFFER_BIT); // Wyczyść bufor głębi
+        GLStateCache.bindFramebuffer(depthMapFBO);
     }
 
     public void unbindAfterWriting(int windowWidth, int windowHeight) {
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
-        glViewport(0, 0, windowWidth, windowHeight); // Przywróć oryginalny viewport
+        GLStateCache.bindFramebuffer(0);
+        GLStateCache.viewport(0, 0, windowWidth, windowHeight); // Przywróć oryginalny viewport (pomijane, gdy bez zmian)
     }
 
     public int getDepthCubeMapTexture() {
@@ -104,8 +134,23 @@ public class SpotLightShadowMap {
     }
 
     public void cleanup() {
-        glDeleteFramebuffers(depthMapFBO);
+        deleteFramebuffer(depthMapFBO);
+        deleteFramebuffer(staticDepthFBO);
+        for (int i = 0; i < FACE_COUNT; ++i) {
+            deleteFramebuffer(faceFBOs[i]);
+            deleteFramebuffer(staticFaceFBOs[i]);
+        }
         glDeleteTextures(depthCubeMapTexture);
+        GLStateCache.onTextureDeleted(depthCubeMapTexture);
+        glDeleteTextures(staticDepthCubeMapTexture);
+        GLStateCache.onTextureDeleted(staticDepthCubeMapTexture);
+    }
+
+    private static void deleteFramebuffer(int fbo) {
+        if (fbo != 0) {
+            glDeleteFramebuffers(fbo);
+            GLStateCache.onFramebufferDeleted(fbo);
+        }
     }
 
     /**
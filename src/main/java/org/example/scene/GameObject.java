@@ -2,6 +2,7 @@ package org.example.scene;
 
 import org.example.graphics.Material;
 import org.example.graphics.Mesh;
+import org.example.graphics.OccluderMesh;
 import org.joml.*;
 import org.joml.Math; // Dla Math.sqrt i Math.max
 
@@ -14,6 +15,31 @@ public class GameObject {
     private Vector3f scale;
     private final GameObjectProperties properties;
     private float baseBoundingSphereRadius; // Promień dla obiektu o skali (1,1,1)
+    private OccluderMesh occluderMesh; // Geometria dla occlusion cullingu (null = AABB siatki, gdy properties.isOccluder())
+    private int lodLevel = 0; // Aktualny poziom LOD (stan histerezy LodSelector)
+
+    // Macierze świata liczone leniwie - przeliczane tylko po zmianie pozycji/rotacji/skali
+    private final Matrix4f modelMatrix = new Matrix4f();
+    private final Matrix3f normalMatrix = new Matrix3f();
+    private boolean transformDirty = true;
+    private long transformVersion = 0; // Rośnie przy każdej zmianie macierzy (np. unieważnianie cache cieni)
+
+    // Interpolacja między tickami symulacji (stały krok w Engine.loop). Przed pierwszą zmianą
+    // transformacji w ticku zapamiętywany jest stan z jego początku (copy-on-write - obiekty
+    // nieruchome nic nie kopiują); renderowana macierz to mieszanka stanu poprzedniego i bieżącego.
+    private static long simulationTick = 0;
+    private final Vector3f previousPosition = new Vector3f();
+    private final Quaternionf previousRotation = new Quaternionf();
+    private final Vector3f previousScale = new Vector3f(1, 1, 1);
+    private long previousTick = -1; // Tick, z którego początku pochodzi stan previous*
+    private final long createdTick;  // Obiekt utworzony w ticku nie ma stanu poprzedniego
+    private float renderAlpha = 1.0f; // 1 = stan bieżący
+
+    // Kopia renderowania (tryb potokowy - RenderScene): transformacje przychodzą ze snapshotu
+    // wątku symulacji, a nie z setterów; stała tożsamość kopii trzyma cache renderera (cienie, LOD)
+    private final boolean renderMirror;
+    private boolean mirrorMoved = false;
+    private long mirrorSourceVersion = -1;
 
     public GameObject(Mesh mesh, Material material, GameObjectProperties properties) {
         if (mesh == null) throw new IllegalArgumentException("Mesh cannot be null");
@@ -25,6 +51,8 @@ public class GameObject {
         this.position = new Vector3f(0, 0, 0);
         this.rotation = new Quaternionf().identity();
         this.scale = new Vector3f(1, 1, 1);
+        this.createdTick = simulationTick;
+        this.renderMirror = false;
 
         // Inicjalizacja baseBoundingSphereRadius na podstawie typu obiektu
         // Te wartości są przybliżone i powinny być dostosowane do rzeczywistych wymiarów modeli
@@ -41,21 +69,186 @@ public class GameObject {
         }
     }
 
+    // Kopia renderowania obiektu symulacji (RenderScene) - tylko z wartości zapisanych w snapshocie,
+    // bez odczytu pól obiektu źródłowego (modyfikowanego równolegle przez wątek symulacji);
+    // transformację ustawia następnie applySnapshot()
+    private GameObject(Mesh mesh, Material material, GameObjectProperties properties, float baseBoundingSphereRadius) {
+        this.mesh = mesh;
+        this.material = material;
+        this.properties = properties;
+        this.position = new Vector3f();
+        this.rotation = new Quaternionf();
+        this.scale = new Vector3f(1, 1, 1);
+        this.baseBoundingSphereRadius = baseBoundingSphereRadius;
+        this.createdTick = -1;
+        this.renderMirror = true;
+    }
+
+    static GameObject createRenderMirror(Mesh mesh, Material material, GameObjectProperties properties, float baseBoundingSphereRadius) {
+        return new GameObject(mesh, material, properties, baseBoundingSphereRadius);
+    }
+
+    /**
+     * Zapisuje transformację do snapshotu (wątek symulacji): stan z początku ostatniego ticku
+     * (lub bieżący, jeśli obiekt się nie poruszył), potem bieżący - RenderSnapshot.FLOATS_PER_TRANSFORM liczb.
+     * @return Czy obiekt poruszył się w ostatnim ticku.
+     */
+    boolean captureTransform(float[] out, int offset) {
+        boolean moved = previousTick == simulationTick && createdTick != simulationTick;
+        writeTransform(out, offset, moved ? previousPosition : position, moved ? previousRotation : rotation, moved ? previousScale : scale);
+        writeTransform(out, offset + 10, position, rotation, scale);
+        return moved;
+    }
+
+    private static void writeTransform(float[] out, int offset, Vector3f p, Quaternionf r, Vector3f s) {
+        out[offset] = p.x; out[offset + 1] = p.y; out[offset + 2] = p.z;
+        out[offset + 3] = r.x; out[offset + 4] = r.y; out[offset + 5] = r.z; out[offset + 6] = r.w;
+        out[offset + 7] = s.x; out[offset + 8] = s.y; out[offset + 9] = s.z;
+    }
+
+    /**
+     * Przepisuje stan ze snapshotu do kopii renderowania (wątek GL). Macierz jest unieważniana tylko,
+     * gdy obiekt źródłowy zmienił transformację od poprzedniego snapshotu.
+     */
+    void applySnapshot(Mesh mesh, Material material, OccluderMesh occluderMesh, float[] data, int offset, boolean moved, long sourceVersion) {
+        if (this.mesh != mesh) setMesh(mesh);
+        this.material = material;
+        this.occluderMesh = occluderMesh;
+        if (sourceVersion != mirrorSourceVersion || moved != mirrorMoved) {
+            previousPosition.set(data[offset], data[offset + 1], data[offset + 2]);
+            previousRotation.set(data[offset + 3], data[offset + 4], data[offset + 5], data[offset + 6]);
+            previousScale.set(data[offset + 7], data[offset + 8], data[offset + 9]);
+            position.set(data[offset + 10], data[offset + 11], data[offset + 12]);
+            rotation.set(data[offset + 13], data[offset + 14], data[offset + 15], data[offset + 16]);
+            scale.set(data[offset + 17], data[offset + 18], data[offset + 19]);
+            mirrorSourceVersion = sourceVersion;
+            mirrorMoved = moved;
+            markTransformDirty();
+        }
+    }
+
+    /**
+     * Zwraca macierz modelu (translacja * rotacja * skala), przeliczaną tylko po zmianie transformacji.
+     * To macierz renderowania - dla obiektów poruszonych w ostatnim ticku interpolowana współczynnikiem
+     * z setInterpolationAlpha(). Zwracana macierz jest współdzielona - nie modyfikować.
+     */
     public Matrix4f getModelMatrix() {
-        Matrix4f model = new Matrix4f();
-        model.translate(position);
-        model.rotate(rotation);
-        model.scale(scale);
-        return model;
+        updateTransform();
+        return modelMatrix;
+    }
+
+    /**
+     * Zwraca macierz normalnych 3x3 (transponowana odwrotność górnej lewej 3x3 macierzy modelu),
+     * przeliczaną razem z macierzą modelu. Zwracana macierz jest współdzielona - nie modyfikować.
+     */
+    public Matrix3f getNormalMatrix() {
+        updateTransform();
+        return normalMatrix;
+    }
+
+    private void updateTransform() {
+        if (!transformDirty) return;
+        if (renderAlpha < 1.0f) {
+            // Interpolacja na zmiennych lokalnych - macierze obiektów mogą być liczone równolegle (JobSystem)
+            float t = renderAlpha;
+            float px = previousPosition.x + (position.x - previousPosition.x) * t;
+            float py = previousPosition.y + (position.y - previousPosition.y) * t;
+            float pz = previousPosition.z + (position.z - previousPosition.z) * t;
+            float sx = previousScale.x + (scale.x - previousScale.x) * t;
+            float sy = previousScale.y + (scale.y - previousScale.y) * t;
+            float sz = previousScale.z + (scale.z - previousScale.z) * t;
+            // nlerp po krótszym łuku (jak Quaternionf.nlerp)
+            float sign = previousRotation.dot(rotation) < 0.0f ? -1.0f : 1.0f;
+            float qx = previousRotation.x + (rotation.x * sign - previousRotation.x) * t;
+            float qy = previousRotation.y + (rotation.y * sign - previousRotation.y) * t;
+            float qz = previousRotation.z + (rotation.z * sign - previousRotation.z) * t;
+            float qw = previousRotation.w + (rotation.w * sign - previousRotation.w) * t;
+            float invLength = 1.0f / Math.sqrt(qx * qx + qy * qy + qz * qz + qw * qw);
+            modelMatrix.translationRotateScale(px, py, pz, qx * invLength, qy * invLength, qz * invLength, qw * invLength, sx, sy, sz);
+        } else {
+            modelMatrix.translationRotateScale(position, rotation, scale);
+        }
+        modelMatrix.normal(normalMatrix);
+        transformDirty = false;
+    }
+
+    private void markTransformDirty() {
+        transformDirty = true;
+        transformVersion++;
+    }
+
+    // Wywoływane przed każdą zmianą pozycji/rotacji/skali
+    private void beginTransformChange() {
+        if (previousTick != simulationTick) {
+            previousPosition.set(position);
+            previousRotation.set(rotation);
+            previousScale.set(scale);
+            previousTick = simulationTick;
+        }
+    }
+
+    /**
+     * Zaczyna nowy tick symulacji (Engine, przed każdym IEngineLogic.update()). Stan obiektów
+     * z chwili wywołania staje się stanem "poprzednim" dla interpolacji.
+     */
+    public static void beginSimulationTick() {
+        simulationTick++;
+    }
+
+    /**
+     * Ustawia współczynnik interpolacji renderowanej macierzy (0 = stan z początku ostatniego ticku,
+     * 1 = stan bieżący). Obiekty, które w ostatnim ticku się nie poruszyły, zawsze renderują stan bieżący.
+     */
+    public void setInterpolationAlpha(float alpha) {
+        boolean moved = renderMirror ? mirrorMoved : previousTick == simulationTick && createdTick != simulationTick;
+        float effective = moved ? Math.min(Math.max(alpha, 0.0f), 1.0f) : 1.0f;
+        if (effective != renderAlpha) {
+            renderAlpha = effective;
+            markTransformDirty();
+        }
+    }
+
+    /**
+     * Pomija interpolację do następnego ticku (np. po teleportacji - bez "przelotu" przez scenę).
+     */
+    public void snapInterpolation() {
+        previousPosition.set(position);
+        previousRotation.set(rotation);
+        previousScale.set(scale);
+        markTransformDirty(); // Macierz interpolowana przy alpha < 1 zależy od stanu poprzedniego
+    }
+
+    /**
+     * Licznik zmian transformacji - porównanie z zapamiętaną wartością mówi, czy obiekt się poruszył
+     * (bez porównywania macierzy).
+     */
+    public long getTransformVersion() {
+        return transformVersion;
+    }
+
+    /**
+     * Wyznacza AABB obiektu w przestrzeni świata na podstawie lokalnego AABB siatki
+     * przekształconego macierzą modelu.
+     * @param model Macierz modelu obiektu (zwykle z getModelMatrix()).
+     * @param outMin Wektor wynikowy - minimalny narożnik.
+     * @param outMax Wektor wynikowy - maksymalny narożnik.
+     */
+    public void getWorldBounds(Matrix4f model, Vector3f outMin, Vector3f outMax) {
+        model.transformAab(mesh.getBoundsMin(), mesh.getBoundsMax(), outMin, outMax);
     }
 
     // --- Gettery ---
+    // UWAGA: zwracane wektory/kwaternion są polami obiektu - zmiany tylko przez settery (unieważniają macierze)
     public Mesh getMesh() { return mesh; }
     public Material getMaterial() { return material; }
     public Vector3f getPosition() { return position; }
     public Quaternionf getRotation() { return rotation; }
     public Vector3f getScaleVector() { return scale; }
     public GameObjectProperties getProperties() { return properties; }
+    public OccluderMesh getOccluderMesh() { return occluderMesh; }
+    public int getLodLevel() { return lodLevel; }
+    /** Promień kuli otaczającej dla skali (1,1,1). */
+    float getBaseBoundingSphereRadius() { return baseBoundingSphereRadius; }
 
     /**
      * Zwraca promień kuli otaczającej, uwzględniając aktualną skalę obiektu.
@@ -71,27 +264,38 @@ public class GameObject {
     public void setMesh(Mesh mesh) {
         if (mesh == null) throw new IllegalArgumentException("Mesh cannot be set to null");
         this.mesh = mesh;
+        this.lodLevel = 0;
     }
     public void setMaterial(Material material) { this.material = material; }
-    public void setPosition(float x, float y, float z) { this.position.set(x, y, z); }
-    public void setPosition(Vector3f position) { this.position.set(position); }
-    public void setRotation(float angleRad, float x, float y, float z) { this.rotation.fromAxisAngleRad(x, y, z, angleRad); }
-    public void setRotation(Quaternionf rotation) { this.rotation.set(rotation); }
-    public void rotate(float angleRad, float x, float y, float z) { this.rotation.rotateAxis(angleRad, x, y, z); }
-    public void rotate(float angleRad, Vector3f axis) { this.rotation.rotateAxis(angleRad, axis); }
+    /** Uproszczona geometria zasłaniająca (w przestrzeni lokalnej); null - lokalny AABB siatki. */
+    public void setOccluderMesh(OccluderMesh occluderMesh) { this.occluderMesh = occluderMesh; }
+    public void setLodLevel(int lodLevel) { this.lodLevel = lodLevel; }
+    public void setPosition(float x, float y, float z) { beginTransformChange(); this.position.set(x, y, z); markTransformDirty(); }
+    public void setPosition(Vector3f position) { beginTransformChange(); this.position.set(position); markTransformDirty(); }
+    public void setRotation(float angleRad, float x, float y, float z) { beginTransformChange(); this.rotation.fromAxisAngleRad(x, y, z, angleRad); markTransformDirty(); }
+    public void setRotation(Quaternionf rotation) { beginTransformChange(); this.rotation.set(rotation); markTransformDirty(); }
+    public void rotate(float angleRad, float x, float y, float z) { beginTransformChange(); this.rotation.rotateAxis(angleRad, x, y, z); markTransformDirty(); }
+    public void rotate(float angleRad, Vector3f axis) { beginTransformChange(); this.rotation.rotateAxis(angleRad, axis); markTransformDirty(); }
 
     public void setScale(float x, float y, float z) {
+        beginTransformChange();
         this.scale.set(x, y, z);
+        markTransformDirty();
     }
     public void setScale(float s) {
+        beginTransformChange();
         this.scale.set(s, s, s);
+        markTransformDirty();
     }
     public void setScale(Vector3f scale) {
+        beginTransformChange();
         this.scale.set(scale);
+        markTransformDirty();
     }
 
     // --- Metody delegujące do Properties ---
-    public boolean isVisible() { return properties.isVisible(); }
+    // Kopia renderowania trafia do RenderScene tylko, gdy źródło było widoczne w chwili snapshotu
+    public boolean isVisible() { return renderMirror || properties.isVisible(); }
     public void setVisible(boolean visible) { properties.setVisible(visible); }
     public boolean takeDamage(int amount) { return properties.takeDamage(amount); }
 
@@ -14,6 +14,7 @@ public class GameObjectProperties {
     private int currentHitPoints;
     private final float mass;
     private final float friction;
+    private final boolean isOccluder; // Zasłania inne obiekty w occlusion cullingu (duże, statyczne)
 
     private GameObjectProperties(Builder builder) {
         this.typeName = builder.typeName;
@@ -28,6 +29,7 @@ public class GameObjectProperties {
         this.currentHitPoints = builder.currentHitPoints;
         this.mass = builder.mass;
         this.friction = builder.friction;
+        this.isOccluder = builder.isOccluder;
 
         if (this.isDestructible && this.maxHitPoints <= 0) {
             throw new IllegalArgumentException("Destructible object ('" + typeName + "') must have positive maxHitPoints.");
@@ -50,6 +52,7 @@ public class GameObjectProperties {
     public int getCurrentHitPoints() { return currentHitPoints; }
     public float getMass() { return mass; }
     public float getFriction() { return friction; }
+    public boolean isOccluder() { return isOccluder; }
 
     public void setVisible(boolean visible) {
         // Jeśli obiekt jest zniszczony (nie żyje) i próbujemy go uczynić widocznym,
@@ -121,6 +124,7 @@ public class GameObjectProperties {
         private int currentHitPoints = 0;
         private float mass = 1.0f;
         private float friction = 0.5f;
+        private boolean isOccluder = false;
 
         public Builder typeName(String typeName) {
             this.typeName = (typeName != null && !typeName.trim().isEmpty()) ? typeName : "UnnamedObject";
@@ -165,6 +169,7 @@ public class GameObjectProperties {
         }
         public Builder mass(float mass) { this.mass = Math.max(0.1f, mass); return this; }
         public Builder friction(float friction) { this.friction = Math.max(0.0f, Math.min(1.0f, friction)); return this; }
+        public Builder occluder(boolean isOccluder) { this.isOccluder = isOccluder; return this; }
 
         public GameObjectProperties build() {
             return new GameObjectProperties(this);
@@ -0,0 +1,121 @@
+package org.example.scene;
+
+import org.example.graphics.Camera;
+import org.example.graphics.light.Attenuation;
+import org.example.graphics.light.DirectionalLight;
+import org.example.graphics.light.PointLight;
+import org.example.graphics.light.SpotLight;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scena po stronie wątku GL w trybie potokowym: kopie renderowania obiektów i świateł
+ * odtwarzane z najnowszego RenderSnapshot. Każdy obiekt/światło symulacji ma jedną, trwałą
+ * kopię - renderer widzi te same instancje z klatki na klatkę, więc jego cache oparte
+ * na tożsamości (statyczne cienie, kafle atlasu reflektorów, histereza LOD) działają jak
+ * w trybie szeregowym. Kopie obiektów i świateł, których nie ma w snapshocie, są usuwane.
+ * Kamera również pochodzi ze snapshotu - widok odpowiada stanowi sceny, z którego jest rysowany.
+ */
+public class RenderScene {
+
+    private Map<GameObject, GameObject> objectMirrors = new IdentityHashMap<>();
+    private Map<GameObject, GameObject> objectMirrorsScratch = new IdentityHashMap<>();
+    private Map<PointLight, PointLight> pointLightMirrors = new IdentityHashMap<>();
+    private Map<PointLight, PointLight> pointLightMirrorsScratch = new IdentityHashMap<>();
+    private Map<SpotLight, SpotLight> spotLightMirrors = new IdentityHashMap<>();
+    private Map<SpotLight, SpotLight> spotLightMirrorsScratch = new IdentityHashMap<>();
+    private DirectionalLight directionalLightMirror;
+    private DirectionalLight directionalLightSource;
+
+    private final List<GameObject> objects = new ArrayList<>();
+    private final List<PointLight> pointLights = new ArrayList<>();
+    private final List<SpotLight> spotLights = new ArrayList<>();
+    private DirectionalLight directionalLight;
+    private final Camera camera = new Camera();
+    private long appliedTick = -1;
+
+    /**
+     * Odtwarza stan z snapshotu (wątek GL). Ponowne zastosowanie tego samego snapshotu nic nie robi.
+     */
+    public void apply(RenderSnapshot snapshot) {
+        if (snapshot == null || snapshot.getTick() == appliedTick) return;
+        appliedTick = snapshot.getTick();
+
+        if (snapshot.hasCamera()) camera.set(snapshot.getCamera());
+
+        objects.clear();
+        float[] transforms = snapshot.getTransforms();
+        for (int i = 0; i < snapshot.getObjectCount(); i++) {
+            GameObject source = snapshot.getSource(i);
+            GameObject mirror = objectMirrors.remove(source);
+            if (mirror == null) {
+                mirror = GameObject.createRenderMirror(snapshot.getMesh(i), snapshot.getMaterial(i),
+                        snapshot.getProperties(i), snapshot.getBoundingRadius(i));
+            }
+            mirror.applySnapshot(snapshot.getMesh(i), snapshot.getMaterial(i), snapshot.getOccluder(i),
+                    transforms, i * RenderSnapshot.FLOATS_PER_TRANSFORM, snapshot.hasMoved(i), snapshot.getVersion(i));
+            objectMirrorsScratch.put(source, mirror);
+            objects.add(mirror);
+        }
+        // Pozostałe w starej mapie - obiekty, których nie ma już w snapshocie
+        objectMirrors.clear();
+        Map<GameObject, GameObject> swap = objectMirrors;
+        objectMirrors = objectMirrorsScratch;
+        objectMirrorsScratch = swap;
+
+        DirectionalLight dirSource = snapshot.getDirectionalLightSource();
+        if (dirSource == null) {
+            directionalLight = null;
+        } else {
+            if (directionalLightMirror == null || directionalLightSource != dirSource) {
+                directionalLightMirror = new DirectionalLight(new Vector3f(), new Vector3f(0.0f, -1.0f, 0.0f), 0.0f);
+                directionalLightSource = dirSource;
+            }
+            directionalLightMirror.set(snapshot.getDirectionalLight());
+            directionalLight = directionalLightMirror;
+        }
+
+        // Światła - ta sama zamiana map co dla obiektów (bez przeszukiwania list przy usuwaniu)
+        pointLights.clear();
+        for (int i = 0; i < snapshot.getPointLightCount(); i++) {
+            PointLight source = snapshot.getPointLightSource(i);
+            PointLight mirror = pointLightMirrors.remove(source);
+            if (mirror == null) mirror = new PointLight(new Vector3f(), new Vector3f(), 0.0f, new Attenuation());
+            mirror.set(snapshot.getPointLight(i));
+            pointLightMirrorsScratch.put(source, mirror);
+            pointLights.add(mirror);
+        }
+        pointLightMirrors.clear();
+        Map<PointLight, PointLight> pointSwap = pointLightMirrors;
+        pointLightMirrors = pointLightMirrorsScratch;
+        pointLightMirrorsScratch = pointSwap;
+
+        spotLights.clear();
+        for (int i = 0; i < snapshot.getSpotLightCount(); i++) {
+            SpotLight source = snapshot.getSpotLightSource(i);
+            SpotLight mirror = spotLightMirrors.remove(source);
+            if (mirror == null) {
+                mirror = new SpotLight(new PointLight(new Vector3f(), new Vector3f(), 0.0f, new Attenuation()),
+                        new Vector3f(0.0f, 0.0f, -1.0f), 0.0f, 0.0f);
+            }
+            mirror.set(snapshot.getSpotLight(i));
+            spotLightMirrorsScratch.put(source, mirror);
+            spotLights.add(mirror);
+        }
+        spotLightMirrors.clear();
+        Map<SpotLight, SpotLight> spotSwap = spotLightMirrors;
+        spotLightMirrors = spotLightMirrorsScratch;
+        spotLightMirrorsScratch = spotSwap;
+    }
+
+    public List<GameObject> getObjects() { return objects; }
+    /** Kamera z ostatniego zastosowanego snapshotu. */
+    public Camera getCamera() { return camera; }
+    public DirectionalLight getDirectionalLight() { return directionalLight; }
+    public List<PointLight> getPointLights() { return pointLights; }
+    public List<SpotLight> getSpotLights() { return spotLights; }
+}
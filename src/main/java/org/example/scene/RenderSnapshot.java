@@ -0,0 +1,194 @@
+package org.example.scene;
+
+import org.example.graphics.Camera;
+import org.example.graphics.Material;
+import org.example.graphics.Mesh;
+import org.example.graphics.OccluderMesh;
+import org.example.graphics.light.Attenuation;
+import org.example.graphics.light.DirectionalLight;
+import org.example.graphics.light.PointLight;
+import org.example.graphics.light.SpotLight;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stan sceny potrzebny do narysowania klatki, zapisany przez wątek symulacji po tickach
+ * (tryb potokowy Engine). Po opublikowaniu (RenderSnapshotBuffer.publish()) nie jest już
+ * modyfikowany - wątek GL czyta go bez blokad, a symulacja liczy w tym czasie kolejny tick.
+ * <p>
+ * Obiekty są zapisywane jako wartości (transformacja z początku i końca ostatniego ticku),
+ * światła i kamera - jako kopie. Kamera jest kopiowana pod tą samą blokadą co wejście gracza,
+ * więc widok i przyczepione do niego światła (latarka) pochodzą z tej samej chwili co reszta sceny. Siatki i materiały są współdzielone przez referencję - to zasoby GPU,
+ * których symulacja nie powinna modyfikować w trybie potokowym.
+ * Tablice i kopie świateł są używane ponownie między tickami - bez alokacji w stanie ustalonym.
+ */
+public class RenderSnapshot {
+
+    /** Liczby na obiekt: pozycja, rotacja (kwaternion), skala - poprzednie i bieżące. */
+    public static final int FLOATS_PER_TRANSFORM = 20;
+    private static final int DEFAULT_CAPACITY = 256;
+
+    // Obiekty (indeks wspólny dla tablic)
+    private int objectCount = 0;
+    private GameObject[] sources = new GameObject[DEFAULT_CAPACITY];
+    private Mesh[] meshes = new Mesh[DEFAULT_CAPACITY];
+    private Material[] materials = new Material[DEFAULT_CAPACITY];
+    private GameObjectProperties[] properties = new GameObjectProperties[DEFAULT_CAPACITY];
+    private float[] boundingRadii = new float[DEFAULT_CAPACITY]; // Promień kuli dla skali (1,1,1)
+    private OccluderMesh[] occluders = new OccluderMesh[DEFAULT_CAPACITY];
+    private float[] transforms = new float[DEFAULT_CAPACITY * FLOATS_PER_TRANSFORM];
+    private boolean[] moved = new boolean[DEFAULT_CAPACITY];
+    private long[] versions = new long[DEFAULT_CAPACITY];
+
+    // Światła: źródła (tożsamość dla kopii renderowania) i kopie wartości z chwili snapshotu
+    private DirectionalLight directionalLightSource;
+    private DirectionalLight directionalLight;
+    private final List<PointLight> pointLightSources = new ArrayList<>();
+    private final List<PointLight> pointLights = new ArrayList<>();
+    private final List<SpotLight> spotLightSources = new ArrayList<>();
+    private final List<SpotLight> spotLights = new ArrayList<>();
+    private int pointLightCount = 0;
+    private int spotLightCount = 0;
+
+    private final Camera camera = new Camera();
+    private boolean hasCamera = false;
+
+    private long tick;
+    private long publishNanos;
+    private float tickDelta;
+    volatile boolean fresh = false; // Opublikowany i jeszcze nieodebrany przez wątek GL
+
+    /** Zaczyna zapis nowego stanu (wątek symulacji). */
+    void begin(long tick, float tickDelta) {
+        Arrays.fill(sources, 0, objectCount, null);
+        Arrays.fill(meshes, 0, objectCount, null);
+        Arrays.fill(materials, 0, objectCount, null);
+        Arrays.fill(properties, 0, objectCount, null);
+        Arrays.fill(occluders, 0, objectCount, null);
+        objectCount = 0;
+        directionalLightSource = null;
+        pointLightSources.clear();
+        spotLightSources.clear();
+        pointLightCount = 0;
+        spotLightCount = 0;
+        hasCamera = false;
+        this.tick = tick;
+        this.tickDelta = tickDelta;
+    }
+
+    void markPublished(long publishNanos) {
+        this.publishNanos = publishNanos;
+    }
+
+    /**
+     * Dodaje obiekt do snapshotu. Obiekty niewidoczne i bez siatki są pomijane.
+     * @param material Materiał do narysowania (już rozwiązany, np. domyślny za null).
+     */
+    public void addObject(GameObject go, Material material) {
+        if (go == null || !go.isVisible() || go.getMesh() == null) return;
+        ensureCapacity(objectCount + 1);
+        sources[objectCount] = go;
+        meshes[objectCount] = go.getMesh();
+        materials[objectCount] = material;
+        properties[objectCount] = go.getProperties();
+        boundingRadii[objectCount] = go.getBaseBoundingSphereRadius();
+        occluders[objectCount] = go.getOccluderMesh();
+        moved[objectCount] = go.captureTransform(transforms, objectCount * FLOATS_PER_TRANSFORM);
+        versions[objectCount] = go.getTransformVersion();
+        objectCount++;
+    }
+
+    /** Dodaje obiekt z jego własnym materiałem. */
+    public void addObject(GameObject go) {
+        if (go != null) addObject(go, go.getMaterial());
+    }
+
+    /** Zapisuje kopie świateł (każde może być null). */
+    public void setLights(DirectionalLight dirLight, List<PointLight> pointLightList, List<SpotLight> spotLightList) {
+        directionalLightSource = dirLight;
+        if (dirLight != null) {
+            if (directionalLight == null) {
+                directionalLight = new DirectionalLight(new Vector3f(), new Vector3f(0.0f, -1.0f, 0.0f), 0.0f);
+            }
+            directionalLight.set(dirLight);
+        }
+        if (pointLightList != null) {
+            for (PointLight light : pointLightList) {
+                if (light == null) continue;
+                if (pointLightCount == pointLights.size()) {
+                    pointLights.add(new PointLight(new Vector3f(), new Vector3f(), 0.0f, new Attenuation()));
+                }
+                pointLights.get(pointLightCount++).set(light);
+                pointLightSources.add(light);
+            }
+        }
+        if (spotLightList != null) {
+            for (SpotLight light : spotLightList) {
+                if (light == null) continue;
+                if (spotLightCount == spotLights.size()) {
+                    spotLights.add(new SpotLight(new PointLight(new Vector3f(), new Vector3f(), 0.0f, new Attenuation()),
+                            new Vector3f(0.0f, 0.0f, -1.0f), 0.0f, 0.0f));
+                }
+                spotLights.get(spotLightCount++).set(light);
+                spotLightSources.add(light);
+            }
+        }
+    }
+
+    /** Zapisuje kopię kamery, z której ma być narysowany ten stan. */
+    public void setCamera(Camera source) {
+        if (source == null) return;
+        camera.set(source);
+        hasCamera = true;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= sources.length) return;
+        int newCapacity = Math.max(required, sources.length * 2);
+        sources = Arrays.copyOf(sources, newCapacity);
+        meshes = Arrays.copyOf(meshes, newCapacity);
+        materials = Arrays.copyOf(materials, newCapacity);
+        properties = Arrays.copyOf(properties, newCapacity);
+        boundingRadii = Arrays.copyOf(boundingRadii, newCapacity);
+        occluders = Arrays.copyOf(occluders, newCapacity);
+        transforms = Arrays.copyOf(transforms, newCapacity * FLOATS_PER_TRANSFORM);
+        moved = Arrays.copyOf(moved, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+    }
+
+    /**
+     * Współczynnik interpolacji dla klatki rysowanej w chwili nowNanos - snapshot przedstawia
+     * ruch z ostatniego ticku, odtwarzany przez czas jednego ticku od publikacji.
+     */
+    public float getInterpolationAlpha(long nowNanos) {
+        if (tickDelta <= 0.0f) return 1.0f;
+        float alpha = (nowNanos - publishNanos) / (tickDelta * 1.0e9f);
+        return alpha < 0.0f ? 0.0f : (alpha > 1.0f ? 1.0f : alpha);
+    }
+
+    // --- Odczyt (wątek GL, RenderScene) ---
+    public int getObjectCount() { return objectCount; }
+    public long getTick() { return tick; }
+    GameObject getSource(int index) { return sources[index]; }
+    Mesh getMesh(int index) { return meshes[index]; }
+    Material getMaterial(int index) { return materials[index]; }
+    GameObjectProperties getProperties(int index) { return properties[index]; }
+    float getBoundingRadius(int index) { return boundingRadii[index]; }
+    OccluderMesh getOccluder(int index) { return occluders[index]; }
+    float[] getTransforms() { return transforms; }
+    boolean hasMoved(int index) { return moved[index]; }
+    long getVersion(int index) { return versions[index]; }
+    DirectionalLight getDirectionalLightSource() { return directionalLightSource; }
+    DirectionalLight getDirectionalLight() { return directionalLight; }
+    int getPointLightCount() { return pointLightCount; }
+    PointLight getPointLightSource(int index) { return pointLightSources.get(index); }
+    PointLight getPointLight(int index) { return pointLights.get(index); }
+    int getSpotLightCount() { return spotLightCount; }
+    SpotLight getSpotLightSource(int index) { return spotLightSources.get(index); }
+    SpotLight getSpotLight(int index) { return spotLights.get(index); }
+    boolean hasCamera() { return hasCamera; }
+    Camera getCamera() { return camera; }
+}
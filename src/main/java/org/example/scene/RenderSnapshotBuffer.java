@@ -0,0 +1,60 @@
+package org.example.scene;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Potrójny bufor snapshotów renderowania między wątkiem symulacji a wątkiem GL.
+ * Jeden snapshot zapisuje symulacja, jeden czyta renderer, a trzeci czeka jako najnowszy
+ * opublikowany. Przekazanie to pojedyncza wymiana referencji (AtomicReference.getAndSet) -
+ * żadna ze stron nie czeka na drugą: symulacja nadpisuje nieodebrany stan nowszym,
+ * a renderer bez nowego stanu rysuje ponownie ostatni (z nowym współczynnikiem interpolacji).
+ * <p>
+ * Każdą stronę może obsługiwać tylko jeden wątek.
+ */
+public class RenderSnapshotBuffer {
+
+    private final AtomicReference<RenderSnapshot> latest = new AtomicReference<>(new RenderSnapshot());
+    private RenderSnapshot writing = new RenderSnapshot(); // Wątek symulacji
+    private RenderSnapshot reading = null;                 // Wątek GL (null przed pierwszym odbiorem)
+    private long publishedCount = 0;
+    private long skippedCount = 0; // Opublikowane, ale nadpisane przed odbiorem
+
+    /**
+     * Zaczyna zapis nowego snapshotu (wątek symulacji).
+     * @param tick Numer ticku symulacji, którego stan jest zapisywany.
+     * @param tickDelta Krok symulacji w sekundach (czas odtwarzania ruchu z ticku).
+     */
+    public RenderSnapshot beginWrite(long tick, float tickDelta) {
+        writing.begin(tick, tickDelta);
+        return writing;
+    }
+
+    /** Publikuje zapisany snapshot (wątek symulacji). */
+    public void publish() {
+        writing.markPublished(System.nanoTime());
+        writing.fresh = true;
+        RenderSnapshot previous = latest.getAndSet(writing);
+        if (previous.fresh) skippedCount++;
+        writing = previous;
+        publishedCount++;
+    }
+
+    /**
+     * Zwraca najnowszy opublikowany snapshot (wątek GL). Bez nowej publikacji - snapshot
+     * zwrócony poprzednio; null, jeśli nic jeszcze nie opublikowano.
+     * Zwrócony snapshot jest ważny do następnego wywołania.
+     */
+    public RenderSnapshot acquireLatest() {
+        if (latest.get().fresh) {
+            RenderSnapshot giveBack = reading != null ? reading : new RenderSnapshot();
+            giveBack.fresh = false;
+            reading = latest.getAndSet(giveBack);
+            reading.fresh = false;
+        }
+        return reading;
+    }
+
+    public long getPublishedCount() { return publishedCount; }
+    /** Snapshoty nadpisane przed odbiorem (symulacja szybsza niż renderowanie). */
+    public long getSkippedCount() { return skippedCount; }
+}
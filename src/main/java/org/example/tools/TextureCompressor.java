@@ -0,0 +1,310 @@
+package org.example.tools;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Konwerter tekstur uruchamiany przy budowaniu (profil Maven "compress-textures"):
+ * zamienia obrazy PNG/JPG z katalogu wejściowego na pliki DDS z kompresją blokową i pełnym
+ * łańcuchem mipmap. Texture ładuje je zamiast obrazów o tej samej nazwie - bez dekodowania
+ * i bez glGenerateMipmap, przy 4-8x mniejszym zużyciu VRAM.
+ * <p>
+ * Format wybierany jest automatycznie: BC1 dla obrazów bez przezroczystości, BC3 z kanałem alfa,
+ * BC5 (RG) dla map normalnych (nazwa kończy się na "_normal" lub "_nrm"). Wiersze są zapisywane
+ * od góry obrazu, jak w standardowym DDS - CompressedImageLoader odwraca je przy wczytaniu. Obrazy,
+ * których poziomy mipmap nie dają się odwrócić blokami (wysokość powyżej 4 niepodzielna przez 4),
+ * są pomijane - Texture użyje wtedy źródłowego PNG.
+ * Kodowanie to szybkie dopasowanie końców wzdłuż głównej osi kolorów bloku (bez wyczerpującego
+ * przeszukiwania); BC7 nie jest generowany, ale pliki BC7 z zewnętrznych narzędzi są obsługiwane.
+ * Plik jest pomijany, gdy wynik jest nowszy niż źródło.
+ * <p>
+ * Użycie: {@code TextureCompressor <katalog wejściowy> <katalog wyjściowy>}
+ */
+public class TextureCompressor {
+
+    private enum Format { BC1, BC3, BC5 }
+
+    // Nagłówek DDS (flagi z dokumentacji formatu)
+    private static final int DDSD_FLAGS = 0x1 | 0x2 | 0x4 | 0x1000 | 0x20000 | 0x80000; // CAPS|HEIGHT|WIDTH|PIXELFORMAT|MIPMAPCOUNT|LINEARSIZE
+    private static final int DDPF_FOURCC = 0x4;
+    private static final int DDSCAPS_FLAGS = 0x1000 | 0x8 | 0x400000; // TEXTURE|COMPLEX|MIPMAP
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: TextureCompressor <input directory> <output directory>");
+            System.exit(1);
+        }
+        File inputDir = new File(args[0]);
+        File outputDir = new File(args[1]);
+        File[] files = inputDir.listFiles((dir, name) -> {
+            String lower = name.toLowerCase();
+            return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg");
+        });
+        if (files == null) {
+            System.err.println("TextureCompressor: Input directory not found: " + inputDir);
+            System.exit(1);
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create output directory: " + outputDir);
+        }
+        int converted = 0, skipped = 0, unsupported = 0;
+        for (File file : files) {
+            String baseName = file.getName().substring(0, file.getName().lastIndexOf('.'));
+            File output = new File(outputDir, baseName + ".dds");
+            if (output.isFile() && output.lastModified() >= file.lastModified()) {
+                skipped++;
+                continue;
+            }
+            if (convert(file, output, baseName)) {
+                converted++;
+            } else {
+                unsupported++;
+            }
+        }
+        System.out.println("TextureCompressor: " + converted + " converted, " + skipped + " up to date, "
+                + unsupported + " left uncompressed.");
+    }
+
+    /** @return false, gdy obrazu nie da się zapisać jako DDS wczytywany przez CompressedImageLoader. */
+    private static boolean convert(File input, File output, String baseName) throws IOException {
+        long startTime = System.nanoTime();
+        BufferedImage image = ImageIO.read(input);
+        if (image == null) throw new IOException("Unsupported image file: " + input);
+        int width = image.getWidth(), height = image.getHeight();
+        for (int levelHeight = height; levelHeight > 4; levelHeight /= 2) {
+            if (levelHeight % 4 != 0) {
+                System.err.println("  " + input.getName() + ": mip level height " + levelHeight
+                        + " is not a multiple of 4 - skipped (the PNG will be used).");
+                return false;
+            }
+        }
+
+        // RGBA, pierwszy wiersz = góra obrazu (standardowy układ DDS)
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        String lower = baseName.toLowerCase();
+        Format format = lower.endsWith("_normal") || lower.endsWith("_nrm") ? Format.BC5
+                : hasAlpha(pixels) ? Format.BC3 : Format.BC1;
+
+        List<byte[]> levels = new ArrayList<>();
+        int levelWidth = width, levelHeight = height;
+        int[] levelPixels = pixels;
+        while (true) {
+            levels.add(encodeLevel(levelPixels, levelWidth, levelHeight, format));
+            if (levelWidth == 1 && levelHeight == 1) break;
+            int nextWidth = Math.max(1, levelWidth / 2), nextHeight = Math.max(1, levelHeight / 2);
+            levelPixels = downsample(levelPixels, levelWidth, levelHeight, nextWidth, nextHeight);
+            levelWidth = nextWidth;
+            levelHeight = nextHeight;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            writeDdsHeader(out, width, height, levels, format);
+            for (byte[] level : levels) out.write(level);
+        }
+        System.out.println("  " + input.getName() + " -> " + output.getName() + " (" + width + "x" + height + ", " + format
+                + ", " + levels.size() + " mip levels, " + output.length() / 1024 + " KiB, "
+                + (System.nanoTime() - startTime) / 1_000_000 + " ms)");
+        return true;
+    }
+
+    private static boolean hasAlpha(int[] pixels) {
+        for (int argb : pixels) {
+            if ((argb >>> 24) != 0xFF) return true;
+        }
+        return false;
+    }
+
+    // Filtr pudełkowy 2x2 (przy nieparzystym wymiarze ostatni wiersz/kolumna są powielane)
+    private static int[] downsample(int[] src, int width, int height, int newWidth, int newHeight) {
+        int[] dst = new int[newWidth * newHeight];
+        for (int y = 0; y < newHeight; y++) {
+            int y0 = Math.min(height - 1, y * 2), y1 = Math.min(height - 1, y * 2 + 1);
+            for (int x = 0; x < newWidth; x++) {
+                int x0 = Math.min(width - 1, x * 2), x1 = Math.min(width - 1, x * 2 + 1);
+                int a = src[y0 * width + x0], b = src[y0 * width + x1], c = src[y1 * width + x0], d = src[y1 * width + x1];
+                int result = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int sum = ((a >>> shift) & 0xFF) + ((b >>> shift) & 0xFF) + ((c >>> shift) & 0xFF) + ((d >>> shift) & 0xFF);
+                    result |= ((sum + 2) >> 2) << shift;
+                }
+                dst[y * newWidth + x] = result;
+            }
+        }
+        return dst;
+    }
+
+    private static byte[] encodeLevel(int[] pixels, int width, int height, Format format) {
+        int blocksX = (width + 3) / 4, blocksY = (height + 3) / 4;
+        int blockBytes = format == Format.BC1 ? 8 : 16;
+        byte[] out = new byte[blocksX * blocksY * blockBytes];
+        int[] block = new int[16];
+        int offset = 0;
+        for (int by = 0; by < blocksY; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                // Piksele poza obrazem (wymiar niepodzielny przez 4) powielają krawędź
+                for (int i = 0; i < 16; i++) {
+                    int x = Math.min(width - 1, bx * 4 + (i & 3)), y = Math.min(height - 1, by * 4 + (i >> 2));
+                    block[i] = pixels[y * width + x];
+                }
+                switch (format) {
+                    case BC1:
+                        encodeColorBlock(block, out, offset);
+                        break;
+                    case BC3:
+                        encodeChannelBlock(block, 24, out, offset);
+                        encodeColorBlock(block, out, offset + 8);
+                        break;
+                    default:
+                        encodeChannelBlock(block, 16, out, offset);    // R
+                        encodeChannelBlock(block, 8, out, offset + 8); // G
+                        break;
+                }
+                offset += blockBytes;
+            }
+        }
+        return out;
+    }
+
+    // Blok kolorów BC1 w trybie 4 kolorów (c0 > c1): końce to skrajne piksele wzdłuż głównej osi
+    private static void encodeColorBlock(int[] block, byte[] out, int offset) {
+        float meanR = 0, meanG = 0, meanB = 0;
+        for (int argb : block) {
+            meanR += (argb >> 16) & 0xFF;
+            meanG += (argb >> 8) & 0xFF;
+            meanB += argb & 0xFF;
+        }
+        meanR /= 16; meanG /= 16; meanB /= 16;
+        float crr = 0, crg = 0, crb = 0, cgg = 0, cgb = 0, cbb = 0;
+        for (int argb : block) {
+            float r = ((argb >> 16) & 0xFF) - meanR, g = ((argb >> 8) & 0xFF) - meanG, b = (argb & 0xFF) - meanB;
+            crr += r * r; crg += r * g; crb += r * b; cgg += g * g; cgb += g * b; cbb += b * b;
+        }
+        // Iteracja potęgowa na macierzy kowariancji - kierunek największej wariancji
+        float axisR = 1, axisG = 1, axisB = 1;
+        for (int i = 0; i < 8; i++) {
+            float r = crr * axisR + crg * axisG + crb * axisB;
+            float g = crg * axisR + cgg * axisG + cgb * axisB;
+            float b = crb * axisR + cgb * axisG + cbb * axisB;
+            float length = Math.max(Math.abs(r), Math.max(Math.abs(g), Math.abs(b)));
+            if (length < 1e-6f) break;
+            axisR = r / length; axisG = g / length; axisB = b / length;
+        }
+        int minPixel = block[0], maxPixel = block[0];
+        float minProjection = Float.MAX_VALUE, maxProjection = -Float.MAX_VALUE;
+        for (int argb : block) {
+            float projection = ((argb >> 16) & 0xFF) * axisR + ((argb >> 8) & 0xFF) * axisG + (argb & 0xFF) * axisB;
+            if (projection < minProjection) { minProjection = projection; minPixel = argb; }
+            if (projection > maxProjection) { maxProjection = projection; maxPixel = argb; }
+        }
+        int c0 = toRgb565(maxPixel), c1 = toRgb565(minPixel);
+        if (c0 < c1) { int t = c0; c0 = c1; c1 = t; }
+
+        int indices = 0;
+        if (c0 != c1) {
+            int[][] palette = new int[4][];
+            palette[0] = fromRgb565(c0);
+            palette[1] = fromRgb565(c1);
+            palette[2] = new int[3];
+            palette[3] = new int[3];
+            for (int c = 0; c < 3; c++) {
+                palette[2][c] = (2 * palette[0][c] + palette[1][c]) / 3;
+                palette[3][c] = (palette[0][c] + 2 * palette[1][c]) / 3;
+            }
+            for (int i = 0; i < 16; i++) {
+                int r = (block[i] >> 16) & 0xFF, g = (block[i] >> 8) & 0xFF, b = block[i] & 0xFF;
+                int best = 0, bestError = Integer.MAX_VALUE;
+                for (int p = 0; p < 4; p++) {
+                    int dr = r - palette[p][0], dg = g - palette[p][1], db = b - palette[p][2];
+                    int error = dr * dr + dg * dg + db * db;
+                    if (error < bestError) { bestError = error; best = p; }
+                }
+                indices |= best << (i * 2);
+            }
+        }
+        putShort(out, offset, c0);
+        putShort(out, offset + 2, c1);
+        putInt(out, offset + 4, indices);
+    }
+
+    // Blok jednego kanału BC4 (alfa w BC3, R/G w BC5) w trybie 8 wartości (a0 > a1)
+    private static void encodeChannelBlock(int[] block, int shift, byte[] out, int offset) {
+        int min = 255, max = 0;
+        for (int argb : block) {
+            int value = (argb >>> shift) & 0xFF;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        out[offset] = (byte) max;
+        out[offset + 1] = (byte) min;
+        long bits = 0;
+        if (max != min) {
+            int[] palette = new int[8];
+            palette[0] = max;
+            palette[1] = min;
+            for (int i = 2; i < 8; i++) palette[i] = ((8 - i) * max + (i - 1) * min) / 7;
+            for (int i = 0; i < 16; i++) {
+                int value = (block[i] >>> shift) & 0xFF;
+                int best = 0, bestError = Integer.MAX_VALUE;
+                for (int p = 0; p < 8; p++) {
+                    int error = Math.abs(value - palette[p]);
+                    if (error < bestError) { bestError = error; best = p; }
+                }
+                bits |= (long) best << (i * 3);
+            }
+        }
+        for (int i = 0; i < 6; i++) out[offset + 2 + i] = (byte) (bits >>> (i * 8));
+    }
+
+    private static int toRgb565(int argb) {
+        int r = (argb >> 16) & 0xFF, g = (argb >> 8) & 0xFF, b = argb & 0xFF;
+        return ((r * 31 + 127) / 255) << 11 | ((g * 63 + 127) / 255) << 5 | ((b * 31 + 127) / 255);
+    }
+
+    private static int[] fromRgb565(int color) {
+        int r = (color >> 11) & 31, g = (color >> 5) & 63, b = color & 31;
+        return new int[] { (r << 3) | (r >> 2), (g << 2) | (g >> 4), (b << 3) | (b >> 2) };
+    }
+
+    private static void writeDdsHeader(DataOutputStream out, int width, int height, List<byte[]> levels, Format format) throws IOException {
+        writeIntLE(out, 0x20534444); // "DDS "
+        writeIntLE(out, 124);
+        writeIntLE(out, DDSD_FLAGS);
+        writeIntLE(out, height);
+        writeIntLE(out, width);
+        writeIntLE(out, levels.get(0).length); // Rozmiar poziomu 0
+        writeIntLE(out, 0);                    // Głębokość
+        writeIntLE(out, levels.size());
+        for (int i = 0; i < 11; i++) writeIntLE(out, 0);
+        // DDS_PIXELFORMAT
+        writeIntLE(out, 32);
+        writeIntLE(out, DDPF_FOURCC);
+        out.writeBytes(format == Format.BC1 ? "DXT1" : format == Format.BC3 ? "DXT5" : "ATI2");
+        for (int i = 0; i < 5; i++) writeIntLE(out, 0);
+        writeIntLE(out, DDSCAPS_FLAGS);
+        for (int i = 0; i < 4; i++) writeIntLE(out, 0); // caps2-4, reserved2
+    }
+
+    private static void writeIntLE(OutputStream out, int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private static void putShort(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(byte[] out, int offset, int value) {
+        for (int i = 0; i < 4; i++) out[offset + i] = (byte) (value >>> (i * 8));
+    }
+}
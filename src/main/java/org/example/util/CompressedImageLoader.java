@@ -0,0 +1,342 @@
+package org.example.util;
+
+import org.example.exception.ResourceLoadException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Klasa narzędziowa do parsowania kontenerów tekstur skompresowanych blokowo (DDS, KTX2).
+ * Obsługiwane formaty: BC1 (DXT1), BC3 (DXT5), BC5 (RGTC2, np. mapy normalnych) i BC7 (BPTC).
+ * Dane poziomów mipmap nie są kopiowane ani dekodowane - to wycinki bufora pliku,
+ * wysyłane do GPU bez zmian (glCompressedTexImage2D).
+ * <p>
+ * Zwrócone poziomy zaczynają się od dołu obrazu (konwencja OpenGL, jak PNG ładowane przez Texture
+ * z odwróceniem w pionie). DDS i KTX2 przechowują obraz od góry (KTX2 - chyba że klucz KTXorientation
+ * mówi inaczej), więc wiersze bloków są odwracane w miejscu, razem z wierszami pikseli w blokach.
+ * Dotyczy to BC1/BC3/BC5, których indeksy są zapisane wierszami; bloku BC7 nie da się odwrócić
+ * bez ponownego kodowania, więc BC7 jest przyjmowany tylko z KTX2 zapisanym od dołu ("ru").
+ * Warianty sRGB formatów są odrzucane - silnik próbkuje tekstury kolorów jako UNORM (jak PNG w RGBA8),
+ * więc oznaczenie ich jako sRGB zmieniłoby jasność względem obrazów źródłowych.
+ */
+public class CompressedImageLoader {
+
+    /** Format bloków (4x4 piksele na blok). */
+    public enum BlockFormat {
+        BC1(8), BC1_ALPHA(8), BC3(16), BC5(16), BC7(16);
+
+        private final int blockBytes;
+
+        BlockFormat(int blockBytes) { this.blockBytes = blockBytes; }
+
+        public int getBlockBytes() { return blockBytes; }
+
+        /** Rozmiar poziomu o podanych wymiarach w bajtach. */
+        public int levelSize(int width, int height) {
+            return Math.max(1, (width + 3) / 4) * Math.max(1, (height + 3) / 4) * blockBytes;
+        }
+    }
+
+    /** Sparsowany obraz: format, wymiary i dane kolejnych poziomów mipmap (od największego). */
+    public static class CompressedImage {
+        public final BlockFormat format;
+        public final int width;
+        public final int height;
+        public final List<ByteBuffer> levels;
+
+        private CompressedImage(BlockFormat format, int width, int height, List<ByteBuffer> levels) {
+            this.format = format; this.width = width; this.height = height; this.levels = levels;
+        }
+    }
+
+    private static final int DDS_MAGIC = 0x20534444;    // "DDS "
+    private static final int DDS_HEADER_SIZE = 124;
+    private static final int DDS_DATA_OFFSET = 4 + DDS_HEADER_SIZE;
+    private static final int DDS_DX10_HEADER_SIZE = 20;
+    private static final int DDPF_FOURCC = 0x4;
+    private static final int FOURCC_DXT1 = 0x31545844, FOURCC_DXT5 = 0x35545844;
+    private static final int FOURCC_ATI2 = 0x32495441, FOURCC_BC5U = 0x55354342, FOURCC_DX10 = 0x30315844;
+
+    private static final byte[] KTX2_IDENTIFIER = { (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n' };
+    private static final int KTX2_LEVEL_INDEX_OFFSET = 80;
+    private static final int KTX2_KVD_OFFSET = 56; // kvdByteOffset, kvdByteLength (uint32)
+    private static final String KTX2_ORIENTATION_KEY = "KTXorientation";
+
+    /** Czy ścieżka wskazuje kontener obsługiwany przez load() (po rozszerzeniu). */
+    public static boolean isCompressedContainer(String path) {
+        String lower = path.toLowerCase();
+        return lower.endsWith(".dds") || lower.endsWith(".ktx2");
+    }
+
+    /**
+     * Parsuje plik DDS albo KTX2 (rozpoznawany po sygnaturze).
+     *
+     * @param data Dane pliku (flipped, zapisywalne); zwrócone poziomy są jego wycinkami - bufor musi żyć
+     *             do wysłania danych. Poziomy zapisane od góry obrazu są odwracane w miejscu.
+     * @param sourceName Nazwa do komunikatów błędów.
+     * @throws ResourceLoadException Jeśli plik jest uszkodzony lub format nieobsługiwany.
+     */
+    public static CompressedImage load(ByteBuffer data, String sourceName) throws ResourceLoadException {
+        if (data == null || data.remaining() < 16) {
+            throw new ResourceLoadException("Compressed texture is empty or too short: " + sourceName);
+        }
+        ByteBuffer buffer = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) == DDS_MAGIC) {
+            return loadDds(buffer, sourceName);
+        }
+        if (hasKtx2Identifier(buffer)) {
+            return loadKtx2(buffer, sourceName);
+        }
+        throw new ResourceLoadException("Unknown compressed texture container (expected DDS or KTX2): " + sourceName);
+    }
+
+    private static CompressedImage loadDds(ByteBuffer buffer, String sourceName) throws ResourceLoadException {
+        if (buffer.remaining() < DDS_DATA_OFFSET || buffer.getInt(4) != DDS_HEADER_SIZE) {
+            throw new ResourceLoadException("Invalid DDS header: " + sourceName);
+        }
+        int height = buffer.getInt(12);
+        int width = buffer.getInt(16);
+        int mipCount = Math.max(1, buffer.getInt(28));
+        int pixelFormatFlags = buffer.getInt(80);
+        int fourCC = buffer.getInt(84);
+        if ((pixelFormatFlags & DDPF_FOURCC) == 0) {
+            throw new ResourceLoadException("Uncompressed DDS is not supported (use PNG instead): " + sourceName);
+        }
+
+        int dataOffset = DDS_DATA_OFFSET;
+        BlockFormat format;
+        switch (fourCC) {
+            case FOURCC_DXT1: format = BlockFormat.BC1; break;
+            case FOURCC_DXT5: format = BlockFormat.BC3; break;
+            case FOURCC_ATI2:
+            case FOURCC_BC5U: format = BlockFormat.BC5; break;
+            case FOURCC_DX10:
+                if (buffer.remaining() < DDS_DATA_OFFSET + DDS_DX10_HEADER_SIZE) {
+                    throw new ResourceLoadException("Truncated DDS DX10 header: " + sourceName);
+                }
+                format = dxgiFormat(buffer.getInt(DDS_DATA_OFFSET), sourceName);
+                dataOffset += DDS_DX10_HEADER_SIZE;
+                break;
+            default:
+                throw new ResourceLoadException("Unsupported DDS FourCC 0x" + Integer.toHexString(fourCC) + ": " + sourceName);
+        }
+
+        List<ByteBuffer> levels = new ArrayList<>(mipCount);
+        int offset = dataOffset;
+        for (int level = 0; level < mipCount; level++) {
+            int size = format.levelSize(Math.max(1, width >> level), Math.max(1, height >> level));
+            levels.add(slice(buffer, offset, size, sourceName));
+            offset += size;
+        }
+        // DDS nie ma znacznika orientacji - zawsze od góry obrazu
+        flipLevels(format, width, height, levels, sourceName);
+        return new CompressedImage(format, width, height, levels);
+    }
+
+    private static BlockFormat dxgiFormat(int dxgi, String sourceName) throws ResourceLoadException {
+        switch (dxgi) {
+            case 71: return BlockFormat.BC1; // DXGI_FORMAT_BC1_UNORM
+            case 77: return BlockFormat.BC3; // DXGI_FORMAT_BC3_UNORM
+            case 83: return BlockFormat.BC5; // DXGI_FORMAT_BC5_UNORM
+            case 98: return BlockFormat.BC7; // DXGI_FORMAT_BC7_UNORM
+            case 72: case 78: case 99:       // DXGI_FORMAT_BC1/BC3/BC7_UNORM_SRGB
+                throw new ResourceLoadException("sRGB DXGI format " + dxgi + " is not supported (export as UNORM): " + sourceName);
+            default: throw new ResourceLoadException("Unsupported DXGI format " + dxgi + ": " + sourceName);
+        }
+    }
+
+    private static boolean hasKtx2Identifier(ByteBuffer buffer) {
+        for (int i = 0; i < KTX2_IDENTIFIER.length; i++) {
+            if (buffer.get(i) != KTX2_IDENTIFIER[i]) return false;
+        }
+        return true;
+    }
+
+    private static CompressedImage loadKtx2(ByteBuffer buffer, String sourceName) throws ResourceLoadException {
+        if (buffer.remaining() < KTX2_LEVEL_INDEX_OFFSET) {
+            throw new ResourceLoadException("Truncated KTX2 header: " + sourceName);
+        }
+        int vkFormat = buffer.getInt(12);
+        int width = buffer.getInt(20);
+        int height = Math.max(1, buffer.getInt(24));
+        int depth = buffer.getInt(28);
+        int layerCount = buffer.getInt(32);
+        int faceCount = buffer.getInt(36);
+        int levelCount = buffer.getInt(40);
+        int supercompression = buffer.getInt(44);
+        if (depth > 1 || layerCount > 1 || faceCount != 1) {
+            throw new ResourceLoadException("Only single 2D KTX2 textures are supported: " + sourceName);
+        }
+        if (supercompression != 0) {
+            throw new ResourceLoadException("Supercompressed KTX2 (scheme " + supercompression + ") is not supported: " + sourceName);
+        }
+        if (levelCount == 0) {
+            throw new ResourceLoadException("KTX2 without a stored mip chain is not supported: " + sourceName);
+        }
+        BlockFormat format = vkFormat(vkFormat, sourceName);
+
+        List<ByteBuffer> levels = new ArrayList<>(levelCount);
+        for (int level = 0; level < levelCount; level++) {
+            int entry = KTX2_LEVEL_INDEX_OFFSET + level * 24; // byteOffset, byteLength, uncompressedByteLength (uint64)
+            if (entry + 24 > buffer.remaining()) {
+                throw new ResourceLoadException("Truncated KTX2 level index: " + sourceName);
+            }
+            long offset = buffer.getLong(entry);
+            long length = buffer.getLong(entry + 8);
+            int expected = format.levelSize(Math.max(1, width >> level), Math.max(1, height >> level));
+            if (length != expected || offset > Integer.MAX_VALUE) {
+                throw new ResourceLoadException("KTX2 level " + level + " has unexpected size " + length + ": " + sourceName);
+            }
+            levels.add(slice(buffer, (int) offset, expected, sourceName));
+        }
+        if (!isKtx2BottomUp(buffer, sourceName)) {
+            flipLevels(format, width, height, levels, sourceName);
+        }
+        return new CompressedImage(format, width, height, levels);
+    }
+
+    /** Czy wartość klucza KTXorientation opisuje wiersze od dołu ("ru"); brak klucza oznacza domyślne "rd". */
+    private static boolean isKtx2BottomUp(ByteBuffer buffer, String sourceName) throws ResourceLoadException {
+        int kvdOffset = buffer.getInt(KTX2_KVD_OFFSET);
+        int kvdLength = buffer.getInt(KTX2_KVD_OFFSET + 4);
+        if (kvdLength == 0) return false;
+        if (kvdOffset < 0 || kvdLength < 0 || (long) kvdOffset + kvdLength > buffer.limit()) {
+            throw new ResourceLoadException("Truncated KTX2 key/value data: " + sourceName);
+        }
+        byte[] key = KTX2_ORIENTATION_KEY.getBytes(StandardCharsets.US_ASCII);
+        int position = kvdOffset, end = kvdOffset + kvdLength;
+        while (position + 4 <= end) {
+            int entryLength = buffer.getInt(position);
+            int entry = position + 4;
+            if (entryLength < 0 || entry + entryLength > end) {
+                throw new ResourceLoadException("Invalid KTX2 key/value entry: " + sourceName);
+            }
+            // Wpis: klucz zakończony NUL, wartość (tu: napis zakończony NUL); kolejny wpis wyrównany do 4 bajtów
+            if (entryLength > key.length + 1 && matches(buffer, entry, key) && buffer.get(entry + key.length) == 0) {
+                int valueStart = entry + key.length + 1;
+                return entryLength > key.length + 2 && buffer.get(valueStart + 1) == 'u';
+            }
+            position = entry + ((entryLength + 3) & ~3);
+        }
+        return false;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(offset + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Odwraca w pionie poziomy zapisane od góry obrazu: kolejność wierszy bloków i wiersze pikseli w blokach.
+     * Poziom o wysokości niepodzielnej przez 4 (poza jednym wierszem bloków) wymagałby przesunięcia
+     * pikseli między blokami - taki plik jest odrzucany.
+     */
+    private static void flipLevels(BlockFormat format, int width, int height, List<ByteBuffer> levels,
+                                   String sourceName) throws ResourceLoadException {
+        if (format == BlockFormat.BC7) {
+            throw new ResourceLoadException("Top-down BC7 cannot be flipped without re-encoding "
+                    + "(store it as KTX2 with KTXorientation \"ru\"): " + sourceName);
+        }
+        for (int level = 0; level < levels.size(); level++) {
+            int levelHeight = Math.max(1, height >> level);
+            if (levelHeight > 4 && levelHeight % 4 != 0) {
+                throw new ResourceLoadException("Top-down texture height " + height
+                        + " is not a multiple of 4 and cannot be flipped per block: " + sourceName);
+            }
+            flipLevel(format, Math.max(1, width >> level), levelHeight, levels.get(level));
+        }
+    }
+
+    private static void flipLevel(BlockFormat format, int width, int height, ByteBuffer data) {
+        int blockBytes = format.getBlockBytes();
+        int rowBytes = Math.max(1, (width + 3) / 4) * blockBytes;
+        int blockRows = Math.max(1, (height + 3) / 4);
+        int flippedRows = Math.min(4, height); // Wiersze pikseli używane w bloku (mniej przy poziomach < 4)
+        byte[] row = new byte[rowBytes];
+        byte[] otherRow = new byte[rowBytes];
+        for (int top = 0, bottom = blockRows - 1; top <= bottom; top++, bottom--) {
+            data.position(top * rowBytes);
+            data.get(row);
+            data.position(bottom * rowBytes);
+            data.get(otherRow);
+            flipBlockRows(format, row, flippedRows);
+            if (top != bottom) {
+                flipBlockRows(format, otherRow, flippedRows);
+                data.position(top * rowBytes);
+                data.put(otherRow);
+            }
+            data.position(bottom * rowBytes);
+            data.put(row);
+        }
+        data.rewind();
+    }
+
+    // Odwraca kolejność pierwszych rows wierszy pikseli w każdym bloku wiersza bloków
+    private static void flipBlockRows(BlockFormat format, byte[] blocks, int rows) {
+        for (int offset = 0; offset < blocks.length; offset += format.getBlockBytes()) {
+            switch (format) {
+                case BC1:
+                case BC1_ALPHA:
+                    flipColorIndices(blocks, offset, rows);
+                    break;
+                case BC3:
+                    flipChannelIndices(blocks, offset, rows);
+                    flipColorIndices(blocks, offset + 8, rows);
+                    break;
+                default: // BC5
+                    flipChannelIndices(blocks, offset, rows);
+                    flipChannelIndices(blocks, offset + 8, rows);
+                    break;
+            }
+        }
+    }
+
+    // Blok kolorów BC1: po dwóch końcach RGB565 cztery bajty indeksów, jeden bajt na wiersz
+    private static void flipColorIndices(byte[] block, int offset, int rows) {
+        for (int top = 0, bottom = rows - 1; top < bottom; top++, bottom--) {
+            byte t = block[offset + 4 + top];
+            block[offset + 4 + top] = block[offset + 4 + bottom];
+            block[offset + 4 + bottom] = t;
+        }
+    }
+
+    // Blok kanału BC4: po dwóch wartościach 48 bitów indeksów, 12 bitów na wiersz
+    private static void flipChannelIndices(byte[] block, int offset, int rows) {
+        long bits = 0;
+        for (int i = 0; i < 6; i++) bits |= (block[offset + 2 + i] & 0xFFL) << (i * 8);
+        long flipped = bits;
+        for (int row = 0; row < rows; row++) {
+            int target = rows - 1 - row;
+            flipped &= ~(0xFFFL << (target * 12));
+            flipped |= ((bits >>> (row * 12)) & 0xFFFL) << (target * 12);
+        }
+        for (int i = 0; i < 6; i++) block[offset + 2 + i] = (byte) (flipped >>> (i * 8));
+    }
+
+    private static BlockFormat vkFormat(int vkFormat, String sourceName) throws ResourceLoadException {
+        switch (vkFormat) {
+            case 131: return BlockFormat.BC1;       // VK_FORMAT_BC1_RGB_UNORM_BLOCK
+            case 133: return BlockFormat.BC1_ALPHA; // VK_FORMAT_BC1_RGBA_UNORM_BLOCK
+            case 137: return BlockFormat.BC3;       // VK_FORMAT_BC3_UNORM_BLOCK
+            case 141: return BlockFormat.BC5;       // VK_FORMAT_BC5_UNORM_BLOCK
+            case 145: return BlockFormat.BC7;       // VK_FORMAT_BC7_UNORM_BLOCK
+            case 132: case 134: case 138: case 146: // VK_FORMAT_BC1_RGB/BC1_RGBA/BC3/BC7_SRGB_BLOCK
+                throw new ResourceLoadException("sRGB KTX2 vkFormat " + vkFormat + " is not supported (export as UNORM): " + sourceName);
+            default: throw new ResourceLoadException("Unsupported KTX2 vkFormat " + vkFormat + ": " + sourceName);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int size, String sourceName) throws ResourceLoadException {
+        if (offset < 0 || offset + size > buffer.limit()) {
+            throw new ResourceLoadException("Compressed texture data is truncated: " + sourceName);
+        }
+        ByteBuffer level = buffer.duplicate();
+        level.position(offset).limit(offset + size);
+        return level.slice();
+    }
+}
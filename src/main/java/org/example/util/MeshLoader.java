@@ -1,6 +1,7 @@
 package org.example.util;
 
 import org.example.graphics.Mesh;
+import org.example.graphics.VertexLayout;
 
 public class MeshLoader {
 
@@ -73,7 +74,7 @@ public class MeshLoader {
      * @return Obiekt Mesh reprezentujący sześcian.
      */
     public static Mesh createCube() {
-        return new Mesh(CUBE_POSITIONS, CUBE_NORMALS, CUBE_UVS, CUBE_INDICES);
+        return new Mesh(CUBE_POSITIONS, CUBE_NORMALS, CUBE_UVS, CUBE_INDICES, VertexLayout.compactFor(CUBE_UVS));
     }
 
     /**
@@ -109,7 +110,7 @@ public class MeshLoader {
                 0, 1, 2, // Pierwszy trójkąt
                 0, 2, 3  // Drugi trójkąt
         };
-        return new Mesh(positions, normals, uvs, indices);
+        return new Mesh(positions, normals, uvs, indices, VertexLayout.compactFor(uvs)); // UV > 1 przy uvScale - zostaną jako float
     }
 
     /**
@@ -0,0 +1,443 @@
+package org.example.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Upraszczanie siatek trójkątów metodą kwadryk błędu (QEM, Garland-Heckbert) z kolapsem półkrawędzi:
+ * usuwany wierzchołek jest przenoszony na istniejącego sąsiada, więc atrybuty (normalne, UV)
+ * pozostałych wierzchołków nie wymagają interpolacji.
+ * <p>
+ * Szwy UV i krawędzie normalnych są zachowywane: wierzchołki na krawędziach brzegowych topologii
+ * (po zespawaniu identycznych wierzchołków szew wygląda jak brzeg) oraz wierzchołki współdzielące
+ * pozycję z innym wierzchołkiem są zablokowane - mogą być celem kolapsu, ale nie są usuwane.
+ * Kolaps jest odrzucany, gdy odwróciłby lub zdegenerował trójkąt albo naruszył warunek łącza
+ * (powstałaby geometria nie-rozmaitościowa).
+ */
+public final class MeshSimplifier {
+
+    private static final double MIN_NORMAL_DOT = 0.2; // Minimalny cos kąta między normalną trójkąta przed i po kolapsie
+
+    private MeshSimplifier() {
+    }
+
+    /** Wynik uproszczenia - tablice w tym samym formacie co wejście konstruktora Mesh. */
+    public static final class Result {
+        public final float[] positions;
+        public final float[] normals;
+        public final float[] uvs;
+        public final int[] indices;
+
+        Result(float[] positions, float[] normals, float[] uvs, int[] indices) {
+            this.positions = positions;
+            this.normals = normals;
+            this.uvs = uvs;
+            this.indices = indices;
+        }
+
+        public int getTriangleCount() { return indices.length / 3; }
+    }
+
+    /** Kandydat kolapsu from -> to w kolejce priorytetowej (wersje wierzchołków wykrywają nieaktualne wpisy). */
+    private static final class Collapse implements Comparable<Collapse> {
+        final double cost;
+        final int from, to;
+        final int fromVersion, toVersion;
+
+        Collapse(double cost, int from, int to, int fromVersion, int toVersion) {
+            this.cost = cost;
+            this.from = from;
+            this.to = to;
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+        }
+
+        @Override
+        public int compareTo(Collapse other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+
+    /**
+     * Upraszcza siatkę do (co najwyżej w przybliżeniu) podanej liczby trójkątów.
+     * Jeśli zablokowane wierzchołki nie pozwalają zejść niżej, wynik ma więcej trójkątów.
+     */
+    public static Result simplify(float[] positions, float[] normals, float[] uvs, int[] indices, int targetTriangleCount) {
+        Result welded = weld(positions, normals, uvs, indices);
+        return new Simplification(welded).run(Math.max(1, targetTriangleCount));
+    }
+
+    /** Łączy wierzchołki o identycznych wszystkich atrybutach (pozycja, normalna, UV). */
+    public static Result weld(float[] positions, float[] normals, float[] uvs, int[] indices) {
+        int vertexCount = positions.length / 3;
+        Map<VertexKey, Integer> unique = new HashMap<>();
+        int[] remap = new int[vertexCount];
+        int[] firstSource = new int[vertexCount];
+        int uniqueCount = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            VertexKey key = new VertexKey(positions, normals, uvs, v);
+            Integer existing = unique.get(key);
+            if (existing == null) {
+                unique.put(key, uniqueCount);
+                firstSource[uniqueCount] = v;
+                remap[v] = uniqueCount++;
+            } else {
+                remap[v] = existing;
+            }
+        }
+        float[] outPositions = new float[uniqueCount * 3];
+        float[] outNormals = new float[uniqueCount * 3];
+        float[] outUvs = new float[uniqueCount * 2];
+        for (int u = 0; u < uniqueCount; u++) {
+            copyVertex(positions, normals, uvs, firstSource[u], outPositions, outNormals, outUvs, u);
+        }
+        int[] outIndices = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            outIndices[i] = remap[indices[i]];
+        }
+        return new Result(outPositions, outNormals, outUvs, outIndices);
+    }
+
+    private static void copyVertex(float[] positions, float[] normals, float[] uvs, int src,
+                                   float[] outPositions, float[] outNormals, float[] outUvs, int dst) {
+        System.arraycopy(positions, src * 3, outPositions, dst * 3, 3);
+        if (normals != null && normals.length >= (src + 1) * 3) System.arraycopy(normals, src * 3, outNormals, dst * 3, 3);
+        if (uvs != null && uvs.length >= (src + 1) * 2) System.arraycopy(uvs, src * 2, outUvs, dst * 2, 2);
+    }
+
+    /** Klucz wierzchołka - dokładna równość bitowa atrybutów. */
+    private static final class VertexKey {
+        private final int[] bits = new int[8];
+        private final int hash;
+
+        VertexKey(float[] positions, float[] normals, float[] uvs, int v) {
+            for (int i = 0; i < 3; i++) bits[i] = Float.floatToIntBits(positions[v * 3 + i]);
+            if (normals != null && normals.length >= (v + 1) * 3) {
+                for (int i = 0; i < 3; i++) bits[3 + i] = Float.floatToIntBits(normals[v * 3 + i]);
+            }
+            if (uvs != null && uvs.length >= (v + 1) * 2) {
+                for (int i = 0; i < 2; i++) bits[6 + i] = Float.floatToIntBits(uvs[v * 2 + i]);
+            }
+            hash = Arrays.hashCode(bits);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof VertexKey && Arrays.equals(bits, ((VertexKey) o).bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** Stan jednego upraszczania (zespawana siatka, kwadryki, sąsiedztwo). */
+    private static final class Simplification {
+        private final Result mesh;
+        private final int vertexCount;
+        private final int[] triangles;
+        private final boolean[] triangleAlive;
+        private int aliveTriangles;
+
+        private final double[] quadrics;        // 10 współczynników na wierzchołek (macierz symetryczna 4x4)
+        private final boolean[] vertexAlive;
+        private final boolean[] locked;
+        private final int[] version;
+        private final int[][] vertexTriangles;  // Trójkąty przy wierzchołku (także martwe - filtrowane przy odczycie)
+        private final int[] vertexTriangleCounts;
+        private final int[] mark;               // Znaczniki odwiedzin (porównywane z markStamp)
+        private int markStamp = 0;
+        private final PriorityQueue<Collapse> heap = new PriorityQueue<>();
+
+        Simplification(Result mesh) {
+            this.mesh = mesh;
+            this.vertexCount = mesh.positions.length / 3;
+            this.triangles = mesh.indices.clone();
+            this.triangleAlive = new boolean[triangles.length / 3];
+            this.aliveTriangles = triangleAlive.length;
+            Arrays.fill(triangleAlive, true);
+            this.quadrics = new double[vertexCount * 10];
+            this.vertexAlive = new boolean[vertexCount];
+            this.locked = new boolean[vertexCount];
+            this.version = new int[vertexCount];
+            this.vertexTriangles = new int[vertexCount][];
+            this.vertexTriangleCounts = new int[vertexCount];
+            this.mark = new int[vertexCount];
+        }
+
+        Result run(int targetTriangleCount) {
+            buildAdjacency();
+            lockSeamsAndBoundaries();
+            computeQuadrics();
+            pushInitialEdges();
+
+            while (aliveTriangles > targetTriangleCount && !heap.isEmpty()) {
+                Collapse c = heap.poll();
+                if (c.cost == Double.POSITIVE_INFINITY) break;
+                if (!vertexAlive[c.from] || !vertexAlive[c.to]
+                        || version[c.from] != c.fromVersion || version[c.to] != c.toVersion) {
+                    continue; // Nieaktualny wpis
+                }
+                if (!isCollapseValid(c.from, c.to)) continue;
+                applyCollapse(c.from, c.to);
+            }
+            return compact();
+        }
+
+        private void buildAdjacency() {
+            for (int v = 0; v < vertexCount; v++) {
+                vertexTriangles[v] = new int[8];
+            }
+            for (int t = 0; t < triangleAlive.length; t++) {
+                int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+                if (a == b || b == c || a == c) {
+                    triangleAlive[t] = false; // Zdegenerowany już na wejściu
+                    aliveTriangles--;
+                    continue;
+                }
+                for (int i = 0; i < 3; i++) {
+                    int v = triangles[t * 3 + i];
+                    addVertexTriangle(v, t);
+                    vertexAlive[v] = true;
+                }
+            }
+        }
+
+        private void addVertexTriangle(int v, int t) {
+            int count = vertexTriangleCounts[v];
+            if (count == vertexTriangles[v].length) {
+                vertexTriangles[v] = Arrays.copyOf(vertexTriangles[v], count * 2);
+            }
+            vertexTriangles[v][count] = t;
+            vertexTriangleCounts[v] = count + 1;
+        }
+
+        private void lockSeamsAndBoundaries() {
+            // Krawędź brzegowa = krawędź należąca do jednego trójkąta
+            Map<Long, Integer> edgeUse = new HashMap<>();
+            for (int t = 0; t < triangleAlive.length; t++) {
+                if (!triangleAlive[t]) continue;
+                for (int i = 0; i < 3; i++) {
+                    edgeUse.merge(edgeKey(triangles[t * 3 + i], triangles[t * 3 + (i + 1) % 3]), 1, Integer::sum);
+                }
+            }
+            for (Map.Entry<Long, Integer> e : edgeUse.entrySet()) {
+                if (e.getValue() == 1) {
+                    locked[(int) (e.getKey() >>> 32)] = true;
+                    locked[(int) (e.getKey() & 0xFFFFFFFFL)] = true;
+                }
+            }
+            // Ta sama pozycja, inne atrybuty - szew UV lub ostra krawędź normalnych
+            Map<Long, Integer> positionUse = new HashMap<>();
+            float[] p = mesh.positions;
+            for (int v = 0; v < vertexCount; v++) {
+                positionUse.merge(positionKey(p, v), 1, Integer::sum);
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                if (positionUse.get(positionKey(p, v)) > 1) locked[v] = true;
+            }
+        }
+
+        private static long edgeKey(int a, int b) {
+            int lo = Math.min(a, b), hi = Math.max(a, b);
+            return ((long) lo << 32) | (hi & 0xFFFFFFFFL);
+        }
+
+        private static long positionKey(float[] p, int v) {
+            long h = Float.floatToIntBits(p[v * 3]);
+            h = h * 0x9E3779B97F4A7C15L + Float.floatToIntBits(p[v * 3 + 1]);
+            h = h * 0x9E3779B97F4A7C15L + Float.floatToIntBits(p[v * 3 + 2]);
+            return h;
+        }
+
+        private void computeQuadrics() {
+            float[] p = mesh.positions;
+            for (int t = 0; t < triangleAlive.length; t++) {
+                if (!triangleAlive[t]) continue;
+                int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+                double e1x = p[b * 3] - p[a * 3], e1y = p[b * 3 + 1] - p[a * 3 + 1], e1z = p[b * 3 + 2] - p[a * 3 + 2];
+                double e2x = p[c * 3] - p[a * 3], e2y = p[c * 3 + 1] - p[a * 3 + 1], e2z = p[c * 3 + 2] - p[a * 3 + 2];
+                double nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+                double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (length < 1e-20) continue;
+                double area = length * 0.5; // Waga - duże trójkąty mocniej trzymają swoją płaszczyznę
+                nx /= length; ny /= length; nz /= length;
+                double d = -(nx * p[a * 3] + ny * p[a * 3 + 1] + nz * p[a * 3 + 2]);
+                for (int i = 0; i < 3; i++) {
+                    addPlane(triangles[t * 3 + i], nx, ny, nz, d, area);
+                }
+            }
+        }
+
+        private void addPlane(int v, double a, double b, double c, double d, double w) {
+            int q = v * 10;
+            quadrics[q] += w * a * a;     quadrics[q + 1] += w * a * b; quadrics[q + 2] += w * a * c; quadrics[q + 3] += w * a * d;
+            quadrics[q + 4] += w * b * b; quadrics[q + 5] += w * b * c; quadrics[q + 6] += w * b * d;
+            quadrics[q + 7] += w * c * c; quadrics[q + 8] += w * c * d;
+            quadrics[q + 9] += w * d * d;
+        }
+
+        /** Błąd (v^T (Qa + Qb) v) umieszczenia wierzchołka w pozycji 'to'. */
+        private double collapseCost(int from, int to) {
+            if (locked[from]) return Double.POSITIVE_INFINITY;
+            float[] p = mesh.positions;
+            double x = p[to * 3], y = p[to * 3 + 1], z = p[to * 3 + 2];
+            int qa = from * 10, qb = to * 10;
+            double[] q = quadrics;
+            double q0 = q[qa] + q[qb], q1 = q[qa + 1] + q[qb + 1], q2 = q[qa + 2] + q[qb + 2], q3 = q[qa + 3] + q[qb + 3];
+            double q4 = q[qa + 4] + q[qb + 4], q5 = q[qa + 5] + q[qb + 5], q6 = q[qa + 6] + q[qb + 6];
+            double q7 = q[qa + 7] + q[qb + 7], q8 = q[qa + 8] + q[qb + 8], q9 = q[qa + 9] + q[qb + 9];
+            return q0 * x * x + 2 * q1 * x * y + 2 * q2 * x * z + 2 * q3 * x
+                    + q4 * y * y + 2 * q5 * y * z + 2 * q6 * y
+                    + q7 * z * z + 2 * q8 * z + q9;
+        }
+
+        private void pushEdge(int a, int b) {
+            double ab = collapseCost(a, b), ba = collapseCost(b, a);
+            if (ab == Double.POSITIVE_INFINITY && ba == Double.POSITIVE_INFINITY) return;
+            if (ab <= ba) {
+                heap.add(new Collapse(ab, a, b, version[a], version[b]));
+            } else {
+                heap.add(new Collapse(ba, b, a, version[b], version[a]));
+            }
+        }
+
+        private void pushInitialEdges() {
+            for (int t = 0; t < triangleAlive.length; t++) {
+                if (!triangleAlive[t]) continue;
+                for (int i = 0; i < 3; i++) {
+                    int a = triangles[t * 3 + i], b = triangles[t * 3 + (i + 1) % 3];
+                    if (a < b || !hasEdge(b, a, t)) pushEdge(a, b); // Każda krawędź raz (lub dwa razy przy brzegu - bez szkody)
+                }
+            }
+        }
+
+        // Czy krawędź (a, b) należy do innego trójkąta niż 'except' (wtedy dodał ją już wierzchołek o mniejszym indeksie)
+        private boolean hasEdge(int a, int b, int except) {
+            for (int i = 0; i < vertexTriangleCounts[a]; i++) {
+                int t = vertexTriangles[a][i];
+                if (t != except && triangleAlive[t] && triangleContains(t, b)) return true;
+            }
+            return false;
+        }
+
+        private boolean triangleContains(int t, int v) {
+            return triangles[t * 3] == v || triangles[t * 3 + 1] == v || triangles[t * 3 + 2] == v;
+        }
+
+        private boolean isCollapseValid(int from, int to) {
+            // 1. Warunek łącza: wspólni sąsiedzi = wierzchołki przeciwległe do krawędzi we wspólnych trójkątach
+            markStamp++;
+            for (int i = 0; i < vertexTriangleCounts[to]; i++) {
+                int t = vertexTriangles[to][i];
+                if (!triangleAlive[t]) continue;
+                for (int k = 0; k < 3; k++) mark[triangles[t * 3 + k]] = markStamp;
+            }
+            int shared = 0, sharedTriangles = 0;
+            markStamp++;
+            int neighbourStamp = markStamp;
+            for (int i = 0; i < vertexTriangleCounts[from]; i++) {
+                int t = vertexTriangles[from][i];
+                if (!triangleAlive[t]) continue;
+                if (triangleContains(t, to)) sharedTriangles++;
+                for (int k = 0; k < 3; k++) {
+                    int v = triangles[t * 3 + k];
+                    if (v == from || v == to) continue;
+                    if (mark[v] == neighbourStamp - 1) { // Sąsiad 'to' i jeszcze nie policzony
+                        mark[v] = neighbourStamp;
+                        shared++;
+                    }
+                }
+            }
+            if (shared != sharedTriangles) return false;
+
+            // 2. Żaden pozostały trójkąt nie może się odwrócić ani zdegenerować
+            float[] p = mesh.positions;
+            for (int i = 0; i < vertexTriangleCounts[from]; i++) {
+                int t = vertexTriangles[from][i];
+                if (!triangleAlive[t] || triangleContains(t, to)) continue;
+                int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+                double[] before = normal(p, a, b, c);
+                double[] after = normal(p, a == from ? to : a, b == from ? to : b, c == from ? to : c);
+                double lenBefore = Math.sqrt(dot(before, before)), lenAfter = Math.sqrt(dot(after, after));
+                if (lenAfter < 1e-12 || lenBefore < 1e-12) return false;
+                if (dot(before, after) / (lenBefore * lenAfter) < MIN_NORMAL_DOT) return false;
+            }
+            return true;
+        }
+
+        private static double[] normal(float[] p, int a, int b, int c) {
+            double e1x = p[b * 3] - p[a * 3], e1y = p[b * 3 + 1] - p[a * 3 + 1], e1z = p[b * 3 + 2] - p[a * 3 + 2];
+            double e2x = p[c * 3] - p[a * 3], e2y = p[c * 3 + 1] - p[a * 3 + 1], e2z = p[c * 3 + 2] - p[a * 3 + 2];
+            return new double[] { e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x };
+        }
+
+        private static double dot(double[] a, double[] b) {
+            return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+        }
+
+        private void applyCollapse(int from, int to) {
+            for (int i = 0; i < vertexTriangleCounts[from]; i++) {
+                int t = vertexTriangles[from][i];
+                if (!triangleAlive[t]) continue;
+                if (triangleContains(t, to)) {
+                    triangleAlive[t] = false;
+                    aliveTriangles--;
+                } else {
+                    for (int k = 0; k < 3; k++) {
+                        if (triangles[t * 3 + k] == from) triangles[t * 3 + k] = to;
+                    }
+                    addVertexTriangle(to, t);
+                }
+            }
+            for (int k = 0; k < 10; k++) {
+                quadrics[to * 10 + k] += quadrics[from * 10 + k];
+            }
+            vertexAlive[from] = false;
+            vertexTriangleCounts[from] = 0;
+            version[to]++;
+
+            // Nowe koszty krawędzi wokół 'to'
+            markStamp++;
+            for (int i = 0; i < vertexTriangleCounts[to]; i++) {
+                int t = vertexTriangles[to][i];
+                if (!triangleAlive[t]) continue;
+                for (int k = 0; k < 3; k++) {
+                    int v = triangles[t * 3 + k];
+                    if (v != to && mark[v] != markStamp) {
+                        mark[v] = markStamp;
+                        pushEdge(to, v);
+                    }
+                }
+            }
+        }
+
+        private Result compact() {
+            int[] remap = new int[vertexCount];
+            Arrays.fill(remap, -1);
+            int newVertexCount = 0;
+            int[] newIndices = new int[aliveTriangles * 3];
+            int n = 0;
+            for (int t = 0; t < triangleAlive.length; t++) {
+                if (!triangleAlive[t]) continue;
+                for (int k = 0; k < 3; k++) {
+                    int v = triangles[t * 3 + k];
+                    if (remap[v] < 0) remap[v] = newVertexCount++;
+                    newIndices[n++] = remap[v];
+                }
+            }
+            float[] positions = new float[newVertexCount * 3];
+            float[] normals = new float[newVertexCount * 3];
+            float[] uvs = new float[newVertexCount * 2];
+            for (int v = 0; v < vertexCount; v++) {
+                if (remap[v] >= 0) {
+                    copyVertex(mesh.positions, mesh.normals, mesh.uvs, v, positions, normals, uvs, remap[v]);
+                }
+            }
+            return new Result(positions, normals, uvs, newIndices);
+        }
+    }
+}
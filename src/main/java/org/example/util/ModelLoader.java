@@ -1,6 +1,7 @@
 package org.example.util;
 
 import org.example.graphics.Mesh;
+import org.example.graphics.VertexLayout;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.assimp.*;
 import org.lwjgl.system.MemoryUtil;
@@ -18,8 +19,15 @@ import static org.lwjgl.assimp.Assimp.*;
 
 public class ModelLoader {
 
+    // Domyślna liczba generowanych poziomów LOD; każdy ma połowę trójkątów poprzedniego
+    public static final int DEFAULT_LOD_LEVELS = 3;
+    private static final float LOD_REDUCTION = 0.5f;
+    private static final float MIN_LOD_GAIN = 0.85f; // Poziom musi mieć < 85% trójkątów poprzedniego, inaczej koniec
+    private static final int MIN_LOD_TRIANGLES = 64;
+
     /**
-     * Ładuje pierwszą siatkę (mesh) z pliku modelu w classpath.
+     * Ładuje pierwszą siatkę (mesh) z pliku modelu w classpath, razem z DEFAULT_LOD_LEVELS
+     * uproszczonymi poziomami szczegółowości.
      * @param classpathResourcePath Ścieżka do pliku modelu.
      * @return Obiekt Mesh.
      * @throws ResourceNotFoundException Jeśli plik modelu nie zostanie znaleziony.
@@ -27,6 +35,20 @@ public class ModelLoader {
      */
     public static Mesh loadMesh(String classpathResourcePath)
             throws ResourceNotFoundException, ResourceLoadException {
+        return loadMesh(classpathResourcePath, DEFAULT_LOD_LEVELS);
+    }
+
+    /**
+     * Ładuje pierwszą siatkę z pliku modelu i generuje do lodLevels uproszczonych poziomów
+     * (MeshSimplifier - kolaps krawędzi z kwadrykami błędu, szwy UV zachowane).
+     * @param classpathResourcePath Ścieżka do pliku modelu.
+     * @param lodLevels Maksymalna liczba poziomów LOD (0 = tylko siatka bazowa).
+     * @return Obiekt Mesh z poziomami dostępnymi przez getLod().
+     * @throws ResourceNotFoundException Jeśli plik modelu nie zostanie znaleziony.
+     * @throws ResourceLoadException Jeśli wystąpi błąd podczas ładowania lub przetwarzania modelu.
+     */
+    public static Mesh loadMesh(String classpathResourcePath, int lodLevels)
+            throws ResourceNotFoundException, ResourceLoadException {
 
         ByteBuffer fileData = null;
         AIScene aiScene = null;
@@ -71,7 +93,9 @@ public class ModelLoader {
             float[] verticesArr = toFloatArray(vertices); float[] normalsArr = toFloatArray(normals); float[] uvsArr = toFloatArray(uvs); int[] indicesArr = toIntArray(indices);
 
             System.out.println("Loaded mesh: " + classpathResourcePath);
-            return new Mesh(verticesArr, normalsArr, uvsArr, indicesArr);
+            Mesh mesh = new Mesh(verticesArr, normalsArr, uvsArr, indicesArr, VertexLayout.compactFor(uvsArr)); // Kompaktowy układ wybierany automatycznie
+            generateLodLevels(mesh, verticesArr, normalsArr, uvsArr, indicesArr, lodLevels, classpathResourcePath);
+            return mesh;
 
         } catch (IOException e) { // Złap IO z ResourceLoader (inny niż NotFound)
             // Jeśli to ResourceNotFoundException, rzuć dalej
@@ -93,6 +117,30 @@ public class ModelLoader {
         }
     }
 
+    /**
+     * Dodaje do siatki kolejne uproszczone poziomy. Każdy poziom powstaje z poprzedniego,
+     * więc błąd kumuluje się łagodnie, a koszt maleje z każdym krokiem.
+     */
+    private static void generateLodLevels(Mesh mesh, float[] positions, float[] normals, float[] uvs, int[] indices,
+                                          int lodLevels, String name) {
+        MeshSimplifier.Result previous = MeshSimplifier.weld(positions, normals, uvs, indices);
+        StringBuilder summary = new StringBuilder().append(indices.length / 3);
+        for (int level = 1; level <= lodLevels; level++) {
+            int target = (int) (previous.getTriangleCount() * LOD_REDUCTION);
+            if (target < MIN_LOD_TRIANGLES) break;
+            MeshSimplifier.Result lod = MeshSimplifier.simplify(previous.positions, previous.normals, previous.uvs, previous.indices, target);
+            if (lod.getTriangleCount() == 0 || lod.getTriangleCount() > previous.getTriangleCount() * MIN_LOD_GAIN) {
+                break; // Zablokowane wierzchołki (szwy, brzegi) nie pozwalają zejść niżej
+            }
+            mesh.addLodLevel(new Mesh(lod.positions, lod.normals, lod.uvs, lod.indices, VertexLayout.compactFor(lod.uvs)));
+            summary.append(" -> ").append(lod.getTriangleCount());
+            previous = lod;
+        }
+        if (mesh.getLodCount() > 1) {
+            System.out.println("  Generated " + (mesh.getLodCount() - 1) + " LOD level(s) for " + name + " (triangles: " + summary + ").");
+        }
+    }
+
     // --- Metody pomocnicze do przetwarzania danych Assimp ---
     private static void processVertices(AIMesh aiMesh, List<Float> vertices) {
         AIVector3D.Buffer aiVertices = aiMesh.mVertices();
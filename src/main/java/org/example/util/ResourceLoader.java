@@ -18,6 +18,14 @@ import java.nio.file.Paths;
  */
 public class ResourceLoader {
 
+    /**
+     * Sprawdza, czy zasób istnieje w classpath (bez wczytywania).
+     * @param classpathResourcePath Ścieżka do zasobu względna do roota classpath.
+     */
+    public static boolean exists(String classpathResourcePath) {
+        return ResourceLoader.class.getClassLoader().getResource(classpathResourcePath) != null;
+    }
+
     /**
      * Wczytuje zasób z classpath jako bezpośredni ByteBuffer.
      * UWAGA: Pamięć dla zwróconego bufora musi zostać zwolniona przez wołającego
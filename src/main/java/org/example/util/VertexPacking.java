@@ -0,0 +1,83 @@
+package org.example.util;
+
+/**
+ * Funkcje pakujące wartości zmiennoprzecinkowe do kompaktowych formatów GPU
+ * (half float, znormalizowane 16-bitowe liczby całkowite, kodowanie oktaedryczne normalnych).
+ */
+public final class VertexPacking {
+
+    private VertexPacking() {
+    }
+
+    /**
+     * Konwertuje float do 16-bitowego half float (IEEE 754 binary16), z zaokrągleniem do najbliższej.
+     * @return Bity half float w dolnych 16 bitach.
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (((bits >>> 23) & 0xFF) == 0xFF) { // NaN / nieskończoność
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exponent >= 0x1F) { // Przepełnienie -> nieskończoność
+            return (short) (sign | 0x7C00);
+        }
+        if (exponent <= 0) { // Liczby zdenormalizowane lub zero
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int roundBit = 1 << (shift - 1);
+            if ((mantissa & roundBit) != 0 && ((mantissa & (roundBit - 1)) != 0 || (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        if ((mantissa & 0x1000) != 0 && ((mantissa & 0x2FFF) != 0)) {
+            half++; // Zaokrąglenie (może przenieść do wykładnika - to poprawne zachowanie)
+        }
+        return (short) half;
+    }
+
+    /** Konwertuje wartość z zakresu [0, 1] do 16-bitowej znormalizowanej liczby bez znaku. */
+    public static short toUnorm16(float value) {
+        float clamped = Math.max(0.0f, Math.min(1.0f, value));
+        return (short) Math.round(clamped * 65535.0f);
+    }
+
+    /** Konwertuje wartość z zakresu [-1, 1] do 16-bitowej znormalizowanej liczby ze znakiem. */
+    public static short toSnorm16(float value) {
+        float clamped = Math.max(-1.0f, Math.min(1.0f, value));
+        return (short) Math.round(clamped * 32767.0f);
+    }
+
+    /**
+     * Koduje znormalizowany wektor jednostkowy do 2 składowych w zakresie [-1, 1]
+     * (rzut na oktaedr). Dekodowanie: decodeOctahedral() w scene_vertex.glsl.
+     * @param out Tablica wynikowa (co najmniej 2 elementy).
+     */
+    public static void encodeOctahedral(float x, float y, float z, float[] out) {
+        float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (l1 == 0.0f) {
+            out[0] = 0.0f;
+            out[1] = 0.0f;
+            return;
+        }
+        float ox = x / l1;
+        float oy = y / l1;
+        if (z < 0.0f) {
+            float tx = (1.0f - Math.abs(oy)) * (ox >= 0.0f ? 1.0f : -1.0f);
+            float ty = (1.0f - Math.abs(ox)) * (oy >= 0.0f ? 1.0f : -1.0f);
+            ox = tx;
+            oy = ty;
+        }
+        out[0] = ox;
+        out[1] = oy;
+    }
+}
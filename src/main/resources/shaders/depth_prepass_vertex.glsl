@@ -0,0 +1,15 @@
+#version 330 core
+// Depth pre-pass z kamery: ta sama transformacja pozycji co scene_vertex.glsl (invariant),
+// fragment shader - depth_fragment.glsl (tylko zapis głębi)
+layout (location = 0) in vec3 aPos;
+layout (location = 3) in mat4 aModel; // Macierz modelu per-instancja
+
+#include "include/camera_block.glsl"
+
+invariant gl_Position;
+
+void main()
+{
+    vec3 fragPos = vec3(aModel * vec4(aPos, 1.0));
+    gl_Position = projection * view * vec4(fragPos, 1.0);
+}
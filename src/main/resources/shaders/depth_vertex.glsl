@@ -1,11 +1,13 @@
 #version 330 core
 layout (location = 0) in vec3 aPos; // Tylko pozycja jest potrzebna
+layout (location = 3) in mat4 aModel; // Macierz modelu per-instancja
 
-uniform mat4 lightSpaceMatrix;
-uniform mat4 model;
+#include "include/shadow_block.glsl"
+
+uniform int cascadeIndex; // Kaskada renderowana w bieżącym przebiegu (warstwa ShadowMap)
 
 void main()
 {
-    // Przekształć pozycję wierzchołka do przestrzeni światła
-    gl_Position = lightSpaceMatrix * model * vec4(aPos, 1.0);
-}
\ No newline at end of file
+    // Przekształć pozycję wierzchołka do przestrzeni światła kaskady
+    gl_Position = lightSpaceMatrices[cascadeIndex] * aModel * vec4(aPos, 1.0);
+}
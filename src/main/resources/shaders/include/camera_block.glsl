@@ -0,0 +1,6 @@
+// Blok kamery (UBO, std140) - układ musi odpowiadać SceneUniformBuffer.java
+layout (std140) uniform CameraBlock {
+    mat4 projection;
+    mat4 view;
+    vec4 viewPos; // xyz = pozycja kamery
+};
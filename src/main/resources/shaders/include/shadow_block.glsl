@@ -0,0 +1,12 @@
+// Blok cieni (UBO, std140) - układ musi odpowiadać SceneUniformBuffer.java
+// MAX_SHADOW_CASCADES (ShadowCascades.java) i MAX_SPOT_LIGHTS (Renderer.java) wstrzykuje ShaderManager
+layout (std140) uniform ShadowBlock {
+    mat4 lightSpaceMatrices[MAX_SHADOW_CASCADES];
+    vec4 cascadeSplits; // Daleka granica każdej kaskady (głębokość w przestrzeni widoku)
+    vec4 cascadeBiases; // Bias głębokości każdej kaskady
+    vec4 shadowParams;  // x = liczba kaskad
+    // Cienie reflektorów z atlasu (ShadowAtlasRenderer.java), indeksy jak w spotLights
+    mat4 spotShadowMatrices[MAX_SPOT_LIGHTS]; // Macierz światła, z którą narysowano kafel
+    vec4 spotShadowTiles[MAX_SPOT_LIGHTS];    // xy = przesunięcie UV kafla, z = skala UV, w = 1 gdy cień dostępny
+    vec4 spotShadowDepth[MAX_SPOT_LIGHTS];    // x = near, y = far, z = bias na jednostkę odległości
+};
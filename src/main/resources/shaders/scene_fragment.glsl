@@ -1,4 +1,7 @@
 #version 330 core
+// Permutacje (ShaderFeatures.java): HAS_DIFFUSE_MAP, HAS_SPECULAR_MAP, DIRECTIONAL_LIGHT,
+// DIRECTIONAL_SHADOWS, LOCAL_LIGHTS, SPOT_SHADOWS - każdy wariant kompiluje tylko używany kod,
+// bez rozgałęzień na flagach materiału i świateł w czasie wykonania
 
 // --- Struktury Danych ---
 struct MaterialInfo {
@@ -6,208 +9,332 @@ struct MaterialInfo {
     vec3 diffuse;
     vec3 specular;
     float reflectance; // = shininess
-    bool hasDiffuseMap;
-    bool hasSpecularMap;
+    float diffuseLayer;  // Warstwa w tablicy diffuse (< 0 = brak mapy)
+    float specularLayer; // Warstwa w tablicy specular (< 0 = brak mapy)
+    vec4 diffuseRect;    // Prostokąt UV w warstwie (xy = początek, zw = rozmiar; atlas małych tekstur)
+    vec4 specularRect;
 };
 
-struct DirLightInfo {
-    vec3 direction; // Kierunek DO źródła światła
-    vec3 color;
-    float intensity;
-    // bool enabled; // Można dodać flagę włącz/wyłącz
-};
+// --- Bloki uniformów (UBO, std140) - układ musi odpowiadać SceneUniformBuffer.java ---
+// MAX_POINT_LIGHTS / MAX_SPOT_LIGHTS są wstrzykiwane przez ShaderManager (jedno źródło: Renderer.java)
 
-// Dla tłumienia
-struct AttenuationInfo {
-    float constant;
-    float linear;
-    float quadratic;
+struct PointLightData {
+    vec4 positionIntensity; // xyz = pozycja, w = intensywność
+    vec4 color;             // rgb = kolor
+    vec4 attenuation;       // x = constant, y = linear, z = quadratic
 };
 
-struct PointLightInfo {
-    vec3 position;
-    vec3 color;
-    float intensity;
-    AttenuationInfo att; // Współczynniki tłumienia
-    // bool enabled;
+struct SpotLightData {
+    vec4 positionIntensity;
+    vec4 color;
+    vec4 attenuation;
+    vec4 directionCutOff;   // xyz = kierunek reflektora, w = cos kąta wewnętrznego
+    vec4 outerCutOff;       // x = cos kąta zewnętrznego
 };
 
-struct SpotLightInfo {
-    PointLightInfo pl; // Zawiera pozycję, kolor, intensywność, tłumienie
-    vec3 direction;    // Kierunek reflektora
-    float cutOffCos;      // Cosinus kąta wewnętrznego stożka
-    float outerCutOffCos; // Cosinus kąta zewnętrznego stożka
-    // bool enabled;
+#include "include/camera_block.glsl"
+
+layout (std140) uniform LightBlock {
+    vec4 dirLightDirection; // xyz = kierunek padania światła
+    vec4 dirLightColor;     // rgb = kolor, a = intensywność
+    ivec4 lightCounts;      // x = liczba świateł punktowych, y = liczba reflektorów
+    ivec4 clusterDims;      // xyz = liczba klastrów (kafle X, kafle Y, warstwy Z)
+    vec4 clusterZParams;    // x, y: warstwa = log(głębokość) * x + y; z = near, w = far
+    vec4 clusterTileSize;   // xy = rozmiar kafla w pikselach
+    PointLightData pointLights[MAX_POINT_LIGHTS];
+    SpotLightData spotLights[MAX_SPOT_LIGHTS];
 };
 
+#if defined(DIRECTIONAL_SHADOWS) || defined(SPOT_SHADOWS)
+#include "include/shadow_block.glsl"
+#endif
+
 // --- Wejścia z Vertex Shadera ---
 in vec3 FragPos;    // Pozycja fragmentu w przestrzeni świata
 in vec3 Normal;     // Normalna fragmentu w przestrzeni świata
 in vec2 TexCoords;  // Współrzędne tekstury
+flat in int MaterialIndex; // Indeks w tabeli materiałów klatki
 
 // --- Wyjście ---
 out vec4 FragColor;
 
-// --- Uniformy ---
-uniform vec3 viewPos; // Pozycja kamery
-uniform MaterialInfo material; // Właściwości materiału bieżącego obiektu
-
-// Samplery
-uniform sampler2D diffuseSampler;  // Jednostka 0
-uniform sampler2D specularSampler; // Jednostka 1
-uniform sampler2D shadowMapSampler; // Jednostka 2
+// Właściwości materiału fragmentu - wczytywane z tabeli (LoadMaterial) na początku main()
+MaterialInfo material;
+
+// Samplery (jednostki ustawia ShaderManager raz, przy tworzeniu wariantu)
+uniform samplerBuffer materialTableSampler; // Jednostka 6: MaterialTable.java, 5 x vec4 na materiał
+#ifdef HAS_DIFFUSE_MAP
+uniform sampler2DArray diffuseSampler;  // Jednostka 0, warstwa = tekstura (TextureArrayManager)
+#endif
+#ifdef HAS_SPECULAR_MAP
+uniform sampler2DArray specularSampler; // Jednostka 1
+#endif
+#ifdef DIRECTIONAL_SHADOWS
+uniform sampler2DArray shadowMapSampler; // Jednostka 2, warstwa = kaskada
+#endif
+#ifdef SPOT_SHADOWS
+uniform sampler2D shadowAtlasSampler;    // Jednostka 5, atlas cieni reflektorów
+#endif
+
+#ifdef LOCAL_LIGHTS
+// Clustered forward (ClusteredLightGrid.java)
+uniform usamplerBuffer clusterGridSampler; // Jednostka 3: x = offset, y = punktowe | (reflektory << 16)
+uniform usamplerBuffer lightIndexSampler;  // Jednostka 4: indeksy świateł klastrów
+#endif
 
-// Światła
-uniform DirLightInfo dirLight;
-#define MAX_POINT_LIGHTS 4 // Musi pasować do stałej w Renderer.java
-#define MAX_SPOT_LIGHTS 2  // Musi pasować do stałej w Renderer.java
-uniform int numPointLights;
-uniform int numSpotLights;
-uniform PointLightInfo pointLights[MAX_POINT_LIGHTS];
-uniform SpotLightInfo spotLights[MAX_SPOT_LIGHTS];
+// --- Funkcje Pomocnicze ---
 
-// Cienie (nadal tylko dla DirLight)
-uniform mat4 lightSpaceMatrix;
-uniform float shadowBias;
+// Wczytuje materiał fragmentu z tabeli (układ wpisu opisany w MaterialTable.java)
+void LoadMaterial() {
+    int base = MaterialIndex * 5;
+    vec4 t0 = texelFetch(materialTableSampler, base);
+    vec4 t1 = texelFetch(materialTableSampler, base + 1);
+    vec4 t2 = texelFetch(materialTableSampler, base + 2);
+    material.ambient = t0.rgb;
+    material.reflectance = t0.w;
+    material.diffuse = t1.rgb;
+    material.diffuseLayer = t1.w;
+    material.specular = t2.rgb;
+    material.specularLayer = t2.w;
+    material.diffuseRect = texelFetch(materialTableSampler, base + 3);
+    material.specularRect = texelFetch(materialTableSampler, base + 4);
+}
 
-// --- Funkcje Pomocnicze ---
+#if defined(HAS_DIFFUSE_MAP) || defined(HAS_SPECULAR_MAP)
+// Próbkuje warstwę tablicy tekstur. Tekstura z atlasu zajmuje tylko prostokąt warstwy - powtarzanie
+// UV (fract) robimy ręcznie, a pochodne liczymy z ciągłych UV, żeby na szwie fract nie spadał poziom mipmapy
+vec4 SampleLayer(sampler2DArray tex, float layer, vec4 rect) {
+    if (rect.z >= 1.0 && rect.w >= 1.0) {
+        return texture(tex, vec3(TexCoords, layer)); // Cała warstwa - sprzętowe GL_REPEAT
+    }
+    vec2 uv = rect.xy + fract(TexCoords) * rect.zw;
+    return textureGrad(tex, vec3(uv, layer), dFdx(TexCoords) * rect.zw, dFdy(TexCoords) * rect.zw);
+}
+#endif
 
-// Oblicza bazowy kolor diffuse (z tekstury lub materiału)
+// Oblicza bazowy kolor diffuse (z tekstury lub materiału) - wariant z mapą dostają tylko materiały z mapą
 vec3 GetBaseDiffuse() {
-    vec3 base = material.diffuse;
-    if (material.hasDiffuseMap) {
-        base *= texture(diffuseSampler, TexCoords).rgb;
-    }
-    return base;
+#ifdef HAS_DIFFUSE_MAP
+    return material.diffuse * SampleLayer(diffuseSampler, material.diffuseLayer, material.diffuseRect).rgb;
+#else
+    return material.diffuse;
+#endif
 }
 
 // Oblicza bazowy kolor/współczynnik specular (z tekstury lub materiału)
 vec3 GetBaseSpecular() {
-    vec3 base = material.specular;
-    if (material.hasSpecularMap) {
-        // Zakładamy intensywność w kanale R mapy specular
-        base *= texture(specularSampler, TexCoords).r;
-    }
-    return base;
+#ifdef HAS_SPECULAR_MAP
+    // Zakładamy intensywność w kanale R mapy specular
+    return material.specular * SampleLayer(specularSampler, material.specularLayer, material.specularRect).r;
+#else
+    return material.specular;
+#endif
 }
 
+#ifdef LOCAL_LIGHTS
 // Oblicza tłumienie dla świateł punktowych/reflektorowych
-float CalculateAttenuation(AttenuationInfo att, float distance) {
-    return 1.0 / (att.constant + att.linear * distance + att.quadratic * (distance * distance));
+float CalculateAttenuation(vec4 att, float distance) {
+    return 1.0 / (att.x + att.y * distance + att.z * (distance * distance));
 }
+#endif
 
-// Funkcja cieni (bez zmian)
-float CalculateShadow(vec4 fragPosLightSpace) {
+// Głębokość fragmentu w przestrzeni widoku (kamera patrzy wzdłuż -Z)
+float GetViewDepth() {
+    return -(view * vec4(FragPos, 1.0)).z;
+}
+
+#ifdef DIRECTIONAL_SHADOWS
+// Cień światła kierunkowego - kaskada wybierana po głębokości fragmentu
+float CalculateShadow(float viewDepth) {
+    int cascadeCount = int(shadowParams.x);
+    int cascade = 0;
+    while (cascade < cascadeCount && viewDepth > cascadeSplits[cascade]) {
+        cascade++;
+    }
+    if (cascade >= cascadeCount) return 0.0; // Poza zasięgiem cieni
+
+    vec4 fragPosLightSpace = lightSpaceMatrices[cascade] * vec4(FragPos, 1.0);
     vec3 projCoords = fragPosLightSpace.xyz / fragPosLightSpace.w;
     projCoords = projCoords * 0.5 + 0.5;
     if(projCoords.z > 1.0) return 0.0;
-    float closestDepth = texture(shadowMapSampler, projCoords.xy).r;
+    float closestDepth = texture(shadowMapSampler, vec3(projCoords.xy, float(cascade))).r;
     float currentDepth = projCoords.z;
-    float shadow = currentDepth - shadowBias > closestDepth ? 1.0 : 0.0;
+    float shadow = currentDepth - cascadeBiases[cascade] > closestDepth ? 1.0 : 0.0;
     return shadow;
 }
+#endif
+
+#ifdef SPOT_SHADOWS
+// Cień reflektora - próbka z jego kafla w atlasie, porównanie liniowych odległości od światła
+float CalculateSpotShadow(int index) {
+    vec4 tile = spotShadowTiles[index];
+    if (tile.w <= 0.0) return 0.0; // Reflektor bez kafla
+
+    vec4 fragPosLightSpace = spotShadowMatrices[index] * vec4(FragPos, 1.0);
+    if (fragPosLightSpace.w <= 0.0) return 0.0; // Za światłem
+    vec3 projCoords = fragPosLightSpace.xyz / fragPosLightSpace.w * 0.5 + 0.5;
+    if (any(lessThan(projCoords, vec3(0.0))) || any(greaterThan(projCoords, vec3(1.0)))) return 0.0;
+
+    // Próbkowanie bez wychodzenia poza kafel (pół teksela marginesu)
+    vec2 halfTexel = 0.5 / vec2(textureSize(shadowAtlasSampler, 0));
+    vec2 uv = tile.xy + clamp(projCoords.xy * tile.z, halfTexel, vec2(tile.z) - halfTexel);
+    float storedDepth = texture(shadowAtlasSampler, uv).r;
+
+    vec4 depthParams = spotShadowDepth[index];
+    float nearPlane = depthParams.x, farPlane = depthParams.y;
+    float closest = nearPlane * farPlane / (farPlane - storedDepth * (farPlane - nearPlane));
+    float current = fragPosLightSpace.w;
+    return current - depthParams.z * current > closest ? 1.0 : 0.0;
+}
+#endif
+
+#ifdef LOCAL_LIGHTS
+// Wyznacza indeks klastra fragmentu (kafel ekranu + wykładnicza warstwa głębokości)
+int GetClusterIndex(float viewDepth) {
+    int slice = int(floor(log(max(viewDepth, clusterZParams.z)) * clusterZParams.x + clusterZParams.y));
+    slice = clamp(slice, 0, clusterDims.z - 1);
+    ivec2 tile = clamp(ivec2(gl_FragCoord.xy / clusterTileSize.xy), ivec2(0), clusterDims.xy - 1);
+    return tile.x + clusterDims.x * (tile.y + clusterDims.y * slice);
+}
+#endif
 
-// Oblicza wkład światła kierunkowego
-vec3 CalcDirLightContribution(vec3 normal, vec3 viewDir, vec3 baseDiffuse, vec3 baseSpecular) {
-    if (dirLight.intensity <= 0.0) return vec3(0.0); // Jeśli światło wyłączone
-
-    vec3 lightDir = normalize(-dirLight.direction); // Kierunek OD fragmentu DO światła
+#ifdef DIRECTIONAL_LIGHT
+// Oblicza wkład światła kierunkowego (wariant tylko przy włączonym świetle - bez sprawdzania intensywności)
+vec3 CalcDirLightContribution(vec3 normal, vec3 viewDir, vec3 baseDiffuse, vec3 baseSpecular, float viewDepth) {
+    vec3 lightDir = normalize(-dirLightDirection.xyz); // Kierunek OD fragmentu DO światła
+    vec3 radiance = dirLightColor.rgb * dirLightColor.a;
 
     // Diffuse
     float diffFactor = max(dot(normal, lightDir), 0.0);
-    vec3 diffuse = dirLight.color * dirLight.intensity * diffFactor * baseDiffuse;
+    vec3 diffuse = radiance * diffFactor * baseDiffuse;
 
     // Specular (Blinn-Phong)
     vec3 halfwayDir = normalize(lightDir + viewDir);
     float specFactor = pow(max(dot(normal, halfwayDir), 0.0), material.reflectance);
-    vec3 specular = dirLight.color * dirLight.intensity * specFactor * baseSpecular;
+    vec3 specular = radiance * specFactor * baseSpecular;
 
+#ifdef DIRECTIONAL_SHADOWS
     // Cień (tylko dla tego światła)
-    vec4 fragPosLightSpace = lightSpaceMatrix * vec4(FragPos, 1.0);
-    float shadow = CalculateShadow(fragPosLightSpace);
+    float shadow = CalculateShadow(viewDepth);
 
     // Zwróć oświetlenie (bez ambientu), uwzględniając cień
     return (1.0 - shadow) * (diffuse + specular);
+#else
+    return diffuse + specular;
+#endif
 }
+#endif
 
+#ifdef LOCAL_LIGHTS
 // Oblicza wkład światła punktowego
-vec3 CalcPointLightContribution(PointLightInfo light, vec3 normal, vec3 viewDir, vec3 baseDiffuse, vec3 baseSpecular) {
-     if (light.intensity <= 0.0) return vec3(0.0);
+vec3 CalcPointLightContribution(PointLightData light, vec3 normal, vec3 viewDir, vec3 baseDiffuse, vec3 baseSpecular) {
+    if (light.positionIntensity.w <= 0.0) return vec3(0.0);
 
-    vec3 lightDir = normalize(light.position - FragPos); // Kierunek OD fragmentu DO światła
-    float distance = length(light.position - FragPos);
-    float attenuation = CalculateAttenuation(light.att, distance);
+    vec3 toLight = light.positionIntensity.xyz - FragPos;
+    vec3 lightDir = normalize(toLight); // Kierunek OD fragmentu DO światła
+    float distance = length(toLight);
+    float attenuation = CalculateAttenuation(light.attenuation, distance);
+    vec3 radiance = light.color.rgb * light.positionIntensity.w;
 
     // Diffuse
     float diffFactor = max(dot(normal, lightDir), 0.0);
-    vec3 diffuse = light.color * light.intensity * diffFactor * baseDiffuse;
+    vec3 diffuse = radiance * diffFactor * baseDiffuse;
 
     // Specular
     vec3 halfwayDir = normalize(lightDir + viewDir);
     float specFactor = pow(max(dot(normal, halfwayDir), 0.0), material.reflectance);
-    vec3 specular = light.color * light.intensity * specFactor * baseSpecular;
+    vec3 specular = radiance * specFactor * baseSpecular;
 
     return (diffuse + specular) * attenuation;
 }
 
 // Oblicza wkład światła reflektorowego
-vec3 CalcSpotLightContribution(SpotLightInfo light, vec3 normal, vec3 viewDir, vec3 baseDiffuse, vec3 baseSpecular) {
-     if (light.pl.intensity <= 0.0) return vec3(0.0);
+vec3 CalcSpotLightContribution(SpotLightData light, int lightIndex, vec3 normal, vec3 viewDir, vec3 baseDiffuse, vec3 baseSpecular) {
+    if (light.positionIntensity.w <= 0.0) return vec3(0.0);
 
-    vec3 lightDir = normalize(light.pl.position - FragPos);
-    float distance = length(light.pl.position - FragPos);
-    float attenuation = CalculateAttenuation(light.pl.att, distance);
+    vec3 toLight = light.positionIntensity.xyz - FragPos;
+    vec3 lightDir = normalize(toLight);
+    float distance = length(toLight);
+    float attenuation = CalculateAttenuation(light.attenuation, distance);
 
     // Sprawdzenie stożka reflektora
-    float theta = dot(lightDir, normalize(-light.direction)); // Kąt między kierunkiem światła a wektorem do fragmentu
-    float epsilon = light.cutOffCos - light.outerCutOffCos;
-    float intensityFactor = clamp((theta - light.outerCutOffCos) / epsilon, 0.0, 1.0); // Płynne przejście na krawędziach
+    float cutOffCos = light.directionCutOff.w;
+    float outerCutOffCos = light.outerCutOff.x;
+    float theta = dot(lightDir, normalize(-light.directionCutOff.xyz)); // Kąt między kierunkiem światła a wektorem do fragmentu
+    float epsilon = cutOffCos - outerCutOffCos;
+    float intensityFactor = clamp((theta - outerCutOffCos) / epsilon, 0.0, 1.0); // Płynne przejście na krawędziach
 
     if (intensityFactor <= 0.0) return vec3(0.0); // Poza stożkiem
 
+    vec3 radiance = light.color.rgb * light.positionIntensity.w;
+
     // Diffuse
     float diffFactor = max(dot(normal, lightDir), 0.0);
-    vec3 diffuse = light.pl.color * light.pl.intensity * diffFactor * baseDiffuse;
+    vec3 diffuse = radiance * diffFactor * baseDiffuse;
 
     // Specular
     vec3 halfwayDir = normalize(lightDir + viewDir);
     float specFactor = pow(max(dot(normal, halfwayDir), 0.0), material.reflectance);
-    vec3 specular = light.pl.color * light.pl.intensity * specFactor * baseSpecular;
+    vec3 specular = radiance * specFactor * baseSpecular;
+
+#ifdef SPOT_SHADOWS
+    // Cień z atlasu (tylko reflektory z kaflem)
+    float shadow = CalculateSpotShadow(lightIndex);
 
-    // Połącz i zastosuj tłumienie oraz współczynnik stożka
+    // Połącz i zastosuj tłumienie, współczynnik stożka i cień
+    return (1.0 - shadow) * (diffuse + specular) * attenuation * intensityFactor;
+#else
     return (diffuse + specular) * attenuation * intensityFactor;
+#endif
 }
+#endif
 
 // --- Główna Funkcja ---
 void main()
 {
+    LoadMaterial();
+
     // Pobierz bazowe właściwości materiału
     vec3 baseDiffuse = GetBaseDiffuse();
     vec3 baseSpecular = GetBaseSpecular();
 
     // Przygotuj wektory normalnej i widoku
     vec3 norm = normalize(Normal);
-    vec3 viewDir = normalize(viewPos - FragPos);
+    vec3 viewDir = normalize(viewPos.xyz - FragPos);
+    float viewDepth = GetViewDepth();
 
     // Oblicz składnik ambient (prosty model globalnego ambientu lub z dirLight)
     float ambientStrength = 0.1; // Globalna siła światła otoczenia
     vec3 ambient = ambientStrength * material.ambient;
     // Można też użyć dirLight:
-    // vec3 ambient = (dirLight.color * dirLight.intensity * 0.1) * material.ambient;
+    // vec3 ambient = (dirLightColor.rgb * dirLightColor.a * 0.1) * material.ambient;
 
 
+    vec3 result = vec3(0.0);
+#ifdef DIRECTIONAL_LIGHT
     // Oblicz wkład światła kierunkowego (z uwzględnieniem cienia)
-    vec3 result = CalcDirLightContribution(norm, viewDir, baseDiffuse, baseSpecular);
+    result += CalcDirLightContribution(norm, viewDir, baseDiffuse, baseSpecular, viewDepth);
+#endif
+
+#ifdef LOCAL_LIGHTS
+    // Tylko światła przypisane do klastra tego fragmentu
+    uvec2 cluster = texelFetch(clusterGridSampler, GetClusterIndex(viewDepth)).xy;
+    int lightOffset = int(cluster.x);
+    int pointCount = int(cluster.y & 0xFFFFu);
+    int spotCount = int(cluster.y >> 16);
 
     // Dodaj wkład świateł punktowych
-    for(int i = 0; i < numPointLights; i++) {
-        result += CalcPointLightContribution(pointLights[i], norm, viewDir, baseDiffuse, baseSpecular);
+    for(int i = 0; i < pointCount; i++) {
+        int lightIndex = int(texelFetch(lightIndexSampler, lightOffset + i).r);
+        result += CalcPointLightContribution(pointLights[lightIndex], norm, viewDir, baseDiffuse, baseSpecular);
     }
 
     // Dodaj wkład świateł reflektorowych
-    for(int i = 0; i < numSpotLights; i++) {
-        result += CalcSpotLightContribution(spotLights[i], norm, viewDir, baseDiffuse, baseSpecular);
+    for(int i = 0; i < spotCount; i++) {
+        int lightIndex = int(texelFetch(lightIndexSampler, lightOffset + pointCount + i).r);
+        result += CalcSpotLightContribution(spotLights[lightIndex], lightIndex, norm, viewDir, baseDiffuse, baseSpecular);
     }
+#endif
 
     // Dodaj ambient do finalnego wyniku
     vec3 finalColor = ambient + result;
@@ -1,26 +1,43 @@
 #version 330 core
 layout (location = 0) in vec3 aPos;
-layout (location = 1) in vec3 aNormal;
+layout (location = 1) in vec3 aNormal;     // float/half xyz albo oktaedryczne xy (snorm16)
 layout (location = 2) in vec2 aTexCoords;
+layout (location = 3) in mat4 aModel;        // Per-instancja (dzielnik 1), zajmuje lokacje 3-6
+layout (location = 7) in mat3 aNormalMatrix; // Per-instancja, liczona na CPU, zajmuje lokacje 7-9
+layout (location = 10) in int aMaterialIndex; // Per-instancja, indeks w tabeli materiałów (MaterialTable)
 
 out vec3 FragPos;    // Pozycja w przestrzeni świata
 out vec3 Normal;     // Normalna w przestrzeni świata
 out vec2 TexCoords;  // Współrzędne tekstury
+flat out int MaterialIndex;
 
-uniform mat4 model;
-uniform mat4 view;
-uniform mat4 projection;
+// Pozycja liczona identycznie jak w depth_prepass_vertex.glsl - głębia pre-passu i przebiegu koloru musi się zgadzać bit w bit
+invariant gl_Position;
+
+#include "include/camera_block.glsl"
+
+uniform bool octahedralNormals; // Układ wierzchołka siatki (VertexLayout) - ustawiany per partia
+
+// Odwrotność kodowania z VertexPacking.encodeOctahedral()
+vec3 decodeOctahedral(vec2 e)
+{
+    vec3 n = vec3(e.xy, 1.0 - abs(e.x) - abs(e.y));
+    float t = max(-n.z, 0.0);
+    n.x += n.x >= 0.0 ? -t : t;
+    n.y += n.y >= 0.0 ? -t : t;
+    return normalize(n);
+}
 
 void main()
 {
-    FragPos = vec3(model * vec4(aPos, 1.0)); // Transformuj pozycję do przestrzeni świata
+    FragPos = vec3(aModel * vec4(aPos, 1.0)); // Transformuj pozycję do przestrzeni świata
     // Transformuj normalną do przestrzeni świata (używając macierzy normalnych)
-    // Macierz normalnych to transponowana inwersja górnego lewego 3x3 macierzy modelu
-    // Dla uproszczenia (jeśli nie ma niesymetrycznego skalowania) można użyć:
-    Normal = mat3(transpose(inverse(model))) * aNormal;
-    // Normal = normalize(vec3(model * vec4(aNormal, 0.0))); // Mniej poprawne, ale często działa
+    // Macierz normalnych (transponowana inwersja górnego lewego 3x3 macierzy modelu) przychodzi z CPU
+    vec3 localNormal = octahedralNormals ? decodeOctahedral(aNormal.xy) : aNormal;
+    Normal = aNormalMatrix * localNormal;
 
     TexCoords = aTexCoords; // Przekaż współrzędne tekstury
+    MaterialIndex = aMaterialIndex;
 
     gl_Position = projection * view * vec4(FragPos, 1.0); // Transformuj do przestrzeni Clip Space
 }
\ No newline at end of file
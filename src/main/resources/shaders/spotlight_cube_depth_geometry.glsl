@@ -0,0 +1,39 @@
+#version 330 core
+// Jeden przebieg dla całej cube mapy: trójkąt trafia do każdej ściany (gl_Layer),
+// którą obiekt przecina (faceMask z CPU) i której bryłę widzenia może przeciąć sam trójkąt.
+layout (triangles) in;
+layout (triangle_strip, max_vertices = 18) out;
+
+uniform mat4 shadowMatrices[6]; // projekcja * widok ściany, kolejność GL_TEXTURE_CUBE_MAP_POSITIVE_X + i
+uniform int faceMask;           // Bit i = obiekt przecina bryłę ściany i
+
+in vec3 WorldPos[];
+out vec3 FragPos;
+
+void main() {
+    for (int face = 0; face < 6; ++face) {
+        if ((faceMask & (1 << face)) == 0) continue;
+
+        vec4 clip[3];
+        for (int i = 0; i < 3; ++i) {
+            clip[i] = shadowMatrices[face] * vec4(WorldPos[i], 1.0);
+        }
+        // Odrzuć trójkąt, gdy wszystkie wierzchołki leżą poza tą samą płaszczyzną bryły ściany
+        if ((clip[0].x < -clip[0].w && clip[1].x < -clip[1].w && clip[2].x < -clip[2].w) ||
+            (clip[0].x >  clip[0].w && clip[1].x >  clip[1].w && clip[2].x >  clip[2].w) ||
+            (clip[0].y < -clip[0].w && clip[1].y < -clip[1].w && clip[2].y < -clip[2].w) ||
+            (clip[0].y >  clip[0].w && clip[1].y >  clip[1].w && clip[2].y >  clip[2].w) ||
+            (clip[0].z < -clip[0].w && clip[1].z < -clip[1].w && clip[2].z < -clip[2].w) ||
+            (clip[0].z >  clip[0].w && clip[1].z >  clip[1].w && clip[2].z >  clip[2].w)) {
+            continue;
+        }
+
+        for (int i = 0; i < 3; ++i) {
+            gl_Layer = face;
+            FragPos = WorldPos[i];
+            gl_Position = clip[i];
+            EmitVertex();
+        }
+        EndPrimitive();
+    }
+}
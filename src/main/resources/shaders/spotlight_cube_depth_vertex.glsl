@@ -0,0 +1,10 @@
+#version 330 core
+layout (location = 0) in vec3 aPos;
+layout (location = 3) in mat4 aModel; // Macierz modelu per-instancja
+
+out vec3 WorldPos; // Pozycja w przestrzeni świata - projekcję na ściany wykonuje geometry shader
+
+void main() {
+    WorldPos = (aModel * vec4(aPos, 1.0)).xyz;
+    gl_Position = vec4(WorldPos, 1.0);
+}
@@ -1,9 +1,9 @@
 #version 330 core
 layout (location = 0) in vec3 aPos;
+layout (location = 3) in mat4 aModel; // Macierz modelu per-instancja
 
-uniform mat4 model;
 uniform mat4 lightSpaceMatrix; // Będzie to lightProjection * lightView (dla konkretnej ściany)
 
 void main() {
-    gl_Position = lightSpaceMatrix * model * vec4(aPos, 1.0);
+    gl_Position = lightSpaceMatrix * aModel * vec4(aPos, 1.0);
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package org.example.graphics;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class OccluderMeshTest {
+
+    @Test
+    void boxEdgesAreAllShared() {
+        OccluderMesh box = OccluderMesh.box(new Vector3f(-1.0f), new Vector3f(1.0f));
+        int[] indices = box.getIndices();
+        int[] adjacent = box.getAdjacentVertices();
+        for (int i = 0; i < indices.length; i++) {
+            int tri = i - i % 3;
+            assertNotEquals(-1, adjacent[i], "edge opposite index " + i);
+            // Sąsiad nie jest żadnym z wierzchołków własnego trójkąta
+            for (int v = 0; v < 3; v++) {
+                assertNotEquals(indices[tri + v], adjacent[i]);
+            }
+        }
+    }
+
+    @Test
+    void quadDiagonalLinksBothTriangles() {
+        float[] positions = { 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0 };
+        OccluderMesh quad = new OccluderMesh(positions, new int[] { 0, 1, 2, 0, 2, 3 });
+        int[] adjacent = quad.getAdjacentVertices();
+        // Przekątna 0-2 leży naprzeciw wierzchołka 1 w pierwszym i wierzchołka 3 w drugim trójkącie (pozycje 1 i 5 w indices)
+        assertEquals(3, adjacent[1]);
+        assertEquals(1, adjacent[5]);
+        assertEquals(-1, adjacent[0]);
+        assertEquals(-1, adjacent[2]);
+        assertEquals(-1, adjacent[3]);
+        assertEquals(-1, adjacent[4]);
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.graphics.render;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DepthRasterizerTest {
+
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 128;
+    private static final float OCCLUDER_DEPTH = 0.2f;
+    private static final float OBJECT_DEPTH = 0.5f;
+
+    // Kwadrat occludera - krawędzie w 10.3 i 60.7 przecinają piksele 10 i 60 tylko częściowo
+    private static final float MIN = 10.3f, MAX = 60.7f;
+
+    private static DepthRasterizer rasterize(DepthRasterizer rasterizer) {
+        for (int tile = 0; tile < rasterizer.getTileCount(); tile++) {
+            rasterizer.rasterizeTile(tile);
+        }
+        return rasterizer;
+    }
+
+    /** Kwadrat z dwóch trójkątów; przekątna (0)-(2) jest krawędzią wewnętrzną, gdy innerDiagonal. */
+    private static DepthRasterizer square(boolean innerDiagonal) {
+        DepthRasterizer rasterizer = new DepthRasterizer(WIDTH, HEIGHT);
+        float z = OCCLUDER_DEPTH;
+        // Przekątna leży naprzeciw wierzchołka 1 w obu trójkątach
+        int diagonal = innerDiagonal ? DepthRasterizer.INNER_EDGE_1 : 0;
+        rasterizer.addTriangle(MIN, MIN, z, MAX, MIN, z, MAX, MAX, z, diagonal);
+        rasterizer.addTriangle(MIN, MIN, z, MIN, MAX, z, MAX, MAX, z, diagonal);
+        return rasterize(rasterizer);
+    }
+
+    @Test
+    void fullyCoveredRectBehindOccluderIsOccluded() {
+        assertTrue(square(true).isRectOccluded(11, 11, 59, 59, OBJECT_DEPTH));
+    }
+
+    @Test
+    void partiallyCoveredPixelsDoNotOcclude() {
+        DepthRasterizer rasterizer = square(true);
+        // Środki pikseli 10 i 60 leżą w kwadracie, ale same piksele nie są pokryte w całości
+        assertFalse(rasterizer.isRectOccluded(10, 20, 10, 30, OBJECT_DEPTH));
+        assertFalse(rasterizer.isRectOccluded(60, 20, 60, 30, OBJECT_DEPTH));
+        assertFalse(rasterizer.isRectOccluded(20, 10, 30, 10, OBJECT_DEPTH));
+        assertFalse(rasterizer.isRectOccluded(20, 60, 30, 60, OBJECT_DEPTH));
+    }
+
+    @Test
+    void silhouetteDiagonalIsConservative() {
+        // Bez informacji o sąsiedztwie przekątna jest traktowana jak sylwetka - piksele na niej nie zasłaniają
+        DepthRasterizer rasterizer = square(false);
+        assertFalse(rasterizer.isRectOccluded(11, 11, 59, 59, OBJECT_DEPTH));
+        assertTrue(rasterizer.isRectOccluded(40, 12, 58, 20, OBJECT_DEPTH));
+    }
+
+    @Test
+    void objectInFrontOfOccluderIsVisible() {
+        assertFalse(square(true).isRectOccluded(20, 20, 30, 30, OCCLUDER_DEPTH * 0.5f));
+    }
+
+    @Test
+    void rectOverEmptyTileIsVisible() {
+        assertFalse(square(true).isRectOccluded(100, 100, 110, 110, OBJECT_DEPTH));
+    }
+
+    @Test
+    void slopedOccluderStoresFarthestDepthInPixel() {
+        // Głębia rośnie o 0.01 na piksel w x: środek piksela 20 ma 0.205, jego prawa krawędź 0.21
+        DepthRasterizer rasterizer = new DepthRasterizer(WIDTH, HEIGHT);
+        rasterizer.addTriangle(0.0f, 0.0f, 0.0f, 100.0f, 0.0f, 1.0f, 0.0f, 100.0f, 0.0f);
+        rasterize(rasterizer);
+        assertFalse(rasterizer.isRectOccluded(20, 10, 20, 10, 0.207f));
+        assertTrue(rasterizer.isRectOccluded(20, 10, 20, 10, 0.211f));
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.graphics.shadow;
+
+import org.example.graphics.light.DirectionalLight;
+import org.example.graphics.render.ShadowCasterCache;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShadowCascadesTest {
+
+    private static final int RESOLUTION = 2048;
+    private static final int STEPS = 100;
+
+    private final Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(60.0), 16.0f / 9.0f, 0.1f, 200.0f);
+    private final DirectionalLight light = new DirectionalLight(new Vector3f(1.0f), new Vector3f(-0.4f, -1.0f, -0.3f).normalize(), 1.0f);
+
+    private Matrix4f view(Vector3f eye) {
+        return new Matrix4f().lookAt(eye.x, eye.y, eye.z, eye.x + 0.3f, eye.y - 0.2f, eye.z - 1.0f, 0.0f, 1.0f, 0.0f);
+    }
+
+    /**
+     * Przesuwa kamerę w STEPS krokach o łącznie texels tekseli pierwszej kaskady i zlicza przerysowania
+     * warstwy statycznej (unieważnienia cache przez zmianę macierzy światła).
+     */
+    private int refreshesWhilePanning(Vector3f direction, float texels) {
+        ShadowCascades cascades = new ShadowCascades();
+        ShadowCasterCache cache = new ShadowCasterCache(ShadowCascades.MAX_CASCADES);
+        Vector3f eye = new Vector3f(3.0f, 2.0f, 5.0f);
+        cascades.update(projection, view(eye), light, RESOLUTION);
+        cache.markLayerValid(0, cascades.getLightSpaceMatrix(0));
+
+        Vector3f step = new Vector3f(direction).normalize(texels * cascades.getTexelWorldSize(0) / STEPS);
+        int refreshes = 0;
+        for (int i = 0; i < STEPS; i++) {
+            eye.add(step);
+            cascades.update(projection, view(eye), light, RESOLUTION);
+            if (!cache.isLayerValid(0, cascades.getLightSpaceMatrix(0))) {
+                cache.markLayerValid(0, cascades.getLightSpaceMatrix(0));
+                refreshes++;
+            }
+        }
+        return refreshes;
+    }
+
+    @Test
+    void unchangedCameraKeepsStaticLayerValid() {
+        assertEquals(0, refreshesWhilePanning(new Vector3f(1.0f, 0.0f, 0.0f), 0.0f));
+    }
+
+    @Test
+    void lateralPanWithinPlacementStepRefreshesStaticLayerAtMostOncePerAxis() {
+        // Krok siatki to rozdzielczość/16 tekseli (128 przy 2048) - przesunięcie o 32 teksele
+        // przekracza granicę kroku najwyżej raz na oś
+        Vector3f dir = light.getDirection();
+        Vector3f lateral = new Vector3f(dir).cross(0.0f, 1.0f, 0.0f);
+        assertTrue(refreshesWhilePanning(lateral, 32.0f) <= 2);
+    }
+
+    @Test
+    void panAlongLightDirectionKeepsStaticLayerValidWithinDepthStep() {
+        // Krok głębokości to ćwierć promienia kaskady - przesunięcie o teksel wzdłuż światła mieści się w nim
+        // (poza rzadkim przypadkiem granicy kroku)
+        assertTrue(refreshesWhilePanning(light.getDirection(), 1.0f) <= 1);
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.util;
+
+import org.example.exception.ResourceLoadException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompressedImageLoaderTest {
+
+    private static final int DDS_DATA_OFFSET = 128;
+
+    // Dwa bloki BC1 jeden nad drugim (obraz 4x8 od góry): końce kolorów i bajty indeksów wierszy 0-3
+    private static final byte[] TOP_BLOCK = { 1, 2, 3, 4, 10, 11, 12, 13 };
+    private static final byte[] BOTTOM_BLOCK = { 5, 6, 7, 8, 20, 21, 22, 23 };
+
+    /** DDS 4 x height z jednym poziomem; dxgiFormat >= 0 dodaje nagłówek DX10. */
+    private static ByteBuffer dds(int fourCC, int dxgiFormat, int height, byte[]... blocks) {
+        int extra = dxgiFormat >= 0 ? 20 : 0;
+        int size = 0;
+        for (byte[] block : blocks) size += block.length;
+        ByteBuffer buffer = ByteBuffer.allocate(DDS_DATA_OFFSET + extra + size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, 0x20534444);
+        buffer.putInt(4, 124);
+        buffer.putInt(12, height);
+        buffer.putInt(16, 4);                 // Szerokość
+        buffer.putInt(28, 1);                 // Jeden poziom
+        buffer.putInt(80, 0x4);               // DDPF_FOURCC
+        buffer.putInt(84, fourCC);
+        if (dxgiFormat >= 0) buffer.putInt(DDS_DATA_OFFSET, dxgiFormat);
+        buffer.position(DDS_DATA_OFFSET + extra);
+        for (byte[] block : blocks) buffer.put(block);
+        buffer.rewind();
+        return buffer;
+    }
+
+    private static ByteBuffer ktx2(String orientation, byte[]... blocks) {
+        byte[] kvd = new byte[0];
+        if (orientation != null) {
+            byte[] entry = ("KTXorientation\0" + orientation + "\0").getBytes(StandardCharsets.US_ASCII);
+            kvd = new byte[4 + ((entry.length + 3) & ~3)];
+            ByteBuffer.wrap(kvd).order(ByteOrder.LITTLE_ENDIAN).putInt(entry.length).put(entry);
+        }
+        int kvdOffset = 80 + 24;
+        int dataOffset = kvdOffset + kvd.length;
+        ByteBuffer buffer = ByteBuffer.allocate(dataOffset + blocks.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] { (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n' });
+        buffer.putInt(12, 131);                // VK_FORMAT_BC1_RGB_UNORM_BLOCK
+        buffer.putInt(20, 4);
+        buffer.putInt(24, blocks.length * 4);
+        buffer.putInt(36, 1);                  // faceCount
+        buffer.putInt(40, 1);                  // levelCount
+        buffer.putInt(56, kvd.length == 0 ? 0 : kvdOffset);
+        buffer.putInt(60, kvd.length);
+        buffer.putLong(80, dataOffset);
+        buffer.putLong(88, blocks.length * 8L);
+        buffer.position(kvdOffset);
+        buffer.put(kvd);
+        for (byte[] block : blocks) buffer.put(block);
+        buffer.rewind();
+        return buffer;
+    }
+
+    private static byte[] levelBytes(CompressedImageLoader.CompressedImage image) {
+        ByteBuffer level = image.levels.get(0).duplicate();
+        byte[] bytes = new byte[level.remaining()];
+        level.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void ddsIsFlippedToBottomUp() throws ResourceLoadException {
+        CompressedImageLoader.CompressedImage image =
+                CompressedImageLoader.load(dds(0x31545844, -1, 8, TOP_BLOCK, BOTTOM_BLOCK), "test.dds");
+        // Dolny blok trafia na początek, wiersze indeksów w każdym bloku w odwrotnej kolejności
+        assertArrayEquals(new byte[] { 5, 6, 7, 8, 23, 22, 21, 20, 1, 2, 3, 4, 13, 12, 11, 10 }, levelBytes(image));
+    }
+
+    @Test
+    void ktx2WithoutOrientationIsFlipped() throws ResourceLoadException {
+        CompressedImageLoader.CompressedImage image = CompressedImageLoader.load(ktx2(null, TOP_BLOCK, BOTTOM_BLOCK), "test.ktx2");
+        assertArrayEquals(new byte[] { 5, 6, 7, 8, 23, 22, 21, 20, 1, 2, 3, 4, 13, 12, 11, 10 }, levelBytes(image));
+    }
+
+    @Test
+    void ktx2StoredBottomUpIsKept() throws ResourceLoadException {
+        CompressedImageLoader.CompressedImage image = CompressedImageLoader.load(ktx2("ru", TOP_BLOCK, BOTTOM_BLOCK), "test.ktx2");
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 10, 11, 12, 13, 5, 6, 7, 8, 20, 21, 22, 23 }, levelBytes(image));
+        assertEquals(CompressedImageLoader.BlockFormat.BC1, image.format);
+    }
+
+    @Test
+    void srgbFormatsAreRejected() {
+        assertThrows(ResourceLoadException.class,
+                () -> CompressedImageLoader.load(dds(0x30315844, 72, 4, TOP_BLOCK), "srgb.dds"));
+    }
+
+    @Test
+    void topDownBc7IsRejected() {
+        assertThrows(ResourceLoadException.class,
+                () -> CompressedImageLoader.load(dds(0x30315844, 98, 4, new byte[16]), "bc7.dds"));
+    }
+}